@@ -1,9 +1,12 @@
 package net.lamgc.oracle.sentry;
 
 import com.google.common.base.Throwables;
+import net.lamgc.oracle.sentry.common.PersistentStateStore;
 import net.lamgc.oracle.sentry.oci.account.OracleAccount;
 import net.lamgc.oracle.sentry.oci.account.OracleAccountManager;
 import net.lamgc.oracle.sentry.oci.compute.ComputeInstanceManager;
+import net.lamgc.oracle.sentry.oci.compute.ssh.HostKeyAdminEndpoint;
+import net.lamgc.oracle.sentry.oci.compute.ssh.HostKeyApprovalQueue;
 import net.lamgc.oracle.sentry.script.ScriptComponentExtension;
 import net.lamgc.oracle.sentry.script.ScriptComponents;
 import net.lamgc.oracle.sentry.script.ScriptManager;
@@ -48,6 +51,13 @@ class ApplicationInitiation {
     @NonNull
     private String sshIdentityPath;
 
+    @Value("${oracle.script.stateStorePath:./config/trigger-state.json}")
+    @NonNull
+    private String triggerStateStorePath;
+
+    @Value("${oracle.ssh.firstConnection.adminPort:0}")
+    private int hostKeyAdminPort;
+
     @Bean("oracle.identity.manager")
     public OracleAccountManager initialOracleAccountManager() throws IOException {
         OracleAccountManager oracleUserManager = new OracleAccountManager();
@@ -92,6 +102,27 @@ class ApplicationInitiation {
         return instanceManager;
     }
 
+    @Bean("sentry.trigger.state.store")
+    public PersistentStateStore initialTriggerStateStore() {
+        PersistentStateStore stateStore = new PersistentStateStore(new File(triggerStateStorePath), 10000);
+        try {
+            stateStore.load();
+            log.info("已加载触发器状态存储.");
+        } catch (IOException e) {
+            log.error("加载触发器状态存储失败, 触发器将从空状态开始运行.", e);
+        }
+        return stateStore;
+    }
+
+    @Bean(value = "oracle.ssh.hostKey.admin", destroyMethod = "close")
+    public HostKeyAdminEndpoint initialHostKeyAdminEndpoint() throws IOException {
+        if (hostKeyAdminPort <= 0) {
+            log.debug("未配置服务器公钥确认接口端口, 不启用确认接口.");
+            return null;
+        }
+        return new HostKeyAdminEndpoint(HostKeyApprovalQueue.getDefault(), hostKeyAdminPort);
+    }
+
     @Bean("sentry.script.manager")
     @Autowired
     public ScriptManager initialScriptManager(ComputeInstanceManager instanceManager, OracleAccountManager accountManager) {
@@ -1,11 +1,14 @@
 package net.lamgc.oracle.sentry;
 
+import net.lamgc.oracle.sentry.common.PersistentStateStore;
 import net.lamgc.oracle.sentry.oci.compute.ssh.ConfiguredForwardingFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author LamGC
  */
@@ -25,9 +28,18 @@ public final class Constants {
     @NonNull
     private String firstConnectionPolicy;
 
+    @Value("${oracle.ssh.firstConnection.confirmTimeout:300}")
+    private long firstConnectionConfirmTimeout;
+
+    @Value("${oracle.ssh.exec.defaultTimeout:3600}")
+    private long execDefaultTimeout;
+
     @Autowired
     private ConfiguredForwardingFilter forwardingFilter;
 
+    @Autowired
+    private PersistentStateStore triggerStateStore;
+
     /**
      * 获取 SSH 首次连接策略.
      * @return 返回策略值.
@@ -37,6 +49,22 @@ public final class Constants {
         return firstConnectionPolicy;
     }
 
+    /**
+     * 获取首次连接时等待用户确认服务器公钥的最长时间.
+     * @return 返回等待时间, 单位: 秒.
+     */
+    public long getFirstConnectionConfirmTimeout() {
+        return firstConnectionConfirmTimeout;
+    }
+
+    /**
+     * 获取命令执行的默认截止时间.
+     * @return 返回截止时间, 0 为不限制, 单位: 毫秒.
+     */
+    public long getExecDefaultTimeout() {
+        return TimeUnit.SECONDS.toMillis(execDefaultTimeout);
+    }
+
     /**
      * 获取已配置的转发过滤器.
      * @return 返回转发过滤器.
@@ -44,4 +72,12 @@ public final class Constants {
     public ConfiguredForwardingFilter getForwardingFilter() {
         return forwardingFilter;
     }
+
+    /**
+     * 获取触发器状态存储.
+     * @return 返回用于保存触发器状态的持久化存储.
+     */
+    public PersistentStateStore getTriggerStateStore() {
+        return triggerStateStore;
+    }
 }
@@ -0,0 +1,203 @@
+package net.lamgc.oracle.sentry.common;
+
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 持久化状态存储.
+ * <p> 以 "命名空间 - 键 - 值" 的形式保存少量状态数据, 并定期批量写入本地文件,
+ * 使得程序重启后可以恢复之前记录的状态(例如实例状态监视器最后一次观察到的实例状态).
+ * <p> 写入操作只会标记存储需要保存, 实际的文件写入由后台线程按固定间隔合并完成,
+ * 所以频繁更新状态不会导致频繁的磁盘写入.
+ * @author LamGC
+ */
+@SuppressWarnings("UnstableApiUsage")
+public final class PersistentStateStore implements AutoCloseable {
+
+    private final static Logger log = LoggerFactory.getLogger(PersistentStateStore.class);
+
+    private final Map<String, Map<String, String>> namespaces = new ConcurrentHashMap<>();
+    private final File storeFile;
+    private final Gson gson = new GsonBuilder()
+            .setPrettyPrinting()
+            .create();
+
+    private final ScheduledExecutorService scheduledExec = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("Thread-StateStoreSave-%d")
+                    .setDaemon(true)
+                    .build());
+    private final AtomicBoolean needSave = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * 创建持久化状态存储.
+     * @param storeFile 存储文件.
+     * @param saveInterval 批量保存间隔, 单位: 毫秒.
+     */
+    public PersistentStateStore(File storeFile, long saveInterval) {
+        this.storeFile = Objects.requireNonNull(storeFile);
+        if (saveInterval <= 0) {
+            throw new IllegalArgumentException("Save interval cannot be less than or equal to 0.");
+        }
+        scheduledExec.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                log.warn("本次状态存储保存失败.", e);
+            }
+        }, saveInterval, saveInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取状态值.
+     * @param namespace 命名空间.
+     * @param key 状态键.
+     * @return 如果存在, 返回状态值, 否则返回 {@code null}.
+     */
+    public String get(String namespace, String key) {
+        Map<String, String> values = namespaces.get(namespace);
+        return values == null ? null : values.get(key);
+    }
+
+    /**
+     * 获取某一命名空间下的所有状态.
+     * @param namespace 命名空间.
+     * @return 返回该命名空间下所有状态的只读视图, 如果命名空间不存在, 返回空 Map.
+     */
+    public Map<String, String> getAll(String namespace) {
+        Map<String, String> values = namespaces.get(namespace);
+        return values == null ? Collections.emptyMap() : Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * 设置状态值.
+     * <p> 只有在值发生变化时才会标记存储需要保存.
+     * @param namespace 命名空间.
+     * @param key 状态键.
+     * @param value 状态值, 如果为 {@code null} 则删除该状态.
+     */
+    public void put(String namespace, String key, String value) {
+        Objects.requireNonNull(namespace);
+        Objects.requireNonNull(key);
+        if (value == null) {
+            remove(namespace, key);
+            return;
+        }
+        String oldValue = namespaces.computeIfAbsent(namespace, k -> new ConcurrentHashMap<>()).put(key, value);
+        if (!value.equals(oldValue)) {
+            needSave.set(true);
+        }
+    }
+
+    /**
+     * 删除状态值.
+     * @param namespace 命名空间.
+     * @param key 状态键.
+     */
+    public void remove(String namespace, String key) {
+        Map<String, String> values = namespaces.get(namespace);
+        if (values != null && values.remove(key) != null) {
+            needSave.set(true);
+        }
+    }
+
+    /**
+     * 只保留命名空间中指定的状态键.
+     * <p> 用于清理已不存在的对象(例如已删除的实例)留下的状态, 避免存储文件无限增长.
+     * @param namespace 命名空间.
+     * @param keys 需要保留的状态键, 其他状态将被删除.
+     */
+    public void retain(String namespace, Collection<String> keys) {
+        Map<String, String> values = namespaces.get(namespace);
+        if (values != null && values.keySet().retainAll(keys)) {
+            needSave.set(true);
+        }
+    }
+
+    /**
+     * 从文件中加载状态.
+     * <p> 如果文件不存在, 将跳过加载.
+     * @throws IOException 当读取文件失败时抛出该异常.
+     */
+    public synchronized void load() throws IOException {
+        if (!storeFile.exists()) {
+            log.debug("状态存储文件不存在, 跳过加载.(Path: {})", storeFile.getAbsolutePath());
+            return;
+        }
+        Map<String, Map<String, String>> loaded;
+        try (Reader reader = new FileReader(storeFile, StandardCharsets.UTF_8)) {
+            loaded = gson.fromJson(reader, new TypeToken<Map<String, Map<String, String>>>(){}.getType());
+        } catch (JsonParseException e) {
+            throw new IOException("The state store file is corrupted: " + storeFile.getAbsolutePath(), e);
+        }
+        if (loaded == null) {
+            return;
+        }
+        for (Map.Entry<String, Map<String, String>> entry : loaded.entrySet()) {
+            if (entry.getValue() != null) {
+                namespaces.computeIfAbsent(entry.getKey(), k -> new ConcurrentHashMap<>()).putAll(entry.getValue());
+            }
+        }
+        log.debug("已加载状态存储, 共 {} 个命名空间.", loaded.size());
+    }
+
+    /**
+     * 立即将状态写入文件.
+     * <p> 如果自上次保存后状态没有发生变化, 则不执行写入.
+     * <p> 写入时先写到临时文件再替换原文件, 避免程序中断时损坏存储文件. 存储文件所在目录不存在时将自动创建.
+     * @throws IOException 当写入失败时抛出该异常.
+     */
+    public synchronized void flush() throws IOException {
+        if (!needSave.getAndSet(false)) {
+            return;
+        }
+        try {
+            Path target = storeFile.toPath().toAbsolutePath();
+            Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.createDirectories(target.getParent());
+            Files.writeString(tempFile, gson.toJson(namespaces), StandardCharsets.UTF_8);
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.trace("状态存储已保存.");
+        } catch (IOException e) {
+            needSave.set(true);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        scheduledExec.shutdown();
+        try {
+            flush();
+        } catch (IOException e) {
+            log.error("关闭状态存储时保存失败.", e);
+        }
+    }
+}
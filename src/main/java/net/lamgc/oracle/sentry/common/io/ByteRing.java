@@ -0,0 +1,75 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import java.util.Arrays;
+
+/**
+ * 字节环形缓冲区.
+ * <p> 保留最后写入的 {@code capacity} 个字节, 缓冲区按需增长, 不会在创建时直接分配全部容量.
+ * @author LamGC
+ */
+final class ByteRing {
+
+    private final static int INITIAL_SIZE = 1024;
+
+    private final int capacity;
+    private byte[] buffer;
+    private int position = 0;
+    private boolean full = false;
+
+    ByteRing(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.buffer = new byte[Math.min(capacity, INITIAL_SIZE)];
+    }
+
+    void write(byte[] b, int off, int len) {
+        if (capacity == 0) {
+            return;
+        }
+        if (len >= capacity) {
+            ensureSize(capacity);
+            System.arraycopy(b, off + len - capacity, buffer, 0, capacity);
+            position = 0;
+            full = true;
+            return;
+        }
+        if (!full) {
+            int required = position + len;
+            if (required < capacity) {
+                ensureSize(required);
+                System.arraycopy(b, off, buffer, position, len);
+                position = required;
+                return;
+            }
+            ensureSize(capacity);
+            full = true;
+        }
+        int first = Math.min(len, capacity - position);
+        System.arraycopy(b, off, buffer, position, first);
+        System.arraycopy(b, off + first, buffer, 0, len - first);
+        position = (position + len) % capacity;
+    }
+
+    int size() {
+        return full ? capacity : position;
+    }
+
+    byte[] toByteArray() {
+        if (!full) {
+            return Arrays.copyOf(buffer, position);
+        }
+        byte[] result = new byte[capacity];
+        System.arraycopy(buffer, position, result, 0, capacity - position);
+        System.arraycopy(buffer, 0, result, capacity - position, position);
+        return result;
+    }
+
+    private void ensureSize(int size) {
+        if (buffer.length < size) {
+            buffer = Arrays.copyOf(buffer, Math.min(capacity, Math.max(size, buffer.length * 2)));
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import java.util.Arrays;
+
+/**
+ * 保留最前 N 个字节与最后 M 个字节的输出捕获.
+ * @author LamGC
+ * @see OutputCapture#headTail(int, int)
+ */
+public final class HeadTailCapture extends OutputCapture {
+
+    private final int headCapacity;
+    private byte[] head;
+    private int headSize = 0;
+    private final ByteRing tail;
+
+    HeadTailCapture(int headCapacity, int tailCapacity) {
+        if (headCapacity < 0) {
+            throw new IllegalArgumentException("Head capacity cannot be negative: " + headCapacity);
+        }
+        this.headCapacity = headCapacity;
+        this.head = new byte[Math.min(headCapacity, 1024)];
+        this.tail = new ByteRing(tailCapacity);
+    }
+
+    @Override
+    protected void capture(byte[] b, int off, int len) {
+        int toHead = Math.min(len, headCapacity - headSize);
+        if (toHead > 0) {
+            if (head.length < headSize + toHead) {
+                head = Arrays.copyOf(head, Math.min(headCapacity, Math.max(headSize + toHead, head.length * 2)));
+            }
+            System.arraycopy(b, off, head, headSize, toHead);
+            headSize += toHead;
+        }
+        if (len > toHead) {
+            tail.write(b, off + toHead, len - toHead);
+        }
+    }
+
+    @Override
+    public long getDroppedBytes() {
+        return getTotalBytes() - headSize - tail.size();
+    }
+
+    /**
+     * 获取保留的开头部分.
+     * @return 返回开头部分.
+     */
+    public byte[] getHead() {
+        return Arrays.copyOf(head, headSize);
+    }
+
+    /**
+     * 获取保留的结尾部分.
+     * @return 返回结尾部分, 不包括已保存在开头部分中的数据.
+     */
+    public byte[] getTail() {
+        return tail.toByteArray();
+    }
+
+    /**
+     * 获取保留的内容.
+     * <p> 开头部分与结尾部分直接拼接, 可通过 {@link #getDroppedBytes()} 判断中间是否有内容被丢弃.
+     * @return 返回保留的内容.
+     */
+    @Override
+    public byte[] toByteArray() {
+        byte[] tailBytes = tail.toByteArray();
+        byte[] result = Arrays.copyOf(head, headSize + tailBytes.length);
+        System.arraycopy(tailBytes, 0, result, headSize, tailBytes.length);
+        return result;
+    }
+}
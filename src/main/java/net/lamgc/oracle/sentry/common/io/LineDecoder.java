@@ -0,0 +1,131 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * 增量行解码器.
+ * <p> 将分段到达的字节数据解码为文本行, 多字节字符被分割在两段数据之间时也能正确解码.
+ * <p> 解码器只保留未完成的一行和少量未解码的字节, 内存占用与输出总量无关;
+ * 超过最大长度的行会被拆分为多行, 以免单行过长导致内存无限增长.
+ * <p> 行尾的 {@code \n} 与 {@code \r\n} 不会包含在返回的行中. 本类非线程安全.
+ * @author LamGC
+ */
+public final class LineDecoder {
+
+    /**
+     * 默认的最大行长度(字符数).
+     */
+    public final static int DEFAULT_MAX_LINE_LENGTH = 8192;
+
+    private final CharsetDecoder decoder;
+    private final int maxLineLength;
+    private final ByteBuffer byteBuffer = ByteBuffer.allocate(4096);
+    private final CharBuffer charBuffer = CharBuffer.allocate(4096);
+    private final StringBuilder lineBuilder = new StringBuilder();
+    private boolean lastCharIsCr = false;
+
+    /**
+     * 创建行解码器.
+     * @param charset 文本编码.
+     * @param maxLineLength 最大行长度, 超过该长度的行将被拆分.
+     */
+    public LineDecoder(Charset charset, int maxLineLength) {
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException("Max line length cannot be less than or equal to 0.");
+        }
+        this.decoder = Objects.requireNonNull(charset).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * 使用默认最大行长度创建行解码器.
+     * @param charset 文本编码.
+     */
+    public LineDecoder(Charset charset) {
+        this(charset, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * 解码一段数据.
+     * @param data 数据数组.
+     * @param offset 数据起始位置.
+     * @param length 数据长度.
+     * @param lineConsumer 完整行的接收者, 每解码出一行调用一次.
+     */
+    public void decode(byte[] data, int offset, int length, Consumer<String> lineConsumer) {
+        Objects.checkFromIndexSize(offset, length, data.length);
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            int count = Math.min(byteBuffer.remaining(), end - position);
+            byteBuffer.put(data, position, count);
+            position += count;
+            byteBuffer.flip();
+            decodeBuffer(false, lineConsumer);
+            byteBuffer.compact();
+        }
+    }
+
+    /**
+     * 结束解码.
+     * <p> 输出剩余未以换行符结尾的内容(如果有), 调用后解码器将被重置, 可重新使用.
+     * @param lineConsumer 行接收者.
+     */
+    public void finish(Consumer<String> lineConsumer) {
+        byteBuffer.flip();
+        decodeBuffer(true, lineConsumer);
+        byteBuffer.clear();
+        CoderResult result;
+        do {
+            result = decoder.flush(charBuffer);
+            drainChars(lineConsumer);
+        } while (result.isOverflow());
+        if (lineBuilder.length() != 0) {
+            lineConsumer.accept(lineBuilder.toString());
+            lineBuilder.setLength(0);
+        }
+        lastCharIsCr = false;
+        decoder.reset();
+    }
+
+    private void decodeBuffer(boolean endOfInput, Consumer<String> lineConsumer) {
+        CoderResult result;
+        do {
+            result = decoder.decode(byteBuffer, charBuffer, endOfInput);
+            drainChars(lineConsumer);
+        } while (result.isOverflow());
+    }
+
+    private void drainChars(Consumer<String> lineConsumer) {
+        charBuffer.flip();
+        while (charBuffer.hasRemaining()) {
+            char c = charBuffer.get();
+            if (c == '\n') {
+                if (lastCharIsCr && lineBuilder.length() != 0) {
+                    lineBuilder.setLength(lineBuilder.length() - 1);
+                }
+                lineConsumer.accept(lineBuilder.toString());
+                lineBuilder.setLength(0);
+                lastCharIsCr = false;
+                continue;
+            }
+            if (lineBuilder.length() >= maxLineLength) {
+                lineConsumer.accept(lineBuilder.toString());
+                lineBuilder.setLength(0);
+            }
+            lineBuilder.append(c);
+            lastCharIsCr = c == '\r';
+        }
+        charBuffer.clear();
+    }
+
+}
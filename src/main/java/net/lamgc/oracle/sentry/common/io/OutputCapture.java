@@ -0,0 +1,135 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * 有界输出捕获.
+ * <p> 用于代替 {@link java.io.ByteArrayOutputStream} 捕获命令输出, 无论写入多少数据, 内存占用都有确定的上限.
+ * <p> 提供以下捕获方式:
+ * <ul>
+ *     <li> {@link #tail(int)}: 只保留最后 N 个字节;
+ *     <li> {@link #headTail(int, int)}: 保留最前 N 个字节与最后 M 个字节;
+ *     <li> {@link #spillToFile(int, Path)}: 超过阈值后将全部内容转存到临时文件.
+ * </ul>
+ * <p> 每种方式都会统计写入的总字节数, 以及被丢弃或转存的字节数. 本类非线程安全.
+ * @author LamGC
+ */
+public abstract class OutputCapture extends OutputStream {
+
+    private long totalBytes = 0;
+
+    /**
+     * 创建只保留最后 N 个字节的捕获.
+     * @param capacity 保留的字节数.
+     * @return 返回输出捕获.
+     */
+    public static OutputCapture tail(int capacity) {
+        return new TailCapture(capacity);
+    }
+
+    /**
+     * 创建保留最前与最后部分的捕获.
+     * <p> 适用于既需要查看命令开头的提示, 又需要查看结尾的错误信息的情况.
+     * @param headCapacity 保留的开头字节数.
+     * @param tailCapacity 保留的结尾字节数.
+     * @return 返回输出捕获.
+     */
+    public static HeadTailCapture headTail(int headCapacity, int tailCapacity) {
+        return new HeadTailCapture(headCapacity, tailCapacity);
+    }
+
+    /**
+     * 创建超过阈值后转存到文件的捕获.
+     * <p> 不会丢弃任何数据, 内存中最多保留 {@code threshold} 个字节.
+     * @param threshold 内存阈值, 超过后转存到临时文件.
+     * @param tempDirectory 临时文件所在目录, 为 {@code null} 时使用系统临时目录.
+     * @return 返回输出捕获.
+     */
+    public static SpillingCapture spillToFile(int threshold, Path tempDirectory) {
+        return new SpillingCapture(threshold, tempDirectory);
+    }
+
+    @Override
+    public final void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public final void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return;
+        }
+        totalBytes += len;
+        capture(b, off, len);
+    }
+
+    /**
+     * 捕获数据.
+     * @param b 数据数组.
+     * @param off 起始位置.
+     * @param len 数据长度, 大于 0.
+     * @throws IOException 当写入失败时抛出.
+     */
+    protected abstract void capture(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * 获取写入的总字节数.
+     * @return 返回写入的总字节数, 包括被丢弃的部分.
+     */
+    public final long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 获取被丢弃的字节数.
+     * @return 返回未被保留的字节数.
+     */
+    public long getDroppedBytes() {
+        return 0;
+    }
+
+    /**
+     * 获取转存到文件的字节数.
+     * @return 返回转存到文件的字节数, 未转存时为 0.
+     */
+    public long getSpilledBytes() {
+        return 0;
+    }
+
+    /**
+     * 获取捕获的内容.
+     * <p> 对于丢弃数据的捕获方式, 返回保留下来的部分, 被丢弃的部分不会有任何标记.
+     * @return 返回捕获的内容.
+     * @throws IOException 当读取转存文件失败时抛出.
+     * @throws IllegalStateException 当捕获的内容过大, 无法放入数组时抛出.
+     */
+    public abstract byte[] toByteArray() throws IOException;
+
+    /**
+     * 打开捕获内容的输入流.
+     * <p> 读取转存到文件的大量内容时, 应使用本方法代替 {@link #toByteArray()}.
+     * @return 返回捕获内容的输入流.
+     * @throws IOException 当打开转存文件失败时抛出.
+     */
+    public InputStream openInputStream() throws IOException {
+        return new ByteArrayInputStream(toByteArray());
+    }
+
+    /**
+     * 以指定编码获取捕获的文本.
+     * @param charset 文本编码.
+     * @return 返回捕获的文本.
+     * @throws IOException 当读取转存文件失败时抛出.
+     */
+    public String toString(Charset charset) throws IOException {
+        return new String(toByteArray(), charset);
+    }
+
+}
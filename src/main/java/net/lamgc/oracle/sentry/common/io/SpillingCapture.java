@@ -0,0 +1,127 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * 超过阈值后转存到临时文件的输出捕获.
+ * <p> 转存后内存中的数据将被释放, 后续数据直接写入文件.
+ * <p> 使用完毕后应调用 {@link #close()} 删除临时文件.
+ * @author LamGC
+ * @see OutputCapture#spillToFile(int, Path)
+ */
+public final class SpillingCapture extends OutputCapture {
+
+    private final int threshold;
+    private final Path tempDirectory;
+    private byte[] memory;
+    private int memorySize = 0;
+    private Path spillFile;
+    private OutputStream spillOutput;
+    private boolean closed = false;
+
+    SpillingCapture(int threshold, Path tempDirectory) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative: " + threshold);
+        }
+        this.threshold = threshold;
+        this.tempDirectory = tempDirectory;
+        this.memory = new byte[Math.min(threshold, 1024)];
+    }
+
+    @Override
+    protected void capture(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Capture has been closed.");
+        }
+        if (spillOutput == null && memorySize + len <= threshold) {
+            if (memory.length < memorySize + len) {
+                memory = Arrays.copyOf(memory, Math.min(threshold, Math.max(memorySize + len, memory.length * 2)));
+            }
+            System.arraycopy(b, off, memory, memorySize, len);
+            memorySize += len;
+            return;
+        }
+        if (spillOutput == null) {
+            spill();
+        }
+        spillOutput.write(b, off, len);
+    }
+
+    private void spill() throws IOException {
+        spillFile = tempDirectory == null ?
+                Files.createTempFile("oracle-sentry-capture-", ".out") :
+                Files.createTempFile(tempDirectory, "oracle-sentry-capture-", ".out");
+        spillOutput = new BufferedOutputStream(Files.newOutputStream(spillFile));
+        spillOutput.write(memory, 0, memorySize);
+        memory = new byte[0];
+        memorySize = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (spillOutput != null) {
+            spillOutput.flush();
+        }
+    }
+
+    /**
+     * 获取转存到文件的字节数.
+     * <p> 转存时已在内存中的数据也计入其中.
+     * @return 返回转存到文件的字节数.
+     */
+    @Override
+    public long getSpilledBytes() {
+        return spillFile == null ? 0 : getTotalBytes();
+    }
+
+    /**
+     * 获取转存文件路径.
+     * @return 返回转存文件路径, 未转存时返回 {@code null}.
+     */
+    public Path getSpillFile() {
+        return spillFile;
+    }
+
+    @Override
+    public byte[] toByteArray() throws IOException {
+        if (spillFile == null) {
+            return Arrays.copyOf(memory, memorySize);
+        }
+        if (getTotalBytes() > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Captured content is too large for an array: " + getTotalBytes());
+        }
+        flush();
+        return Files.readAllBytes(spillFile);
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        if (spillFile == null) {
+            return new ByteArrayInputStream(memory, 0, memorySize);
+        }
+        flush();
+        return new BufferedInputStream(Files.newInputStream(spillFile));
+    }
+
+    /**
+     * 关闭捕获并删除临时文件.
+     * <p> 关闭后将无法再读取捕获的内容.
+     * @throws IOException 当删除临时文件失败时抛出.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        memory = new byte[0];
+        memorySize = 0;
+        if (spillOutput != null) {
+            spillOutput.close();
+            Files.deleteIfExists(spillFile);
+        }
+    }
+}
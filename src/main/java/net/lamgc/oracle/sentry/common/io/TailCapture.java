@@ -0,0 +1,30 @@
+package net.lamgc.oracle.sentry.common.io;
+
+/**
+ * 只保留最后 N 个字节的输出捕获.
+ * @author LamGC
+ * @see OutputCapture#tail(int)
+ */
+final class TailCapture extends OutputCapture {
+
+    private final ByteRing ring;
+
+    TailCapture(int capacity) {
+        this.ring = new ByteRing(capacity);
+    }
+
+    @Override
+    protected void capture(byte[] b, int off, int len) {
+        ring.write(b, off, len);
+    }
+
+    @Override
+    public long getDroppedBytes() {
+        return getTotalBytes() - ring.size();
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        return ring.toByteArray();
+    }
+}
@@ -0,0 +1,74 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import java.util.Objects;
+
+/**
+ * Tar 归档条目.
+ * @param name 条目路径, 使用 {@code /} 分隔, 目录不以 {@code /} 结尾.
+ * @param type 条目类型.
+ * @param size 文件大小, 非普通文件为 0, 单位: 字节.
+ * @param mode 权限位, 例如 {@code 0644}.
+ * @param modifiedTime 修改时间, 单位: 秒.
+ * @param linkName 链接目标, 仅链接类型的条目有效, 其他类型为 {@code null}.
+ * @author LamGC
+ */
+public record TarEntry(String name, Type type, long size, int mode, long modifiedTime, String linkName) {
+
+    public TarEntry {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(type);
+        if (size < 0) {
+            throw new IllegalArgumentException("Size cannot be less than 0.");
+        }
+    }
+
+    /**
+     * 创建普通文件条目.
+     * @param name 文件路径.
+     * @param size 文件大小.
+     * @param mode 权限位.
+     * @param modifiedTime 修改时间, 单位: 秒.
+     * @return 返回条目.
+     */
+    public static TarEntry file(String name, long size, int mode, long modifiedTime) {
+        return new TarEntry(name, Type.FILE, size, mode, modifiedTime, null);
+    }
+
+    /**
+     * 创建目录条目.
+     * @param name 目录路径.
+     * @param mode 权限位.
+     * @param modifiedTime 修改时间, 单位: 秒.
+     * @return 返回条目.
+     */
+    public static TarEntry directory(String name, int mode, long modifiedTime) {
+        return new TarEntry(name, Type.DIRECTORY, 0, mode, modifiedTime, null);
+    }
+
+    /**
+     * 条目类型.
+     */
+    public enum Type {
+        /**
+         * 普通文件.
+         */
+        FILE,
+        /**
+         * 目录.
+         */
+        DIRECTORY,
+        /**
+         * 符号链接.
+         */
+        SYMBOLIC_LINK,
+        /**
+         * 硬链接.
+         */
+        HARD_LINK,
+        /**
+         * 其他类型(设备文件, FIFO 等).
+         */
+        OTHER
+    }
+
+}
@@ -0,0 +1,314 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tar 归档输入流.
+ * <p> 逐个读取条目, 支持 ustar 格式, 以及 pax 扩展头与 GNU 长路径扩展(GNU tar 与 busybox tar 的默认输出).
+ * <p> 使用方式: 调用 {@link #getNextEntry()} 获取下一个条目, 然后从本流中读取该条目的内容,
+ * 读取到条目末尾时返回 -1, 未读完的内容会在获取下一个条目时跳过.
+ * @author LamGC
+ */
+public final class TarInputStream extends FilterInputStream {
+
+    private final static int BLOCK_SIZE = TarOutputStream.BLOCK_SIZE;
+
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private long entryRemaining;
+    private long entryPadding;
+    private boolean finished;
+
+    /**
+     * 创建 Tar 归档输入流.
+     * @param in 归档的数据来源.
+     */
+    public TarInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * 读取下一个条目.
+     * @return 返回下一个条目, 如果已到达归档末尾, 返回 {@code null}.
+     * @throws IOException 当读取失败或归档格式错误时抛出.
+     */
+    public TarEntry getNextEntry() throws IOException {
+        if (finished) {
+            return null;
+        }
+        skipRemaining();
+        Map<String, String> paxHeaders = new HashMap<>();
+        String longName = null;
+        String longLinkName = null;
+        while (true) {
+            if (!readHeader()) {
+                finished = true;
+                return null;
+            }
+            byte typeFlag = header[156];
+            long size = parseNumber(124, 12);
+            switch (typeFlag) {
+                case 'x' -> {
+                    parsePaxHeaders(readData(size), paxHeaders);
+                    continue;
+                }
+                case 'g' -> {
+                    // 全局扩展头对本实现关心的字段没有影响, 跳过.
+                    readData(size);
+                    continue;
+                }
+                case 'L' -> {
+                    longName = trimNul(readData(size));
+                    continue;
+                }
+                case 'K' -> {
+                    longLinkName = trimNul(readData(size));
+                    continue;
+                }
+                default -> {
+                }
+            }
+
+            String name = longName != null ? longName : readName();
+            String linkName = longLinkName != null ? longLinkName : readString(157, 100);
+            long modifiedTime = parseNumber(136, 12);
+            name = paxHeaders.getOrDefault("path", name);
+            linkName = paxHeaders.getOrDefault("linkpath", linkName);
+            if (paxHeaders.containsKey("size")) {
+                size = parsePaxNumber(paxHeaders.get("size"));
+            }
+            if (paxHeaders.containsKey("mtime")) {
+                modifiedTime = parsePaxNumber(paxHeaders.get("mtime"));
+            }
+
+            TarEntry.Type type = toType(typeFlag, name);
+            while (name.length() > 1 && name.endsWith("/")) {
+                name = name.substring(0, name.length() - 1);
+            }
+            // 链接与目录条目没有内容, 但部分实现会写入非 0 的大小, 仍需按大小跳过.
+            entryRemaining = size;
+            entryPadding = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+            return new TarEntry(name, type, type == TarEntry.Type.FILE ? size : 0, (int) parseNumber(100, 8),
+                    modifiedTime, type == TarEntry.Type.SYMBOLIC_LINK || type == TarEntry.Type.HARD_LINK ? linkName : null);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (entryRemaining <= 0) {
+            return -1;
+        }
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of archive.");
+        }
+        entryRemaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (entryRemaining <= 0) {
+            return -1;
+        } else if (len == 0) {
+            return 0;
+        }
+        int read = in.read(b, off, (int) Math.min(len, entryRemaining));
+        if (read == -1) {
+            throw new EOFException("Unexpected end of archive.");
+        }
+        entryRemaining -= read;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), entryRemaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void skipRemaining() throws IOException {
+        skipFully(entryRemaining + entryPadding);
+        entryRemaining = 0;
+        entryPadding = 0;
+    }
+
+    private void skipFully(long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException("Unexpected end of archive.");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * 读取条目头.
+     * @return 如果读取到条目头, 返回 {@code true}, 到达归档结束标记或流末尾返回 {@code false}.
+     */
+    private boolean readHeader() throws IOException {
+        int read = in.readNBytes(header, 0, BLOCK_SIZE);
+        if (read == 0) {
+            return false;
+        } else if (read < BLOCK_SIZE) {
+            throw new EOFException("Unexpected end of archive.");
+        }
+        boolean empty = true;
+        for (byte b : header) {
+            if (b != 0) {
+                empty = false;
+                break;
+            }
+        }
+        if (empty) {
+            return false;
+        }
+        verifyChecksum();
+        return true;
+    }
+
+    private void verifyChecksum() throws IOException {
+        long expected = parseNumber(148, 8);
+        long unsignedSum = 0;
+        long signedSum = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            byte b = i >= 148 && i < 156 ? (byte) ' ' : header[i];
+            unsignedSum += b & 0xFF;
+            signedSum += b;
+        }
+        // 部分旧实现以有符号字节计算校验和.
+        if (expected != unsignedSum && expected != signedSum) {
+            throw new IOException("Invalid tar header checksum.");
+        }
+    }
+
+    private byte[] readData(long size) throws IOException {
+        if (size > Integer.MAX_VALUE - BLOCK_SIZE) {
+            throw new IOException("Extended header is too large: " + size);
+        }
+        byte[] data = in.readNBytes((int) size);
+        if (data.length < size) {
+            throw new EOFException("Unexpected end of archive.");
+        }
+        skipFully((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+        return data;
+    }
+
+    private String readName() {
+        String name = readString(0, 100);
+        // ustar 格式的路径可能拆分为前缀与名称两部分.
+        if (readString(257, 5).equals("ustar")) {
+            String prefix = readString(345, 155);
+            if (!prefix.isEmpty()) {
+                return prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    private String readString(int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解析数字字段, 支持八进制与 GNU 的 base-256 编码(最高位为 1).
+     */
+    private long parseNumber(int offset, int length) throws IOException {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7F;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xFF);
+            }
+            return value;
+        }
+        long value = 0;
+        int i = offset;
+        while (i < offset + length && (header[i] == ' ' || header[i] == 0)) {
+            i++;
+        }
+        for (; i < offset + length; i++) {
+            byte b = header[i];
+            if (b == ' ' || b == 0) {
+                break;
+            } else if (b < '0' || b > '7') {
+                throw new IOException("Invalid octal number in tar header.");
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 解析 pax 扩展头, 格式为若干条 "长度 键=值\n".
+     */
+    private static void parsePaxHeaders(byte[] data, Map<String, String> headers) throws IOException {
+        int offset = 0;
+        while (offset < data.length) {
+            int space = offset;
+            int length = 0;
+            while (space < data.length && data[space] != ' ') {
+                if (data[space] < '0' || data[space] > '9') {
+                    throw new IOException("Invalid pax header record.");
+                }
+                length = length * 10 + (data[space] - '0');
+                space++;
+            }
+            if (length <= 0 || offset + length > data.length) {
+                throw new IOException("Invalid pax header record.");
+            }
+            String record = new String(data, space + 1, offset + length - space - 2, StandardCharsets.UTF_8);
+            int equals = record.indexOf('=');
+            if (equals > 0) {
+                headers.put(record.substring(0, equals), record.substring(equals + 1));
+            }
+            offset += length;
+        }
+    }
+
+    private static long parsePaxNumber(String value) throws IOException {
+        int dot = value.indexOf('.');
+        try {
+            return Long.parseLong(dot >= 0 ? value.substring(0, dot) : value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number in pax header: " + value);
+        }
+    }
+
+    private static String trimNul(byte[] data) {
+        int end = data.length;
+        while (end > 0 && data[end - 1] == 0) {
+            end--;
+        }
+        return new String(data, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private static TarEntry.Type toType(byte typeFlag, String name) {
+        return switch (typeFlag) {
+            // 早期的 tar 以 NUL 表示普通文件, 以路径末尾的 '/' 表示目录.
+            case '0', 0, '7' -> name.endsWith("/") ? TarEntry.Type.DIRECTORY : TarEntry.Type.FILE;
+            case '5' -> TarEntry.Type.DIRECTORY;
+            case '2' -> TarEntry.Type.SYMBOLIC_LINK;
+            case '1' -> TarEntry.Type.HARD_LINK;
+            default -> TarEntry.Type.OTHER;
+        };
+    }
+
+}
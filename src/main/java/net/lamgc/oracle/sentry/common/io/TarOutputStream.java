@@ -0,0 +1,267 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tar 归档输出流.
+ * <p> 以 ustar 格式逐个写入条目, 归档在写入过程中生成, 不需要临时文件.
+ * 路径, 链接目标过长或文件大于 8 GiB 时, 将在条目前写入 pax 扩展头(GNU tar, busybox tar 均支持).
+ * <p> 使用方式: 调用 {@link #putEntry(TarEntry)} 写入条目头, 普通文件接着写入 {@link TarEntry#size()} 字节的内容,
+ * 然后写入下一个条目. 全部写入后调用 {@link #finish()} 或 {@link #close()} 写入归档结束标记.
+ * <p> 本类不会缓冲输出, 建议包装 {@link java.io.BufferedOutputStream} 后使用.
+ * @author LamGC
+ */
+public final class TarOutputStream extends FilterOutputStream {
+
+    /**
+     * Tar 归档的块大小.
+     */
+    public final static int BLOCK_SIZE = 512;
+
+    private final static int NAME_LENGTH = 100;
+    private final static int PREFIX_LENGTH = 155;
+    private final static long MAX_OCTAL_SIZE = 077777777777L;
+    private final static String PAX_HEADER_NAME = "././@PaxHeader";
+
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private long entryRemaining;
+    private long entryWritten;
+    private boolean entryOpen;
+    private boolean finished;
+
+    /**
+     * 创建 Tar 归档输出流.
+     * @param out 归档的输出目标.
+     */
+    public TarOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * 写入条目头.
+     * <p> 如果上一个普通文件条目的内容未写入完毕, 将抛出异常.
+     * @param entry 条目.
+     * @throws IOException 当写入失败时抛出.
+     */
+    public void putEntry(TarEntry entry) throws IOException {
+        if (finished) {
+            throw new IOException("The archive has been finished.");
+        }
+        closeEntry();
+        String name = entry.type() == TarEntry.Type.DIRECTORY ? entry.name() + "/" : entry.name();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] linkBytes = entry.linkName() == null ? new byte[0] : entry.linkName().getBytes(StandardCharsets.UTF_8);
+        long size = entry.type() == TarEntry.Type.FILE ? entry.size() : 0;
+
+        Map<String, String> paxHeaders = new LinkedHashMap<>();
+        int splitIndex = findPrefixSplit(nameBytes);
+        if (splitIndex < 0) {
+            paxHeaders.put("path", name);
+        }
+        if (linkBytes.length > NAME_LENGTH) {
+            paxHeaders.put("linkpath", entry.linkName());
+        }
+        if (size > MAX_OCTAL_SIZE) {
+            paxHeaders.put("size", String.valueOf(size));
+        }
+        if (entry.modifiedTime() < 0 || entry.modifiedTime() > MAX_OCTAL_SIZE) {
+            paxHeaders.put("mtime", String.valueOf(entry.modifiedTime()));
+        }
+        if (!paxHeaders.isEmpty()) {
+            writePaxHeader(paxHeaders);
+        }
+
+        Arrays.fill(header, (byte) 0);
+        if (splitIndex == 0) {
+            putBytes(nameBytes, 0, nameBytes.length, 0, NAME_LENGTH);
+        } else if (splitIndex > 0) {
+            // ustar 将较长的路径拆分为前缀(345)与名称(0)两部分, 分隔符 '/' 不写入.
+            putBytes(nameBytes, splitIndex + 1, nameBytes.length - splitIndex - 1, 0, NAME_LENGTH);
+            putBytes(nameBytes, 0, splitIndex, 345, PREFIX_LENGTH);
+        } else {
+            // 完整路径在 pax 扩展头中, 这里只写入截断的路径, 以兼容不支持 pax 的实现.
+            putBytes(nameBytes, 0, nameBytes.length, 0, NAME_LENGTH);
+        }
+        writeHeader(typeFlag(entry.type()), entry.mode(), size,
+                Math.max(0, Math.min(entry.modifiedTime(), MAX_OCTAL_SIZE)), linkBytes);
+
+        entryRemaining = size;
+        entryWritten = 0;
+        entryOpen = true;
+    }
+
+    /**
+     * 结束当前条目.
+     * <p> 写入块对齐所需的填充. 通常无需手动调用, 写入下一个条目或结束归档时会自动调用.
+     * @throws IOException 当条目内容未写入完毕或写入失败时抛出.
+     */
+    public void closeEntry() throws IOException {
+        if (!entryOpen) {
+            return;
+        }
+        if (entryRemaining > 0) {
+            throw new IOException("Entry content is incomplete, " + entryRemaining + " bytes remaining.");
+        }
+        int padding = (int) ((BLOCK_SIZE - entryWritten % BLOCK_SIZE) % BLOCK_SIZE);
+        if (padding > 0) {
+            out.write(new byte[padding]);
+        }
+        entryOpen = false;
+    }
+
+    /**
+     * 结束归档.
+     * <p> 写入归档结束标记(两个空块), 不会关闭底层输出流.
+     * @throws IOException 当写入失败时抛出.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        closeEntry();
+        out.write(new byte[BLOCK_SIZE * 2]);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkWritable(1);
+        out.write(b);
+        entryRemaining--;
+        entryWritten++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkWritable(len);
+        out.write(b, off, len);
+        entryRemaining -= len;
+        entryWritten += len;
+    }
+
+    /**
+     * 结束归档并关闭底层输出流.
+     * @throws IOException 当写入失败时抛出.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void checkWritable(int length) throws IOException {
+        if (!entryOpen) {
+            throw new IOException("No entry is open.");
+        } else if (length > entryRemaining) {
+            throw new IOException("Content exceeds the entry size, " + entryRemaining + " bytes remaining.");
+        }
+    }
+
+    private void writePaxHeader(Map<String, String> headers) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            builder.append(paxRecord(entry.getKey(), entry.getValue()));
+        }
+        byte[] data = builder.toString().getBytes(StandardCharsets.UTF_8);
+        Arrays.fill(header, (byte) 0);
+        byte[] nameBytes = PAX_HEADER_NAME.getBytes(StandardCharsets.US_ASCII);
+        putBytes(nameBytes, 0, nameBytes.length, 0, NAME_LENGTH);
+        writeHeader((byte) 'x', 0644, data.length, 0, new byte[0]);
+        out.write(data);
+        int padding = (BLOCK_SIZE - data.length % BLOCK_SIZE) % BLOCK_SIZE;
+        out.write(new byte[padding]);
+    }
+
+    /**
+     * 构造 pax 记录, 格式为 "长度 键=值\n", 长度包括长度字段本身.
+     */
+    static String paxRecord(String key, String value) {
+        int length = key.getBytes(StandardCharsets.UTF_8).length + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int digits = String.valueOf(length).length();
+        int total = length + digits;
+        if (String.valueOf(total).length() != digits) {
+            total++;
+        }
+        return total + " " + key + "=" + value + "\n";
+    }
+
+    private void writeHeader(byte typeFlag, int mode, long size, long modifiedTime, byte[] linkBytes) throws IOException {
+        putOctal(mode & 07777, 100, 8);
+        putOctal(0, 108, 8);
+        putOctal(0, 116, 8);
+        putOctal(size, 124, 12);
+        putOctal(modifiedTime, 136, 12);
+        header[156] = typeFlag;
+        putBytes(linkBytes, 0, Math.min(linkBytes.length, NAME_LENGTH), 157, NAME_LENGTH);
+        putBytes("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, 6, 257, 6);
+        putBytes("00".getBytes(StandardCharsets.US_ASCII), 0, 2, 263, 2);
+
+        // 计算校验和时, 校验和字段视为 8 个空格.
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        putOctal(checksum, 148, 7);
+        header[155] = ' ';
+        out.write(header);
+    }
+
+    /**
+     * 查找路径的拆分位置.
+     * @return 路径不超过名称字段长度时返回 0, 可拆分为前缀与名称时返回分隔符位置, 无法放入 ustar 头时返回 -1.
+     */
+    private static int findPrefixSplit(byte[] nameBytes) {
+        if (nameBytes.length <= NAME_LENGTH) {
+            return 0;
+        }
+        int start = Math.max(1, nameBytes.length - NAME_LENGTH - 1);
+        for (int i = start; i <= Math.min(PREFIX_LENGTH, nameBytes.length - 2); i++) {
+            if (nameBytes[i] == '/') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte typeFlag(TarEntry.Type type) {
+        return switch (type) {
+            case FILE -> '0';
+            case DIRECTORY -> '5';
+            case SYMBOLIC_LINK -> '2';
+            case HARD_LINK -> '1';
+            case OTHER -> throw new IllegalArgumentException("Unsupported entry type: " + type);
+        };
+    }
+
+    private void putBytes(byte[] source, int sourceOffset, int length, int offset, int fieldLength) {
+        System.arraycopy(source, sourceOffset, header, offset, Math.min(length, fieldLength));
+    }
+
+    /**
+     * 写入以 NUL 结尾的八进制数字段.
+     */
+    private void putOctal(long value, int offset, int fieldLength) {
+        String octal = Long.toOctalString(value);
+        int digits = fieldLength - 1;
+        int index = offset;
+        for (int i = octal.length(); i < digits; i++) {
+            header[index++] = '0';
+        }
+        for (int i = Math.max(0, octal.length() - digits); i < octal.length(); i++) {
+            header[index++] = (byte) octal.charAt(i);
+        }
+        header[offset + digits] = 0;
+    }
+
+}
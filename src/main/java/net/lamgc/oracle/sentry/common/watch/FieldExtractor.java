@@ -0,0 +1,19 @@
+package net.lamgc.oracle.sentry.common.watch;
+
+/**
+ * 字段提取器.
+ * <p> 从资源中提取需要监视的字段值, 提取出的值将被计算为指纹后用于比对.
+ * @param <R> 资源类型.
+ * @author LamGC
+ */
+@FunctionalInterface
+public interface FieldExtractor<R> {
+
+    /**
+     * 提取字段值.
+     * @param resource 资源对象, 不为 {@code null}.
+     * @return 返回字段值, 允许为 {@code null}.
+     */
+    Object extract(R resource);
+
+}
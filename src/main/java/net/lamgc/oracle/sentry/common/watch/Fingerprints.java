@@ -0,0 +1,89 @@
+package net.lamgc.oracle.sentry.common.watch;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 字段指纹计算工具.
+ * <p> 将字段值计算为 64 位指纹, 用于在不保存字段原值的情况下判断字段是否发生变化.
+ * <p> 字符串使用 FNV-1a 算法逐字符计算, 避免 {@link String#hashCode()} 32 位哈希带来的较高碰撞率;
+ * 集合类会递归计算元素指纹, Map 的指纹与遍历顺序无关.
+ * @author LamGC
+ */
+final class Fingerprints {
+
+    private final static long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private final static long FNV_PRIME = 0x100000001b3L;
+    private final static long NULL_FINGERPRINT = 0x9e3779b97f4a7c15L;
+
+    private Fingerprints() {
+    }
+
+    /**
+     * 计算值的指纹.
+     * @param value 字段值, 允许为 {@code null}.
+     * @return 返回 64 位指纹.
+     */
+    static long of(Object value) {
+        if (value == null) {
+            return NULL_FINGERPRINT;
+        } else if (value instanceof CharSequence sequence) {
+            return ofCharSequence(sequence);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return mix(((Number) value).longValue());
+        } else if (value instanceof Double number) {
+            return mix(Double.doubleToLongBits(number));
+        } else if (value instanceof Float number) {
+            return mix(Float.floatToIntBits(number));
+        } else if (value instanceof Boolean bool) {
+            return bool ? 0x6a09e667f3bcc909L : 0xbb67ae8584caa73bL;
+        } else if (value instanceof Enum<?> enumValue) {
+            return ofCharSequence(enumValue.name());
+        } else if (value instanceof Date date) {
+            return mix(date.getTime());
+        } else if (value instanceof Map<?, ?> map) {
+            long fingerprint = mix(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                // 使用加法合并, 使 Map 指纹与遍历顺序无关.
+                fingerprint += mix(of(entry.getKey()) * 31 + of(entry.getValue()));
+            }
+            return fingerprint;
+        } else if (value instanceof Collection<?> collection) {
+            long fingerprint = mix(collection.size());
+            for (Object element : collection) {
+                fingerprint = fingerprint * FNV_PRIME ^ of(element);
+            }
+            return mix(fingerprint);
+        } else if (value instanceof Object[] array) {
+            return of(Arrays.asList(array));
+        }
+        return mix(value.hashCode());
+    }
+
+    private static long ofCharSequence(CharSequence sequence) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < sequence.length(); i++) {
+            char c = sequence.charAt(i);
+            hash ^= (c & 0xFF);
+            hash *= FNV_PRIME;
+            hash ^= (c >>> 8);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 64 位混淆函数(SplitMix64 的最终混淆步骤).
+     * @param value 输入值.
+     * @return 返回混淆后的值.
+     */
+    private static long mix(long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+}
@@ -0,0 +1,32 @@
+package net.lamgc.oracle.sentry.common.watch;
+
+import java.util.Set;
+
+/**
+ * 资源变更事件.
+ * <p> 由于轮询引擎只保存字段指纹而不保存字段旧值, 事件中只包含资源的最新信息以及发生变化的字段名.
+ * @param key 资源键.
+ * @param resource 资源的最新信息.
+ * @param changedFields 发生变化的字段名.
+ * @param initial 是否为首次观察到该资源(仅在开启首次通知时出现).
+ * @param <K> 资源键类型.
+ * @param <R> 资源类型.
+ * @author LamGC
+ */
+public record ResourceChangeEvent<K, R>(
+        K key,
+        R resource,
+        Set<String> changedFields,
+        boolean initial
+) {
+
+    /**
+     * 检查指定字段是否发生了变化.
+     * @param fieldName 字段名.
+     * @return 如果该字段发生变化, 返回 {@code true}.
+     */
+    public boolean isChanged(String fieldName) {
+        return changedFields.contains(fieldName);
+    }
+
+}
@@ -0,0 +1,18 @@
+package net.lamgc.oracle.sentry.common.watch;
+
+/**
+ * 资源变更监听器.
+ * @param <K> 资源键类型.
+ * @param <R> 资源类型.
+ * @author LamGC
+ */
+@FunctionalInterface
+public interface ResourceChangeListener<K, R> {
+
+    /**
+     * 当资源被监视的字段发生变化时调用.
+     * @param event 资源变更事件.
+     */
+    void onChange(ResourceChangeEvent<K, R> event);
+
+}
@@ -0,0 +1,299 @@
+package net.lamgc.oracle.sentry.common.watch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 通用资源差异轮询引擎.
+ * <p> 通过 {@link ResourceFetcher} 定期获取资源, 使用 {@link FieldExtractor} 提取需要监视的字段,
+ * 并将每个字段计算为 64 位指纹保存, 只有当被监视的字段指纹发生变化时才会调用监听器.
+ * <p> 每个资源只保存一个 {@code long[]} 指纹数组与一个已知字段掩码, 比对时原地更新, 在资源没有发生变化的情况下,
+ * 一轮比对除了获取资源本身以外几乎不产生额外的对象分配.
+ * <p> 字段提取失败时该字段的指纹视为未知, 之后首次提取成功时只作为该字段的基准, 不会视为发生变化.
+ * @param <K> 资源键类型.
+ * @param <R> 资源类型.
+ * @author LamGC
+ */
+public final class ResourceDiffPoller<K, R> {
+
+    private final static Logger log = LoggerFactory.getLogger(ResourceDiffPoller.class);
+    private final static ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("Thread-ResourceDiffPolling-%d")
+            .build();
+
+    /**
+     * 单个资源最多可监视的字段数量, 受变化掩码位数限制.
+     */
+    private final static int MAX_FIELDS = Long.SIZE;
+
+    private final ResourceFetcher<K, R> fetcher;
+    private final String[] fieldNames;
+    private final List<FieldExtractor<R>> extractors;
+    private final ResourceChangeListener<K, R> listener;
+    private final long interval;
+    private final boolean notifyInitial;
+
+    private final Set<K> resourceKeys = ConcurrentHashMap.newKeySet();
+    private final Map<K, FingerprintState> fingerprints = new ConcurrentHashMap<>();
+    private final AtomicReference<Thread> pollingThreadReference = new AtomicReference<>();
+
+    private ResourceDiffPoller(ResourceFetcher<K, R> fetcher, LinkedHashMap<String, FieldExtractor<R>> fields,
+                               ResourceChangeListener<K, R> listener, long interval, boolean notifyInitial) {
+        this.fetcher = Objects.requireNonNull(fetcher);
+        this.listener = Objects.requireNonNull(listener);
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field needs to be watched.");
+        } else if (fields.size() > MAX_FIELDS) {
+            throw new IllegalArgumentException("Too many fields (max " + MAX_FIELDS + "): " + fields.size());
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval cannot be less than or equal to 0.");
+        }
+        this.fieldNames = fields.keySet().toArray(new String[0]);
+        this.extractors = List.copyOf(fields.values());
+        this.interval = interval;
+        this.notifyInitial = notifyInitial;
+    }
+
+    /**
+     * 添加需要监视的资源.
+     * @param key 资源键.
+     */
+    public void addResource(K key) {
+        resourceKeys.add(Objects.requireNonNull(key));
+    }
+
+    /**
+     * 添加需要监视的资源.
+     * @param keys 资源键集合.
+     */
+    public void addResources(Collection<? extends K> keys) {
+        for (K key : keys) {
+            addResource(key);
+        }
+    }
+
+    /**
+     * 移除监视的资源.
+     * <p> 该资源的指纹将被一同删除, 正在进行的比对不会再为该资源写入指纹.
+     * @param key 资源键.
+     */
+    public void removeResource(K key) {
+        resourceKeys.remove(key);
+        fingerprints.remove(key);
+    }
+
+    /**
+     * 获取所有正在监视的资源.
+     * @return 返回正在监视的资源键集合.
+     */
+    public Set<K> getResources() {
+        return Collections.unmodifiableSet(resourceKeys);
+    }
+
+    /**
+     * 执行一轮轮询.
+     * <p> 依次获取所有资源并与上次的指纹比对, 如果字段发生变化则调用监听器.
+     * @throws InterruptedException 当线程在轮询过程中被中断时抛出.
+     */
+    public void pollOnce() throws InterruptedException {
+        for (K key : resourceKeys) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            R resource;
+            try {
+                resource = fetcher.fetch(key);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (e.getCause() instanceof InterruptedException) {
+                    throw new InterruptedException();
+                }
+                if (log.isDebugEnabled()) {
+                    log.error("获取资源信息失败.(Key: {})", key, e);
+                } else {
+                    log.error("获取资源信息失败(详情请打开 Debug 级别): {}:{}", e.getClass().getName(), e.getMessage());
+                }
+                continue;
+            }
+            if (resource == null) {
+                // 资源已不存在, 删除指纹, 若资源重新出现则视为首次观察.
+                fingerprints.remove(key);
+                continue;
+            }
+            diff(key, resource);
+        }
+    }
+
+    /**
+     * 比对资源指纹.
+     * @param key 资源键.
+     * @param resource 资源最新信息.
+     */
+    private void diff(K key, R resource) {
+        FingerprintState state = fingerprints.get(key);
+        boolean initial = state == null;
+        if (initial) {
+            state = new FingerprintState(extractors.size());
+            fingerprints.put(key, state);
+            // 资源可能在比对过程中被移除, 此时不应留下该资源的指纹.
+            if (!resourceKeys.contains(key)) {
+                fingerprints.remove(key, state);
+                return;
+            }
+        }
+        long changedMask = 0;
+        for (int i = 0; i < extractors.size(); i++) {
+            long fingerprint;
+            try {
+                fingerprint = Fingerprints.of(extractors.get(i).extract(resource));
+            } catch (Exception e) {
+                log.warn("提取字段 {} 时发生异常, 本轮跳过该字段.(Key: {})", fieldNames[i], key, e);
+                continue;
+            }
+            long bit = 1L << i;
+            if ((state.knownMask & bit) == 0) {
+                // 首次得到该字段的指纹, 只有首次观察资源时才视为变化.
+                state.fingerprints[i] = fingerprint;
+                state.knownMask |= bit;
+                if (initial) {
+                    changedMask |= bit;
+                }
+            } else if (state.fingerprints[i] != fingerprint) {
+                state.fingerprints[i] = fingerprint;
+                changedMask |= bit;
+            }
+        }
+        if (changedMask == 0 || (initial && !notifyInitial)) {
+            return;
+        }
+        Set<String> changedFields = new HashSet<>(Long.bitCount(changedMask) * 2);
+        for (int i = 0; i < fieldNames.length; i++) {
+            if ((changedMask & (1L << i)) != 0) {
+                changedFields.add(fieldNames[i]);
+            }
+        }
+        try {
+            listener.onChange(new ResourceChangeEvent<>(key, resource,
+                    Collections.unmodifiableSet(changedFields), initial));
+        } catch (Exception e) {
+            log.error("资源变更事件处理时发生未捕获异常.", e);
+        }
+    }
+
+    /**
+     * 启动轮询线程.
+     * @throws IllegalStateException 当轮询线程已经启动时抛出.
+     */
+    public synchronized void start() {
+        if (pollingThreadReference.get() != null) {
+            throw new IllegalStateException("Attempting to start multiple polling threads repeatedly, which is not allowed.");
+        }
+        Thread pollingThread = THREAD_FACTORY.newThread(this::pollingLoop);
+        pollingThreadReference.set(pollingThread);
+        pollingThread.start();
+    }
+
+    /**
+     * 停止轮询线程.
+     */
+    public synchronized void shutdown() {
+        Thread pollingThread = pollingThreadReference.getAndSet(null);
+        if (pollingThread != null) {
+            pollingThread.interrupt();
+        }
+    }
+
+    @SuppressWarnings("BusyWait")
+    private void pollingLoop() {
+        while (!Thread.interrupted()) {
+            try {
+                log.trace("正在开始新一轮资源差异检查...");
+                pollOnce();
+                log.trace("资源差异检查已结束.");
+                // 并非 BusyWait, 而是延迟操作.
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 资源的字段指纹.
+     */
+    private static final class FingerprintState {
+
+        private final long[] fingerprints;
+        /**
+         * 已得到指纹的字段, 提取失败过的字段在提取成功前为未知.
+         */
+        private long knownMask = 0;
+
+        private FingerprintState(int fieldCount) {
+            this.fingerprints = new long[fieldCount];
+        }
+    }
+
+    /**
+     * 获取一个构建器.
+     * @param fetcher 资源获取器.
+     * @param <K> 资源键类型.
+     * @param <R> 资源类型.
+     * @return 返回新的构建器.
+     */
+    public static <K, R> Builder<K, R> builder(ResourceFetcher<K, R> fetcher) {
+        return new Builder<>(fetcher);
+    }
+
+    /**
+     * {@link ResourceDiffPoller} 构建器.
+     * @param <K> 资源键类型.
+     * @param <R> 资源类型.
+     */
+    public static class Builder<K, R> {
+
+        private final ResourceFetcher<K, R> fetcher;
+        private final LinkedHashMap<String, FieldExtractor<R>> fields = new LinkedHashMap<>();
+        private ResourceChangeListener<K, R> listener;
+        private long interval = 5000;
+        private boolean notifyInitial = false;
+
+        private Builder(ResourceFetcher<K, R> fetcher) {
+            this.fetcher = fetcher;
+        }
+
+        public ResourceDiffPoller<K, R> create() {
+            return new ResourceDiffPoller<>(fetcher, fields, listener, interval, notifyInitial);
+        }
+
+        public Builder<K, R> field(String name, FieldExtractor<R> extractor) {
+            fields.put(Objects.requireNonNull(name), Objects.requireNonNull(extractor));
+            return this;
+        }
+
+        public Builder<K, R> listener(ResourceChangeListener<K, R> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public Builder<K, R> interval(long interval) {
+            this.interval = interval;
+            return this;
+        }
+
+        public Builder<K, R> notifyInitial(boolean notifyInitial) {
+            this.notifyInitial = notifyInitial;
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package net.lamgc.oracle.sentry.common.watch;
+
+/**
+ * 资源获取器.
+ * <p> 根据资源键获取资源的最新信息, 由 {@link ResourceDiffPoller} 在每轮轮询中调用.
+ * @param <K> 资源键类型.
+ * @param <R> 资源类型.
+ * @author LamGC
+ */
+@FunctionalInterface
+public interface ResourceFetcher<K, R> {
+
+    /**
+     * 获取资源.
+     * @param key 资源键.
+     * @return 返回资源的最新信息, 如果资源不存在, 可返回 {@code null}.
+     * @throws Exception 当获取失败时抛出, 本轮将跳过该资源, 不会视为发生变化.
+     */
+    R fetch(K key) throws Exception;
+
+}
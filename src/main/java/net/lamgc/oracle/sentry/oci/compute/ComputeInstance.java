@@ -9,9 +9,14 @@ import com.oracle.bmc.core.responses.GetImageResponse;
 import com.oracle.bmc.core.responses.GetInstanceResponse;
 import com.oracle.bmc.core.responses.InstanceActionResponse;
 import net.lamgc.oracle.sentry.oci.account.OracleAccount;
+import net.lamgc.oracle.sentry.oci.compute.facts.HostFacts;
+import net.lamgc.oracle.sentry.oci.compute.facts.HostFactsCache;
+import net.lamgc.oracle.sentry.oci.compute.metrics.MetricsTimeSeries;
+import net.lamgc.oracle.sentry.oci.compute.metrics.RemoteMetricsCollector;
 import net.lamgc.oracle.sentry.oci.compute.ssh.InstanceSsh;
 import net.lamgc.oracle.sentry.oci.compute.ssh.SshAuthInfo;
 
+import java.io.IOException;
 import java.util.Objects;
 
 /**
@@ -26,6 +31,7 @@ public final class ComputeInstance {
     private final String compartmentId;
     private final String imageId;
     private final InstanceNetwork network;
+    private final InstanceEndpointResolver endpointResolver;
     private final OracleAccount fromAccount;
 
     private final ComputeClient computeClient;
@@ -48,6 +54,8 @@ public final class ComputeInstance {
 
         this.network = new InstanceNetwork(this);
         this.computeClient = fromAccount.clients().compute();
+        this.endpointResolver = new InstanceEndpointResolver(this,
+                InstanceEndpointResolver.DEFAULT_STATE_TTL, InstanceEndpointResolver.DEFAULT_ADDRESS_TTL);
     }
 
     /**
@@ -90,18 +98,50 @@ public final class ComputeInstance {
         return network;
     }
 
+    /**
+     * 获取实例连接端点解析器.
+     * <p> 解析器缓存了实例的状态与连接地址, 用于减少建立连接前的 API 调用.
+     * @return 返回实例连接端点解析器.
+     */
+    public InstanceEndpointResolver endpoint() {
+        return endpointResolver;
+    }
+
     /**
      * 获取实例的 SSH 客户端.
+     * <p> 实例状态优先使用缓存, 如果缓存的状态不是运行中, 将重新获取一次, 以免因缓存过时而拒绝连接.
      * @return 返回实例 SSH 客户端.
      */
     public InstanceSsh ssh() {
-        String instanceState = getInstanceState();
-        if (!Instance.LifecycleState.Running.name().equals(instanceState)) {
-            throw new IllegalStateException("The state of the current instance cannot connect to SSH: " + instanceState);
+        Instance.LifecycleState instanceState = endpointResolver.getState();
+        if (instanceState != Instance.LifecycleState.Running) {
+            instanceState = endpointResolver.refreshState();
+        }
+        if (instanceState != Instance.LifecycleState.Running) {
+            throw new IllegalStateException("The state of the current instance cannot connect to SSH: " + instanceState.name());
         }
         return new InstanceSsh(this, getSshIdentity());
     }
 
+    /**
+     * 获取实例的主机信息.
+     * <p> 主机信息按实例缓存(见 {@link HostFactsCache}), 缓存有效期内只需读取内存.
+     * @return 返回实例的主机信息.
+     * @throws IOException 当需要收集且收集失败时抛出.
+     */
+    public HostFacts facts() throws IOException {
+        return HostFactsCache.getDefault().get(this);
+    }
+
+    /**
+     * 获取实例的运行指标.
+     * <p> 首次调用时开始在后台收集指标(见 {@link RemoteMetricsCollector}), 刚开始收集时序列中还没有采样.
+     * @return 返回实例的指标时间序列.
+     */
+    public MetricsTimeSeries metrics() {
+        return RemoteMetricsCollector.getDefault().watch(this);
+    }
+
     /**
      * 获取实例当前状态.
      * <p> 实例可有以下状态:
@@ -122,7 +162,7 @@ public final class ComputeInstance {
         GetInstanceResponse instance = computeClient.getInstance(GetInstanceRequest.builder()
                 .instanceId(instanceId)
                 .build());
-
+        endpointResolver.updateState(instance.getInstance().getLifecycleState());
         return instance.getInstance().getLifecycleState().name();
     }
 
@@ -136,6 +176,7 @@ public final class ComputeInstance {
                 .instanceId(instanceId)
                 .action(action.getActionValue())
                 .build());
+        endpointResolver.updateState(actionResponse.getInstance().getLifecycleState());
         return actionResponse.getInstance().getLifecycleState().name();
     }
 
@@ -185,6 +226,14 @@ public final class ComputeInstance {
                 .getAuthInfoByInstanceId(instanceId);
     }
 
+    /**
+     * 获取实例所属的实例管理器.
+     * @return 返回实例管理器, 可用于查找同一帐号下的其他实例.
+     */
+    public ComputeInstanceManager getInstanceManager() {
+        return instanceManager;
+    }
+
     /**
      * 获取实例所属的 Oracle 云帐号对象.
      * @return 返回实例所属帐号对象.
@@ -0,0 +1,22 @@
+package net.lamgc.oracle.sentry.oci.compute;
+
+import com.oracle.bmc.core.model.Instance;
+
+/**
+ * 实例连接端点.
+ * @param state 实例状态.
+ * @param address 实例的连接地址(公共 IP), 如果实例没有公共 IP 则为 {@code null}.
+ * @param privateAddress 实例的私有 IP, 通过跳板机连接时使用, 实例未运行时为 {@code null}.
+ * @author LamGC
+ */
+public record InstanceEndpoint(Instance.LifecycleState state, String address, String privateAddress) {
+
+    /**
+     * 实例当前是否可以连接.
+     * @return 如果实例正在运行且拥有连接地址, 返回 {@code true}.
+     */
+    public boolean isConnectable() {
+        return state == Instance.LifecycleState.Running && address != null;
+    }
+
+}
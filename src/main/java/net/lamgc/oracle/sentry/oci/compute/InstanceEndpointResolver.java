@@ -0,0 +1,237 @@
+package net.lamgc.oracle.sentry.oci.compute;
+
+import com.oracle.bmc.core.model.Instance;
+import com.oracle.bmc.core.model.Vnic;
+import com.oracle.bmc.core.model.VnicAttachment;
+import com.oracle.bmc.core.requests.GetInstanceRequest;
+import com.oracle.bmc.core.requests.GetVnicRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实例连接端点解析器.
+ * <p> 缓存实例的状态与连接地址, 避免每次建立连接前都需要调用 GetInstance, ListVnicAttachments 和多次 GetVnic.
+ * <p> 缓存会在以下情况更新:
+ * <ul>
+ *     <li> 超过有效期后再次获取时;
+ *     <li> 其他组件获取到实例最新状态时(例如实例状态监视器, 执行实例操作), 通过 {@link #updateState(Instance.LifecycleState)} 推送;
+ *     <li> 连接失败后调用 {@link #invalidate()}.
+ * </ul>
+ * <p> 实例状态发生变化时, 已缓存的地址会被丢弃, 因为实例重新启动后公共 IP 可能发生变化.
+ * 状态与地址的更新, 以及连接端点中状态与地址的读取在同一个锁中进行, 所以端点中的地址总是与状态对应;
+ * 解析地址期间状态发生变化时, 解析结果不会写入缓存.
+ * @author LamGC
+ */
+public final class InstanceEndpointResolver {
+
+    private final static Logger log = LoggerFactory.getLogger(InstanceEndpointResolver.class);
+
+    /**
+     * 状态缓存的默认有效期.
+     */
+    public final static long DEFAULT_STATE_TTL = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * 地址缓存的默认有效期.
+     * <p> 地址只会随实例状态变化而变化, 所以有效期比状态更长.
+     */
+    public final static long DEFAULT_ADDRESS_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    private final ComputeInstance instance;
+    private final long stateTtl;
+    private final long addressTtl;
+
+    private final Object lock = new Object();
+    private volatile Cached<Instance.LifecycleState> cachedState;
+    private volatile Cached<Addresses> cachedAddress;
+    /**
+     * 缓存代数, 状态变化或缓存失效时递增, 用于判断解析期间缓存是否已被丢弃.
+     */
+    private long generation = 0;
+
+    /**
+     * 创建端点解析器.
+     * @param instance 所属实例.
+     * @param stateTtl 状态缓存有效期, 单位: 毫秒.
+     * @param addressTtl 地址缓存有效期, 单位: 毫秒.
+     */
+    InstanceEndpointResolver(ComputeInstance instance, long stateTtl, long addressTtl) {
+        this.instance = Objects.requireNonNull(instance);
+        this.stateTtl = stateTtl;
+        this.addressTtl = addressTtl;
+    }
+
+    /**
+     * 获取实例状态.
+     * <p> 缓存有效时不会调用 API.
+     * @return 返回实例状态.
+     */
+    public Instance.LifecycleState getState() {
+        Cached<Instance.LifecycleState> state = cachedState;
+        if (state != null && !state.isExpired(stateTtl)) {
+            return state.value();
+        }
+        return refreshState();
+    }
+
+    /**
+     * 通过 API 获取实例最新状态并更新缓存.
+     * @return 返回实例最新状态.
+     */
+    public Instance.LifecycleState refreshState() {
+        Instance instanceInfo = instance.getComputeClient().getInstance(GetInstanceRequest.builder()
+                .instanceId(instance.getInstanceId())
+                .build()).getInstance();
+        updateState(instanceInfo.getLifecycleState());
+        return instanceInfo.getLifecycleState();
+    }
+
+    /**
+     * 获取实例的连接地址.
+     * <p> 优先使用主要 VNIC 的公共 IP, 如果主要 VNIC 没有公共 IP, 则使用其他 VNIC 的公共 IP.
+     * @return 返回实例的连接地址, 如果实例没有公共 IP, 返回 {@code null}.
+     */
+    public String getAddress() {
+        return getAddresses().publicAddress();
+    }
+
+    /**
+     * 获取实例的私有 IP.
+     * <p> 使用主要 VNIC 的私有 IP, 与公共 IP 一同解析和缓存.
+     * @return 返回实例的私有 IP, 如果无法获取则返回 {@code null}.
+     */
+    public String getPrivateAddress() {
+        return getAddresses().privateAddress();
+    }
+
+    /**
+     * 获取实例连接端点.
+     * @return 返回实例状态与连接地址, 实例未运行时不会解析地址.
+     */
+    public InstanceEndpoint getEndpoint() {
+        while (true) {
+            Instance.LifecycleState state = getState();
+            if (state != Instance.LifecycleState.Running) {
+                return new InstanceEndpoint(state, null, null);
+            }
+            long expectedGeneration;
+            synchronized (lock) {
+                Cached<Instance.LifecycleState> currentState = cachedState;
+                Cached<Addresses> address = cachedAddress;
+                if (currentState != null && currentState.value() == state
+                        && address != null && !address.isExpired(addressTtl)) {
+                    return new InstanceEndpoint(state, address.value().publicAddress(), address.value().privateAddress());
+                }
+                expectedGeneration = generation;
+            }
+            Addresses addresses = resolveAddresses();
+            if (storeAddresses(addresses, expectedGeneration)) {
+                return new InstanceEndpoint(state, addresses.publicAddress(), addresses.privateAddress());
+            }
+            log.debug("解析实例 {} 的地址期间状态已变更, 正在重新获取连接端点.", instance.getInstanceId());
+        }
+    }
+
+    private Addresses getAddresses() {
+        long expectedGeneration;
+        synchronized (lock) {
+            Cached<Addresses> address = cachedAddress;
+            if (address != null && !address.isExpired(addressTtl)) {
+                return address.value();
+            }
+            expectedGeneration = generation;
+        }
+        Addresses newAddress = resolveAddresses();
+        storeAddresses(newAddress, expectedGeneration);
+        return newAddress;
+    }
+
+    /**
+     * 缓存解析的地址.
+     * @param expectedGeneration 开始解析时的缓存代数.
+     * @return 如果解析期间缓存未被丢弃, 地址已写入缓存, 返回 {@code true}.
+     */
+    private boolean storeAddresses(Addresses addresses, long expectedGeneration) {
+        synchronized (lock) {
+            if (generation != expectedGeneration) {
+                return false;
+            }
+            cachedAddress = new Cached<>(addresses, System.currentTimeMillis());
+            return true;
+        }
+    }
+
+    /**
+     * 推送实例的最新状态.
+     * <p> 用于在其他组件已经获取到实例状态时更新缓存, 不会调用 API.
+     * @param state 实例最新状态.
+     */
+    public void updateState(Instance.LifecycleState state) {
+        if (state == null) {
+            return;
+        }
+        synchronized (lock) {
+            Cached<Instance.LifecycleState> lastState = cachedState;
+            cachedState = new Cached<>(state, System.currentTimeMillis());
+            if (lastState != null && lastState.value() != state) {
+                log.debug("实例 {} 状态已变更({} -> {}), 已丢弃缓存的连接地址.",
+                        instance.getInstanceId(), lastState.value(), state);
+                cachedAddress = null;
+                generation++;
+            }
+        }
+    }
+
+    /**
+     * 使缓存的状态与地址失效.
+     * <p> 下次获取时将重新调用 API.
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            cachedState = null;
+            cachedAddress = null;
+            generation++;
+        }
+    }
+
+    private Addresses resolveAddresses() {
+        String fallbackAddress = null;
+        String privateAddress = null;
+        for (VnicAttachment attachment : instance.network().listVnicAttachments()) {
+            Vnic vnic = instance.network().getVcnClient().getVnic(GetVnicRequest.builder()
+                    .vnicId(attachment.getVnicId())
+                    .build()).getVnic();
+            if (Boolean.TRUE.equals(vnic.getIsPrimary())) {
+                if (vnic.getPublicIp() != null) {
+                    return new Addresses(vnic.getPublicIp(), vnic.getPrivateIp());
+                }
+                privateAddress = vnic.getPrivateIp();
+            } else if (fallbackAddress == null) {
+                fallbackAddress = vnic.getPublicIp();
+            }
+        }
+        return new Addresses(fallbackAddress, privateAddress);
+    }
+
+    /**
+     * 实例地址.
+     * @param publicAddress 公共 IP.
+     * @param privateAddress 主要 VNIC 的私有 IP.
+     */
+    private record Addresses(String publicAddress, String privateAddress) {}
+
+    /**
+     * 缓存值.
+     * @param value 值.
+     * @param updateTime 更新时间戳.
+     * @param <T> 值类型.
+     */
+    private record Cached<T>(T value, long updateTime) {
+        boolean isExpired(long ttl) {
+            return System.currentTimeMillis() - updateTime >= ttl;
+        }
+    }
+
+}
@@ -27,6 +27,14 @@ public class InstanceNetwork {
         this.vcnClient = instance.getFromAccount().clients().network();
     }
 
+    /**
+     * 获取虚拟网络 API 客户端.
+     * @return 返回实例所属帐号的虚拟网络客户端.
+     */
+    VirtualNetworkClient getVcnClient() {
+        return vcnClient;
+    }
+
     /**
      * 获取实例的所有公共 IP.
      * @return 返回所有公共 IP.
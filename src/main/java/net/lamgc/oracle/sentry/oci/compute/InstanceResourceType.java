@@ -0,0 +1,143 @@
+package net.lamgc.oracle.sentry.oci.compute;
+
+import com.oracle.bmc.core.model.BootVolume;
+import com.oracle.bmc.core.model.BootVolumeAttachment;
+import com.oracle.bmc.core.model.Instance;
+import com.oracle.bmc.core.model.Vnic;
+import com.oracle.bmc.core.requests.GetBootVolumeRequest;
+import com.oracle.bmc.core.requests.GetInstanceRequest;
+import com.oracle.bmc.core.requests.ListBootVolumeAttachmentsRequest;
+import net.lamgc.oracle.sentry.common.watch.FieldExtractor;
+import net.lamgc.oracle.sentry.common.watch.ResourceFetcher;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 可监视的实例相关资源类型.
+ * <p> 为 {@link net.lamgc.oracle.sentry.common.watch.ResourceDiffPoller} 提供计算实例相关资源的获取器和可监视字段.
+ * @author LamGC
+ */
+@SuppressWarnings("AlibabaEnumConstantsMustHaveComment")
+public enum InstanceResourceType {
+
+    /**
+     * 实例本身的属性.
+     */
+    INSTANCE(InstanceResourceType::fetchInstance, fields()
+            .with("state", instance -> ((Instance) instance).getLifecycleState())
+            .with("displayName", instance -> ((Instance) instance).getDisplayName())
+            .with("shape", instance -> ((Instance) instance).getShape())
+            .with("metadata", instance -> ((Instance) instance).getMetadata())
+            .with("freeformTags", instance -> ((Instance) instance).getFreeformTags())),
+    /**
+     * 实例的主要 VNIC.
+     */
+    VNIC(instance -> instance.network().getPrimaryVnic(), fields()
+            .with("publicIp", vnic -> ((Vnic) vnic).getPublicIp())
+            .with("privateIp", vnic -> ((Vnic) vnic).getPrivateIp())),
+    /**
+     * 实例的引导卷.
+     */
+    BOOT_VOLUME(InstanceResourceType::fetchBootVolume, fields()
+            .with("state", volume -> ((BootVolume) volume).getLifecycleState())
+            .with("sizeInGBs", volume -> ((BootVolume) volume).getSizeInGBs())
+            .with("vpusPerGB", volume -> ((BootVolume) volume).getVpusPerGB()));
+
+    private final ResourceFetcher<ComputeInstance, Object> fetcher;
+    private final Map<String, FieldExtractor<Object>> fields;
+
+    InstanceResourceType(ResourceFetcher<ComputeInstance, Object> fetcher, FieldMap fields) {
+        this.fetcher = fetcher;
+        this.fields = Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * 获取资源获取器.
+     * @return 返回该资源类型的获取器.
+     */
+    public ResourceFetcher<ComputeInstance, Object> getFetcher() {
+        return fetcher;
+    }
+
+    /**
+     * 获取所有可监视的字段.
+     * @return 返回字段名与字段提取器的映射, 按声明顺序排列.
+     */
+    public Map<String, FieldExtractor<Object>> getFields() {
+        return fields;
+    }
+
+    /**
+     * 获取指定字段的提取器.
+     * @param fieldName 字段名.
+     * @return 返回字段提取器.
+     * @throws NoSuchElementException 当该资源类型不存在指定字段时抛出.
+     */
+    public FieldExtractor<Object> getField(String fieldName) {
+        FieldExtractor<Object> extractor = fields.get(fieldName);
+        if (extractor == null) {
+            throw new NoSuchElementException("Resource type " + name() + " has no field: " + fieldName +
+                    " (Available: " + fields.keySet() + ")");
+        }
+        return extractor;
+    }
+
+    /**
+     * 通过名称获取资源类型.
+     * <p> 名称不区分大小写, 且兼容驼峰命名(例如 "bootVolume").
+     * @param name 资源类型名称.
+     * @return 返回对应的资源类型.
+     * @throws IllegalArgumentException 当名称无对应资源类型时抛出.
+     */
+    public static InstanceResourceType of(String name) {
+        String normalized = name.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+        try {
+            return valueOf(normalized);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid resource type: " + name);
+        }
+    }
+
+    private static Object fetchInstance(ComputeInstance instance) {
+        Instance instanceInfo = instance.getComputeClient().getInstance(GetInstanceRequest.builder()
+                .instanceId(instance.getInstanceId())
+                .build()).getInstance();
+        instance.endpoint().updateState(instanceInfo.getLifecycleState());
+        return instanceInfo;
+    }
+
+    private static Object fetchBootVolume(ComputeInstance instance) {
+        Instance instanceInfo = (Instance) fetchInstance(instance);
+        List<BootVolumeAttachment> attachments = instance.getComputeClient()
+                .listBootVolumeAttachments(ListBootVolumeAttachmentsRequest.builder()
+                        .availabilityDomain(instanceInfo.getAvailabilityDomain())
+                        .compartmentId(instance.getCompartmentId())
+                        .instanceId(instance.getInstanceId())
+                        .build()).getItems();
+        if (attachments.isEmpty()) {
+            return null;
+        }
+        return instance.getFromAccount().clients().blockStorage().getBootVolume(GetBootVolumeRequest.builder()
+                .bootVolumeId(attachments.get(0).getBootVolumeId())
+                .build()).getBootVolume();
+    }
+
+    private static FieldMap fields() {
+        return new FieldMap();
+    }
+
+    /**
+     * 用于在枚举常量中有序声明字段的辅助类.
+     */
+    private static class FieldMap extends LinkedHashMap<String, FieldExtractor<Object>> {
+        private FieldMap with(String name, FieldExtractor<Object> extractor) {
+            put(name, extractor);
+            return this;
+        }
+    }
+
+}
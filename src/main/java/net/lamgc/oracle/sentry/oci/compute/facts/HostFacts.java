@@ -0,0 +1,99 @@
+package net.lamgc.oracle.sentry.oci.compute.facts;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 实例主机信息.
+ * <p> 由 {@link HostFactsCache} 通过一次命令执行收集, 内存, 负载等动态信息是收集时的快照.
+ * <p> 无法获取的文本字段为 {@code null}, 数值字段为 0.
+ * @param hostname 主机名.
+ * @param os 操作系统信息.
+ * @param kernel 内核信息.
+ * @param cpu 处理器信息.
+ * @param memory 内存信息.
+ * @param disks 已挂载的磁盘文件系统(不含 tmpfs 等内存文件系统).
+ * @param uptime 收集时的开机时长.
+ * @param load 收集时的系统负载.
+ * @param collectTime 收集时间戳, 单位: 毫秒.
+ * @author LamGC
+ */
+public record HostFacts(String hostname, Os os, Kernel kernel, Cpu cpu, Memory memory,
+                        List<Disk> disks, Duration uptime, Load load, long collectTime) {
+
+    /**
+     * 估算当前的开机时长.
+     * <p> 在收集时的开机时长上加上收集后经过的时间, 如果实例在此期间重启过, 结果将不准确.
+     * @return 返回估算的开机时长.
+     */
+    public Duration currentUptime() {
+        return uptime.plusMillis(System.currentTimeMillis() - collectTime);
+    }
+
+    /**
+     * 获取指定挂载点的磁盘信息.
+     * @param mountPoint 挂载点, 例如 {@code "/"}.
+     * @return 如果存在该挂载点, 返回磁盘信息, 否则返回 {@code null}.
+     */
+    public Disk getDisk(String mountPoint) {
+        for (Disk disk : disks) {
+            if (disk.mountPoint().equals(mountPoint)) {
+                return disk;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 操作系统信息.
+     * <p> 来自 {@code /etc/os-release}.
+     * @param id 发行版标识, 例如 {@code "ol"}, {@code "ubuntu"}.
+     * @param name 发行版名称.
+     * @param version 发行版版本号.
+     * @param prettyName 发行版完整名称.
+     */
+    public record Os(String id, String name, String version, String prettyName) {}
+
+    /**
+     * 内核信息.
+     * @param name 内核名称, 例如 {@code "Linux"}.
+     * @param release 内核版本.
+     * @param architecture 硬件架构, 例如 {@code "x86_64"}, {@code "aarch64"}.
+     */
+    public record Kernel(String name, String release, String architecture) {}
+
+    /**
+     * 处理器信息.
+     * @param count 可用的处理器数量.
+     * @param model 处理器型号, ARM 实例上可能为 {@code null}.
+     */
+    public record Cpu(int count, String model) {}
+
+    /**
+     * 内存信息, 单位: 字节.
+     * @param total 内存总量.
+     * @param available 可用内存.
+     * @param swapTotal 交换空间总量.
+     * @param swapFree 可用交换空间.
+     */
+    public record Memory(long total, long available, long swapTotal, long swapFree) {}
+
+    /**
+     * 磁盘文件系统信息, 单位: 字节.
+     * @param filesystem 文件系统(设备).
+     * @param mountPoint 挂载点.
+     * @param total 总容量.
+     * @param used 已用容量.
+     * @param available 可用容量.
+     */
+    public record Disk(String filesystem, String mountPoint, long total, long used, long available) {}
+
+    /**
+     * 系统平均负载.
+     * @param oneMinute 1 分钟平均负载.
+     * @param fiveMinutes 5 分钟平均负载.
+     * @param fifteenMinutes 15 分钟平均负载.
+     */
+    public record Load(double oneMinute, double fiveMinutes, double fifteenMinutes) {}
+
+}
@@ -0,0 +1,174 @@
+package net.lamgc.oracle.sentry.oci.compute.facts;
+
+import net.lamgc.oracle.sentry.common.LazyLoader;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import net.lamgc.oracle.sentry.oci.compute.ssh.FleetExecutor;
+import net.lamgc.oracle.sentry.oci.compute.ssh.HostExecResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主机信息缓存.
+ * <p> 主机信息(操作系统, 内核, 处理器, 内存, 磁盘, 开机时长, 负载)通过一次命令执行收集, 并按实例缓存.
+ * 缓存有效期内获取主机信息只需读取内存, 不会连接实例.
+ * <p> 批量获取时, 缓存已过期的实例将通过 {@link FleetExecutor} 并行收集.
+ * @author LamGC
+ */
+public final class HostFactsCache {
+
+    private final static Logger log = LoggerFactory.getLogger(HostFactsCache.class);
+
+    /**
+     * 默认的缓存有效期.
+     */
+    public final static long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    private final static LazyLoader<HostFactsCache> DEFAULT_CACHE = new LazyLoader<>(() ->
+            new HostFactsCache(DEFAULT_TTL, FleetExecutor.builder().timeout(TimeUnit.SECONDS.toMillis(30)).create()));
+
+    private final Map<ComputeInstance, HostFacts> cache = new ConcurrentHashMap<>();
+    private final Map<ComputeInstance, Object> collectLocks = new ConcurrentHashMap<>();
+    private final long ttl;
+    private final FleetExecutor executor;
+
+    /**
+     * 创建主机信息缓存.
+     * @param ttl 缓存有效期, 单位: 毫秒.
+     * @param executor 用于收集主机信息的批量命令执行器, 决定了收集时的并发数与超时时间.
+     */
+    public HostFactsCache(long ttl, FleetExecutor executor) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("TTL cannot be less than or equal to 0.");
+        }
+        this.ttl = ttl;
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * 获取默认的主机信息缓存.
+     * @return 返回进程共享的默认缓存.
+     */
+    public static HostFactsCache getDefault() {
+        return DEFAULT_CACHE.getInstance();
+    }
+
+    /**
+     * 获取已缓存的主机信息.
+     * <p> 不会连接实例.
+     * @param instance 计算实例.
+     * @return 如果缓存有效, 返回主机信息, 否则返回 {@code null}.
+     */
+    public HostFacts getIfPresent(ComputeInstance instance) {
+        HostFacts facts = cache.get(instance);
+        return facts != null && !isExpired(facts) ? facts : null;
+    }
+
+    /**
+     * 获取实例的主机信息.
+     * <p> 缓存有效时直接返回, 否则连接实例收集. 同一实例同时只会有一个收集任务.
+     * @param instance 计算实例.
+     * @return 返回主机信息.
+     * @throws IOException 当收集失败时抛出.
+     */
+    public HostFacts get(ComputeInstance instance) throws IOException {
+        HostFacts facts = getIfPresent(instance);
+        if (facts != null) {
+            return facts;
+        }
+        synchronized (collectLocks.computeIfAbsent(instance, key -> new Object())) {
+            facts = getIfPresent(instance);
+            if (facts != null) {
+                return facts;
+            }
+            return refresh(instance);
+        }
+    }
+
+    /**
+     * 批量获取实例的主机信息.
+     * <p> 缓存已过期的实例将被并行收集, 收集失败的实例不会出现在结果中(失败原因见日志).
+     * @param instances 计算实例.
+     * @return 返回实例与主机信息的映射.
+     */
+    public Map<ComputeInstance, HostFacts> get(Collection<ComputeInstance> instances) {
+        Map<ComputeInstance, HostFacts> result = new HashMap<>();
+        List<ComputeInstance> expiredInstances = new ArrayList<>();
+        for (ComputeInstance instance : instances) {
+            HostFacts facts = getIfPresent(instance);
+            if (facts != null) {
+                result.put(instance, facts);
+            } else {
+                expiredInstances.add(instance);
+            }
+        }
+        for (HostExecResult execResult : collect(expiredInstances)) {
+            HostFacts facts = toFacts(execResult);
+            if (facts != null) {
+                result.put(execResult.instance(), facts);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 立即收集实例的主机信息并更新缓存.
+     * @param instance 计算实例.
+     * @return 返回最新的主机信息.
+     * @throws IOException 当收集失败时抛出.
+     */
+    public HostFacts refresh(ComputeInstance instance) throws IOException {
+        HostExecResult execResult = collect(List.of(instance)).get(0);
+        HostFacts facts = toFacts(execResult);
+        if (facts == null) {
+            if (execResult.timedOut()) {
+                throw new IOException("Collecting host facts timed out: " + instance.getInstanceId());
+            }
+            throw new IOException("Failed to collect host facts: " + instance.getInstanceId()
+                    + " (Exit code: " + execResult.exitCode() + ")", execResult.error());
+        }
+        return facts;
+    }
+
+    /**
+     * 使实例的缓存失效.
+     * <p> 例如实例重启或调整配置后, 可调用该方法使下次获取时重新收集.
+     * @param instance 计算实例.
+     */
+    public void invalidate(ComputeInstance instance) {
+        cache.remove(instance);
+    }
+
+    private List<HostExecResult> collect(List<ComputeInstance> instances) {
+        if (instances.isEmpty()) {
+            return List.of();
+        }
+        log.debug("正在收集 {} 台实例的主机信息.", instances.size());
+        return executor.execute(instances, HostFactsParser.COMMAND).toList();
+    }
+
+    private HostFacts toFacts(HostExecResult execResult) {
+        if (!execResult.isSuccess()) {
+            log.warn("收集实例 {} 的主机信息失败.(Exit code: {}, Timed out: {})", execResult.instance().getInstanceId(),
+                    execResult.exitCode(), execResult.timedOut(), execResult.error());
+            return null;
+        }
+        HostFacts facts = HostFactsParser.parse(execResult.getStdoutText(), System.currentTimeMillis());
+        cache.put(execResult.instance(), facts);
+        return facts;
+    }
+
+    private boolean isExpired(HostFacts facts) {
+        return System.currentTimeMillis() - facts.collectTime() >= ttl;
+    }
+
+}
@@ -0,0 +1,178 @@
+package net.lamgc.oracle.sentry.oci.compute.facts;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 主机信息解析器.
+ * <p> 主机信息通过 {@link #COMMAND} 一次性收集, 命令输出按 {@code @@section} 标记分段, 每段对应一项信息.
+ * 某项命令失败时该段为空, 对应字段取默认值, 不影响其他信息的解析.
+ * @author LamGC
+ */
+final class HostFactsParser {
+
+    private final static String SECTION_PREFIX = "@@";
+
+    /**
+     * 收集主机信息的命令.
+     * <p> 只使用 POSIX Shell 与 coreutils/procps 中的常见命令, 所有输出均为 C 语言环境格式.
+     */
+    final static String COMMAND = String.join("\n",
+            "export LC_ALL=C",
+            "echo '@@hostname'; uname -n",
+            "echo '@@os'; cat /etc/os-release 2>/dev/null",
+            "echo '@@kernel'; uname -s; uname -r; uname -m",
+            "echo '@@cpu'; nproc 2>/dev/null || getconf _NPROCESSORS_ONLN; grep -m1 '^model name' /proc/cpuinfo",
+            "echo '@@memory'; grep -E '^(MemTotal|MemAvailable|SwapTotal|SwapFree):' /proc/meminfo",
+            "echo '@@disks'; df -P -k -x tmpfs -x devtmpfs -x squashfs -x overlay 2>/dev/null",
+            "echo '@@uptime'; cat /proc/uptime",
+            "echo '@@load'; cat /proc/loadavg",
+            "true");
+
+    private HostFactsParser() {
+    }
+
+    /**
+     * 解析命令输出.
+     * @param output {@link #COMMAND} 的标准输出.
+     * @param collectTime 收集时间戳.
+     * @return 返回主机信息.
+     */
+    static HostFacts parse(String output, long collectTime) {
+        Map<String, List<String>> sections = splitSections(output);
+        List<String> hostname = sections.getOrDefault("hostname", List.of());
+        return new HostFacts(
+                hostname.isEmpty() ? null : hostname.get(0),
+                parseOs(sections.getOrDefault("os", List.of())),
+                parseKernel(sections.getOrDefault("kernel", List.of())),
+                parseCpu(sections.getOrDefault("cpu", List.of())),
+                parseMemory(sections.getOrDefault("memory", List.of())),
+                parseDisks(sections.getOrDefault("disks", List.of())),
+                parseUptime(sections.getOrDefault("uptime", List.of())),
+                parseLoad(sections.getOrDefault("load", List.of())),
+                collectTime);
+    }
+
+    private static Map<String, List<String>> splitSections(String output) {
+        Map<String, List<String>> sections = new HashMap<>();
+        List<String> current = null;
+        for (String line : output.split("\n")) {
+            line = line.strip();
+            if (line.startsWith(SECTION_PREFIX)) {
+                current = new ArrayList<>();
+                sections.put(line.substring(SECTION_PREFIX.length()), current);
+            } else if (current != null && !line.isEmpty()) {
+                current.add(line);
+            }
+        }
+        return sections;
+    }
+
+    private static HostFacts.Os parseOs(List<String> lines) {
+        Map<String, String> values = new HashMap<>();
+        for (String line : lines) {
+            int index = line.indexOf('=');
+            if (index <= 0) {
+                continue;
+            }
+            String value = line.substring(index + 1);
+            if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"")
+                    || value.startsWith("'") && value.endsWith("'"))) {
+                value = value.substring(1, value.length() - 1);
+            }
+            values.put(line.substring(0, index), value);
+        }
+        return new HostFacts.Os(values.get("ID"), values.get("NAME"),
+                values.get("VERSION_ID"), values.get("PRETTY_NAME"));
+    }
+
+    private static HostFacts.Kernel parseKernel(List<String> lines) {
+        return new HostFacts.Kernel(
+                lines.size() > 0 ? lines.get(0) : null,
+                lines.size() > 1 ? lines.get(1) : null,
+                lines.size() > 2 ? lines.get(2) : null);
+    }
+
+    private static HostFacts.Cpu parseCpu(List<String> lines) {
+        int count = 0;
+        String model = null;
+        for (String line : lines) {
+            if (line.startsWith("model name")) {
+                int index = line.indexOf(':');
+                model = index < 0 ? null : line.substring(index + 1).strip();
+            } else if (count == 0) {
+                count = (int) parseLong(line);
+            }
+        }
+        return new HostFacts.Cpu(count, model);
+    }
+
+    private static HostFacts.Memory parseMemory(List<String> lines) {
+        Map<String, Long> values = new HashMap<>();
+        for (String line : lines) {
+            // 格式: "MemTotal:       16106592 kB"
+            String[] fields = line.split("\\s+");
+            if (fields.length >= 2 && fields[0].endsWith(":")) {
+                values.put(fields[0].substring(0, fields[0].length() - 1), parseLong(fields[1]) * 1024);
+            }
+        }
+        return new HostFacts.Memory(values.getOrDefault("MemTotal", 0L), values.getOrDefault("MemAvailable", 0L),
+                values.getOrDefault("SwapTotal", 0L), values.getOrDefault("SwapFree", 0L));
+    }
+
+    private static List<HostFacts.Disk> parseDisks(List<String> lines) {
+        List<HostFacts.Disk> disks = new ArrayList<>();
+        for (String line : lines) {
+            // 格式: "Filesystem 1024-blocks Used Available Capacity Mounted on", 首行为表头.
+            String[] fields = line.split("\\s+", 6);
+            if (fields.length < 6 || "Filesystem".equals(fields[0])) {
+                continue;
+            }
+            disks.add(new HostFacts.Disk(fields[0], fields[5],
+                    parseLong(fields[1]) * 1024, parseLong(fields[2]) * 1024, parseLong(fields[3]) * 1024));
+        }
+        return Collections.unmodifiableList(disks);
+    }
+
+    private static Duration parseUptime(List<String> lines) {
+        if (lines.isEmpty()) {
+            return Duration.ZERO;
+        }
+        // 格式: "350735.47 234388.90", 第一项为开机秒数.
+        double seconds = parseDouble(lines.get(0).split("\\s+")[0]);
+        return Duration.ofMillis((long) (seconds * 1000));
+    }
+
+    private static HostFacts.Load parseLoad(List<String> lines) {
+        if (lines.isEmpty()) {
+            return new HostFacts.Load(0, 0, 0);
+        }
+        // 格式: "0.20 0.18 0.12 1/80 11206"
+        String[] fields = lines.get(0).split("\\s+");
+        return new HostFacts.Load(
+                fields.length > 0 ? parseDouble(fields[0]) : 0,
+                fields.length > 1 ? parseDouble(fields[1]) : 0,
+                fields.length > 2 ? parseDouble(fields[2]) : 0);
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.strip());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.strip());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
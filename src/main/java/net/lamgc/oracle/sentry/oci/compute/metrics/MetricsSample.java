@@ -0,0 +1,19 @@
+package net.lamgc.oracle.sentry.oci.compute.metrics;
+
+/**
+ * 实例指标采样.
+ * <p> 降采样后的采样为该时间段内各项指标的平均值.
+ * @param timestamp 采样时间戳, 单位: 毫秒. 降采样后为该时间段的起始时间.
+ * @param cpuUsage 处理器使用率, 取值范围 0 ~ 1.
+ * @param memoryUsage 内存使用率, 取值范围 0 ~ 1, 按可用内存(MemAvailable)计算.
+ * @param memoryAvailable 可用内存, 单位: 字节.
+ * @param diskReadRate 磁盘读取速率, 单位: 字节/秒.
+ * @param diskWriteRate 磁盘写入速率, 单位: 字节/秒.
+ * @param networkReceiveRate 网络接收速率(不含回环接口), 单位: 字节/秒.
+ * @param networkTransmitRate 网络发送速率(不含回环接口), 单位: 字节/秒.
+ * @author LamGC
+ */
+public record MetricsSample(long timestamp, double cpuUsage, double memoryUsage, long memoryAvailable,
+                            double diskReadRate, double diskWriteRate,
+                            double networkReceiveRate, double networkTransmitRate) {
+}
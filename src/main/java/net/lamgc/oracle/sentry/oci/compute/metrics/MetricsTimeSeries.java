@@ -0,0 +1,245 @@
+package net.lamgc.oracle.sentry.oci.compute.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 实例指标时间序列.
+ * <p> 采样保存在两级定长环形缓冲区中: 原始采样保留最近一段时间, 每 {@code downsampleFactor} 个原始采样
+ * 取平均值后写入降采样缓冲区, 保留更长时间. 指标以 {@code float} 保存在基本类型数组中,
+ * 写入采样不会创建对象, 内存占用在创建时就已确定.
+ * <p> 查询时, 超出原始采样范围的部分由降采样数据补充.
+ * <p> 计算平均值时, 每个采样按其覆盖的时间加权: 原始采样覆盖一个采样间隔, 降采样覆盖 {@code downsampleFactor} 个间隔,
+ * 与原始采样重叠的部分不会重复计算.
+ * @author LamGC
+ */
+public final class MetricsTimeSeries {
+
+    private final static int METRIC_COUNT = 7;
+
+    private final Tier rawTier;
+    private final Tier downsampledTier;
+    private final int downsampleFactor;
+
+    private final float[] values = new float[METRIC_COUNT];
+    private final double[] accumulator = new double[METRIC_COUNT];
+    private int accumulated;
+    private long accumulateStart;
+
+    /**
+     * 创建指标时间序列.
+     * @param rawCapacity 原始采样的保留数量.
+     * @param downsampleFactor 降采样倍数, 即多少个原始采样合并为一个降采样.
+     * @param downsampledCapacity 降采样的保留数量.
+     */
+    public MetricsTimeSeries(int rawCapacity, int downsampleFactor, int downsampledCapacity) {
+        if (rawCapacity <= 0 || downsampledCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity cannot be less than or equal to 0.");
+        } else if (downsampleFactor <= 1) {
+            throw new IllegalArgumentException("Downsample factor must be greater than 1.");
+        }
+        this.rawTier = new Tier(rawCapacity);
+        this.downsampleFactor = downsampleFactor;
+        this.downsampledTier = new Tier(downsampledCapacity);
+    }
+
+    /**
+     * 记录一个采样.
+     * <p> 参数含义见 {@link MetricsSample}.
+     */
+    synchronized void record(long timestamp, double cpuUsage, double memoryUsage, long memoryAvailable,
+                             double diskReadRate, double diskWriteRate,
+                             double networkReceiveRate, double networkTransmitRate) {
+        values[0] = (float) cpuUsage;
+        values[1] = (float) memoryUsage;
+        values[2] = (float) memoryAvailable;
+        values[3] = (float) diskReadRate;
+        values[4] = (float) diskWriteRate;
+        values[5] = (float) networkReceiveRate;
+        values[6] = (float) networkTransmitRate;
+        rawTier.add(timestamp, timestamp, values);
+
+        if (accumulated == 0) {
+            accumulateStart = timestamp;
+        }
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            accumulator[i] += values[i];
+        }
+        if (++accumulated == downsampleFactor) {
+            for (int i = 0; i < METRIC_COUNT; i++) {
+                values[i] = (float) (accumulator[i] / accumulated);
+                accumulator[i] = 0;
+            }
+            downsampledTier.add(accumulateStart, timestamp, values);
+            accumulated = 0;
+        }
+    }
+
+    /**
+     * 获取最新的采样.
+     * @return 返回最新的采样, 如果还没有采样, 返回 {@code null}.
+     */
+    public synchronized MetricsSample getLatest() {
+        return rawTier.size == 0 ? null : rawTier.get(rawTier.size - 1);
+    }
+
+    /**
+     * 获取指定时间之后的采样.
+     * @param since 起始时间戳(包含), 单位: 毫秒.
+     * @return 返回按时间排列的采样, 原始采样已被覆盖的时间段为降采样数据.
+     */
+    public synchronized List<MetricsSample> getSamples(long since) {
+        List<MetricsSample> samples = new ArrayList<>();
+        forEachSample(since, (sample, weight) -> samples.add(sample));
+        return Collections.unmodifiableList(samples);
+    }
+
+    /**
+     * 按时间顺序遍历指定时间之后的采样.
+     * <p> 权重为采样覆盖的原始采样数量: 原始采样为 1, 降采样为 {@code downsampleFactor},
+     * 如果降采样的时间段与仍保留的原始采样重叠, 则扣除重叠的原始采样数量.
+     */
+    private void forEachSample(long since, SampleVisitor visitor) {
+        long rawStart = rawTier.size == 0 ? Long.MAX_VALUE : rawTier.timestampAt(0);
+        if (since < rawStart) {
+            for (int i = 0; i < downsampledTier.size; i++) {
+                long timestamp = downsampledTier.timestampAt(i);
+                if (timestamp >= rawStart) {
+                    break;
+                } else if (timestamp >= since) {
+                    int overlapped = countRawSamples(downsampledTier.endTimestampAt(i));
+                    visitor.visit(downsampledTier.get(i), downsampleFactor - overlapped);
+                }
+            }
+        }
+        for (int i = 0; i < rawTier.size; i++) {
+            if (rawTier.timestampAt(i) >= since) {
+                visitor.visit(rawTier.get(i), 1);
+            }
+        }
+    }
+
+    /**
+     * 获取不晚于指定时间的原始采样数量.
+     */
+    private int countRawSamples(long until) {
+        int count = 0;
+        while (count < rawTier.size && rawTier.timestampAt(count) <= until) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 获取最近一段时间的采样.
+     * @param duration 时间长度.
+     * @return 返回按时间排列的采样.
+     * @see #getSamples(long)
+     */
+    public List<MetricsSample> getRecent(Duration duration) {
+        return getSamples(System.currentTimeMillis() - duration.toMillis());
+    }
+
+    /**
+     * 获取最近一段时间内各项指标的平均值.
+     * <p> 例如 {@code getAverage(Duration.ofMinutes(5)).cpuUsage()} 为最近 5 分钟的平均处理器使用率.
+     * @param duration 时间长度.
+     * @return 返回平均值, 时间戳为最早参与计算的采样的时间戳. 如果该时间段内没有采样, 返回 {@code null}.
+     */
+    public MetricsSample getAverage(Duration duration) {
+        return getAverage(System.currentTimeMillis() - duration.toMillis());
+    }
+
+    /**
+     * 获取指定时间之后各项指标按时间加权的平均值.
+     * @param since 起始时间戳(包含), 单位: 毫秒.
+     * @return 返回平均值, 如果该时间段内没有采样, 返回 {@code null}.
+     * @see #getAverage(Duration)
+     */
+    synchronized MetricsSample getAverage(long since) {
+        double[] sums = new double[METRIC_COUNT];
+        long[] firstTimestamp = {-1};
+        int[] totalWeight = {0};
+        forEachSample(since, (sample, weight) -> {
+            if (firstTimestamp[0] < 0) {
+                firstTimestamp[0] = sample.timestamp();
+            }
+            sums[0] += sample.cpuUsage() * weight;
+            sums[1] += sample.memoryUsage() * weight;
+            sums[2] += (double) sample.memoryAvailable() * weight;
+            sums[3] += sample.diskReadRate() * weight;
+            sums[4] += sample.diskWriteRate() * weight;
+            sums[5] += sample.networkReceiveRate() * weight;
+            sums[6] += sample.networkTransmitRate() * weight;
+            totalWeight[0] += weight;
+        });
+        if (totalWeight[0] == 0) {
+            return null;
+        }
+        double weight = totalWeight[0];
+        return new MetricsSample(firstTimestamp[0], sums[0] / weight, sums[1] / weight, (long) (sums[2] / weight),
+                sums[3] / weight, sums[4] / weight, sums[5] / weight, sums[6] / weight);
+    }
+
+    @FunctionalInterface
+    private interface SampleVisitor {
+        void visit(MetricsSample sample, int weight);
+    }
+
+    /**
+     * 定长环形缓冲区.
+     */
+    private static final class Tier {
+
+        private final long[] timestamps;
+        private final long[] endTimestamps;
+        private final float[] values;
+        private int next;
+        private int size;
+
+        private Tier(int capacity) {
+            this.timestamps = new long[capacity];
+            this.endTimestamps = new long[capacity];
+            this.values = new float[capacity * METRIC_COUNT];
+        }
+
+        /**
+         * @param timestamp 采样时间戳, 降采样为时间段内第一个原始采样的时间戳.
+         * @param endTimestamp 降采样时间段内最后一个原始采样的时间戳, 原始采样与 {@code timestamp} 相同.
+         */
+        private void add(long timestamp, long endTimestamp, float[] sample) {
+            timestamps[next] = timestamp;
+            endTimestamps[next] = endTimestamp;
+            System.arraycopy(sample, 0, values, next * METRIC_COUNT, METRIC_COUNT);
+            next = (next + 1) % timestamps.length;
+            if (size < timestamps.length) {
+                size++;
+            }
+        }
+
+        /**
+         * @param index 从最早的采样开始的序号.
+         */
+        private int slot(int index) {
+            return (next - size + index + timestamps.length) % timestamps.length;
+        }
+
+        private long timestampAt(int index) {
+            return timestamps[slot(index)];
+        }
+
+        private long endTimestampAt(int index) {
+            return endTimestamps[slot(index)];
+        }
+
+        private MetricsSample get(int index) {
+            int slot = slot(index);
+            int offset = slot * METRIC_COUNT;
+            return new MetricsSample(timestamps[slot], values[offset], values[offset + 1], (long) values[offset + 2],
+                    values[offset + 3], values[offset + 4], values[offset + 5], values[offset + 6]);
+        }
+    }
+
+}
@@ -0,0 +1,316 @@
+package net.lamgc.oracle.sentry.oci.compute.metrics;
+
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * {@code /proc} 快照解析器.
+ * <p> 远端通过 {@link #command(int)} 周期性输出快照, 本解析器作为执行通道的标准输出, 在数据到达时逐字节解析.
+ * 行数据保存在可复用的缓冲区中, 数值直接从字节解析, 解析过程中不会为每个采样创建对象.
+ * <p> 快照格式(每个分段以 {@code @x} 行开始):
+ * <ul>
+ *     <li>{@code @s}: {@code /proc/uptime} 与 {@code /proc/stat} 的 cpu 总计行;</li>
+ *     <li>{@code @m}: {@code /proc/meminfo} 的 MemTotal 与 MemAvailable 行;</li>
+ *     <li>{@code @d}: {@code /proc/diskstats} 中的整块磁盘;</li>
+ *     <li>{@code @n}: {@code /proc/net/dev} 中的网络接口;</li>
+ *     <li>{@code @e}: 快照结束.</li>
+ * </ul>
+ * <p> 计数器类指标(处理器时间, 磁盘与网络字节数)以相邻两次快照的差值计算, 所以第一个快照不会产生采样.
+ * 速率以远端开机时长的差值为时间间隔, 不受网络延迟影响.
+ * @author LamGC
+ */
+final class ProcSnapshotParser extends OutputStream {
+
+    private final static int MAX_LINE_LENGTH = 512;
+    private final static int SECTOR_SIZE = 512;
+    private final static int MAX_FIELDS = 16;
+
+    private final MetricsTimeSeries series;
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private int lineLength;
+    private boolean lineOverflow;
+
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private int fieldCount;
+
+    private byte section;
+    private boolean uptimeParsed;
+
+    // 当前快照的原始计数.
+    private long uptime;
+    private long cpuTotal;
+    private long cpuIdle;
+    private long memoryTotal;
+    private long memoryAvailable;
+    private long diskRead;
+    private long diskWritten;
+    private long networkReceived;
+    private long networkTransmitted;
+
+    // 上一个快照的原始计数.
+    private boolean hasPrevious;
+    private long previousUptime;
+    private long previousCpuTotal;
+    private long previousCpuIdle;
+    private long previousDiskRead;
+    private long previousDiskWritten;
+    private long previousNetworkReceived;
+    private long previousNetworkTransmitted;
+
+    ProcSnapshotParser(MetricsTimeSeries series) {
+        this.series = Objects.requireNonNull(series);
+    }
+
+    /**
+     * 获取在远端周期性输出快照的命令.
+     * <p> 命令在通道关闭后随写入失败而退出.
+     * @param intervalSeconds 快照间隔, 单位: 秒.
+     * @return 返回命令.
+     */
+    static String command(int intervalSeconds) {
+        return String.join("\n",
+                "export LC_ALL=C",
+                "while :; do",
+                "echo '@s'; cat /proc/uptime; head -n 1 /proc/stat",
+                "echo '@m'; grep -E '^(MemTotal|MemAvailable):' /proc/meminfo",
+                "echo '@d'; grep -E ' (sd[a-z]+|vd[a-z]+|xvd[a-z]+|nvme[0-9]+n[0-9]+) ' /proc/diskstats",
+                "echo '@n'; tail -n +3 /proc/net/dev",
+                "echo '@e' || exit",
+                "sleep " + intervalSeconds + " || exit",
+                "done");
+    }
+
+    @Override
+    public void write(int b) {
+        if (b == '\n') {
+            if (!lineOverflow) {
+                parseLine();
+            }
+            lineLength = 0;
+            lineOverflow = false;
+        } else if (lineLength < MAX_LINE_LENGTH) {
+            line[lineLength++] = (byte) b;
+        } else {
+            // 超长的行不是快照中的内容, 直接丢弃.
+            lineOverflow = true;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        Objects.checkFromIndexSize(off, len, b.length);
+        for (int i = off; i < off + len; i++) {
+            write(b[i]);
+        }
+    }
+
+    private void parseLine() {
+        if (lineLength >= 2 && line[0] == '@') {
+            section = line[1];
+            if (section == 's') {
+                beginSnapshot();
+            } else if (section == 'e') {
+                endSnapshot();
+            }
+            return;
+        }
+        splitFields(0);
+        if (fieldCount == 0) {
+            return;
+        }
+        switch (section) {
+            case 's' -> parseStatLine();
+            case 'm' -> parseMemoryLine();
+            case 'd' -> parseDiskLine();
+            case 'n' -> parseNetworkLine();
+            default -> {
+                // 不属于任何分段的输出(例如远端的 motd), 忽略.
+            }
+        }
+    }
+
+    private void beginSnapshot() {
+        uptimeParsed = false;
+        uptime = 0;
+        cpuTotal = 0;
+        cpuIdle = 0;
+        memoryTotal = 0;
+        memoryAvailable = 0;
+        diskRead = 0;
+        diskWritten = 0;
+        networkReceived = 0;
+        networkTransmitted = 0;
+    }
+
+    private void parseStatLine() {
+        if (!uptimeParsed) {
+            // 格式: "350735.47 234388.90", 第一项为开机秒数, 以百分之一秒为单位保存.
+            uptime = parseCentiseconds(fieldStarts[0], fieldEnds[0]);
+            uptimeParsed = true;
+        } else if (fieldEquals(0, "cpu")) {
+            // 格式: "cpu  user nice system idle iowait irq softirq steal guest guest_nice",
+            // guest 时间已包含在 user 中, 不计入总时间.
+            for (int i = 1; i < Math.min(fieldCount, 9); i++) {
+                long value = parseLong(i);
+                cpuTotal += value;
+                if (i == 4 || i == 5) {
+                    cpuIdle += value;
+                }
+            }
+        }
+    }
+
+    private void parseMemoryLine() {
+        // 格式: "MemTotal:       16106592 kB"
+        if (fieldCount < 2) {
+            return;
+        }
+        if (fieldEquals(0, "MemTotal:")) {
+            memoryTotal = parseLong(1) * 1024;
+        } else if (fieldEquals(0, "MemAvailable:")) {
+            memoryAvailable = parseLong(1) * 1024;
+        }
+    }
+
+    private void parseDiskLine() {
+        // 格式: "major minor name reads merged sectors_read ms writes merged sectors_written ..."
+        if (fieldCount < 10) {
+            return;
+        }
+        diskRead += parseLong(5) * SECTOR_SIZE;
+        diskWritten += parseLong(9) * SECTOR_SIZE;
+    }
+
+    private void parseNetworkLine() {
+        // 格式: "  eth0: rx_bytes rx_packets ... (8 项接收统计) tx_bytes ...",
+        // 接收字节数较大时可能与接口名相连, 所以以冒号而不是空白分隔接口名.
+        int colon = -1;
+        for (int i = 0; i < lineLength; i++) {
+            if (line[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon < 0) {
+            return;
+        }
+        int nameStart = 0;
+        while (nameStart < colon && isWhitespace(line[nameStart])) {
+            nameStart++;
+        }
+        if (colon - nameStart == 2 && line[nameStart] == 'l' && line[nameStart + 1] == 'o') {
+            return;
+        }
+        splitFields(colon + 1);
+        if (fieldCount < 9) {
+            return;
+        }
+        networkReceived += parseLong(0);
+        networkTransmitted += parseLong(8);
+    }
+
+    private void endSnapshot() {
+        if (!uptimeParsed || cpuTotal == 0) {
+            return;
+        }
+        if (hasPrevious && uptime > previousUptime) {
+            double seconds = (uptime - previousUptime) / 100.0;
+            long cpuTotalDelta = cpuTotal - previousCpuTotal;
+            double cpuUsage = cpuTotalDelta <= 0 ? 0 :
+                    Math.max(0, 1 - (double) (cpuIdle - previousCpuIdle) / cpuTotalDelta);
+            double memoryUsage = memoryTotal <= 0 ? 0 : 1 - (double) memoryAvailable / memoryTotal;
+            series.record(System.currentTimeMillis(), cpuUsage, memoryUsage, memoryAvailable,
+                    rate(diskRead, previousDiskRead, seconds),
+                    rate(diskWritten, previousDiskWritten, seconds),
+                    rate(networkReceived, previousNetworkReceived, seconds),
+                    rate(networkTransmitted, previousNetworkTransmitted, seconds));
+        }
+        hasPrevious = true;
+        previousUptime = uptime;
+        previousCpuTotal = cpuTotal;
+        previousCpuIdle = cpuIdle;
+        previousDiskRead = diskRead;
+        previousDiskWritten = diskWritten;
+        previousNetworkReceived = networkReceived;
+        previousNetworkTransmitted = networkTransmitted;
+    }
+
+    private static double rate(long current, long previous, double seconds) {
+        // 计数器回绕或设备被移除时差值可能为负, 按 0 处理.
+        return Math.max(0, current - previous) / seconds;
+    }
+
+    private void splitFields(int from) {
+        fieldCount = 0;
+        int i = from;
+        while (i < lineLength && fieldCount < MAX_FIELDS) {
+            while (i < lineLength && isWhitespace(line[i])) {
+                i++;
+            }
+            if (i >= lineLength) {
+                break;
+            }
+            fieldStarts[fieldCount] = i;
+            while (i < lineLength && !isWhitespace(line[i])) {
+                i++;
+            }
+            fieldEnds[fieldCount++] = i;
+        }
+    }
+
+    private boolean fieldEquals(int index, String value) {
+        int start = fieldStarts[index];
+        if (fieldEnds[index] - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (line[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long parseLong(int index) {
+        long value = 0;
+        for (int i = fieldStarts[index]; i < fieldEnds[index]; i++) {
+            byte b = line[i];
+            if (b < '0' || b > '9') {
+                return 0;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private long parseCentiseconds(int start, int end) {
+        long value = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            byte b = line[i];
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (b >= '0' && b <= '9') {
+                if (fractionDigits >= 2) {
+                    continue;
+                }
+                value = value * 10 + (b - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else {
+                return 0;
+            }
+        }
+        for (int i = Math.max(fractionDigits, 0); i < 2; i++) {
+            value *= 10;
+        }
+        return value;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+}
@@ -0,0 +1,324 @@
+package net.lamgc.oracle.sentry.oci.compute.metrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lamgc.oracle.sentry.common.LazyLoader;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import net.lamgc.oracle.sentry.oci.compute.ssh.CommandExecSession;
+import net.lamgc.oracle.sentry.oci.compute.ssh.PooledSshSession;
+import net.lamgc.oracle.sentry.oci.compute.ssh.SshSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 无代理的远程指标收集器.
+ * <p> 不需要在实例上安装任何程序, 每台实例只使用一条长期存在的执行通道,
+ * 远端周期性输出 {@code /proc} 快照, 本地在数据到达时解析(见 {@link ProcSnapshotParser})并写入
+ * {@link MetricsTimeSeries}. 相比每次采样都新建一个执行通道, 省去了通道建立和进程启动的开销.
+ * <p> 收集器定期检查每条通道, 通道退出, 会话断开或长时间没有新采样时将关闭通道并重新连接,
+ * 连续失败时重连间隔逐渐增加.
+ * @author LamGC
+ */
+public final class RemoteMetricsCollector implements AutoCloseable {
+
+    private final static Logger log = LoggerFactory.getLogger(RemoteMetricsCollector.class);
+
+    /**
+     * 默认的采样间隔, 单位: 秒.
+     */
+    public final static int DEFAULT_INTERVAL = 10;
+
+    private final static long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    private final static LazyLoader<RemoteMetricsCollector> DEFAULT_COLLECTOR = new LazyLoader<>(() ->
+            // 原始采样保留 1 小时, 降采样为 1 分钟一个, 保留 24 小时.
+            new RemoteMetricsCollector(DEFAULT_INTERVAL, 360, 6, 1440));
+
+    private final int interval;
+    private final int rawCapacity;
+    private final int downsampleFactor;
+    private final int downsampledCapacity;
+    private final Map<ComputeInstance, MetricsStream> streams = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService supervisor;
+    private final ExecutorService connectExecutor;
+
+    /**
+     * 创建远程指标收集器.
+     * @param interval 采样间隔, 单位: 秒.
+     * @param rawCapacity 每台实例保留的原始采样数量.
+     * @param downsampleFactor 降采样倍数.
+     * @param downsampledCapacity 每台实例保留的降采样数量.
+     * @see MetricsTimeSeries
+     */
+    public RemoteMetricsCollector(int interval, int rawCapacity, int downsampleFactor, int downsampledCapacity) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval cannot be less than or equal to 0.");
+        } else if (rawCapacity <= 0 || downsampledCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity cannot be less than or equal to 0.");
+        } else if (downsampleFactor <= 1) {
+            throw new IllegalArgumentException("Downsample factor must be greater than 1.");
+        }
+        this.interval = interval;
+        this.rawCapacity = rawCapacity;
+        this.downsampleFactor = downsampleFactor;
+        this.downsampledCapacity = downsampledCapacity;
+        this.supervisor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("Thread-MetricsSupervisor-%d")
+                .setDaemon(true)
+                .build());
+        this.connectExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("Thread-MetricsConnect-%d")
+                .setDaemon(true)
+                .build());
+        supervisor.scheduleWithFixedDelay(this::supervise, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 获取默认的远程指标收集器.
+     * <p> 采样间隔为 {@value #DEFAULT_INTERVAL} 秒, 原始采样保留 1 小时, 1 分钟降采样保留 24 小时.
+     * @return 返回进程共享的收集器.
+     */
+    public static RemoteMetricsCollector getDefault() {
+        return DEFAULT_COLLECTOR.getInstance();
+    }
+
+    /**
+     * 开始收集实例的指标.
+     * <p> 连接在后台建立, 本方法不会阻塞. 如果已在收集, 返回已有的时间序列.
+     * @param instance 计算实例.
+     * @return 返回实例的指标时间序列.
+     */
+    public MetricsTimeSeries watch(ComputeInstance instance) {
+        MetricsStream stream = streams.computeIfAbsent(instance, key -> {
+            log.info("开始收集实例 {} 的指标.(Interval: {}s)", key.getInstanceId(), interval);
+            return new MetricsStream(key,
+                    new MetricsTimeSeries(rawCapacity, downsampleFactor, downsampledCapacity));
+        });
+        stream.check(System.currentTimeMillis());
+        return stream.series;
+    }
+
+    /**
+     * 获取实例的指标.
+     * @param instance 计算实例.
+     * @return 如果正在收集该实例的指标, 返回时间序列, 否则返回 {@code null}.
+     */
+    public MetricsTimeSeries getMetrics(ComputeInstance instance) {
+        MetricsStream stream = streams.get(instance);
+        return stream == null ? null : stream.series;
+    }
+
+    /**
+     * 获取正在收集指标的实例.
+     * @return 返回实例集合.
+     */
+    public Set<ComputeInstance> getWatchedInstances() {
+        return Set.copyOf(streams.keySet());
+    }
+
+    /**
+     * 停止收集实例的指标.
+     * <p> 已收集的指标将被丢弃.
+     * @param instance 计算实例.
+     */
+    public void unwatch(ComputeInstance instance) {
+        MetricsStream stream = streams.remove(instance);
+        if (stream != null) {
+            stream.close();
+            log.info("已停止收集实例 {} 的指标.", instance.getInstanceId());
+        }
+    }
+
+    /**
+     * 停止收集所有实例的指标.
+     */
+    @Override
+    public void close() {
+        supervisor.shutdownNow();
+        for (ComputeInstance instance : Set.copyOf(streams.keySet())) {
+            unwatch(instance);
+        }
+        connectExecutor.shutdown();
+    }
+
+    /**
+     * 在会话上打开指标通道.
+     * <p> 远端周期性输出快照, 快照在到达时解析并写入时间序列.
+     * @param session SSH 会话.
+     * @param series 采样写入的时间序列.
+     * @param interval 采样间隔, 单位: 秒.
+     * @return 返回已开始异步执行的通道.
+     * @throws IOException 当通道打开失败时抛出.
+     */
+    static CommandExecSession openChannel(SshSession session, MetricsTimeSeries series, int interval)
+            throws IOException {
+        CommandExecSession execSession = session.createExecSession(ProcSnapshotParser.command(interval));
+        try {
+            execSession.setOut(new ProcSnapshotParser(series));
+            execSession.setErr(OutputStream.nullOutputStream());
+            // 指标通道长期运行, 不设置截止时间.
+            execSession.setTimeout(0);
+            execSession.exec(true);
+        } catch (IOException | RuntimeException e) {
+            try {
+                execSession.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+        return execSession;
+    }
+
+    private void supervise() {
+        long now = System.currentTimeMillis();
+        for (MetricsStream stream : streams.values()) {
+            try {
+                stream.check(now);
+            } catch (RuntimeException e) {
+                log.error("检查实例 {} 的指标通道时发生异常.", stream.instance.getInstanceId(), e);
+            }
+        }
+    }
+
+    /**
+     * 实例的指标通道.
+     */
+    private final class MetricsStream {
+
+        private final ComputeInstance instance;
+        private final MetricsTimeSeries series;
+        private PooledSshSession session;
+        private CommandExecSession execSession;
+        private long startTime;
+        private long lastSampleTime;
+        private int failures;
+        private long nextAttemptTime;
+        private boolean connecting;
+        private boolean closed;
+
+        private MetricsStream(ComputeInstance instance, MetricsTimeSeries series) {
+            this.instance = instance;
+            this.series = series;
+        }
+
+        private synchronized void check(long now) {
+            if (closed || connecting) {
+                return;
+            }
+            if (execSession != null) {
+                String reason = getFailureReason(now);
+                if (reason == null) {
+                    return;
+                }
+                log.warn("实例 {} 的指标通道已失效({}), 将重新连接.", instance.getInstanceId(), reason);
+                disconnect();
+                onFailure(now);
+            }
+            if (now < nextAttemptTime) {
+                return;
+            }
+            connecting = true;
+            connectExecutor.execute(this::connect);
+        }
+
+        private String getFailureReason(long now) {
+            if (execSession.exitCode() != null) {
+                return "exit code: " + execSession.exitCode();
+            } else if (!session.isOpen()) {
+                return "session closed";
+            }
+            MetricsSample latest = series.getLatest();
+            if (latest != null) {
+                lastSampleTime = Math.max(lastSampleTime, latest.timestamp());
+            }
+            // 第一个采样需要两次快照, 所以从连接起允许多等待一个间隔.
+            long silentTime = now - Math.max(lastSampleTime, startTime + TimeUnit.SECONDS.toMillis(interval));
+            if (silentTime > TimeUnit.SECONDS.toMillis(interval) * 3) {
+                return "no sample for " + silentTime + "ms";
+            }
+            return null;
+        }
+
+        private void connect() {
+            PooledSshSession newSession = null;
+            CommandExecSession newExecSession = null;
+            try {
+                newSession = instance.ssh().leaseSession();
+                newExecSession = openChannel(newSession, series, interval);
+            } catch (IOException | RuntimeException e) {
+                log.warn("建立实例 {} 的指标通道失败.", instance.getInstanceId(), e);
+                closeQuietly(newExecSession, newSession);
+                synchronized (this) {
+                    connecting = false;
+                    onFailure(System.currentTimeMillis());
+                }
+                return;
+            }
+
+            synchronized (this) {
+                connecting = false;
+                if (closed) {
+                    closeQuietly(newExecSession, newSession);
+                    return;
+                }
+                session = newSession;
+                execSession = newExecSession;
+                startTime = System.currentTimeMillis();
+                failures = 0;
+                log.debug("实例 {} 的指标通道已建立.", instance.getInstanceId());
+            }
+        }
+
+        private void onFailure(long now) {
+            failures++;
+            long delay = Math.min(TimeUnit.SECONDS.toMillis(interval) << Math.min(failures - 1, 16), MAX_RETRY_DELAY);
+            nextAttemptTime = now + delay;
+        }
+
+        private void disconnect() {
+            closeQuietly(execSession, session);
+            execSession = null;
+            session = null;
+        }
+
+        private synchronized void close() {
+            closed = true;
+            if (execSession != null) {
+                disconnect();
+            }
+        }
+
+        private void closeQuietly(CommandExecSession execSession, PooledSshSession session) {
+            try {
+                if (execSession != null) {
+                    execSession.close();
+                }
+            } catch (IOException e) {
+                log.debug("关闭指标通道时发生异常.", e);
+            }
+            if (session == null) {
+                return;
+            }
+            try {
+                if (session.isOpen()) {
+                    session.close();
+                } else {
+                    session.invalidate();
+                }
+            } catch (IOException e) {
+                log.debug("关闭指标通道会话时发生异常.", e);
+            }
+        }
+    }
+
+}
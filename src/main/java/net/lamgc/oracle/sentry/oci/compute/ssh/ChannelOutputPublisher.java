@@ -0,0 +1,259 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.common.io.LineDecoder;
+import org.apache.sshd.common.io.IoInputStream;
+import org.apache.sshd.common.io.IoReadFuture;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 通道输出发布者.
+ * <p> 从 SSH 通道的异步输出流中读取数据, 解码后发布给订阅者.
+ * <p> 只有在订阅者有需求且已解码的数据全部发布后, 才会发起下一次读取.
+ * 由于 SSH 通道的本地窗口在数据被读取后才会调整, 订阅者处理缓慢时远端将停止发送数据, 从而实现背压,
+ * 内存中最多只保留一次读取所解码出的数据.
+ * <p> 仅支持一个订阅者.
+ * @param <T> 发布的数据类型.
+ * @author LamGC
+ */
+final class ChannelOutputPublisher<T> implements Flow.Publisher<T> {
+
+    private final static Logger log = LoggerFactory.getLogger(ChannelOutputPublisher.class);
+    private final static int READ_BUFFER_SIZE = 8192;
+
+    private final OutputDecoder<T> decoder;
+    private final Queue<T> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final Buffer readBuffer = new ByteArrayBuffer(READ_BUFFER_SIZE, false);
+
+    private volatile Flow.Subscriber<? super T> subscriber;
+    private volatile IoInputStream input;
+    private volatile boolean reading;
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+    private boolean terminated;
+
+    private ChannelOutputPublisher(OutputDecoder<T> decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * 创建按行发布的发布者.
+     * @param charset 输出的文本编码.
+     * @return 返回发布者.
+     */
+    static ChannelOutputPublisher<String> lines(Charset charset) {
+        LineDecoder lineDecoder = new LineDecoder(charset);
+        return new ChannelOutputPublisher<>(new OutputDecoder<>() {
+            @Override
+            public void decode(byte[] data, int offset, int length, Consumer<String> output) {
+                lineDecoder.decode(data, offset, length, output);
+            }
+
+            @Override
+            public void finish(Consumer<String> output) {
+                lineDecoder.finish(output);
+            }
+        });
+    }
+
+    /**
+     * 创建按数据块发布的发布者.
+     * <p> 每个数据块为一次读取所得到的原始数据.
+     * @return 返回发布者.
+     */
+    static ChannelOutputPublisher<byte[]> chunks() {
+        return new ChannelOutputPublisher<>(new OutputDecoder<>() {
+            @Override
+            public void decode(byte[] data, int offset, int length, Consumer<byte[]> output) {
+                output.accept(Arrays.copyOfRange(data, offset, offset + length));
+            }
+
+            @Override
+            public void finish(Consumer<byte[]> output) {
+            }
+        });
+    }
+
+    /**
+     * 是否已有订阅者.
+     * @return 如果已有订阅者, 返回 {@code true}.
+     */
+    boolean hasSubscriber() {
+        return subscriber != null;
+    }
+
+    /**
+     * 绑定通道输出流并开始读取.
+     * <p> 应在通道打开后调用.
+     * @param input 通道的异步输出流.
+     */
+    void attach(IoInputStream input) {
+        this.input = Objects.requireNonNull(input);
+        drain();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        synchronized (this) {
+            if (this.subscriber != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("Only one subscriber is supported."));
+                return;
+            }
+            this.subscriber = subscriber;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    failure = new IllegalArgumentException("Requested items must be positive: " + n);
+                    done = true;
+                } else {
+                    demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                drain();
+            }
+        });
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            emit();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * 发布已解码的数据, 并在需要时发起下一次读取.
+     * <p> 仅在 {@link #drain()} 中调用, 同一时间只有一个线程执行.
+     */
+    private void emit() {
+        Flow.Subscriber<? super T> currentSubscriber = subscriber;
+        if (currentSubscriber == null || terminated) {
+            return;
+        }
+        while (true) {
+            if (cancelled) {
+                // 取消订阅后仍需读取剩余输出, 以免通道窗口被占满导致远端程序阻塞.
+                pending.clear();
+                demand.set(Long.MAX_VALUE);
+                if (done) {
+                    terminated = true;
+                    return;
+                }
+            } else if (failure != null && done) {
+                terminated = true;
+                pending.clear();
+                currentSubscriber.onError(failure);
+                return;
+            }
+            long currentDemand = demand.get();
+            if (currentDemand > 0) {
+                T item = pending.poll();
+                if (item != null) {
+                    if (currentDemand != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    currentSubscriber.onNext(item);
+                    continue;
+                }
+            }
+            if (pending.isEmpty()) {
+                if (done) {
+                    terminated = true;
+                    if (!cancelled) {
+                        currentSubscriber.onComplete();
+                    }
+                    return;
+                }
+                IoInputStream currentInput = input;
+                if (currentDemand > 0 && !reading && currentInput != null) {
+                    reading = true;
+                    readBuffer.clear();
+                    IoReadFuture future = currentInput.read(readBuffer);
+                    // 如果读取已同步完成, 回调中的 drain() 只会标记 missed, 由当前循环继续处理.
+                    future.addListener(this::onReadComplete);
+                }
+            }
+            return;
+        }
+    }
+
+    private void onReadComplete(IoReadFuture future) {
+        Throwable exception = future.getException();
+        if (exception != null) {
+            if (!(exception instanceof EOFException)) {
+                IoInputStream currentInput = input;
+                if (currentInput == null || !currentInput.isClosing()) {
+                    log.debug("读取通道输出时发生异常.", exception);
+                    failure = exception;
+                }
+            }
+            decoder.finish(pending::add);
+            done = true;
+        } else {
+            decoder.decode(readBuffer.array(), readBuffer.rpos(), readBuffer.available(), pending::add);
+        }
+        reading = false;
+        drain();
+    }
+
+    /**
+     * 输出解码器.
+     * @param <T> 解码结果类型.
+     */
+    private interface OutputDecoder<T> {
+
+        /**
+         * 解码一段数据.
+         * @param data 数据数组.
+         * @param offset 起始位置.
+         * @param length 数据长度.
+         * @param output 解码结果接收者.
+         */
+        void decode(byte[] data, int offset, int length, Consumer<T> output);
+
+        /**
+         * 结束解码, 输出剩余内容.
+         * @param output 解码结果接收者.
+         */
+        void finish(Consumer<T> output);
+    }
+
+}
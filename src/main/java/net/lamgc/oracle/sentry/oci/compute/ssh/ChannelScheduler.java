@@ -0,0 +1,257 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lamgc.oracle.sentry.common.io.HeadTailCapture;
+import net.lamgc.oracle.sentry.common.io.OutputCapture;
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.common.channel.exception.SshChannelOpenException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 通道调度器.
+ * <p> 在同一个 SSH 会话上并发执行多个通道任务(命令执行, Sftp 等), 只需一次握手即可并行收集大量信息.
+ * <p> 服务端通常会限制单个连接上同时打开的通道数量(OpenSSH 的 {@code MaxSessions}, 默认为 10),
+ * 调度器会将同时执行的任务数限制在该数量以内, 超出的任务将排队等待.
+ * 如果服务端拒绝打开通道, 调度器会将并发上限下调至当前正在执行的任务数, 并将被拒绝的任务重新排队.
+ * @author LamGC
+ */
+public final class ChannelScheduler {
+
+    private final static Logger log = LoggerFactory.getLogger(ChannelScheduler.class);
+
+    /**
+     * 默认的并发通道上限, 与 OpenSSH 的 {@code MaxSessions} 默认值相同.
+     */
+    public final static int DEFAULT_MAX_CHANNELS = 10;
+
+    /**
+     * 单个任务因通道数限制被拒绝的最大次数, 超过后任务将失败.
+     */
+    private final static int MAX_REJECTIONS = 3;
+
+    private final static ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("Thread-ChannelScheduler-%d")
+            .setDaemon(true)
+            .build());
+
+    private final SshSession session;
+    private final Deque<PendingTask<?>> queue = new ArrayDeque<>();
+    private int maxChannels;
+    private int activeChannels = 0;
+    private boolean closed = false;
+
+    ChannelScheduler(SshSession session, int maxChannels) {
+        if (maxChannels <= 0) {
+            throw new IllegalArgumentException("Max channels cannot be less than or equal to 0.");
+        }
+        this.session = Objects.requireNonNull(session);
+        this.maxChannels = maxChannels;
+    }
+
+    /**
+     * 提交通道任务.
+     * @param task 通道任务.
+     * @param <T> 任务结果类型.
+     * @return 返回任务结果的 Future, 取消尚未开始执行的任务将使其不再执行.
+     * @throws IllegalStateException 当调度器已关闭时抛出.
+     */
+    public <T> CompletableFuture<T> submit(ChannelTask<T> task) {
+        Objects.requireNonNull(task);
+        PendingTask<T> pendingTask = new PendingTask<>(task);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The scheduler has been closed.");
+            }
+            queue.offer(pendingTask);
+        }
+        dispatch();
+        return pendingTask.future;
+    }
+
+    /**
+     * 提交命令执行任务.
+     * <p> 输出使用有界捕获保存, 标准输出与错误输出各保留开头与结尾各 64 KiB.
+     * <p> 命令使用默认截止时间(见 {@link CommandExecSession#setTimeout(long)}).
+     * @param command 待执行的命令.
+     * @return 返回命令执行结果的 Future.
+     */
+    public CompletableFuture<ExecResult> exec(String command) {
+        return exec(command, -1);
+    }
+
+    /**
+     * 提交命令执行任务.
+     * <p> 超过截止时间后远端进程将被终止, 结果的 {@link ExecResult#timedOut()} 为 {@code true}.
+     * @param command 待执行的命令.
+     * @param timeout 截止时间, 0 为不限制, 小于 0 为使用默认截止时间(单位: 毫秒).
+     * @return 返回命令执行结果的 Future.
+     * @see #exec(String)
+     */
+    public CompletableFuture<ExecResult> exec(String command, long timeout) {
+        Objects.requireNonNull(command);
+        return submit(session -> {
+            long startTime = System.currentTimeMillis();
+            try (CommandExecSession exec = session.createExecSession(command)) {
+                if (timeout >= 0) {
+                    exec.setTimeout(timeout);
+                }
+                HeadTailCapture stdout = exec.captureOut(OutputCapture.headTail(64 * 1024, 64 * 1024));
+                HeadTailCapture stderr = exec.captureErr(OutputCapture.headTail(64 * 1024, 64 * 1024));
+                exec.exec();
+                return new ExecResult(exec.exitCode(), stdout.toByteArray(), stderr.toByteArray(),
+                        stdout.getDroppedBytes() + stderr.getDroppedBytes(),
+                        System.currentTimeMillis() - startTime, exec.isTimedOut(), exec.isCancelled());
+            }
+        });
+    }
+
+    /**
+     * 提交 Sftp 任务.
+     * <p> 任务执行前打开 Sftp 会话, 执行完毕后自动关闭.
+     * @param task Sftp 任务.
+     * @param <T> 任务结果类型.
+     * @return 返回任务结果的 Future.
+     */
+    public <T> CompletableFuture<T> sftp(SftpTask<T> task) {
+        Objects.requireNonNull(task);
+        return submit(session -> {
+            try (SftpSession sftp = session.createSftpSession()) {
+                return task.run(sftp);
+            }
+        });
+    }
+
+    /**
+     * 获取当前的并发通道上限.
+     * @return 返回并发通道上限, 可能因服务端拒绝而低于初始值.
+     */
+    public synchronized int getMaxChannels() {
+        return maxChannels;
+    }
+
+    /**
+     * 获取正在排队的任务数量.
+     * @return 返回排队中的任务数量.
+     */
+    public synchronized int getQueuedTasks() {
+        return queue.size();
+    }
+
+    private void dispatch() {
+        synchronized (this) {
+            while (!closed && activeChannels < maxChannels && !queue.isEmpty()) {
+                PendingTask<?> task = queue.poll();
+                if (task.future.isDone()) {
+                    continue;
+                }
+                activeChannels++;
+                EXECUTOR.execute(() -> runTask(task));
+            }
+        }
+    }
+
+    private <T> void runTask(PendingTask<T> task) {
+        try {
+            T result = task.task.run(session);
+            task.future.complete(result);
+        } catch (Throwable e) {
+            if (isChannelLimitRejection(e) && requeueRejectedTask(task)) {
+                return;
+            }
+            task.future.completeExceptionally(e);
+        } finally {
+            synchronized (this) {
+                activeChannels--;
+            }
+            dispatch();
+        }
+    }
+
+    /**
+     * 处理因通道数限制被拒绝的任务.
+     * @param task 被拒绝的任务.
+     * @return 如果任务已重新排队, 返回 {@code true}.
+     */
+    private synchronized boolean requeueRejectedTask(PendingTask<?> task) {
+        // 仅有当前任务在执行时仍被拒绝, 说明与并发数无关.
+        if (closed || activeChannels <= 1 || ++task.rejections > MAX_REJECTIONS) {
+            return false;
+        }
+        int newLimit = Math.max(1, activeChannels - 1);
+        if (newLimit < maxChannels) {
+            log.debug("服务端拒绝打开新通道, 并发通道上限已调整为 {}.", newLimit);
+            maxChannels = newLimit;
+        }
+        queue.offerFirst(task);
+        return true;
+    }
+
+    private static boolean isChannelLimitRejection(Throwable e) {
+        Throwable cause = e;
+        while (cause != null) {
+            if (cause instanceof SshChannelOpenException openException) {
+                int reason = openException.getReasonCode();
+                return reason == SshConstants.SSH_OPEN_ADMINISTRATIVELY_PROHIBITED ||
+                        reason == SshConstants.SSH_OPEN_RESOURCE_SHORTAGE;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * 关闭调度器.
+     * <p> 排队中的任务将以异常结束, 正在执行的任务不受影响.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+            PendingTask<?> task;
+            while ((task = queue.poll()) != null) {
+                task.future.completeExceptionally(new IllegalStateException("The session has been closed."));
+            }
+        }
+    }
+
+    /**
+     * Sftp 任务.
+     * @param <T> 任务结果类型.
+     */
+    @FunctionalInterface
+    public interface SftpTask<T> {
+
+        /**
+         * 执行任务.
+         * @param sftp Sftp 会话, 任务结束后自动关闭.
+         * @return 返回任务结果.
+         * @throws Exception 任务执行失败时抛出.
+         */
+        T run(SftpSession sftp) throws Exception;
+    }
+
+    /**
+     * 排队中的任务.
+     * @param <T> 任务结果类型.
+     */
+    private static class PendingTask<T> {
+        private final ChannelTask<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        /**
+         * 被拒绝次数, 仅在持有调度器锁时访问.
+         */
+        private int rejections = 0;
+
+        private PendingTask(ChannelTask<T> task) {
+            this.task = task;
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+/**
+ * 通道任务.
+ * <p> 由 {@link ChannelScheduler} 调度执行, 每个任务在执行期间最多只能打开一个通道(命令执行会话或 Sftp 会话),
+ * 并应在返回前关闭该通道.
+ * @param <T> 任务结果类型.
+ * @author LamGC
+ */
+@FunctionalInterface
+public interface ChannelTask<T> {
+
+    /**
+     * 执行任务.
+     * @param session 任务所使用的 SSH 会话.
+     * @return 返回任务结果.
+     * @throws Exception 任务执行失败时抛出.
+     */
+    T run(SshSession session) throws Exception;
+
+}
@@ -1,28 +1,119 @@
 package net.lamgc.oracle.sentry.oci.compute.ssh;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lamgc.oracle.sentry.Constants;
 import net.lamgc.oracle.sentry.common.io.InputStreamWrapper;
+import net.lamgc.oracle.sentry.common.io.OutputCapture;
 import net.lamgc.oracle.sentry.common.io.OutputStreamWrapper;
 import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannel;
 import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.future.OpenFuture;
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * SSH 执行会话.
+ * <p> 命令输出可通过 {@link #setOut(OutputStream)} 写入输出流, 也可以使用流式输出
+ * ({@link #stdoutLines()}, {@link #onOutputLine(OutputLineListener)} 等),
+ * 在命令执行过程中逐行或逐块处理输出, 两种方式不能同时使用.
+ * <p> 命令执行有截止时间(见 {@link #setTimeout(long)}), 超时或调用 {@link #cancel()} 后将终止远端进程:
+ * 先发送 {@code TERM} 信号, 宽限期(见 {@link #setKillGracePeriod(long)})后仍未退出则发送 {@code KILL} 信号并关闭通道,
+ * 所以等待命令结束的线程不会因远端命令卡住而无限等待.
+ * <p> 信号通过 SSH 的 {@code signal} 通道请求发送, 不支持该请求的服务端将忽略信号, 此时只能通过关闭通道结束等待.
  * @author LamGC
  */
 public final class CommandExecSession implements Closeable {
 
+    private final static Logger log = LoggerFactory.getLogger(CommandExecSession.class);
+
+    /**
+     * 未设置截止时间时使用的默认截止时间, 单位: 毫秒.
+     * <p> 可通过配置项 {@code oracle.ssh.exec.defaultTimeout} 调整.
+     */
+    public final static long DEFAULT_TIMEOUT = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * 默认的终止宽限期, 单位: 毫秒.
+     */
+    public final static long DEFAULT_KILL_GRACE_PERIOD = TimeUnit.SECONDS.toMillis(5);
+
+    private final static long WAIT_SLICE = 1000;
+
+    private final static ScheduledThreadPoolExecutor TERMINATOR = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("Thread-ExecTerminator-%d")
+                    .setDaemon(true)
+                    .build());
+
+    static {
+        // 大部分命令会在截止时间之前结束, 取消的截止任务应立即移除.
+        TERMINATOR.setRemoveOnCancelPolicy(true);
+    }
+
     private final ChannelExec channelExec;
+    private ChannelOutputPublisher<?> stdoutPublisher;
+    private ChannelOutputPublisher<?> stderrPublisher;
+    private boolean outputStreamSet = false;
+    private boolean inputStreamSet = false;
+    private InputStream stdout;
+    private volatile boolean executed = false;
+
+    private long timeout = -1;
+    private long killGracePeriod = DEFAULT_KILL_GRACE_PERIOD;
+    private ScheduledFuture<?> deadlineFuture;
+    private volatile boolean timedOut = false;
+    private volatile boolean cancelled = false;
+    private boolean terminating = false;
 
     CommandExecSession(ChannelExec channelExec) {
         this.channelExec = channelExec;
     }
 
+    /**
+     * 设置命令的截止时间.
+     * <p> 从调用 {@link #exec()} 开始计算(包括等待通道打开的时间), 超时后将终止远端进程, {@link #isTimedOut()} 返回 {@code true}.
+     * <p> 未设置时使用默认截止时间(见 {@link #DEFAULT_TIMEOUT}), 长期运行的命令需显式设置为 0.
+     * @param timeout 截止时间, 0 为不限制(单位: 毫秒).
+     * @throws IllegalStateException 当命令已执行时抛出.
+     */
+    public void setTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout cannot be less than 0.");
+        }
+        checkNotExecuted();
+        this.timeout = timeout;
+    }
+
+    /**
+     * 设置终止宽限期.
+     * <p> 终止远端进程时, 发送 {@code TERM} 信号后等待进程退出的时间, 超过后将发送 {@code KILL} 信号并关闭通道.
+     * @param gracePeriod 宽限期, 0 为直接发送 {@code KILL} 信号(单位: 毫秒).
+     */
+    public void setKillGracePeriod(long gracePeriod) {
+        if (gracePeriod < 0) {
+            throw new IllegalArgumentException("Grace period cannot be less than 0.");
+        }
+        this.killGracePeriod = gracePeriod;
+    }
+
     /**
      * 执行命令并等待程序执行完毕.
      * @throws IOException 如果发送命令失败则抛出异常.
@@ -37,7 +128,17 @@ public final class CommandExecSession implements Closeable {
      * @throws IOException 如果发送命令时发生异常则抛出.
      */
     public void exec(boolean async) throws IOException {
-        channelExec.open();
+        checkNotExecuted();
+        executed = true;
+        long startTime = System.currentTimeMillis();
+        long effectiveTimeout = timeout >= 0 ? timeout : getDefaultTimeout();
+        openChannel(effectiveTimeout);
+        if (isStreaming()) {
+            // 未订阅的输出也必须读取, 否则会占满通道窗口, 导致远端程序阻塞.
+            attachPublisher(true);
+            attachPublisher(false);
+        }
+        scheduleDeadline(effectiveTimeout, System.currentTimeMillis() - startTime);
         if (!async) {
             waitFor();
         }
@@ -45,7 +146,7 @@ public final class CommandExecSession implements Closeable {
 
     /**
      * 等待程序执行完毕.
-     * <p> 该方法等同于 {@code waitFor(0L)}.
+     * <p> 该方法等同于 {@code waitFor(0L)}, 最长等待至命令的截止时间及终止宽限期结束.
      */
     public void waitFor() {
         waitFor(0L);
@@ -53,12 +154,184 @@ public final class CommandExecSession implements Closeable {
 
     /**
      * 等待程序执行完毕.
-     * @param timeout 超时时间, 0 为无限等待(单位: 毫秒).
-     * @return 如果在超时时间内返回, 返回 {@code true}, 超时返回 {@code false}.
+     * <p> 如果等待过程中线程被中断, 将终止远端进程(同 {@link #cancel()}), 并在终止宽限期内等待进程退出,
+     * 返回时保留线程的中断状态.
+     * @param timeout 超时时间, 0 为等待至程序结束(单位: 毫秒). 该超时只影响本次等待, 不会终止远端进程.
+     * @return 如果在超时时间内返回, 返回 {@code true}, 超时或被中断返回 {@code false}.
      */
     public boolean waitFor(long timeout) {
-        return !channelExec.waitFor(EnumSet.of(ClientChannelEvent.EXIT_STATUS, ClientChannelEvent.EXIT_SIGNAL), timeout)
-                .contains(ClientChannelEvent.TIMEOUT);
+        long deadline = timeout <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+        while (true) {
+            if (Thread.interrupted()) {
+                log.debug("等待命令结束时线程被中断, 正在终止远端进程.");
+                cancel();
+                // 进程在宽限期结束时会被强制终止, 多等待一个分段以便通道关闭.
+                awaitFinish(System.currentTimeMillis() + killGracePeriod + WAIT_SLICE);
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            // 分段等待, 以便及时响应线程中断.
+            if (awaitFinish(System.currentTimeMillis() + Math.min(remaining, WAIT_SLICE))) {
+                return true;
+            }
+        }
+    }
+
+    private boolean awaitFinish(long deadline) {
+        Set<ClientChannelEvent> mask = EnumSet.of(ClientChannelEvent.EXIT_STATUS,
+                ClientChannelEvent.EXIT_SIGNAL, ClientChannelEvent.CLOSED);
+        long remaining = Math.max(deadline - System.currentTimeMillis(), 1);
+        return !channelExec.waitFor(mask, remaining).contains(ClientChannelEvent.TIMEOUT);
+    }
+
+    /**
+     * 取消命令.
+     * <p> 终止远端进程(先 {@code TERM}, 宽限期后 {@code KILL} 并关闭通道), 本方法不会等待进程退出.
+     * 可在其他线程(例如脚本中的另一个任务)中调用, 以结束正在等待的 {@link #waitFor()}.
+     * <p> 命令已结束时调用不会产生影响.
+     */
+    public void cancel() {
+        if (!executed || isFinished()) {
+            return;
+        }
+        cancelled = true;
+        terminate();
+    }
+
+    /**
+     * 向远端进程发送信号.
+     * @param signal 信号名称, 不含 {@code SIG} 前缀, 例如 {@code "TERM"}, {@code "INT"}, {@code "KILL"}.
+     * @throws IOException 当发送失败时抛出.
+     * @throws IllegalStateException 当命令尚未执行时抛出.
+     */
+    public void signal(String signal) throws IOException {
+        Objects.requireNonNull(signal);
+        if (!executed) {
+            throw new IllegalStateException("The command has not been executed.");
+        }
+        // RFC 4254 6.9: byte SSH_MSG_CHANNEL_REQUEST, uint32 recipient, string "signal", boolean false, string name
+        Buffer buffer = channelExec.getSession().createBuffer(SshConstants.SSH_MSG_CHANNEL_REQUEST, signal.length() + 32);
+        buffer.putInt(channelExec.getRecipient());
+        buffer.putString("signal");
+        buffer.putBoolean(false);
+        buffer.putString(signal);
+        channelExec.writePacket(buffer);
+    }
+
+    /**
+     * 命令是否因超过截止时间而被终止.
+     * @return 如果已超时, 返回 {@code true}.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * 命令是否被取消.
+     * @return 如果调用过 {@link #cancel()}(或等待时线程被中断), 返回 {@code true}.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 命令是否被提前终止.
+     * @return 如果命令超时或被取消, 返回 {@code true}.
+     */
+    public boolean isTerminated() {
+        return timedOut || cancelled;
+    }
+
+    private boolean isFinished() {
+        return channelExec.getExitStatus() != null || channelExec.getExitSignal() != null
+                || channelExec.isClosing() || channelExec.isClosed();
+    }
+
+    /**
+     * 打开通道并等待服务端确认.
+     * <p> 等待打开结果, 以便服务端拒绝打开通道时(例如超出 MaxSessions)能够抛出异常.
+     * 等待时间计入命令的截止时间, 服务端一直不确认时(例如连接已失效), 到达截止时间后关闭通道并抛出异常.
+     * @param effectiveTimeout 命令的截止时间, 0 为不限制(单位: 毫秒).
+     * @throws SocketTimeoutException 当截止时间内通道未能打开时抛出.
+     * @throws IOException 当服务端拒绝打开通道时抛出.
+     */
+    private void openChannel(long effectiveTimeout) throws IOException {
+        OpenFuture openFuture = channelExec.open();
+        if (effectiveTimeout > 0 && !openFuture.await(effectiveTimeout)) {
+            log.warn("等待通道打开超时({}ms), 已关闭通道.", effectiveTimeout);
+            timedOut = true;
+            channelExec.close(true);
+            throw new SocketTimeoutException("Timed out waiting for the channel to open (" + effectiveTimeout + "ms).");
+        }
+        openFuture.verify();
+    }
+
+    /**
+     * 设置截止任务.
+     * @param effectiveTimeout 命令的截止时间, 0 为不限制(单位: 毫秒).
+     * @param elapsed 打开通道已耗费的时间(单位: 毫秒).
+     */
+    private synchronized void scheduleDeadline(long effectiveTimeout, long elapsed) {
+        if (effectiveTimeout > 0) {
+            deadlineFuture = TERMINATOR.schedule(() -> {
+                if (!isFinished()) {
+                    log.warn("命令执行超时({}ms), 正在终止远端进程.", effectiveTimeout);
+                    timedOut = true;
+                    terminate();
+                }
+            }, Math.max(effectiveTimeout - elapsed, 1), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static long getDefaultTimeout() {
+        return Constants.instance == null ? DEFAULT_TIMEOUT : Constants.instance.getExecDefaultTimeout();
+    }
+
+    /**
+     * 终止远端进程.
+     * <p> 发送 {@code TERM} 信号, 宽限期后进程仍未退出则发送 {@code KILL} 信号并关闭通道.
+     */
+    private synchronized void terminate() {
+        if (terminating) {
+            return;
+        }
+        terminating = true;
+        if (deadlineFuture != null) {
+            deadlineFuture.cancel(false);
+        }
+        if (killGracePeriod == 0) {
+            kill();
+            return;
+        }
+        sendSignalQuietly("TERM");
+        TERMINATOR.schedule(this::kill, killGracePeriod, TimeUnit.MILLISECONDS);
+    }
+
+    private void kill() {
+        if (channelExec.getExitStatus() != null || channelExec.isClosed()) {
+            return;
+        }
+        sendSignalQuietly("KILL");
+        // 非强制关闭, 使 KILL 信号在关闭通道之前发出.
+        channelExec.close(false);
+    }
+
+    private void sendSignalQuietly(String signal) {
+        try {
+            signal(signal);
+        } catch (IOException | RuntimeException e) {
+            log.debug("发送 {} 信号失败.", signal, e);
+        }
+    }
+
+    private void checkNotExecuted() {
+        if (executed) {
+            throw new IllegalStateException("The command has already been executed.");
+        }
     }
 
     /**
@@ -76,15 +349,20 @@ public final class CommandExecSession implements Closeable {
      * @param in 待设置的输入流。
      */
     public void setIn(InputStream in) {
+        checkStreamMode(false);
+        inputStreamSet = true;
         channelExec.setIn(new InputStreamWrapper(in));
     }
 
     /**
      * 设置标准输出流.
      * <p> 对应待执行命令的 Stdout.
+     * <p> 如需在内存中保存输出, 建议使用 {@link OutputCapture} 限制内存占用, 以免远端输出过多导致内存溢出.
      * @param out 设置标准输出的输出流.
      */
     public void setOut(OutputStream out) {
+        checkStreamMode(false);
+        outputStreamSet = true;
         channelExec.setOut(new OutputStreamWrapper(out));
     }
 
@@ -94,15 +372,310 @@ public final class CommandExecSession implements Closeable {
      * @param err 设置错误输出的输出流.
      */
     public void setErr(OutputStream err) {
+        checkStreamMode(false);
+        outputStreamSet = true;
         channelExec.setErr(new OutputStreamWrapper(err));
     }
 
+    /**
+     * 获取写入命令标准输入的输出流.
+     * <p> 仅在未调用 {@link #setIn(InputStream)} 且命令已执行(通常为 {@code exec(true)})后可用,
+     * 适用于边生成边写入大量数据的情况; 写入完毕后需关闭该流, 远端程序才能读取到输入结束.
+     * @return 返回标准输入的输出流.
+     * @throws IllegalStateException 当命令尚未执行或已设置输入流时抛出.
+     */
+    public OutputStream getStdin() {
+        if (!executed || inputStreamSet || channelExec.getInvertedIn() == null) {
+            throw new IllegalStateException("Stdin is not available, execute the command without setting an input stream.");
+        }
+        return channelExec.getInvertedIn();
+    }
+
+    /**
+     * 获取读取命令标准输出的输入流.
+     * <p> 仅在未设置输出流且未使用流式输出时, 命令执行后可用, 未读取的输出将占用通道窗口并使远端程序暂停输出.
+     * 读取到流末尾表示远端已关闭标准输出.
+     * @return 返回标准输出的输入流.
+     * @throws IllegalStateException 当命令尚未执行或已选择其他方式处理标准输出时抛出.
+     */
+    public InputStream getStdout() {
+        if (!executed || channelExec.getInvertedOut() == null) {
+            throw new IllegalStateException("Stdout is not available, execute the command without setting an output stream.");
+        }
+        synchronized (this) {
+            if (stdout == null) {
+                stdout = new EofLatchedInputStream(channelExec.getInvertedOut());
+            }
+            return stdout;
+        }
+    }
+
+    /**
+     * 使用有界输出捕获收集标准输出.
+     * <p> 例如 {@code session.captureOut(OutputCapture.tail(64 * 1024))} 只保留最后 64 KiB 输出.
+     * @param capture 输出捕获.
+     * @param <T> 输出捕获类型.
+     * @return 返回传入的输出捕获, 命令执行完毕后可从中获取输出内容与丢弃字节数.
+     */
+    public <T extends OutputCapture> T captureOut(T capture) {
+        setOut(capture);
+        return capture;
+    }
+
+    /**
+     * 使用有界输出捕获收集错误输出.
+     * @param capture 输出捕获.
+     * @param <T> 输出捕获类型.
+     * @return 返回传入的输出捕获.
+     * @see #captureOut(OutputCapture)
+     */
+    public <T extends OutputCapture> T captureErr(T capture) {
+        setErr(capture);
+        return capture;
+    }
+
+    /**
+     * 以行的形式发布标准输出.
+     * <p> 输出以 UTF-8 解码, 在命令执行过程中逐行发布; 订阅者未请求数据时将暂停读取, 远端也会因通道窗口耗尽而暂停发送.
+     * <p> 需在 {@link #exec()} 之前调用并订阅, 只能有一个订阅者.
+     * <p> 命令结束(即 {@link #waitFor()} 返回)时输出不一定已全部发布, 输出结束以订阅者收到 {@code onComplete} 为准.
+     * @return 返回标准输出行的发布者.
+     * @throws IllegalStateException 当已设置输出流, 或已选择其他方式处理标准输出时抛出.
+     */
+    public Flow.Publisher<String> stdoutLines() {
+        ChannelOutputPublisher<String> publisher = ChannelOutputPublisher.lines(StandardCharsets.UTF_8);
+        setStdoutPublisher(publisher);
+        return publisher;
+    }
+
+    /**
+     * 以行的形式发布错误输出.
+     * @return 返回错误输出行的发布者.
+     * @throws IllegalStateException 当已设置输出流, 或已选择其他方式处理错误输出时抛出.
+     * @see #stdoutLines()
+     */
+    public Flow.Publisher<String> stderrLines() {
+        ChannelOutputPublisher<String> publisher = ChannelOutputPublisher.lines(StandardCharsets.UTF_8);
+        setStderrPublisher(publisher);
+        return publisher;
+    }
+
+    /**
+     * 以原始数据块的形式发布标准输出.
+     * <p> 适用于输出不是文本的情况, 背压行为与 {@link #stdoutLines()} 相同.
+     * @return 返回标准输出数据块的发布者.
+     * @throws IllegalStateException 当已设置输出流, 或已选择其他方式处理标准输出时抛出.
+     */
+    public Flow.Publisher<byte[]> stdoutChunks() {
+        ChannelOutputPublisher<byte[]> publisher = ChannelOutputPublisher.chunks();
+        setStdoutPublisher(publisher);
+        return publisher;
+    }
+
+    /**
+     * 以原始数据块的形式发布错误输出.
+     * @return 返回错误输出数据块的发布者.
+     * @throws IllegalStateException 当已设置输出流, 或已选择其他方式处理错误输出时抛出.
+     * @see #stdoutChunks()
+     */
+    public Flow.Publisher<byte[]> stderrChunks() {
+        ChannelOutputPublisher<byte[]> publisher = ChannelOutputPublisher.chunks();
+        setStderrPublisher(publisher);
+        return publisher;
+    }
+
+    /**
+     * 设置输出行监听器.
+     * <p> 标准输出与错误输出都将逐行回调给监听器.
+     * <p> 监听器在 SSH I/O 线程中调用, 不应执行耗时操作, 如需控制处理速度请使用 {@link #stdoutLines()}.
+     * @param listener 输出行监听器.
+     * @throws IllegalStateException 当已设置输出流, 或已选择其他方式处理输出时抛出.
+     */
+    public void onOutputLine(OutputLineListener listener) {
+        Objects.requireNonNull(listener);
+        stdoutLines().subscribe(new ListenerSubscriber(OutputType.STDOUT, listener));
+        stderrLines().subscribe(new ListenerSubscriber(OutputType.STDERR, listener));
+    }
+
+    private synchronized void setStdoutPublisher(ChannelOutputPublisher<?> publisher) {
+        checkStreamMode(true);
+        if (stdoutPublisher != null) {
+            throw new IllegalStateException("Stdout is already being published.");
+        }
+        enableStreaming();
+        stdoutPublisher = publisher;
+    }
+
+    private synchronized void setStderrPublisher(ChannelOutputPublisher<?> publisher) {
+        checkStreamMode(true);
+        if (stderrPublisher != null) {
+            throw new IllegalStateException("Stderr is already being published.");
+        }
+        enableStreaming();
+        stderrPublisher = publisher;
+    }
+
+    private void enableStreaming() {
+        if (!isStreaming()) {
+            channelExec.setStreaming(ClientChannel.Streaming.Async);
+        }
+    }
+
+    private boolean isStreaming() {
+        return channelExec.getStreaming() == ClientChannel.Streaming.Async;
+    }
+
+    private void checkStreamMode(boolean streaming) {
+        if (executed) {
+            throw new IllegalStateException("The command has already been executed.");
+        } else if (streaming && outputStreamSet) {
+            throw new IllegalStateException("Output stream has been set, streaming output is not available.");
+        } else if (!streaming && isStreaming()) {
+            throw new IllegalStateException("Streaming output is enabled, the stream cannot be set.");
+        }
+    }
+
+    private synchronized void attachPublisher(boolean stdout) {
+        ChannelOutputPublisher<?> publisher = stdout ? stdoutPublisher : stderrPublisher;
+        if (publisher == null) {
+            publisher = ChannelOutputPublisher.chunks();
+        }
+        if (!publisher.hasSubscriber()) {
+            publisher.subscribe(new DiscardSubscriber());
+        }
+        publisher.attach(stdout ? channelExec.getAsyncOut() : channelExec.getAsyncErr());
+    }
+
+    /**
+     * 输出类型.
+     */
+    public enum OutputType {
+        /**
+         * 标准输出.
+         */
+        STDOUT,
+        /**
+         * 错误输出.
+         */
+        STDERR
+    }
+
+    /**
+     * 输出行监听器.
+     */
+    @FunctionalInterface
+    public interface OutputLineListener {
+
+        /**
+         * 收到一行输出.
+         * @param type 输出类型.
+         * @param line 输出行, 不包括换行符.
+         */
+        void onLine(OutputType type, String line);
+    }
+
+    /**
+     * 将输出行转发给监听器的订阅者.
+     */
+    private record ListenerSubscriber(OutputType type, OutputLineListener listener) implements Flow.Subscriber<String> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String item) {
+            listener.onLine(type, item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    /**
+     * 记住流末尾的输入流.
+     * <p> 通道关闭后, sshd 的管道输入流在已返回流末尾的情况下再次读取会抛出异常,
+     * 而 {@link java.io.BufferedInputStream} 等包装流可能在流末尾之后继续读取, 所以到达流末尾后不再读取底层流.
+     */
+    private static final class EofLatchedInputStream extends FilterInputStream {
+
+        private boolean eof = false;
+
+        private EofLatchedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (eof) {
+                return -1;
+            }
+            int b = in.read();
+            eof = b == -1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) {
+                return -1;
+            } else if (len == 0) {
+                return 0;
+            }
+            int read = in.read(b, off, len);
+            eof = read == -1;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return eof ? 0 : in.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return eof ? 0 : in.available();
+        }
+    }
+
+    /**
+     * 丢弃所有数据的订阅者, 用于读取未订阅的输出.
+     */
+    private static class DiscardSubscriber implements Flow.Subscriber<Object> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Object item) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
     /**
      * 关闭命令执行会话.
      * @throws IOException 可能会引发的异常.
      */
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            if (deadlineFuture != null) {
+                deadlineFuture.cancel(false);
+            }
+        }
         channelExec.close();
     }
 }
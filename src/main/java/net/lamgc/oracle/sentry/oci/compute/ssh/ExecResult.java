@@ -0,0 +1,52 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 命令执行结果.
+ * @param exitCode 命令退出代码, 如果命令未正常结束则为 {@code null}.
+ * @param stdout 标准输出内容.
+ * @param stderr 错误输出内容.
+ * @param droppedBytes 因超出输出限制而丢弃的字节数(标准输出与错误输出之和).
+ * @param duration 从打开通道到命令结束的耗时, 单位: 毫秒.
+ * @param timedOut 命令是否因超过截止时间而被终止.
+ * @param cancelled 命令是否被取消.
+ * @author LamGC
+ */
+public record ExecResult(Integer exitCode, byte[] stdout, byte[] stderr, long droppedBytes, long duration,
+                         boolean timedOut, boolean cancelled) {
+
+    /**
+     * 命令是否执行成功.
+     * @return 如果命令未被提前终止且退出代码为 0, 返回 {@code true}.
+     */
+    public boolean isSuccess() {
+        return !isTerminated() && exitCode != null && exitCode == 0;
+    }
+
+    /**
+     * 命令是否被提前终止.
+     * <p> 被终止的命令输出可能不完整.
+     * @return 如果命令超时或被取消, 返回 {@code true}.
+     */
+    public boolean isTerminated() {
+        return timedOut || cancelled;
+    }
+
+    /**
+     * 以 UTF-8 编码获取标准输出内容.
+     * @return 返回标准输出文本.
+     */
+    public String getStdoutText() {
+        return new String(stdout, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 以 UTF-8 编码获取错误输出内容.
+     * @return 返回错误输出文本.
+     */
+    public String getStderrText() {
+        return new String(stderr, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,314 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lamgc.oracle.sentry.common.io.HeadTailCapture;
+import net.lamgc.oracle.sentry.common.io.OutputCapture;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 批量命令执行器.
+ * <p> 在多台实例上并行执行同一条命令, 类似 pssh.
+ * <ul>
+ *     <li> 同时执行的实例数量受 {@code concurrency} 限制;
+ *     <li> 每台实例的超时时间从该实例开始连接时计算, 超时后将中止连接或关闭执行通道;
+ *     <li> 执行结果按完成顺序以流的形式返回, 可在其他实例仍在执行时处理已完成的结果;
+ *     <li> 每台实例的输出只保留开头与结尾部分(见 {@link OutputCapture#headTail(int, int)}), 内存占用不受远端输出量影响.
+ * </ul>
+ * <p> 会话通过 {@link InstanceSsh#leaseSession()} 从会话池租用, 所以对同一批实例重复执行命令时无需重新连接.
+ * @author LamGC
+ */
+public final class FleetExecutor {
+
+    private final static Logger log = LoggerFactory.getLogger(FleetExecutor.class);
+    private final static ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("Thread-FleetExec-%d")
+            .setDaemon(true)
+            .build();
+    private final static ScheduledExecutorService TIMEOUT_WATCHDOG = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("Thread-FleetExecWatchdog-%d")
+                    .setDaemon(true)
+                    .build());
+
+    private final int concurrency;
+    private final long timeout;
+    private final int outputHeadLimit;
+    private final int outputTailLimit;
+
+    private FleetExecutor(int concurrency, long timeout, int outputHeadLimit, int outputTailLimit) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency cannot be less than or equal to 0.");
+        } else if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout cannot be less than or equal to 0.");
+        }
+        this.concurrency = concurrency;
+        this.timeout = timeout;
+        this.outputHeadLimit = outputHeadLimit;
+        this.outputTailLimit = outputTailLimit;
+    }
+
+    /**
+     * 在所有实例上执行命令.
+     * <p> 调用后所有任务将立即开始执行, 无需等待流被消费.
+     * @param instances 需要执行命令的实例.
+     * @param command 待执行的命令.
+     * @return 返回按完成顺序排列的执行结果流, 流中的元素数量与实例数量相同.
+     *          获取下一个结果时将阻塞至有实例执行完成.
+     */
+    public Stream<HostExecResult> execute(Collection<ComputeInstance> instances, String command) {
+        Objects.requireNonNull(command);
+        return execute(instances, instance -> new HostTask(instance, command, null, null));
+    }
+
+    /**
+     * 在所有实例上执行脚本.
+     * <p> 脚本通过 {@link RemoteScriptCache} 按内容哈希保存在实例上, 已保存脚本的实例只需执行一条短命令,
+     * 适合在多台实例上重复执行较长的脚本.
+     * @param instances 需要执行脚本的实例.
+     * @param script 待执行的脚本.
+     * @param args 脚本参数.
+     * @return 返回按完成顺序排列的执行结果流.
+     * @see #execute(Collection, String)
+     */
+    public Stream<HostExecResult> executeScript(Collection<ComputeInstance> instances, RemoteScript script, String... args) {
+        Objects.requireNonNull(script);
+        List<String> argList = List.of(args);
+        return execute(instances, instance -> new HostTask(instance, null, script, argList));
+    }
+
+    private Stream<HostExecResult> execute(Collection<ComputeInstance> instances, Function<ComputeInstance, HostTask> taskFactory) {
+        if (instances.isEmpty()) {
+            return Stream.empty();
+        }
+        // 会话在执行线程中租用, 需在调用线程中记录使用的实例.
+        SshUsageRecorder recorder = SshUsageRecorder.current();
+        if (recorder != null) {
+            instances.forEach(recorder::add);
+        }
+        BlockingQueue<HostExecResult> results = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, instances.size()), THREAD_FACTORY);
+        for (ComputeInstance instance : instances) {
+            HostTask task = taskFactory.apply(instance);
+            executor.execute(() -> results.add(task.run()));
+        }
+        // 已提交的任务会继续执行, 执行完毕后线程池自动退出.
+        executor.shutdown();
+        return Stream.generate(() -> {
+            try {
+                return results.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for results.");
+            }
+        }).limit(instances.size());
+    }
+
+    /**
+     * 单台实例的执行任务.
+     */
+    private final class HostTask {
+
+        private final ComputeInstance instance;
+        private final String command;
+        private final RemoteScript script;
+        private final List<String> args;
+        private Thread workerThread;
+        private CommandExecSession execSession;
+        private HeadTailCapture stdout = OutputCapture.headTail(outputHeadLimit, outputTailLimit);
+        private HeadTailCapture stderr = OutputCapture.headTail(outputHeadLimit, outputTailLimit);
+        private boolean finished;
+        private boolean timedOut;
+
+        /**
+         * 创建执行任务.
+         * @param command 待执行的命令, 执行脚本时为 {@code null}.
+         * @param script 待执行的脚本, 执行命令时为 {@code null}.
+         * @param args 脚本参数.
+         */
+        private HostTask(ComputeInstance instance, String command, RemoteScript script, List<String> args) {
+            this.instance = instance;
+            this.command = command;
+            this.script = script;
+            this.args = args;
+        }
+
+        HostExecResult run() {
+            long startTime = System.currentTimeMillis();
+            synchronized (this) {
+                workerThread = Thread.currentThread();
+            }
+            ScheduledFuture<?> watchdog = TIMEOUT_WATCHDOG.schedule(this::abort, timeout, TimeUnit.MILLISECONDS);
+            Integer exitCode = null;
+            Throwable error = null;
+            PooledSshSession session = null;
+            boolean aborted;
+            try {
+                session = instance.ssh().leaseSession();
+                PooledSshSession leasedSession = session;
+                if (script == null) {
+                    exitCode = execOnce(leasedSession, command, null).exitCode();
+                } else {
+                    exitCode = RemoteScriptCache.getDefault().execute(instance.getInstanceId(), script, args,
+                            (scriptCommand, input) -> execOnce(leasedSession, scriptCommand, input)).exitCode();
+                }
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                watchdog.cancel(false);
+                synchronized (this) {
+                    finished = true;
+                    aborted = timedOut;
+                    // 清除看门狗可能设置的中断标记, 避免影响线程池中的下一个任务.
+                    Thread.interrupted();
+                }
+                if (session != null) {
+                    closeSession(session, aborted || error != null);
+                }
+            }
+            if (aborted) {
+                exitCode = null;
+                error = null;
+                log.warn("实例 {} 执行命令超时.", instance.getInstanceId());
+            } else if (error != null) {
+                log.debug("实例 {} 执行命令失败.", instance.getInstanceId(), error);
+            }
+            HeadTailCapture stdout;
+            HeadTailCapture stderr;
+            synchronized (this) {
+                stdout = this.stdout;
+                stderr = this.stderr;
+            }
+            return new HostExecResult(instance, exitCode, stdout.toByteArray(), stderr.toByteArray(),
+                    stdout.getDroppedBytes() + stderr.getDroppedBytes(),
+                    System.currentTimeMillis() - startTime, aborted, error);
+        }
+
+        private ExecResult execOnce(PooledSshSession session, String command, byte[] input) throws IOException {
+            long startTime = System.currentTimeMillis();
+            // 每次执行使用新的输出捕获, 例如脚本需要重新安装时, 结果中不保留第一次执行的输出.
+            HeadTailCapture out = OutputCapture.headTail(outputHeadLimit, outputTailLimit);
+            HeadTailCapture err = OutputCapture.headTail(outputHeadLimit, outputTailLimit);
+            CommandExecSession exec = session.createExecSession(command);
+            synchronized (this) {
+                if (timedOut) {
+                    exec.close();
+                    throw new InterruptedIOException();
+                }
+                execSession = exec;
+                stdout = out;
+                stderr = err;
+            }
+            try (exec) {
+                exec.setOut(out);
+                exec.setErr(err);
+                if (input != null) {
+                    exec.setIn(new ByteArrayInputStream(input));
+                }
+                exec.exec();
+                return new ExecResult(exec.exitCode(), out.toByteArray(), err.toByteArray(),
+                        out.getDroppedBytes() + err.getDroppedBytes(),
+                        System.currentTimeMillis() - startTime, exec.isTimedOut(), exec.isCancelled());
+            }
+        }
+
+        /**
+         * 超时中止任务.
+         * <p> 中断执行线程以打断连接过程, 并终止远端进程以结束命令等待(见 {@link CommandExecSession#cancel()}).
+         */
+        private synchronized void abort() {
+            if (finished) {
+                return;
+            }
+            timedOut = true;
+            workerThread.interrupt();
+            if (execSession != null) {
+                execSession.cancel();
+            }
+        }
+
+        private void closeSession(PooledSshSession session, boolean invalidate) {
+            try {
+                if (invalidate) {
+                    // 会话状态未知, 不能归还到会话池.
+                    session.invalidate();
+                } else {
+                    session.close();
+                }
+            } catch (IOException e) {
+                log.debug("关闭 SSH 会话时发生异常.", e);
+            }
+        }
+    }
+
+    /**
+     * 获取一个构建器.
+     * @return 返回新的构建器.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@link FleetExecutor} 构建器.
+     */
+    public static class Builder {
+
+        private int concurrency = 16;
+        private long timeout = 60000;
+        private int outputHeadLimit = 64 * 1024;
+        private int outputTailLimit = 64 * 1024;
+
+        private Builder() {
+        }
+
+        public FleetExecutor create() {
+            return new FleetExecutor(concurrency, timeout, outputHeadLimit, outputTailLimit);
+        }
+
+        /**
+         * 设置每台实例保留的输出大小.
+         * <p> 标准输出与错误输出分别计算, 超出部分将从中间丢弃.
+         * @param headBytes 保留的开头字节数, 默认为 64 KiB.
+         * @param tailBytes 保留的结尾字节数, 默认为 64 KiB.
+         * @return 返回构建器本身.
+         */
+        public Builder outputLimit(int headBytes, int tailBytes) {
+            this.outputHeadLimit = headBytes;
+            this.outputTailLimit = tailBytes;
+            return this;
+        }
+
+        /**
+         * 设置最大并发数.
+         * @param concurrency 同时执行命令的实例数量, 默认为 16.
+         * @return 返回构建器本身.
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * 设置每台实例的超时时间.
+         * @param timeout 超时时间, 包括连接与命令执行, 默认为 60 秒(单位: 毫秒).
+         * @return 返回构建器本身.
+         */
+        public Builder timeout(long timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+    }
+
+}
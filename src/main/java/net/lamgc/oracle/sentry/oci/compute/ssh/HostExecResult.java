@@ -0,0 +1,46 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 单台实例的命令执行结果.
+ * @param instance 执行命令的实例.
+ * @param exitCode 命令退出代码, 如果命令未执行完毕(例如连接失败或超时), 则为 {@code null}.
+ * @param stdout 标准输出内容.
+ * @param stderr 错误输出内容.
+ * @param droppedBytes 因超出输出限制而丢弃的字节数(标准输出与错误输出之和).
+ * @param duration 从开始连接到命令结束的耗时, 单位: 毫秒.
+ * @param timedOut 是否因超时而中止.
+ * @param error 执行过程中发生的异常, 如果没有异常则为 {@code null}.
+ * @author LamGC
+ */
+public record HostExecResult(ComputeInstance instance, Integer exitCode, byte[] stdout, byte[] stderr,
+                             long droppedBytes, long duration, boolean timedOut, Throwable error) {
+
+    /**
+     * 命令是否执行成功.
+     * @return 如果命令正常执行完毕且退出代码为 0, 返回 {@code true}.
+     */
+    public boolean isSuccess() {
+        return !timedOut && error == null && exitCode != null && exitCode == 0;
+    }
+
+    /**
+     * 以 UTF-8 编码获取标准输出内容.
+     * @return 返回标准输出文本.
+     */
+    public String getStdoutText() {
+        return new String(stdout, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 以 UTF-8 编码获取错误输出内容.
+     * @return 返回错误输出文本.
+     */
+    public String getStderrText() {
+        return new String(stderr, StandardCharsets.UTF_8);
+    }
+
+}
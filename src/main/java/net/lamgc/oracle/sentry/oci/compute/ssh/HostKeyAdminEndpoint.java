@@ -0,0 +1,180 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 服务器公钥确认的本地管理接口.
+ * <p> 只监听本地回环地址, 供无法使用控制台(例如以服务方式运行)时确认服务器公钥:
+ * <ul>
+ *     <li>{@code GET /host-keys}: 列出等待确认的公钥.</li>
+ *     <li>{@code POST /host-keys/<Id>/approve}: 确认公钥可信.</li>
+ *     <li>{@code POST /host-keys/<Id>/reject}: 拒绝公钥.</li>
+ * </ul>
+ * <p> 每次启动时生成随机令牌并在日志中输出一次, 所有请求都需要通过 {@code Authorization: Bearer <令牌>} 携带令牌.
+ * 带有 {@code Origin} 或 {@code Referer} 请求头的请求(即来自浏览器页面的请求)将被拒绝,
+ * 以免网页通过跨域表单提交确认公钥.
+ * @author LamGC
+ */
+public final class HostKeyAdminEndpoint implements AutoCloseable {
+
+    private final static Logger log = LoggerFactory.getLogger(HostKeyAdminEndpoint.class);
+
+    private final static String CONTEXT_PATH = "/host-keys";
+    private final static String CONTEXT_SEGMENT = "host-keys";
+    private final static String TOKEN_PREFIX = "Bearer ";
+    private final static int TOKEN_LENGTH = 32;
+    private final static Gson GSON = new Gson();
+
+    private final HostKeyApprovalQueue queue;
+    private final HttpServer server;
+    private final String token;
+
+    /**
+     * 创建并启动管理接口.
+     * @param queue 服务器公钥确认队列.
+     * @param port 监听端口, 为 0 时随机选择.
+     * @throws IOException 当端口无法监听时抛出.
+     */
+    public HostKeyAdminEndpoint(HostKeyApprovalQueue queue, int port) throws IOException {
+        this.queue = Objects.requireNonNull(queue);
+        this.token = generateToken();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // 由本类按路径段匹配, 以免 HttpServer 的前缀匹配接受 "/host-keysX" 之类的路径.
+        server.createContext("/", this::handle);
+        server.start();
+        log.info("服务器公钥确认接口已启动, 地址: http://{}:{}{}, 访问令牌: {}",
+                InetAddress.getLoopbackAddress().getHostAddress(), getPort(), CONTEXT_PATH, token);
+    }
+
+    private static String generateToken() {
+        byte[] data = new byte[TOKEN_LENGTH];
+        new SecureRandom().nextBytes(data);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+    }
+
+    /**
+     * 获取监听端口.
+     * @return 返回实际监听的端口.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * 获取访问令牌.
+     * @return 返回本次启动生成的访问令牌.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (exchange.getRequestHeaders().containsKey("Origin")
+                    || exchange.getRequestHeaders().containsKey("Referer")) {
+                respond(exchange, 403, Map.of("error", "Browser requests are not allowed."));
+                return;
+            } else if (!isAuthorized(exchange)) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                respond(exchange, 401, Map.of("error", "Unauthorized."));
+                return;
+            }
+
+            // 格式: /host-keys 或 /host-keys/<Id>/<approve|reject>
+            List<String> segments = Arrays.stream(exchange.getRequestURI().getPath().split("/"))
+                    .filter(segment -> !segment.isEmpty())
+                    .toList();
+            String method = exchange.getRequestMethod();
+            if (segments.isEmpty() || !CONTEXT_SEGMENT.equals(segments.get(0))
+                    || (segments.size() != 1 && segments.size() != 3)) {
+                respond(exchange, 404, Map.of("error", "Not found."));
+                return;
+            } else if (segments.size() == 1) {
+                if (!"GET".equals(method)) {
+                    respond(exchange, 405, Map.of("error", "Method not allowed."));
+                    return;
+                }
+                List<Map<String, Object>> keys = queue.getPendingKeys().stream().map(this::toJsonObject).toList();
+                respond(exchange, 200, keys);
+                return;
+            } else if (!"POST".equals(method)) {
+                respond(exchange, 405, Map.of("error", "Method not allowed."));
+                return;
+            }
+            String id = segments.get(1);
+            String action = segments.get(2);
+            boolean result;
+            switch (action) {
+                case "approve" -> result = queue.approve(id);
+                case "reject" -> result = queue.reject(id);
+                default -> {
+                    respond(exchange, 404, Map.of("error", "Not found."));
+                    return;
+                }
+            }
+            if (result) {
+                respond(exchange, 200, Map.of("id", id, "action", action));
+            } else {
+                respond(exchange, 404, Map.of("error", "Pending key not found: " + id));
+            }
+        } catch (RuntimeException e) {
+            log.error("处理服务器公钥确认请求时发生异常.", e);
+        }
+    }
+
+    private boolean isAuthorized(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith(TOKEN_PREFIX)) {
+            return false;
+        }
+        byte[] actual = authorization.substring(TOKEN_PREFIX.length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), actual);
+    }
+
+    private Map<String, Object> toJsonObject(HostKeyApprovalQueue.PendingHostKey pendingKey) {
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("id", pendingKey.getId());
+        object.put("instanceId", pendingKey.getInstanceId());
+        object.put("address", pendingKey.getAddress());
+        object.put("fingerprint", pendingKey.getFingerprint());
+        object.put("requestTime", pendingKey.getRequestTime());
+        return object;
+    }
+
+    private static void respond(HttpExchange exchange, int code, Object body) throws IOException {
+        byte[] data = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, data.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(data);
+        }
+    }
+
+    /**
+     * 关闭管理接口.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        log.info("服务器公钥确认接口已关闭.");
+    }
+
+}
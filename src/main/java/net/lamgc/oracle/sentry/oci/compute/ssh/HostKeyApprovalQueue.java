@@ -0,0 +1,388 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lamgc.oracle.sentry.common.LazyLoader;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 服务器公钥确认队列.
+ * <p> 首次连接策略为 {@code confirm} 时, 未知的服务器公钥将被登记到本队列中等待用户确认,
+ * SSH 握手不会等待用户输入, 而是立即拒绝本次连接. 等待确认的工作由发起连接的调用方线程完成(见 {@link InstanceSsh}),
+ * 用户确认后调用方将重新连接, 所以 SSH 客户端的 I/O 线程不会因等待用户而阻塞.
+ * <p> 同一实例的同一公钥只会登记一次, 同时发起的多个首次连接共享同一个确认结果.
+ * 被拒绝的公钥将被记住, 之后再次出现时直接拒绝, 不会重复询问.
+ * <p> 可通过控制台(输入 {@code approve <Id>} / {@code reject <Id>})
+ * 或本地管理接口(见 {@link HostKeyAdminEndpoint})进行确认.
+ * @author LamGC
+ */
+public final class HostKeyApprovalQueue {
+
+    private final static Logger log = LoggerFactory.getLogger(HostKeyApprovalQueue.class);
+
+    private final static LazyLoader<HostKeyApprovalQueue> DEFAULT_QUEUE =
+            new LazyLoader<>(() -> new HostKeyApprovalQueue(System.in));
+
+    private final static ExecutorService NOTICE_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("Thread-HostKeyNotice-%d")
+            .setDaemon(true)
+            .build());
+
+    private final Map<String, PendingHostKey> pendingKeys = new LinkedHashMap<>();
+    private final Set<String> rejectedKeys = ConcurrentHashMap.newKeySet();
+    private final InputStream consoleInput;
+    private Thread consoleThread;
+
+    /**
+     * 创建服务器公钥确认队列.
+     * @param consoleInput 控制台输入流, 首次有公钥等待确认时开始读取.
+     *                     如果为 {@code null}, 则只能通过 {@link #approve(String)} 与 {@link #reject(String)} 确认.
+     */
+    HostKeyApprovalQueue(InputStream consoleInput) {
+        this.consoleInput = consoleInput;
+    }
+
+    /**
+     * 获取默认的服务器公钥确认队列.
+     * @return 返回进程共享的确认队列.
+     */
+    public static HostKeyApprovalQueue getDefault() {
+        return DEFAULT_QUEUE.getInstance();
+    }
+
+    /**
+     * 登记等待确认的服务器公钥.
+     * <p> 如果该实例的该公钥已在等待确认, 则返回已有的登记, 否则创建新登记并通知用户确认.
+     * 如果该公钥曾被拒绝, 返回已拒绝的登记.
+     * <p> 本方法不会阻塞, 也不会调用任何 API, 可在 SSH 握手中调用.
+     * @param instanceId 实例 Id.
+     * @param instanceName 实例名称提供器, 仅在通知用户时调用(在通知线程中执行).
+     * @param address 服务器地址.
+     * @param serverKey 服务器公钥.
+     * @param approvedListener 公钥被确认后, 在唤醒等待方之前调用, 只在创建新登记时设置.
+     * @return 返回公钥登记, 调用方应直接等待该登记的结果(见 {@link PendingHostKey#await(long, TimeUnit)}),
+     *         而不是之后再查找登记, 因为登记可能在查找前就已被处理.
+     */
+    PendingHostKey submit(String instanceId, Supplier<String> instanceName, String address,
+                          PublicKey serverKey, Consumer<PublicKey> approvedListener) {
+        String fingerprint = KeyUtils.getFingerPrint(serverKey);
+        String keyId = instanceId + "/" + fingerprint;
+        PendingHostKey pendingKey;
+        synchronized (pendingKeys) {
+            for (PendingHostKey existKey : pendingKeys.values()) {
+                if (existKey.keyId.equals(keyId)) {
+                    return existKey;
+                }
+            }
+            pendingKey = new PendingHostKey(UUID.randomUUID().toString(), keyId, instanceId,
+                    address, fingerprint, System.currentTimeMillis(), serverKey, approvedListener);
+            if (rejectedKeys.contains(keyId)) {
+                pendingKey.decision.complete(false);
+                return pendingKey;
+            }
+            pendingKeys.put(pendingKey.getId(), pendingKey);
+        }
+        startConsoleReader();
+        NOTICE_EXECUTOR.execute(() -> notice(pendingKey, instanceName));
+        return pendingKey;
+    }
+
+    /**
+     * 获取所有等待确认的公钥.
+     * @return 返回按登记顺序排列的公钥登记.
+     */
+    public List<PendingHostKey> getPendingKeys() {
+        synchronized (pendingKeys) {
+            return List.copyOf(pendingKeys.values());
+        }
+    }
+
+    /**
+     * 获取等待确认的公钥.
+     * @param id 登记 Id.
+     * @return 如果存在该登记, 返回登记, 否则返回 {@code null}.
+     */
+    public PendingHostKey getPendingKey(String id) {
+        synchronized (pendingKeys) {
+            return pendingKeys.get(id);
+        }
+    }
+
+    /**
+     * 确认公钥可信.
+     * <p> 公钥将被设置为实例的信任公钥, 等待该公钥的连接将重新连接.
+     * @param id 登记 Id.
+     * @return 如果存在该登记, 返回 {@code true}.
+     */
+    public boolean approve(String id) {
+        return decide(id, true);
+    }
+
+    /**
+     * 拒绝公钥.
+     * <p> 等待该公钥的连接将失败, 之后再次出现该公钥时将直接拒绝.
+     * @param id 登记 Id.
+     * @return 如果存在该登记, 返回 {@code true}.
+     */
+    public boolean reject(String id) {
+        return decide(id, false);
+    }
+
+    private boolean decide(String id, boolean approved) {
+        PendingHostKey pendingKey;
+        synchronized (pendingKeys) {
+            pendingKey = pendingKeys.remove(id);
+            if (pendingKey != null && !approved) {
+                rejectedKeys.add(pendingKey.keyId);
+            }
+        }
+        if (pendingKey == null) {
+            return false;
+        }
+        if (approved) {
+            log.info("用户已确认服务器密钥可信, 将该密钥列入该实例下的信任密钥.(Id: {}, InstanceId: {})",
+                    id, pendingKey.getInstanceId());
+            // 必须在唤醒等待方之前设置信任公钥, 否则等待方重新连接时可能仍未设置公钥.
+            try {
+                pendingKey.approvedListener.accept(pendingKey.serverKey);
+            } catch (RuntimeException e) {
+                log.error("设置实例信任公钥时发生异常.(Id: {}, InstanceId: {})", id, pendingKey.getInstanceId(), e);
+            }
+        } else {
+            log.warn("用户已确认该密钥不可信, 将拒绝使用该密钥的连接.(Id: {}, InstanceId: {})",
+                    id, pendingKey.getInstanceId());
+        }
+        pendingKey.decision.complete(approved);
+        return true;
+    }
+
+    private void notice(PendingHostKey pendingKey, Supplier<String> instanceName) {
+        String name;
+        try {
+            name = instanceName.get();
+        } catch (Exception e) {
+            log.debug("获取实例名称失败.", e);
+            name = "(Unknown)";
+        }
+        log.warn("""
+                实例 SSH 为首次连接, 为确保 SSH 安全性，请通过可信渠道获取服务器密钥指纹, 并与下列指纹比对:
+                确认 ID：{}
+                实例 ID：{}
+                实例名称：{}
+                连接地址：{}
+                密钥指纹：
+
+                            {}
+
+                如果指纹相同，该密钥可信，请输入“approve {}”，否则输入“reject {}”拒绝连接。
+                (仅有一个密钥等待确认时, 也可以输入“Yes”或“No”.)""",
+                pendingKey.getId(), pendingKey.getInstanceId(), name,
+                pendingKey.getAddress(), pendingKey.getFingerprint(),
+                pendingKey.getId(), pendingKey.getId());
+    }
+
+    private synchronized void startConsoleReader() {
+        if (consoleInput == null || consoleThread != null) {
+            return;
+        }
+        consoleThread = new Thread(this::readConsole, "Thread-HostKeyConsole");
+        consoleThread.setDaemon(true);
+        consoleThread.start();
+    }
+
+    private void readConsole() {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(consoleInput, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                handleCommand(line.trim());
+            }
+            log.debug("控制台输入已关闭, 停止读取公钥确认命令.");
+        } catch (IOException e) {
+            log.error("读取控制台输入时发生异常, 停止读取公钥确认命令.", e);
+        }
+    }
+
+    /**
+     * 处理控制台命令.
+     * @param command 命令.
+     */
+    void handleCommand(String command) {
+        if (command.isEmpty()) {
+            return;
+        }
+        String[] args = command.split("\\s+");
+        String action = args[0].toLowerCase();
+        String id;
+        if (args.length >= 2) {
+            id = args[1];
+        } else {
+            List<PendingHostKey> keys = getPendingKeys();
+            if (keys.size() != 1) {
+                if (keys.isEmpty()) {
+                    log.info("当前没有等待确认的服务器公钥.");
+                } else {
+                    log.warn("当前有 {} 个服务器公钥等待确认, 请指定确认 ID: {}", keys.size(), keys);
+                }
+                return;
+            }
+            id = keys.get(0).getId();
+        }
+
+        boolean result;
+        switch (action) {
+            case "yes", "approve" -> result = approve(id);
+            case "no", "reject" -> result = reject(id);
+            default -> {
+                log.debug("忽略无法识别的控制台输入: {}", command);
+                return;
+            }
+        }
+        if (!result) {
+            log.warn("确认 ID 不存在或已被处理: {}", id);
+        }
+    }
+
+    /**
+     * 等待确认的服务器公钥.
+     */
+    public static final class PendingHostKey {
+
+        private final String id;
+        private final String keyId;
+        private final String instanceId;
+        private final String address;
+        private final String fingerprint;
+        private final long requestTime;
+        private final PublicKey serverKey;
+        private final Consumer<PublicKey> approvedListener;
+        private final CompletableFuture<Boolean> decision = new CompletableFuture<>();
+
+        private PendingHostKey(String id, String keyId, String instanceId, String address, String fingerprint,
+                               long requestTime, PublicKey serverKey, Consumer<PublicKey> approvedListener) {
+            this.id = id;
+            this.keyId = keyId;
+            this.instanceId = instanceId;
+            this.address = address;
+            this.fingerprint = fingerprint;
+            this.requestTime = requestTime;
+            this.serverKey = serverKey;
+            this.approvedListener = approvedListener;
+        }
+
+        /**
+         * 获取登记 Id, 用于确认或拒绝.
+         * <p> 登记 Id 为随机生成的 UUID, 无法被猜测.
+         * @return 返回登记 Id.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * 获取实例 Id.
+         * @return 返回公钥所属实例的 Id.
+         */
+        public String getInstanceId() {
+            return instanceId;
+        }
+
+        /**
+         * 获取服务器地址.
+         * @return 返回出示该公钥的服务器地址.
+         */
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * 获取公钥指纹.
+         * @return 返回公钥指纹.
+         */
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * 获取登记时间.
+         * @return 返回登记时间戳, 单位: 毫秒.
+         */
+        public long getRequestTime() {
+            return requestTime;
+        }
+
+        /**
+         * 是否已作出决定.
+         * @return 如果已确认或已拒绝, 返回 {@code true}.
+         */
+        public boolean isDecided() {
+            return decision.isDone();
+        }
+
+        /**
+         * 等待用户确认.
+         * <p> 请勿在 SSH 客户端的 I/O 线程中调用.
+         * @param timeout 最长等待时间.
+         * @param unit 时间单位.
+         * @return 如果公钥被确认可信, 返回 {@code true}, 被拒绝或等待超时返回 {@code false}.
+         * @throws InterruptedException 当等待被中断时抛出.
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            try {
+                return decision.get(timeout, unit);
+            } catch (TimeoutException | ExecutionException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "PendingHostKey{" +
+                    "id='" + id + '\'' +
+                    ", instanceId='" + instanceId + '\'' +
+                    ", address='" + address + '\'' +
+                    ", fingerprint='" + fingerprint + '\'' +
+                    '}';
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            return id.equals(((PendingHostKey) o).id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id);
+        }
+    }
+
+}
@@ -1,25 +1,30 @@
 package net.lamgc.oracle.sentry.oci.compute.ssh;
 
-import com.google.common.base.Strings;
+import com.oracle.bmc.core.model.Instance;
 import net.lamgc.oracle.sentry.Constants;
 import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
-import org.apache.sshd.client.SshClient;
+import net.lamgc.oracle.sentry.oci.compute.InstanceEndpoint;
+import net.lamgc.oracle.sentry.oci.compute.InstanceEndpointResolver;
 import org.apache.sshd.client.future.AuthFuture;
 import org.apache.sshd.client.future.ConnectFuture;
 import org.apache.sshd.client.session.ClientSession;
-import org.apache.sshd.common.config.keys.FilePasswordProvider;
-import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.apache.sshd.common.keyprovider.KeyIdentityProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 实例 SSH 客户端.
  * <p> 包装并简化了 SSH 会话的创建流程.
+ * <p> 所有实例共用同一个 {@link org.apache.sshd.client.SshClient}(见 {@link SharedSshClient}),
+ * 本类只负责为会话设置该实例的认证身份与服务器公钥验证器, 创建本对象的开销很小.
  * @author LamGC
  */
 @SuppressWarnings("unused")
@@ -29,7 +34,9 @@ public class InstanceSsh implements AutoCloseable {
 
     private final ComputeInstance instance;
     private final SshAuthInfo authInfo;
-    private final SshClient sshClient;
+    private final OracleInstanceServerKeyVerifier serverKeyVerifier;
+    private final KeyIdentityProvider keyIdentityProvider;
+    private final Set<ClientSession> createdSessions = ConcurrentHashMap.newKeySet();
 
     /**
      * 创建连接实例用的 SSH 客户端.
@@ -40,51 +47,199 @@ public class InstanceSsh implements AutoCloseable {
         this.instance = Objects.requireNonNull(instance);
         this.authInfo = Objects.requireNonNull(authInfo);
 
-        sshClient = SshClient.setUpDefaultClient();
-        sshClient.setForwardingFilter(Constants.instance.getForwardingFilter());
-        sshClient.setServerKeyVerifier(new OracleInstanceServerKeyVerifier(instance, authInfo));
+        this.serverKeyVerifier = new OracleInstanceServerKeyVerifier(instance, authInfo);
         if (authInfo instanceof PublicKeyAuthInfo info) {
-            FileKeyPairProvider fileKeyPairProvider = new FileKeyPairProvider(info.getPrivateKeyPath().toPath());
-            if (!Strings.isNullOrEmpty(info.getKeyPassword())) {
-                fileKeyPairProvider.setPasswordFinder(FilePasswordProvider.of(info.getKeyPassword()));
-                log.info("已设置密钥解密密码.");
-            }
-            sshClient.setKeyIdentityProvider(fileKeyPairProvider);
-        } else if (authInfo instanceof PasswordAuthInfo info) {
-            sshClient.addPasswordIdentity(info.getPassword());
+            // 私钥在认证时从缓存中获取, 同一私钥只需解析一次.
+            this.keyIdentityProvider = session -> PrivateKeyCache.getDefault()
+                    .getKeyPairs(info.getPrivateKeyPath().toPath(), info.getKeyPassword());
+        } else if (authInfo instanceof PasswordAuthInfo) {
+            this.keyIdentityProvider = null;
         } else {
             throw new IllegalArgumentException("Unsupported authentication type");
         }
-        sshClient.start();
     }
 
     /**
      * 创建 SSH 会话.
      * <p> 允许创建多个 SSH 会话.
+     * <p> 如果会话池中有该实例可用的空闲会话(例如定时任务预热的会话), 将直接取出使用, 否则建立新的连接.
+     * 取出的会话不会再归还到会话池, 关闭时将断开连接.
      * @return 返回新的 SSH 会话.
      * @throws IOException 会话创建失败时将抛出异常.
      */
     public SshSession createSession() throws IOException {
-        Set<String> instancePublicIps = instance.network().getInstancePublicIp();
-        if (instancePublicIps.stream().findFirst().isEmpty()) {
-            throw new IllegalStateException("Instance has no public IP available.");
-        }
-        String connectUri = "ssh://" + authInfo.getUsername() + "@" +
-                instancePublicIps.stream().findFirst().get() + ":" + authInfo.getPort();
-        log.info("SSH 正在连接: {}", connectUri);
-        ConnectFuture connect = sshClient.connect(connectUri);
-        connect.verify();
-        if (!connect.isConnected()) {
-            if (connect.getException() != null) {
-                throw new IOException(connect.getException());
+        SshSessionPool pool = SshSessionPool.getDefault();
+        pool.recordUsage(instance);
+        ClientSession idleSession = pool.takeIdle(instance);
+        ClientSession clientSession = idleSession != null ? idleSession : connect();
+        createdSessions.add(clientSession);
+        clientSession.addCloseFutureListener(future -> createdSessions.remove(clientSession));
+        return new SshSession(clientSession);
+    }
+
+    /**
+     * 从会话池中租用 SSH 会话.
+     * <p> 如果会话池中有该实例可用的空闲会话, 将直接复用, 否则创建新的会话.
+     * <p> 租用的会话在关闭时会归还到会话池中, 而不是断开连接, 所以重复执行命令只需打开新的通道.
+     * @return 返回租用的 SSH 会话, 使用完毕后需关闭以归还会话.
+     * @throws IOException 当需要创建新会话且创建失败时抛出.
+     * @see SshSessionPool
+     */
+    public PooledSshSession leaseSession() throws IOException {
+        return SshSessionPool.getDefault().lease(this);
+    }
+
+    /**
+     * 转发本地端口到实例的远端端口.
+     * <p> 隧道由 {@link TcpForwardingManager} 管理, 转发同一远端端口的多个调用方将共享同一条隧道.
+     * @param localPort 本地监听端口, 为 0 时由系统分配.
+     * @param remotePort 远端目标端口.
+     * @return 返回隧道租约, 使用完毕后需关闭.
+     * @throws IOException 当隧道建立失败时抛出.
+     */
+    public TcpTunnelLease forwardLocalPort(int localPort, int remotePort) throws IOException {
+        return TcpForwardingManager.getDefault().forwardLocal(this, localPort, remotePort);
+    }
+
+    /**
+     * 转发实例的远端端口到本地端口.
+     * <p> 隧道由 {@link TcpForwardingManager} 管理, 转发同一远端端口的多个调用方将共享同一条隧道.
+     * @param remotePort 远端监听端口.
+     * @param localPort 本地目标端口.
+     * @return 返回隧道租约, 使用完毕后需关闭.
+     * @throws IOException 当隧道建立失败时抛出.
+     */
+    public TcpTunnelLease forwardRemotePort(int remotePort, int localPort) throws IOException {
+        return TcpForwardingManager.getDefault().forwardRemote(this, remotePort, localPort);
+    }
+
+    /**
+     * 获取 SSH 客户端对应的计算实例.
+     * @return 返回计算实例.
+     */
+    ComputeInstance getInstance() {
+        return instance;
+    }
+
+    /**
+     * 连接到实例并完成认证.
+     * <p> 通过本方法创建的会话不会被本对象跟踪, 调用方需自行管理会话的生命周期.
+     * <p> 连接地址来自实例的端点缓存, 如果使用缓存地址连接失败, 将重新获取实例状态与地址,
+     * 若地址发生变化则重试一次.
+     * <p> 如果认证配置设置了跳板机, 将经由跳板机连接实例的私有 IP(见 {@link JumpHostConnector}).
+     * <p> 首次连接且需要用户确认服务器公钥时, 握手会立即失败, 本方法将在调用方线程中等待用户确认
+     * (见 {@link HostKeyApprovalQueue}), 确认后重新连接.
+     * @return 返回已认证的原始 SSH 会话.
+     * @throws IOException 当连接或认证失败时抛出.
+     */
+    ClientSession connect() throws IOException {
+        try {
+            return connectOnce();
+        } catch (PendingServerKeyException e) {
+            awaitServerKeyApproval(e.getPendingKey(), e);
+            return connectOnce();
+        }
+    }
+
+    private void awaitServerKeyApproval(HostKeyApprovalQueue.PendingHostKey pendingKey, Exception cause)
+            throws IOException {
+        long timeout = Constants.instance.getFirstConnectionConfirmTimeout();
+        log.info("正在等待用户确认实例 {} 的服务器公钥, 确认后将重新连接.(Id: {}, Timeout: {}s)",
+                instance.getInstanceId(), pendingKey.getId(), timeout);
+        boolean approved;
+        try {
+            approved = pendingKey.await(timeout, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for server key approval.");
+        }
+        if (!approved) {
+            throw new IOException(pendingKey.isDecided()
+                    ? "Server key rejected: " + pendingKey.getFingerprint()
+                    : "Server key approval timed out (Id: " + pendingKey.getId() + ")", cause);
+        }
+    }
+
+    private ClientSession connectOnce() throws IOException {
+        if (authInfo.getJumpHost() != null) {
+            return connectViaJumpHost(authInfo.getJumpHost());
+        }
+        InstanceEndpointResolver endpointResolver = instance.endpoint();
+        String address = requireConnectableAddress(endpointResolver.getEndpoint());
+        log.info("SSH 正在连接: ssh://{}@{}:{}", authInfo.getUsername(), address, authInfo.getPort());
+        ConnectFuture connect;
+        try {
+            connect = connect(address, authInfo.getPort());
+        } catch (IOException e) {
+            endpointResolver.invalidate();
+            String newAddress = requireConnectableAddress(endpointResolver.getEndpoint());
+            if (newAddress.equals(address)) {
+                throw e;
             }
-            throw new IOException("A connection to the server could not be established for an unknown reason.");
+            log.info("实例 {} 的连接地址已变更({} -> {}), 正在重试连接.", instance.getInstanceId(), address, newAddress);
+            connect = connect(newAddress, authInfo.getPort());
+        }
+        return authenticate(connect.getClientSession());
+    }
+
+    private ClientSession connectViaJumpHost(String jumpHostId) throws IOException {
+        if (jumpHostId.equals(instance.getInstanceId())) {
+            throw new IllegalStateException("An instance cannot be its own jump host: " + jumpHostId);
+        }
+        SshAuthIdentityProvider identityProvider = instance.getInstanceManager().getSshIdentityProvider();
+        JumpHostConnector.checkChain(instance.getInstanceId(), id -> {
+            if (id.equals(instance.getInstanceId())) {
+                return jumpHostId;
+            }
+            try {
+                return identityProvider.getAuthInfoByInstanceId(id).getJumpHost();
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+        });
+        InstanceEndpoint endpoint = instance.endpoint().getEndpoint();
+        if (endpoint.state() != Instance.LifecycleState.Running) {
+            throw new IllegalStateException("The state of the current instance cannot connect to SSH: " + endpoint.state());
+        } else if (endpoint.privateAddress() == null) {
+            throw new IllegalStateException("Instance has no private IP available.");
+        }
+        ComputeInstance jumpHost = instance.getInstanceManager().getComputeInstanceById(jumpHostId);
+        if (jumpHost == null) {
+            throw new IllegalStateException("Jump host instance not found: " + jumpHostId);
+        }
+
+        JumpHostConnector.Route route = JumpHostConnector.getDefault()
+                .open(jumpHost, endpoint.privateAddress(), authInfo.getPort());
+        try {
+            log.info("SSH 正在经由跳板机 {} 连接: ssh://{}@{}:{}", jumpHostId,
+                    authInfo.getUsername(), endpoint.privateAddress(), authInfo.getPort());
+            ClientSession clientSession = authenticate(connect("127.0.0.1", route.getLocalPort()).getClientSession());
+            clientSession.addCloseFutureListener(future -> route.close());
+            return clientSession;
+        } catch (IOException | RuntimeException e) {
+            route.close();
+            throw e;
+        }
+    }
+
+    private ClientSession authenticate(ClientSession clientSession) throws IOException {
+        AuthFuture auth;
+        try {
+            applyIdentity(clientSession);
+            auth = clientSession.auth();
+            auth.verify(20, TimeUnit.SECONDS);
+        } catch (IOException | RuntimeException e) {
+            // 握手中登记了待确认的公钥, 由 connect() 等待确认结果后重新连接.
+            HostKeyApprovalQueue.PendingHostKey pendingKey =
+                    clientSession.getAttribute(OracleInstanceServerKeyVerifier.PENDING_HOST_KEY);
+            if (pendingKey != null) {
+                clientSession.close(true);
+                throw new PendingServerKeyException(pendingKey, e);
+            }
+            throw e;
         }
-        ClientSession clientSession = connect.getClientSession();
-        AuthFuture auth = clientSession.auth();
-        auth.verify(20, TimeUnit.SECONDS);
         if (auth.isSuccess()) {
-            return new SshSession(clientSession);
+            return clientSession;
         } else {
             if (auth.isFailure()) {
                 clientSession.close();
@@ -97,8 +252,72 @@ public class InstanceSsh implements AutoCloseable {
         }
     }
 
+    private String requireConnectableAddress(InstanceEndpoint endpoint) {
+        if (endpoint.state() != Instance.LifecycleState.Running) {
+            throw new IllegalStateException("The state of the current instance cannot connect to SSH: " + endpoint.state());
+        } else if (endpoint.address() == null) {
+            throw new IllegalStateException("Instance has no public IP available, a jump host can be configured to connect via private IP.");
+        }
+        return endpoint.address();
+    }
+
+    private ConnectFuture connect(String address, int port) throws IOException {
+        ConnectFuture connect = SharedSshClient.get().connect(authInfo.getUsername(),
+                address, port,
+                SharedSshClient.createConnectionContext(serverKeyVerifier, authInfo.getTransportProfile()), null);
+        connect.await(30, TimeUnit.SECONDS);
+        if (!connect.isConnected()) {
+            connect.cancel();
+            if (connect.getException() != null) {
+                throw new IOException(connect.getException());
+            }
+            throw new IOException("A connection to the server could not be established for an unknown reason.");
+        }
+        return connect;
+    }
+
+    /**
+     * 为会话设置该实例的认证身份.
+     * @param clientSession 待认证的会话.
+     */
+    private void applyIdentity(ClientSession clientSession) {
+        if (authInfo instanceof PasswordAuthInfo info) {
+            clientSession.addPasswordIdentity(info.getPassword());
+        } else {
+            clientSession.setKeyIdentityProvider(keyIdentityProvider);
+        }
+    }
+
+    /**
+     * 关闭由本对象创建且尚未关闭的所有 SSH 会话.
+     * <p> 共享的 SSH 客户端不会被关闭.
+     */
     @Override
     public void close() {
-        sshClient.stop();
+        for (ClientSession session : createdSessions) {
+            try {
+                session.close();
+            } catch (IOException e) {
+                log.debug("关闭 SSH 会话时发生异常.", e);
+            }
+        }
+        createdSessions.clear();
+    }
+
+    /**
+     * 服务器公钥正在等待用户确认.
+     */
+    private static final class PendingServerKeyException extends IOException {
+
+        private final transient HostKeyApprovalQueue.PendingHostKey pendingKey;
+
+        private PendingServerKeyException(HostKeyApprovalQueue.PendingHostKey pendingKey, Throwable cause) {
+            super("Server key is waiting for approval (Id: " + pendingKey.getId() + ")", cause);
+            this.pendingKey = pendingKey;
+        }
+
+        HostKeyApprovalQueue.PendingHostKey getPendingKey() {
+            return pendingKey;
+        }
     }
 }
@@ -0,0 +1,200 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.common.LazyLoader;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 跳板机连接器.
+ * <p> 每台跳板机只使用一个上游会话(从 {@link SshSessionPool} 租用), 通过跳板机连接的每个目标地址
+ * 在该会话上建立一条本地转发隧道, 到目标实例的 SSH 连接经由隧道以 direct-tcpip 通道传输.
+ * 所以一个私有子网内的所有实例只需与跳板机进行一次外部握手.
+ * <p> 到同一目标地址的多个会话共享同一条隧道. 隧道在最后一个会话关闭后关闭,
+ * 跳板机没有隧道后上游会话将归还到会话池, 短时间内再次使用时可直接复用.
+ * <p> 每台跳板机使用独立的锁, 连接某台跳板机时不会阻塞经由其他跳板机的连接.
+ * <p> 跳板机自身也可以经由其他跳板机连接, 连接前应通过 {@link #checkChain(String, Function)} 检查整条连接链,
+ * 如果链中出现重复的实例(例如 A 经由 B, B 又经由 A), 将立即失败, 而不是无限递归或互相等待.
+ * @author LamGC
+ */
+final class JumpHostConnector {
+
+    private final static Logger log = LoggerFactory.getLogger(JumpHostConnector.class);
+
+    private final static LazyLoader<JumpHostConnector> DEFAULT_CONNECTOR = new LazyLoader<>(JumpHostConnector::new);
+
+    private final Map<ComputeInstance, Upstream> upstreams = new ConcurrentHashMap<>();
+    private final Map<ComputeInstance, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * 获取默认的跳板机连接器.
+     * @return 返回进程共享的跳板机连接器.
+     */
+    static JumpHostConnector getDefault() {
+        return DEFAULT_CONNECTOR.getInstance();
+    }
+
+    /**
+     * 打开经由跳板机到目标地址的路由.
+     * <p> 连接路由的本地端口即可连接到目标地址, 使用完毕后需关闭路由.
+     * @param jumpHost 跳板机实例.
+     * @param host 目标地址, 由跳板机连接, 通常为目标实例的私有 IP.
+     * @param port 目标端口.
+     * @return 返回路由.
+     * @throws IOException 当连接跳板机或建立隧道失败时抛出.
+     */
+    Route open(ComputeInstance jumpHost, String host, int port) throws IOException {
+        synchronized (lockOf(jumpHost)) {
+            return openRoute(jumpHost, host, port);
+        }
+    }
+
+    /**
+     * 沿跳板机配置检查连接链.
+     * @param instanceId 需要连接的实例 Id.
+     * @param jumpHostOf 获取实例所配置的跳板机 Id, 没有配置跳板机时返回 {@code null}.
+     * @throws IllegalStateException 当连接链中出现重复的实例时抛出.
+     */
+    static void checkChain(String instanceId, Function<String, String> jumpHostOf) {
+        Set<String> visited = new LinkedHashSet<>();
+        String current = instanceId;
+        while (current != null) {
+            if (!visited.add(current)) {
+                throw new IllegalStateException("Jump host cycle detected: "
+                        + String.join(" -> ", visited) + " -> " + current);
+            }
+            current = jumpHostOf.apply(current);
+        }
+    }
+
+    private Object lockOf(ComputeInstance jumpHost) {
+        return locks.computeIfAbsent(jumpHost, key -> new Object());
+    }
+
+    /**
+     * 需持有跳板机的锁.
+     */
+    private Route openRoute(ComputeInstance jumpHost, String host, int port) throws IOException {
+        Upstream upstream = upstreams.get(jumpHost);
+        if (upstream != null && !upstream.isAlive()) {
+            log.debug("跳板机 {} 的上游会话已断开, 正在重新连接.", jumpHost.getInstanceId());
+            upstreams.remove(jumpHost);
+            upstream.close();
+            upstream = null;
+        }
+        if (upstream == null) {
+            upstream = new Upstream(jumpHost, jumpHost.ssh().leaseSession());
+            upstreams.put(jumpHost, upstream);
+        }
+
+        String target = host + ":" + port;
+        TcpTunnel tunnel = upstream.tunnels.get(target);
+        if (tunnel == null || !tunnel.retain()) {
+            try {
+                tunnel = TcpTunnel.openLocal(jumpHost, upstream.session.getClientSession(), 0, host, port, null);
+            } catch (IOException | RuntimeException e) {
+                if (upstream.tunnels.isEmpty()) {
+                    upstreams.remove(jumpHost);
+                    upstream.close();
+                }
+                throw e;
+            }
+            tunnel.retain();
+            upstream.tunnels.put(target, tunnel);
+        }
+        return new Route(this, upstream, target, tunnel);
+    }
+
+    private void release(Upstream upstream, String target, TcpTunnel tunnel) {
+        synchronized (lockOf(upstream.jumpHost)) {
+            tunnel.release();
+            if (tunnel.getReferenceCount() > 0) {
+                return;
+            }
+            tunnel.close();
+            upstream.tunnels.remove(target, tunnel);
+            if (upstream.tunnels.isEmpty() && upstreams.get(upstream.jumpHost) == upstream) {
+                upstreams.remove(upstream.jumpHost);
+                upstream.close();
+                log.debug("跳板机 {} 已没有经由的连接, 上游会话已归还.", upstream.jumpHost.getInstanceId());
+            }
+        }
+    }
+
+    /**
+     * 跳板机的上游会话.
+     * <p> 隧道表只在持有该跳板机的锁时访问.
+     */
+    private static final class Upstream {
+
+        private final ComputeInstance jumpHost;
+        private final PooledSshSession session;
+        private final Map<String, TcpTunnel> tunnels = new HashMap<>();
+
+        private Upstream(ComputeInstance jumpHost, PooledSshSession session) {
+            this.jumpHost = jumpHost;
+            this.session = session;
+        }
+
+        private boolean isAlive() {
+            return session.getClientSession().isOpen() && !session.getClientSession().isClosing();
+        }
+
+        private void close() {
+            for (TcpTunnel tunnel : tunnels.values()) {
+                tunnel.close();
+            }
+            tunnels.clear();
+            session.close();
+        }
+    }
+
+    /**
+     * 经由跳板机到目标地址的路由.
+     */
+    static final class Route implements Closeable {
+
+        private final JumpHostConnector connector;
+        private final Upstream upstream;
+        private final String target;
+        private final TcpTunnel tunnel;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private Route(JumpHostConnector connector, Upstream upstream, String target, TcpTunnel tunnel) {
+            this.connector = connector;
+            this.upstream = upstream;
+            this.target = target;
+            this.tunnel = tunnel;
+        }
+
+        /**
+         * 获取路由的本地端口.
+         * @return 返回本地回环地址上的端口.
+         */
+        int getLocalPort() {
+            return tunnel.getLocalPort();
+        }
+
+        /**
+         * 关闭路由.
+         * <p> 重复调用不会产生影响.
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                connector.release(upstream, target, tunnel);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.apache.sshd.client.session.ClientSession;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 从会话池租用的 SSH 会话.
+ * <p> 使用方式与 {@link SshSession} 相同, 但关闭时会将会话归还到 {@link SshSessionPool}, 而不是断开连接.
+ * <p> 归还前请关闭通过本会话创建的命令执行会话, Sftp 会话和转发隧道, 以免影响下一个租用者.
+ * @author LamGC
+ */
+public final class PooledSshSession extends SshSession {
+
+    private final SshSessionPool pool;
+    private final ComputeInstance instance;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    PooledSshSession(SshSessionPool pool, ComputeInstance instance, ClientSession clientSession) {
+        super(clientSession);
+        this.pool = pool;
+        this.instance = instance;
+    }
+
+    /**
+     * 将会话标记为不可用并断开连接.
+     * <p> 如果使用过程中发现会话异常, 可调用该方法让会话池丢弃该会话.
+     * @throws IOException 关闭失败时抛出异常.
+     */
+    public void invalidate() throws IOException {
+        if (released.compareAndSet(false, true)) {
+            closeScheduler();
+            getClientSession().close();
+        }
+    }
+
+    /**
+     * 归还会话.
+     * <p> 会话将回到会话池中等待下一次租用, 重复调用不会产生影响.
+     */
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            closeScheduler();
+            pool.release(instance, getClientSession());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.base.Strings;
+import net.lamgc.oracle.sentry.common.LazyLoader;
+import org.apache.sshd.common.config.keys.FilePasswordProvider;
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 私钥缓存.
+ * <p> 解析私钥文件(尤其是使用 bcrypt KDF 加密的 OpenSSH 私钥)需要消耗大量 CPU,
+ * 所以解析后的密钥对将按文件路径缓存在内存中, 每个私钥只需解析一次.
+ * <p> 每次获取时会检查文件的修改时间与大小, 如果文件发生变化, 将重新解析.
+ * 缓存同时记录解析时所用密码的哈希, 使用其他密码获取时也将重新解析, 以免错误的密码取得已解密的私钥.
+ * <p> 同一私钥同一时间只由一个线程解析, 不同私钥之间互不阻塞.
+ * @author LamGC
+ */
+public final class PrivateKeyCache {
+
+    private final static Logger log = LoggerFactory.getLogger(PrivateKeyCache.class);
+
+    private final static LazyLoader<PrivateKeyCache> DEFAULT_CACHE = new LazyLoader<>(PrivateKeyCache::new);
+
+    private final Map<Path, CachedKeys> cache = new ConcurrentHashMap<>();
+    private final Map<Path, Object> loadLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 创建私钥缓存.
+     * <p> 一般情况下使用 {@link #getDefault()} 即可.
+     */
+    PrivateKeyCache() {
+    }
+
+    /**
+     * 获取默认的私钥缓存.
+     * @return 返回进程共享的私钥缓存.
+     */
+    public static PrivateKeyCache getDefault() {
+        return DEFAULT_CACHE.getInstance();
+    }
+
+    /**
+     * 获取私钥文件中的密钥对.
+     * @param keyPath 私钥文件路径.
+     * @param password 私钥密码, 没有密码时为 {@code null}.
+     * @return 返回私钥文件中的所有密钥对.
+     * @throws IOException 当读取私钥文件失败时抛出.
+     * @throws GeneralSecurityException 当私钥解析或解密失败时抛出.
+     */
+    public List<KeyPair> getKeyPairs(Path keyPath, String password) throws IOException, GeneralSecurityException {
+        Path path = keyPath.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        byte[] passwordHash = hashPassword(password);
+        CachedKeys cachedKeys = cache.get(path);
+        if (cachedKeys != null && cachedKeys.matches(lastModified, size, passwordHash)) {
+            return cachedKeys.keyPairs();
+        }
+        synchronized (loadLocks.computeIfAbsent(path, key -> new Object())) {
+            cachedKeys = cache.get(path);
+            if (cachedKeys != null && cachedKeys.matches(lastModified, size, passwordHash)) {
+                return cachedKeys.keyPairs();
+            }
+            List<KeyPair> keyPairs = loadKeyPairs(path, password);
+            cache.put(path, new CachedKeys(lastModified, size, passwordHash, keyPairs));
+            log.debug("已解析并缓存私钥: {}", path);
+            return keyPairs;
+        }
+    }
+
+    /**
+     * 移除指定私钥的缓存.
+     * @param keyPath 私钥文件路径.
+     */
+    public void invalidate(Path keyPath) {
+        cache.remove(keyPath.toAbsolutePath().normalize());
+    }
+
+    /**
+     * 清空缓存.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 计算密码的哈希, 缓存中不保存密码原文.
+     */
+    private static byte[] hashPassword(String password) {
+        if (Strings.isNullOrEmpty(password)) {
+            return new byte[0];
+        }
+        return SshUtils.sha256(password);
+    }
+
+    private static List<KeyPair> loadKeyPairs(Path path, String password) throws IOException, GeneralSecurityException {
+        FileKeyPairProvider provider = new FileKeyPairProvider(path);
+        if (!Strings.isNullOrEmpty(password)) {
+            provider.setPasswordFinder(FilePasswordProvider.of(password));
+        }
+        List<KeyPair> keyPairs = new ArrayList<>();
+        for (KeyPair keyPair : provider.loadKeys(null)) {
+            keyPairs.add(keyPair);
+        }
+        return Collections.unmodifiableList(keyPairs);
+    }
+
+    /**
+     * 已缓存的密钥对.
+     * @param lastModified 解析时私钥文件的修改时间.
+     * @param size 解析时私钥文件的大小.
+     * @param passwordHash 解析时所用密码的哈希, 没有密码时为空数组.
+     * @param keyPairs 密钥对列表.
+     */
+    private record CachedKeys(long lastModified, long size, byte[] passwordHash, List<KeyPair> keyPairs) {
+        boolean matches(long lastModified, long size, byte[] passwordHash) {
+            return this.lastModified == lastModified && this.size == size
+                    && MessageDigest.isEqual(this.passwordHash, passwordHash);
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 远端脚本.
+ * <p> 以内容的 SHA-256 作为标识, 脚本在实例上保存为 {@code ${XDG_CACHE_HOME:-$HOME/.cache}/oracle-sentry/scripts/<哈希>.sh},
+ * 内容相同的脚本只需上传一次, 之后按哈希执行(见 {@link RemoteScriptCache}).
+ * <p> 以 {@code #!} 开头的脚本由指定的解释器执行, 否则使用 {@code sh} 执行.
+ * 脚本的标准输入为空, 参数通过位置参数({@code $1}, {@code $2} ...)传入.
+ * <p> 建议将脚本创建为常量重复使用, 以免每次执行都重新计算哈希.
+ * @author LamGC
+ */
+public final class RemoteScript {
+
+    /**
+     * 远端脚本目录.
+     */
+    final static String REMOTE_DIRECTORY = "${XDG_CACHE_HOME:-$HOME/.cache}/oracle-sentry/scripts";
+
+    /**
+     * 脚本未安装或安装失败时的退出代码, 与错误输出中的标记一起判断, 以免与脚本自身的退出代码混淆.
+     */
+    final static int MARKER_EXIT_CODE = 125;
+    final static String CACHE_MISS_MARKER = "oracle-sentry: script cache miss";
+    final static String INSTALL_FAILURE_MARKER = "oracle-sentry: script install failed";
+
+    private final String content;
+    private final byte[] contentBytes;
+    private final String hash;
+
+    private RemoteScript(String content) {
+        this.content = content;
+        this.contentBytes = content.getBytes(StandardCharsets.UTF_8);
+        this.hash = SshUtils.sha256Hex(contentBytes);
+    }
+
+    /**
+     * 创建远端脚本.
+     * @param content 脚本内容.
+     * @return 返回远端脚本.
+     */
+    public static RemoteScript of(String content) {
+        Objects.requireNonNull(content);
+        if (content.isBlank()) {
+            throw new IllegalArgumentException("Script content cannot be blank.");
+        }
+        return new RemoteScript(content);
+    }
+
+    /**
+     * 获取脚本内容.
+     * @return 返回脚本内容.
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * 获取脚本内容的 SHA-256 哈希.
+     * @return 返回小写十六进制形式的哈希.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * 获取脚本在远端的路径.
+     * @return 返回包含 Shell 变量的路径, 需在 Shell 中展开.
+     */
+    public String getRemotePath() {
+        return REMOTE_DIRECTORY + "/" + hash + ".sh";
+    }
+
+    byte[] getContentBytes() {
+        return contentBytes;
+    }
+
+    /**
+     * 构造按哈希执行的命令.
+     * <p> 远端脚本不存在时输出 {@link #CACHE_MISS_MARKER} 并以 {@link #MARKER_EXIT_CODE} 退出.
+     */
+    String runCommand(List<String> args) {
+        return "f=\"" + getRemotePath() + "\"; [ -f \"$f\" ] || { echo '" + CACHE_MISS_MARKER + "' >&2; exit "
+                + MARKER_EXIT_CODE + "; }; " + execClause(args);
+    }
+
+    /**
+     * 构造安装并执行的命令.
+     * <p> 脚本内容从标准输入读取. 远端已存在相同哈希的脚本时丢弃输入, 不会重写文件;
+     * 否则先写入临时文件再重命名, 以免并发执行时读取到不完整的脚本.
+     */
+    String installCommand(List<String> args) {
+        return "d=\"" + REMOTE_DIRECTORY + "\"; f=\"$d/" + hash + ".sh\"; "
+                + "if [ -f \"$f\" ]; then cat > /dev/null; "
+                + "else mkdir -p \"$d\" && cat > \"$f.$$\" && chmod 700 \"$f.$$\" && mv -f \"$f.$$\" \"$f\" "
+                + "|| { rm -f \"$f.$$\"; echo '" + INSTALL_FAILURE_MARKER + "' >&2; exit " + MARKER_EXIT_CODE + "; }; fi; "
+                + execClause(args);
+    }
+
+    private String execClause(List<String> args) {
+        StringBuilder builder = new StringBuilder(content.startsWith("#!") ? "exec \"$f\"" : "exec sh \"$f\"");
+        for (String arg : args) {
+            builder.append(' ').append(SshUtils.shellQuote(Objects.requireNonNull(arg)));
+        }
+        return builder.append(" < /dev/null").toString();
+    }
+
+    /**
+     * 执行结果是否表示带有指定标记的失败.
+     */
+    static boolean hasMarker(ExecResult result, String marker) {
+        return result.exitCode() != null && result.exitCode() == MARKER_EXIT_CODE
+                && result.getStderrText().contains(marker);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return hash.equals(((RemoteScript) o).hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteScript{hash=" + hash + "}";
+    }
+}
@@ -0,0 +1,193 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.common.LazyLoader;
+import net.lamgc.oracle.sentry.common.io.HeadTailCapture;
+import net.lamgc.oracle.sentry.common.io.OutputCapture;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 远端脚本缓存.
+ * <p> 在实例上重复执行同一个多行脚本时, 每次都需要在命令中发送完整的脚本.
+ * 本类将脚本按内容哈希保存在实例上(见 {@link RemoteScript}), 并记录每台实例已保存的脚本:
+ * <p> 执行时总是先发送一条按哈希执行的短命令, 只有远端返回缓存未命中标记时, 才发送脚本内容安装并执行:
+ * <ul>
+ *     <li> 远端已保存的脚本(包括本程序重启后未记录的脚本): 只需一次短命令;
+ *     <li> 远端没有的脚本(首次执行, 或实例重装, 清理了缓存目录): 短命令未命中后, 在同一次执行中安装并执行脚本.
+ * </ul>
+ * 本地记录只用于 {@link #isInstalled(ComputeInstance, RemoteScript)} 查询, 不会跳过远端检查.
+ * @author LamGC
+ */
+public final class RemoteScriptCache {
+
+    private final static Logger log = LoggerFactory.getLogger(RemoteScriptCache.class);
+
+    private final static int OUTPUT_LIMIT = 64 * 1024;
+
+    private final static LazyLoader<RemoteScriptCache> DEFAULT_CACHE = new LazyLoader<>(RemoteScriptCache::new);
+
+    private final Map<String, Set<String>> installedScripts = new ConcurrentHashMap<>();
+
+    RemoteScriptCache() {
+    }
+
+    /**
+     * 获取默认的远端脚本缓存.
+     * @return 返回进程共享的默认缓存.
+     */
+    public static RemoteScriptCache getDefault() {
+        return DEFAULT_CACHE.getInstance();
+    }
+
+    /**
+     * 在实例上执行脚本.
+     * <p> 会话从会话池租用, 输出的开头与结尾各保留 64 KiB.
+     * @param instance 计算实例.
+     * @param script 脚本.
+     * @param args 脚本参数.
+     * @return 返回执行结果.
+     * @throws IOException 当连接或执行失败时抛出.
+     */
+    public ExecResult exec(ComputeInstance instance, RemoteScript script, String... args) throws IOException {
+        return exec(instance, script, -1, args);
+    }
+
+    /**
+     * 在实例上执行脚本.
+     * @param instance 计算实例.
+     * @param script 脚本.
+     * @param timeout 截止时间, 0 为不限制, 小于 0 为使用默认截止时间(单位: 毫秒).
+     * @param args 脚本参数.
+     * @return 返回执行结果.
+     * @throws IOException 当连接或执行失败时抛出.
+     * @see CommandExecSession#setTimeout(long)
+     */
+    public ExecResult exec(ComputeInstance instance, RemoteScript script, long timeout, String... args) throws IOException {
+        try (PooledSshSession session = instance.ssh().leaseSession()) {
+            return exec(session, instance.getInstanceId(), script, timeout, List.of(args));
+        }
+    }
+
+    /**
+     * 通过指定会话执行脚本.
+     * @param session SSH 会话.
+     * @param instanceId 会话所属实例的 Id, 用于记录实例已安装的脚本.
+     */
+    ExecResult exec(SshSession session, String instanceId, RemoteScript script, long timeout, List<String> args)
+            throws IOException {
+        return execute(instanceId, script, args, (command, input) -> {
+            long startTime = System.currentTimeMillis();
+            try (CommandExecSession exec = session.createExecSession(command)) {
+                if (timeout >= 0) {
+                    exec.setTimeout(timeout);
+                }
+                if (input != null) {
+                    exec.setIn(new ByteArrayInputStream(input));
+                }
+                HeadTailCapture stdout = exec.captureOut(OutputCapture.headTail(OUTPUT_LIMIT, OUTPUT_LIMIT));
+                HeadTailCapture stderr = exec.captureErr(OutputCapture.headTail(OUTPUT_LIMIT, OUTPUT_LIMIT));
+                exec.exec();
+                return new ExecResult(exec.exitCode(), stdout.toByteArray(), stderr.toByteArray(),
+                        stdout.getDroppedBytes() + stderr.getDroppedBytes(),
+                        System.currentTimeMillis() - startTime, exec.isTimedOut(), exec.isCancelled());
+            }
+        });
+    }
+
+    /**
+     * 执行脚本.
+     * <p> 先按哈希执行, 缓存未命中时安装并执行, 并根据结果更新记录.
+     * @param instanceId 实例 Id.
+     * @param script 脚本.
+     * @param args 脚本参数.
+     * @param executor 命令执行方式, 由调用方决定输出限制与超时处理.
+     * @return 返回脚本的执行结果.
+     * @throws IOException 当命令执行失败时抛出.
+     */
+    ExecResult execute(String instanceId, RemoteScript script, List<String> args, ScriptExecutor executor)
+            throws IOException {
+        Objects.requireNonNull(instanceId);
+        Objects.requireNonNull(script);
+        ExecResult result = executor.exec(script.runCommand(args), null);
+        if (!RemoteScript.hasMarker(result, RemoteScript.CACHE_MISS_MARKER)) {
+            if (result.exitCode() != null) {
+                markInstalled(instanceId, script);
+            }
+            return result;
+        }
+        if (isInstalled(instanceId, script)) {
+            log.debug("实例 {} 上的脚本 {} 已不存在, 将重新安装.", instanceId, script.getHash());
+            forget(instanceId, script);
+        }
+        result = executor.exec(script.installCommand(args), script.getContentBytes());
+        if (RemoteScript.hasMarker(result, RemoteScript.INSTALL_FAILURE_MARKER)) {
+            log.warn("在实例 {} 上安装脚本 {} 失败: {}", instanceId, script.getHash(), result.getStderrText().trim());
+        } else if (result.exitCode() != null) {
+            // 安装命令中的脚本已开始执行, 说明脚本已保存在远端.
+            markInstalled(instanceId, script);
+        }
+        return result;
+    }
+
+    /**
+     * 实例是否已记录该脚本.
+     * <p> 只检查本地记录, 不会连接实例.
+     * @param instance 计算实例.
+     * @param script 脚本.
+     * @return 如果已记录实例保存了该脚本, 返回 {@code true}.
+     */
+    public boolean isInstalled(ComputeInstance instance, RemoteScript script) {
+        return isInstalled(instance.getInstanceId(), script);
+    }
+
+    boolean isInstalled(String instanceId, RemoteScript script) {
+        Set<String> scripts = installedScripts.get(instanceId);
+        return scripts != null && scripts.contains(script.getHash());
+    }
+
+    /**
+     * 清除实例的脚本记录.
+     * <p> 不会删除远端的脚本文件.
+     * @param instance 计算实例.
+     */
+    public void invalidate(ComputeInstance instance) {
+        installedScripts.remove(instance.getInstanceId());
+    }
+
+    private void markInstalled(String instanceId, RemoteScript script) {
+        installedScripts.computeIfAbsent(instanceId, key -> ConcurrentHashMap.newKeySet()).add(script.getHash());
+    }
+
+    private void forget(String instanceId, RemoteScript script) {
+        Set<String> scripts = installedScripts.get(instanceId);
+        if (scripts != null) {
+            scripts.remove(script.getHash());
+        }
+    }
+
+    /**
+     * 脚本命令的执行方式.
+     */
+    @FunctionalInterface
+    interface ScriptExecutor {
+
+        /**
+         * 执行命令.
+         * @param command 命令.
+         * @param input 命令的标准输入, 为 {@code null} 时没有输入.
+         * @return 返回执行结果.
+         * @throws IOException 当执行失败时抛出.
+         */
+        ExecResult exec(String command, byte[] input) throws IOException;
+    }
+
+}
@@ -0,0 +1,125 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClientFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Sftp 通道池.
+ * <p> 同一个 {@link SftpClient} 不能被多个线程同时发送请求, 所以需要并行执行 Sftp 操作时,
+ * 由本类为每个工作线程提供独立的 Sftp 通道. 通道在首次需要时才打开, 数量不超过并行数.
+ * @author LamGC
+ */
+final class SftpClientPool implements Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(SftpClientPool.class);
+    private final static ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("Thread-SftpWorker-%d")
+            .setDaemon(true)
+            .build();
+
+    private final ClientSession session;
+    private final ExecutorService executor;
+    private final Queue<SftpClient> idleClients = new ConcurrentLinkedQueue<>();
+    private final Queue<SftpClient> openedClients = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 创建 Sftp 通道池.
+     * @param session 打开通道所使用的会话.
+     * @param parallelism 并行数, 同时也是最多打开的通道数.
+     */
+    SftpClientPool(ClientSession session, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism cannot be less than or equal to 0.");
+        }
+        this.session = session;
+        this.executor = Executors.newFixedThreadPool(parallelism, THREAD_FACTORY);
+    }
+
+    /**
+     * 提交 Sftp 操作.
+     * @param operation 待执行的操作.
+     * @param <T> 操作结果类型.
+     * @return 返回操作的 Future.
+     */
+    <T> Future<T> submit(SftpOperation<T> operation) {
+        return executor.submit(() -> {
+            SftpClient client = idleClients.poll();
+            if (client == null) {
+                client = SftpClientFactory.instance().createSftpClient(session);
+                openedClients.add(client);
+            }
+            try {
+                return operation.run(client);
+            } finally {
+                idleClients.add(client);
+            }
+        });
+    }
+
+    /**
+     * 等待所有操作完成.
+     * <p> 任一操作失败时, 将取消其余操作并抛出该操作的异常.
+     * @param futures 操作的 Future.
+     * @throws IOException 当操作失败时抛出.
+     * @throws InterruptedIOException 当等待时线程被中断时抛出.
+     */
+    static void awaitAll(Collection<? extends Future<?>> futures) throws IOException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(false));
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for sftp operations.");
+        }
+    }
+
+    /**
+     * 关闭通道池.
+     * <p> 尚未执行的操作将被丢弃, 已打开的通道将被关闭.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (SftpClient client : openedClients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                log.debug("关闭 Sftp 通道时发生异常.", e);
+            }
+        }
+        openedClients.clear();
+        idleClients.clear();
+    }
+
+    /**
+     * Sftp 操作.
+     * @param <T> 操作结果类型.
+     */
+    @FunctionalInterface
+    interface SftpOperation<T> {
+        /**
+         * 使用指定的 Sftp 通道执行操作.
+         * @param client 当前工作线程独占的 Sftp 通道.
+         * @return 返回操作结果.
+         * @throws IOException 当操作失败时抛出.
+         */
+        T run(SftpClient client) throws IOException;
+    }
+
+}
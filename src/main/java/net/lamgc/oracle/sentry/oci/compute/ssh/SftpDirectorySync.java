@@ -0,0 +1,481 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import net.lamgc.oracle.sentry.common.io.OutputCapture;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.sftp.client.SftpClient;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Sftp 目录增量同步.
+ * <p> 比较本地与远端目录树中文件的大小与修改时间(可选比较 SHA-256 校验和), 只传输发生变化的文件.
+ * <ul>
+ *     <li> 远端目录树通过 readdir 返回的属性构建, 目录并发列出, 无需对每个文件执行 stat;
+ *     <li> 需要传输的文件由多个 Sftp 通道并行传输;
+ *     <li> 传输完成后将目标文件的修改时间设置为源文件的修改时间, 以便下次同步时判断为未变化;
+ *     <li> 可选删除目标中多余的文件与目录.
+ * </ul>
+ * <p> 源与目标中类型不同的路径(例如源中为文件而目标中为目录)会在创建目录与传输文件前从目标中删除,
+ * 无论是否启用删除多余文件, 否则同步无法完成.
+ * <p> 修改时间按秒比较, 因为 Sftp v3 协议只支持秒级时间戳.
+ * @author LamGC
+ */
+public final class SftpDirectorySync {
+
+    private final boolean compareChecksum;
+    private final boolean deleteExtraneous;
+    private final int parallelism;
+
+    private SftpDirectorySync(boolean compareChecksum, boolean deleteExtraneous, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism cannot be less than or equal to 0.");
+        }
+        this.compareChecksum = compareChecksum;
+        this.deleteExtraneous = deleteExtraneous;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 将本地目录同步到远端.
+     * @param session Sftp 会话.
+     * @param localDirectory 本地源目录.
+     * @param remoteDirectory 远端目标目录, 不存在时将自动创建.
+     * @return 返回同步结果.
+     * @throws IOException 当同步失败时抛出.
+     */
+    public SyncResult upload(SftpSession session, Path localDirectory, String remoteDirectory) throws IOException {
+        long startTime = System.currentTimeMillis();
+        SftpClient sftpClient = session.getSftpClient();
+        String remoteRoot = trimTrailingSlash(remoteDirectory);
+        Map<String, FileMeta> source = listLocal(localDirectory);
+        Map<String, FileMeta> target = listRemote(session, remoteRoot);
+
+        int deleted = 0;
+        for (String path : typeMismatchedPaths(source, target)) {
+            String remotePath = remoteRoot + "/" + path;
+            if (target.get(path).directory()) {
+                session.forceDeleteDir(remotePath);
+            } else {
+                sftpClient.remove(remotePath);
+            }
+            removeTree(target, path);
+            deleted++;
+        }
+        if (!target.containsKey("")) {
+            sftpClient.mkdir(remoteRoot);
+        }
+        List<String> changedFiles = new ArrayList<>();
+        List<String> unchangedCandidates = new ArrayList<>();
+        compare(source, target, changedFiles, unchangedCandidates);
+        // 按路径排序, 保证父目录先于子目录创建.
+        List<String> missingDirectories = new ArrayList<>();
+        for (Map.Entry<String, FileMeta> entry : source.entrySet()) {
+            if (entry.getValue().directory() && !entry.getKey().isEmpty() && !target.containsKey(entry.getKey())) {
+                missingDirectories.add(entry.getKey());
+            }
+        }
+        Collections.sort(missingDirectories);
+        for (String directory : missingDirectories) {
+            sftpClient.mkdir(remoteRoot + "/" + directory);
+        }
+        if (compareChecksum && !unchangedCandidates.isEmpty()) {
+            Map<String, String> remoteChecksums = remoteChecksums(sftpClient.getClientSession(), remoteRoot, unchangedCandidates);
+            for (String path : unchangedCandidates) {
+                if (SshUtils.sha256Hex(localDirectory.resolve(path)).equals(remoteChecksums.get(path))) {
+                    setRemoteModifiedTime(sftpClient, remoteRoot + "/" + path, source.get(path).modifiedTime());
+                } else {
+                    changedFiles.add(path);
+                }
+            }
+        } else {
+            changedFiles.addAll(unchangedCandidates);
+        }
+
+        long transferredBytes = transferFiles(session, changedFiles, (client, path) -> {
+            String remotePath = remoteRoot + "/" + path;
+            try (OutputStream output = client.write(remotePath, SftpClient.OpenMode.Write,
+                    SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate)) {
+                Files.copy(localDirectory.resolve(path), output);
+            }
+            setRemoteModifiedTime(client, remotePath, source.get(path).modifiedTime());
+            return source.get(path).size();
+        });
+
+        if (deleteExtraneous) {
+            for (String path : extraneousPaths(source, target)) {
+                if (target.get(path).directory()) {
+                    sftpClient.rmdir(remoteRoot + "/" + path);
+                } else {
+                    sftpClient.remove(remoteRoot + "/" + path);
+                }
+                deleted++;
+            }
+        }
+        return new SyncResult(changedFiles.size(), countFiles(source) - changedFiles.size(), deleted,
+                transferredBytes, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 将远端目录同步到本地.
+     * @param session Sftp 会话.
+     * @param remoteDirectory 远端源目录.
+     * @param localDirectory 本地目标目录, 不存在时将自动创建.
+     * @return 返回同步结果.
+     * @throws IOException 当同步失败时抛出.
+     */
+    public SyncResult download(SftpSession session, String remoteDirectory, Path localDirectory) throws IOException {
+        long startTime = System.currentTimeMillis();
+        SftpClient sftpClient = session.getSftpClient();
+        String remoteRoot = trimTrailingSlash(remoteDirectory);
+        Map<String, FileMeta> source = listRemote(session, remoteRoot);
+        if (!source.containsKey("")) {
+            throw new NoSuchFileException(remoteDirectory);
+        }
+        Files.createDirectories(localDirectory);
+        Map<String, FileMeta> target = listLocal(localDirectory);
+
+        int deleted = 0;
+        for (String path : typeMismatchedPaths(source, target)) {
+            Path localPath = localDirectory.resolve(path);
+            if (target.get(path).directory()) {
+                MoreFiles.deleteRecursively(localPath, RecursiveDeleteOption.ALLOW_INSECURE);
+            } else {
+                Files.delete(localPath);
+            }
+            removeTree(target, path);
+            deleted++;
+        }
+        List<String> changedFiles = new ArrayList<>();
+        List<String> unchangedCandidates = new ArrayList<>();
+        compare(source, target, changedFiles, unchangedCandidates);
+        for (Map.Entry<String, FileMeta> entry : source.entrySet()) {
+            if (entry.getValue().directory()) {
+                Files.createDirectories(localDirectory.resolve(entry.getKey()));
+            }
+        }
+        if (compareChecksum && !unchangedCandidates.isEmpty()) {
+            Map<String, String> remoteChecksums = remoteChecksums(sftpClient.getClientSession(), remoteRoot, unchangedCandidates);
+            for (String path : unchangedCandidates) {
+                Path localPath = localDirectory.resolve(path);
+                if (SshUtils.sha256Hex(localPath).equals(remoteChecksums.get(path))) {
+                    Files.setLastModifiedTime(localPath, FileTime.from(source.get(path).modifiedTime(), TimeUnit.SECONDS));
+                } else {
+                    changedFiles.add(path);
+                }
+            }
+        } else {
+            changedFiles.addAll(unchangedCandidates);
+        }
+
+        long transferredBytes = transferFiles(session, changedFiles, (client, path) -> {
+            Path localPath = localDirectory.resolve(path);
+            try (InputStream input = client.read(remoteRoot + "/" + path)) {
+                Files.copy(input, localPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.setLastModifiedTime(localPath, FileTime.from(source.get(path).modifiedTime(), TimeUnit.SECONDS));
+            return source.get(path).size();
+        });
+
+        if (deleteExtraneous) {
+            for (String path : extraneousPaths(source, target)) {
+                Files.delete(localDirectory.resolve(path));
+                deleted++;
+            }
+        }
+        return new SyncResult(changedFiles.size(), countFiles(source) - changedFiles.size(), deleted,
+                transferredBytes, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 比较源与目标.
+     * @param source 源文件树.
+     * @param target 目标文件树.
+     * @param changedFiles 确定需要传输的文件(目标不存在, 类型不同或大小不同).
+     * @param modifiedFiles 大小相同但修改时间不同的文件, 启用校验和比较时需进一步确认.
+     */
+    private static void compare(Map<String, FileMeta> source, Map<String, FileMeta> target,
+                                List<String> changedFiles, List<String> modifiedFiles) {
+        for (Map.Entry<String, FileMeta> entry : source.entrySet()) {
+            FileMeta sourceMeta = entry.getValue();
+            if (sourceMeta.directory()) {
+                continue;
+            }
+            FileMeta targetMeta = target.get(entry.getKey());
+            if (targetMeta == null || targetMeta.directory() || targetMeta.size() != sourceMeta.size()) {
+                changedFiles.add(entry.getKey());
+            } else if (targetMeta.modifiedTime() != sourceMeta.modifiedTime()) {
+                modifiedFiles.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * 获取源与目标中类型不同的路径.
+     * <p> 目标中的这些路径会阻碍创建目录或写入文件, 需要在同步前删除.
+     * <p> 类型不同的路径只在源或目标其中一方是目录, 所以这些路径之间不存在包含关系.
+     * @return 返回类型不同的路径.
+     */
+    private static List<String> typeMismatchedPaths(Map<String, FileMeta> source, Map<String, FileMeta> target) {
+        List<String> paths = new ArrayList<>();
+        for (Map.Entry<String, FileMeta> entry : source.entrySet()) {
+            FileMeta targetMeta = target.get(entry.getKey());
+            if (!entry.getKey().isEmpty() && targetMeta != null && targetMeta.directory() != entry.getValue().directory()) {
+                paths.add(entry.getKey());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * 从文件树中移除路径及其包含的所有路径.
+     */
+    private static void removeTree(Map<String, FileMeta> tree, String path) {
+        String prefix = path + "/";
+        tree.keySet().removeIf(key -> key.equals(path) || key.startsWith(prefix));
+    }
+
+    /**
+     * 获取目标中多余的路径.
+     * @return 返回多余的路径, 按深度从深到浅排列, 以便先删除目录中的内容.
+     */
+    private static List<String> extraneousPaths(Map<String, FileMeta> source, Map<String, FileMeta> target) {
+        List<String> paths = new ArrayList<>();
+        for (Map.Entry<String, FileMeta> entry : target.entrySet()) {
+            String path = entry.getKey();
+            if (path.isEmpty()) {
+                continue;
+            }
+            FileMeta sourceMeta = source.get(path);
+            if (sourceMeta == null || sourceMeta.directory() != entry.getValue().directory()) {
+                paths.add(path);
+            }
+        }
+        paths.sort(Comparator.comparingInt((String path) -> path.split("/").length).reversed());
+        return paths;
+    }
+
+    private static int countFiles(Map<String, FileMeta> tree) {
+        int count = 0;
+        for (FileMeta meta : tree.values()) {
+            if (!meta.directory()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private long transferFiles(SftpSession session, List<String> files, FileTransfer transfer) throws IOException {
+        if (files.isEmpty()) {
+            return 0;
+        }
+        AtomicLong transferredBytes = new AtomicLong();
+        try (SftpClientPool clientPool = new SftpClientPool(session.getSftpClient().getClientSession(),
+                Math.min(parallelism, files.size()))) {
+            List<Future<?>> futures = new ArrayList<>(files.size());
+            for (String file : files) {
+                futures.add(clientPool.submit(client -> transferredBytes.addAndGet(transfer.transfer(client, file))));
+            }
+            SftpClientPool.awaitAll(futures);
+        }
+        return transferredBytes.get();
+    }
+
+    private static Map<String, FileMeta> listLocal(Path root) throws IOException {
+        Map<String, FileMeta> tree = new HashMap<>();
+        if (!Files.isDirectory(root)) {
+            throw new NotDirectoryException(root.toString());
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                tree.put(relativize(root, dir), new FileMeta(true, 0, 0));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    tree.put(relativize(root, file), new FileMeta(false, attrs.size(),
+                            attrs.lastModifiedTime().to(TimeUnit.SECONDS)));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return tree;
+    }
+
+    private static String relativize(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * 获取远端目录树.
+     * <p> 通过 {@link SftpSession#walk(String, int, java.util.function.Predicate)} 并发列出目录,
+     * 只使用 readdir 返回的属性.
+     * @return 返回相对路径到文件信息的映射, 根目录的相对路径为空字符串; 根目录不存在时返回空映射.
+     */
+    private static Map<String, FileMeta> listRemote(SftpSession session, String root) throws IOException {
+        Map<String, FileMeta> tree = new HashMap<>();
+        int prefixLength = "/".equals(root) ? 1 : root.length() + 1;
+        try (Stream<SftpFileEntry> entries = session.walk(root)) {
+            entries.forEach(entry -> {
+                String relativePath = entry.path().substring(prefixLength);
+                if (entry.isDirectory()) {
+                    tree.put(relativePath, new FileMeta(true, 0, 0));
+                } else if (entry.isRegularFile()) {
+                    FileTime modifyTime = entry.attributes().getModifyTime();
+                    tree.put(relativePath, new FileMeta(false, entry.getSize(),
+                            modifyTime == null ? 0 : modifyTime.to(TimeUnit.SECONDS)));
+                }
+            });
+        } catch (UncheckedIOException e) {
+            if (tree.isEmpty() && SftpErrors.isNoSuchFile(e.getCause())) {
+                return tree;
+            }
+            throw e.getCause();
+        }
+        tree.put("", new FileMeta(true, 0, 0));
+        return tree;
+    }
+
+    private static void setRemoteModifiedTime(SftpClient client, String path, long modifiedTime) throws IOException {
+        // Sftp v3 只能同时设置访问时间与修改时间.
+        client.setStat(path, new SftpClient.Attributes()
+                .accessTime(modifiedTime, TimeUnit.SECONDS)
+                .modifyTime(modifiedTime, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 通过一次命令执行获取多个远端文件的校验和.
+     * <p> 路径以 NUL 分隔通过标准输入传给 {@code xargs}, 由 {@code xargs} 按系统的参数长度限制分批执行,
+     * 所以文件数量不受命令行长度限制.
+     */
+    private static Map<String, String> remoteChecksums(ClientSession session, String root, List<String> paths)
+            throws IOException {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        for (String path : paths) {
+            input.write((root + "/" + path).getBytes(StandardCharsets.UTF_8));
+            input.write(0);
+        }
+        Map<String, String> checksums = new HashMap<>();
+        try (CommandExecSession exec = new CommandExecSession(session.createExecChannel("xargs -0 sha256sum --"))) {
+            exec.setIn(new ByteArrayInputStream(input.toByteArray()));
+            OutputCapture output = exec.captureOut(OutputCapture.spillToFile(1024 * 1024, null));
+            exec.exec();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(output.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // 格式: <校验和>  <路径>
+                    int separator = line.indexOf("  ");
+                    if (separator > 0 && line.startsWith(root + "/", separator + 2)) {
+                        checksums.put(line.substring(separator + 2 + root.length() + 1), line.substring(0, separator));
+                    }
+                }
+            } finally {
+                output.close();
+            }
+        }
+        return checksums;
+    }
+
+    private static String trimTrailingSlash(String path) {
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    /**
+     * 文件信息.
+     * @param directory 是否为目录.
+     * @param size 文件大小.
+     * @param modifiedTime 修改时间, 单位: 秒.
+     */
+    private record FileMeta(boolean directory, long size, long modifiedTime) {
+    }
+
+    @FunctionalInterface
+    private interface FileTransfer {
+        long transfer(SftpClient client, String relativePath) throws IOException;
+    }
+
+    /**
+     * 同步结果.
+     * @param transferredFiles 传输的文件数量.
+     * @param skippedFiles 未变化而跳过的文件数量.
+     * @param deletedPaths 删除的多余文件与目录数量.
+     * @param transferredBytes 传输的字节数.
+     * @param duration 同步耗时, 单位: 毫秒.
+     */
+    public record SyncResult(int transferredFiles, int skippedFiles, int deletedPaths,
+                             long transferredBytes, long duration) {
+    }
+
+    /**
+     * 获取一个构建器.
+     * @return 返回新的构建器.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@link SftpDirectorySync} 构建器.
+     */
+    public static class Builder {
+
+        private boolean compareChecksum = false;
+        private boolean deleteExtraneous = false;
+        private int parallelism = 4;
+
+        private Builder() {
+        }
+
+        public SftpDirectorySync create() {
+            return new SftpDirectorySync(compareChecksum, deleteExtraneous, parallelism);
+        }
+
+        /**
+         * 是否比较校验和.
+         * <p> 启用后, 大小相同但修改时间不同的文件将比较 SHA-256 校验和, 内容相同则只更新修改时间.
+         * 远端校验和通过一次 {@code xargs sha256sum} 命令批量计算.
+         * @param compareChecksum 是否比较校验和, 默认不比较.
+         * @return 返回构建器本身.
+         */
+        public Builder compareChecksum(boolean compareChecksum) {
+            this.compareChecksum = compareChecksum;
+            return this;
+        }
+
+        /**
+         * 是否删除目标中多余的文件.
+         * @param deleteExtraneous 如果为 {@code true}, 源目录中不存在的文件与目录将从目标中删除, 默认不删除.
+         * @return 返回构建器本身.
+         */
+        public Builder deleteExtraneous(boolean deleteExtraneous) {
+            this.deleteExtraneous = deleteExtraneous;
+            return this;
+        }
+
+        /**
+         * 设置并行传输数.
+         * <p> 每个并行传输占用一个 Sftp 通道.
+         * @param parallelism 并行传输数, 默认为 4.
+         * @return 返回构建器本身.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+    }
+
+}
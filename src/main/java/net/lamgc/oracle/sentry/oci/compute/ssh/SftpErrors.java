@@ -0,0 +1,62 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.common.SftpException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Sftp 错误工具.
+ * <p> 用于将 Sftp 状态码映射为对应的异常, 使操作可以直接执行并根据失败原因处理, 而不需要事先检查路径状态.
+ * @author LamGC
+ */
+final class SftpErrors {
+
+    private SftpErrors() {
+    }
+
+    /**
+     * 判断异常是否表示路径不存在.
+     * @param e 异常.
+     * @return 如果为路径不存在的 Sftp 状态码, 返回 {@code true}.
+     */
+    static boolean isNoSuchFile(Throwable e) {
+        return e instanceof SftpException sftpException &&
+                (sftpException.getStatus() == SftpConstants.SSH_FX_NO_SUCH_FILE ||
+                        sftpException.getStatus() == SftpConstants.SSH_FX_NO_SUCH_PATH);
+    }
+
+    /**
+     * 判断异常是否为指定的 Sftp 状态码之一.
+     * @param e 异常.
+     * @param statuses 状态码.
+     * @return 如果异常为 Sftp 异常且状态码为指定状态码之一, 返回 {@code true}.
+     */
+    static boolean hasStatus(Throwable e, int... statuses) {
+        if (e instanceof SftpException sftpException) {
+            for (int status : statuses) {
+                if (sftpException.getStatus() == status) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 如果异常表示路径不存在, 则将其转换为 {@link FileNotFoundException}.
+     * @param e 原始异常.
+     * @param path 操作的路径.
+     * @return 如果路径不存在, 返回以原始异常为原因的 {@link FileNotFoundException}, 否则返回原始异常.
+     */
+    static IOException mapNotFound(IOException e, String path) {
+        if (!isNoSuchFile(e)) {
+            return e;
+        }
+        FileNotFoundException exception = new FileNotFoundException(path);
+        exception.initCause(e);
+        return exception;
+    }
+
+}
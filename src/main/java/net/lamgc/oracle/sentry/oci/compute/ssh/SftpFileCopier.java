@@ -0,0 +1,134 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.sftp.client.SftpClient;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sftp 本地文件复制.
+ * <p> 在本地文件与远端文件之间直接传输数据: 上传时本地文件被映射到内存, 下载时数据直接写入本地文件通道,
+ * 不经过 {@link java.io.InputStream}/{@link java.io.OutputStream} 与中间缓冲数组, 且多个请求同时在途.
+ * <p> 与 {@link SftpTransfer} 不同, 本类只使用一个 Sftp 通道, 不记录进度, 适用于中小文件或无需续传的场景.
+ * @author LamGC
+ */
+public final class SftpFileCopier {
+
+    private final int requestSize;
+    private final int maxInFlight;
+
+    private SftpFileCopier(int requestSize, int maxInFlight) {
+        if (requestSize < 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("Request size and max in-flight requests must be positive.");
+        }
+        this.requestSize = requestSize;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 上传本地文件.
+     * @param session Sftp 会话.
+     * @param localPath 本地文件路径.
+     * @param remotePath 远端保存路径, 如果文件已存在将被覆盖.
+     * @return 返回传输的字节数.
+     * @throws IOException 当传输失败时抛出.
+     */
+    public long upload(SftpSession session, Path localPath, String remotePath) throws IOException {
+        SftpClient client = session.getSftpClient();
+        try (FileChannel source = FileChannel.open(localPath, StandardOpenOption.READ);
+             SftpClient.CloseableHandle handle = client.open(remotePath, SftpClient.OpenMode.Write,
+                     SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate)) {
+            long size = source.size();
+            new SftpPipeline(client, handle, requestSize, maxInFlight).upload(source, 0, size);
+            return size;
+        }
+    }
+
+    /**
+     * 下载远端文件.
+     * @param session Sftp 会话.
+     * @param remotePath 远端文件路径.
+     * @param localPath 本地保存路径, 如果文件已存在将被覆盖.
+     * @return 返回传输的字节数.
+     * @throws NoSuchFileException 当远端文件不存在时抛出.
+     * @throws IOException 当传输失败时抛出.
+     */
+    public long download(SftpSession session, String remotePath, Path localPath) throws IOException {
+        SftpClient client = session.getSftpClient();
+        SftpClient.Attributes attributes;
+        try {
+            attributes = client.stat(remotePath);
+        } catch (IOException e) {
+            if (SftpErrors.isNoSuchFile(e)) {
+                NoSuchFileException exception = new NoSuchFileException(remotePath);
+                exception.initCause(e);
+                throw exception;
+            }
+            throw e;
+        }
+        if (!attributes.isRegularFile()) {
+            throw new IOException("Not a regular file: " + remotePath);
+        }
+        try (SftpClient.CloseableHandle handle = client.open(remotePath, SftpClient.OpenMode.Read);
+             FileChannel target = FileChannel.open(localPath, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            new SftpPipeline(client, handle, requestSize, maxInFlight).download(target, 0, attributes.getSize());
+        } catch (IOException e) {
+            Files.deleteIfExists(localPath);
+            throw e;
+        }
+        return attributes.getSize();
+    }
+
+    /**
+     * 获取一个构建器.
+     * @return 返回新的构建器.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@link SftpFileCopier} 构建器.
+     */
+    public static class Builder {
+
+        private int requestSize = 0;
+        private int maxInFlight = SftpPipeline.DEFAULT_MAX_IN_FLIGHT;
+
+        private Builder() {
+        }
+
+        public SftpFileCopier create() {
+            return new SftpFileCopier(requestSize, maxInFlight);
+        }
+
+        /**
+         * 设置单个 Sftp 读写请求的大小.
+         * <p> 默认根据 Sftp 通道协商的 SSH 数据包大小计算, 使每个请求恰好放入一个数据包.
+         * 大部分服务端会限制单个请求的数据量(OpenSSH 为 256 KiB), 过大的请求可能被截断.
+         * @param requestSize 请求大小(单位: 字节), 为 0 时自动计算.
+         * @return 返回构建器本身.
+         */
+        public Builder requestSize(int requestSize) {
+            this.requestSize = requestSize;
+            return this;
+        }
+
+        /**
+         * 设置同时在途的请求数.
+         * <p> 在途数据量(请求大小 * 在途请求数)应不小于链路的带宽时延积, 才能充分利用带宽.
+         * @param maxInFlight 在途请求数, 默认为 16.
+         * @return 返回构建器本身.
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+    }
+
+}
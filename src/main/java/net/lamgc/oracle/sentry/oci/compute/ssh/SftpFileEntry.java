@@ -0,0 +1,40 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.sftp.client.SftpClient;
+
+/**
+ * 远端文件条目.
+ * <p> 由 {@link SftpSession#walk(String, int, java.util.function.Predicate)} 返回, 属性来自 readdir 的结果.
+ * @param path 完整路径.
+ * @param name 文件名, 不带路径.
+ * @param depth 相对于遍历起始目录的深度, 起始目录中的条目深度为 1.
+ * @param attributes 文件属性. 符号链接不会被跟随, 其属性为链接本身的属性.
+ * @author LamGC
+ */
+public record SftpFileEntry(String path, String name, int depth, SftpClient.Attributes attributes) {
+
+    /**
+     * 是否为目录.
+     * @return 如果是目录, 返回 {@code true}.
+     */
+    public boolean isDirectory() {
+        return attributes.isDirectory();
+    }
+
+    /**
+     * 是否为普通文件.
+     * @return 如果是普通文件, 返回 {@code true}.
+     */
+    public boolean isRegularFile() {
+        return attributes.isRegularFile();
+    }
+
+    /**
+     * 获取文件大小.
+     * @return 返回文件大小, 单位 b.
+     */
+    public long getSize() {
+        return attributes.getSize();
+    }
+
+}
@@ -0,0 +1,343 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.channel.ClientChannel;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.sftp.client.RawSftpClient;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.impl.DefaultSftpClient;
+import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.common.SftpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ * Sftp 流水线读写.
+ * <p> {@link SftpClient} 的读写方法每次只发送一个请求, 并且只接受 {@code byte[]},
+ * 数据需在本地文件, 中间数组和请求包之间多次复制. 本类直接使用原始的 Sftp 请求:
+ * <ul>
+ *     <li> 写入时, 本地文件被分段映射到内存, 数据从映射区域直接放入请求包, 每段发送完毕后立即解除映射;
+ *     <li> 读取时, 响应包中的数据直接写入本地文件通道;
+ *     <li> 同时保持多个请求在途, 等待最早的请求完成后再发送新的请求.
+ * </ul>
+ * <p> 本类非线程安全, 同一个 Sftp 通道同一时间只能由一个线程使用.
+ * @author LamGC
+ */
+final class SftpPipeline {
+
+    private final static Logger log = LoggerFactory.getLogger(SftpPipeline.class);
+
+    /**
+     * 默认同时在途的请求数.
+     */
+    final static int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    /**
+     * 自动计算请求大小时的上限, OpenSSH 会截断超过 256 KiB 的读写请求.
+     */
+    private final static long MAX_REQUEST_SIZE = 256 * 1024;
+
+    /**
+     * 每次映射本地文件的最大长度.
+     */
+    private final static long MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * {@link DefaultSftpClient#send(int, Buffer)} 需要在数据前预留的包头长度(长度, 类型, 请求 Id),
+     * 预留后包头将直接写入缓冲区, 而不会复制数据.
+     */
+    private final static int PACKET_HEADER_SIZE = 4 + 1 + 4;
+
+    /**
+     * 写请求中除数据外的字段长度(不含句柄): 偏移量与数据长度.
+     */
+    private final static int WRITE_FIELDS_SIZE = 8 + 4;
+
+    /**
+     * 数据响应中除数据外的字段长度: 数据长度与 Sftp v6 的 EOF 标志.
+     */
+    private final static int DATA_FIELDS_SIZE = 4 + 1;
+
+    /**
+     * {@code sun.misc.Unsafe#invokeCleaner(ByteBuffer)}, 用于解除内存映射, 见 {@link #unmap(MappedByteBuffer)}.
+     */
+    private final static MethodHandle INVOKE_CLEANER = loadInvokeCleaner();
+
+    private final RawSftpClient client;
+    private final byte[] handle;
+    private final int requestSize;
+    private final int maxInFlight;
+    private final long mapWindowSize;
+
+    /**
+     * 创建流水线.
+     * @param client Sftp 客户端.
+     * @param handle 已打开的文件句柄.
+     * @param requestSize 单个请求的数据量, 如果为 0, 则使用与通道包大小匹配的数据量.
+     * @param maxInFlight 同时在途的请求数.
+     */
+    SftpPipeline(SftpClient client, SftpClient.Handle handle, int requestSize, int maxInFlight) {
+        this(client, handle, requestSize, maxInFlight, MAP_WINDOW_SIZE);
+    }
+
+    SftpPipeline(SftpClient client, SftpClient.Handle handle, int requestSize, int maxInFlight, long mapWindowSize) {
+        if (!(client instanceof RawSftpClient rawClient)) {
+            throw new IllegalArgumentException("Sftp client does not support raw requests: " + client.getClass());
+        }
+        if (requestSize < 0 || maxInFlight <= 0 || mapWindowSize <= 0) {
+            throw new IllegalArgumentException("Request size, max in-flight requests and map window size must be positive.");
+        }
+        this.client = rawClient;
+        this.handle = handle.getIdentifier();
+        this.requestSize = requestSize;
+        this.maxInFlight = maxInFlight;
+        this.mapWindowSize = mapWindowSize;
+    }
+
+    /**
+     * 将本地文件的指定区域写入远端文件的相同偏移处.
+     * @param source 本地文件通道.
+     * @param offset 起始偏移.
+     * @param length 写入长度.
+     * @throws IOException 当读取本地文件或写入远端文件失败时抛出.
+     */
+    void upload(FileChannel source, long offset, long length) throws IOException {
+        int dataSize = uploadDataSize();
+        Deque<Integer> inFlight = new ArrayDeque<>(maxInFlight);
+        try {
+            long end = offset + length;
+            long windowStart = offset;
+            while (windowStart < end) {
+                MappedByteBuffer window = source.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(mapWindowSize, end - windowStart));
+                try {
+                    while (window.hasRemaining()) {
+                        int size = Math.min(dataSize, window.remaining());
+                        long position = windowStart + window.position();
+                        Buffer request = newRequest(4 + handle.length + WRITE_FIELDS_SIZE + size);
+                        request.putBytes(handle);
+                        request.putLong(position);
+                        // putBuffer 会写入数据长度, 然后直接从映射区域复制数据.
+                        request.putBuffer(window.slice(window.position(), size));
+                        window.position(window.position() + size);
+                        if (inFlight.size() >= maxInFlight) {
+                            checkStatus(client.receive(inFlight.poll()));
+                        }
+                        inFlight.add(client.send(SftpConstants.SSH_FXP_WRITE, request));
+                    }
+                    windowStart += window.capacity();
+                } finally {
+                    // 数据已复制到请求包中, 立即解除映射, 而不是等待垃圾回收.
+                    unmap(window);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                checkStatus(client.receive(inFlight.poll()));
+            }
+        } catch (IOException | RuntimeException e) {
+            discardResponses(inFlight);
+            throw e;
+        }
+    }
+
+    /**
+     * 获取单个写请求的数据量.
+     * <p> 自动计算时, 整个写请求(包头, 句柄, 偏移量, 数据长度与数据)恰好放入单个数据包.
+     */
+    int uploadDataSize() {
+        return requestSize != 0 ? requestSize :
+                packetDataSize(true) - (PACKET_HEADER_SIZE + 4 + handle.length + WRITE_FIELDS_SIZE);
+    }
+
+    /**
+     * 获取单个读请求的数据量.
+     * <p> 自动计算时, 整个数据响应(包头, 数据长度, EOF 标志与数据)恰好放入单个数据包.
+     */
+    int downloadDataSize() {
+        return requestSize != 0 ? requestSize :
+                packetDataSize(false) - (PACKET_HEADER_SIZE + DATA_FIELDS_SIZE);
+    }
+
+    /**
+     * 将远端文件的指定区域读取到本地文件的相同偏移处.
+     * <p> 服务端返回的数据少于请求的数据量时, 将补发请求读取剩余部分.
+     * @param target 本地文件通道.
+     * @param offset 起始偏移.
+     * @param length 读取长度.
+     * @throws EOFException 当远端文件长度不足时抛出.
+     * @throws IOException 当读取远端文件或写入本地文件失败时抛出.
+     */
+    void download(FileChannel target, long offset, long length) throws IOException {
+        int dataSize = downloadDataSize();
+        Deque<ReadRequest> inFlight = new ArrayDeque<>(maxInFlight);
+        try {
+            long end = offset + length;
+            long nextOffset = offset;
+            while (nextOffset < end || !inFlight.isEmpty()) {
+                while (nextOffset < end && inFlight.size() < maxInFlight) {
+                    int size = (int) Math.min(dataSize, end - nextOffset);
+                    inFlight.add(sendRead(nextOffset, size));
+                    nextOffset += size;
+                }
+                ReadRequest request = inFlight.poll();
+                int received = receiveData(request, target);
+                if (received < request.length()) {
+                    inFlight.addFirst(sendRead(request.offset() + received, request.length() - received));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            discardResponses(inFlight.stream().map(ReadRequest::id).toList());
+            throw e;
+        }
+    }
+
+    private ReadRequest sendRead(long offset, int length) throws IOException {
+        Buffer request = newRequest(4 + handle.length + WRITE_FIELDS_SIZE);
+        request.putBytes(handle);
+        request.putLong(offset);
+        request.putInt(length);
+        return new ReadRequest(client.send(SftpConstants.SSH_FXP_READ, request), offset, length);
+    }
+
+    /**
+     * 接收读请求的响应, 并将数据写入本地文件.
+     * @return 返回收到的数据量.
+     */
+    private int receiveData(ReadRequest request, FileChannel target) throws IOException {
+        Buffer response = client.receive(request.id());
+        response.getInt();
+        int type = response.getUByte();
+        response.getInt();
+        if (type == SftpConstants.SSH_FXP_STATUS) {
+            int status = response.getInt();
+            if (status == SftpConstants.SSH_FX_EOF) {
+                throw new EOFException("Remote file ended at offset " + request.offset() + ".");
+            }
+            throw new SftpException(status, readMessage(response));
+        } else if (type != SftpConstants.SSH_FXP_DATA) {
+            throw new SftpException(SftpConstants.SSH_FX_BAD_MESSAGE, "Unexpected response type: " + type);
+        }
+        int length = response.getInt();
+        if (length > request.length()) {
+            throw new SftpException(SftpConstants.SSH_FX_BAD_MESSAGE,
+                    "Server returned more data than requested: " + length);
+        }
+        ByteBuffer data = ByteBuffer.wrap(response.array(), response.rpos(), length);
+        long position = request.offset();
+        while (data.hasRemaining()) {
+            position += target.write(data, position);
+        }
+        return length;
+    }
+
+    /**
+     * 接收并丢弃尚未接收的响应.
+     * <p> 传输失败时仍有请求在途, 这些请求的响应会一直保存在 Sftp 客户端中,
+     * 因此需要逐一取出, 以免长期使用的客户端不断积累无人接收的响应.
+     * @param ids 尚未接收响应的请求 Id.
+     */
+    private void discardResponses(Collection<Integer> ids) {
+        for (int id : ids) {
+            try {
+                client.receive(id);
+            } catch (IOException e) {
+                // 通道已不可用时, 剩余的响应也不会再到达.
+                log.debug("丢弃未完成的 Sftp 请求响应时发生异常.", e);
+                return;
+            }
+        }
+    }
+
+    private static void checkStatus(Buffer response) throws IOException {
+        response.getInt();
+        int type = response.getUByte();
+        response.getInt();
+        if (type != SftpConstants.SSH_FXP_STATUS) {
+            throw new SftpException(SftpConstants.SSH_FX_BAD_MESSAGE, "Unexpected response type: " + type);
+        }
+        int status = response.getInt();
+        if (status != SftpConstants.SSH_FX_OK) {
+            throw new SftpException(status, readMessage(response));
+        }
+    }
+
+    private static String readMessage(Buffer response) {
+        return response.available() >= 4 ? response.getString() : "";
+    }
+
+    private static Buffer newRequest(int size) {
+        Buffer buffer = new ByteArrayBuffer(PACKET_HEADER_SIZE + size, false);
+        buffer.rpos(PACKET_HEADER_SIZE);
+        buffer.wpos(PACKET_HEADER_SIZE);
+        return buffer;
+    }
+
+    /**
+     * 解除内存映射.
+     * <p> Java 没有公开的解除映射方法, 映射区域默认在垃圾回收时才释放, 传输大文件时会占用大量虚拟内存与文件句柄.
+     * 如果当前运行环境不支持, 则仍等待垃圾回收释放.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(buffer);
+        } catch (Throwable e) {
+            log.debug("解除内存映射失败, 将由垃圾回收释放.", e);
+        }
+    }
+
+    private static MethodHandle loadInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("当前运行环境不支持解除内存映射, 映射区域将由垃圾回收释放.", e);
+            return null;
+        }
+    }
+
+    /**
+     * 获取 Sftp 通道单个 SSH 数据包可承载的数据量.
+     * <p> 请求(或响应)能放入单个数据包时, 不会在传输层被拆分.
+     * @param outgoing 如果为 {@code true}, 返回发往服务端方向的包大小, 否则返回接收方向的包大小.
+     */
+    int packetDataSize(boolean outgoing) {
+        if (client instanceof DefaultSftpClient defaultClient) {
+            ClientChannel channel = defaultClient.getClientChannel();
+            long packetSize = outgoing ? channel.getRemoteWindow().getPacketSize() :
+                    channel.getLocalWindow().getPacketSize();
+            // 包大小过小时仍使用 32 KiB, 由传输层拆分; 过大时限制在服务端普遍接受的请求大小内.
+            return (int) Math.min(Math.max(packetSize, 32 * 1024), MAX_REQUEST_SIZE);
+        }
+        return 32 * 1024;
+    }
+
+    /**
+     * 在途的读请求.
+     * @param id 请求 Id.
+     * @param offset 读取偏移.
+     * @param length 请求的数据量.
+     */
+    private record ReadRequest(int id, long offset, int length) {
+    }
+
+}
@@ -3,18 +3,23 @@ package net.lamgc.oracle.sentry.oci.compute.ssh;
 import net.lamgc.oracle.sentry.common.LazyLoader;
 import org.apache.sshd.sftp.client.SftpClient;
 import org.apache.sshd.sftp.common.SftpConstants;
-import org.apache.sshd.sftp.common.SftpException;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.NoSuchFileException;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Sftp 会话.
  * <p> 可通过会话访问远程服务器的文件.
+ * <p> 每个 Sftp 请求都是一次网络往返, 所以各操作会直接执行, 并根据 Sftp 状态码判断失败原因,
+ * 而不是在操作前检查路径是否存在.
  * @author LamGC
  */
 @SuppressWarnings("unused")
@@ -31,6 +36,11 @@ public class SftpSession implements Closeable {
         EXCLUDED_FILE_NAMES.add("..");
     }
 
+    /**
+     * 遍历与批量删除时的默认并行数, 每个并行操作占用一个 Sftp 通道.
+     */
+    private final static int DEFAULT_PARALLELISM = 4;
+
     private final SftpClient sftpClient;
     private final LazyLoader<String> userHome;
 
@@ -63,18 +73,57 @@ public class SftpSession implements Closeable {
      * @throws IOException 执行失败时抛出异常.
      */
     public Set<String> listFiles(String path) throws IOException {
-        SftpClient.CloseableHandle handle = sftpClient.openDir(path);
         Set<String> paths = new HashSet<>();
-        for (SftpClient.DirEntry entry : sftpClient.listDir(handle)) {
-            if (EXCLUDED_FILE_NAMES.contains(entry.getFilename())) {
-                continue;
-            }
+        for (SftpClient.DirEntry entry : listEntries(path)) {
             paths.add(entry.getFilename());
         }
-        sftpClient.close(handle);
         return paths;
     }
 
+    /**
+     * 遍历目录树.
+     * <p> 返回的条目带有 readdir 返回的属性, 无需再逐个获取. 子目录会被并发预取, 条目在遍历过程中逐步返回,
+     * 不会一次性加载整个目录树. 条目的返回顺序不固定, 但目录总是先于其子条目返回.
+     * <p> 遍历不会跟随符号链接. 返回的流需要关闭, 以释放遍历所使用的 Sftp 通道.
+     * <p> 遍历中发生的 IO 异常将以 {@link UncheckedIOException} 抛出.
+     * @param path 起始目录, 起始目录本身不会被返回.
+     * @param maxDepth 最大深度, 起始目录中的条目深度为 1.
+     * @param filter 条目过滤器, 只决定条目是否返回, 不影响是否进入目录.
+     * @return 返回条目流.
+     */
+    public Stream<SftpFileEntry> walk(String path, int maxDepth, Predicate<SftpFileEntry> filter) {
+        SftpTreeWalker walker = new SftpTreeWalker(sftpClient.getClientSession(), path, maxDepth,
+                filter, DEFAULT_PARALLELISM);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(walker,
+                        Spliterator.NONNULL | Spliterator.DISTINCT), false)
+                .onClose(walker::close);
+    }
+
+    /**
+     * 遍历目录树中的所有条目.
+     * @param path 起始目录.
+     * @return 返回条目流.
+     * @see #walk(String, int, Predicate)
+     */
+    public Stream<SftpFileEntry> walk(String path) {
+        return walk(path, Integer.MAX_VALUE, entry -> true);
+    }
+
+    /**
+     * 获取目录内的所有条目, 包括 readdir 返回的属性.
+     */
+    private List<SftpClient.DirEntry> listEntries(String path) throws IOException {
+        List<SftpClient.DirEntry> entries = new ArrayList<>();
+        try (SftpClient.CloseableHandle handle = sftpClient.openDir(path)) {
+            for (SftpClient.DirEntry entry : sftpClient.listDir(handle)) {
+                if (!EXCLUDED_FILE_NAMES.contains(entry.getFilename())) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
     /**
      * 读取指定路径的问题.
      * @param path 文件所在路径.
@@ -83,10 +132,11 @@ public class SftpSession implements Closeable {
      * @throws IOException 当操作执行失败时抛出异常.
      */
     public InputStream read(String path) throws IOException {
-        if (!exists(path)) {
-            throw new FileNotFoundException(path);
+        try {
+            return sftpClient.read(path);
+        } catch (IOException e) {
+            throw SftpErrors.mapNotFound(e, path);
         }
-        return sftpClient.read(path);
     }
 
     /**
@@ -97,10 +147,12 @@ public class SftpSession implements Closeable {
      * @throws IOException 如果操作失败则抛出异常.
      */
     public OutputStream write(String path) throws IOException {
-        if (!exists(path)) {
-            throw new FileNotFoundException(path);
+        try {
+            // 未指定 Create, 文件不存在时服务端将返回 SSH_FX_NO_SUCH_FILE.
+            return sftpClient.write(path, SftpClient.OpenMode.Write);
+        } catch (IOException e) {
+            throw SftpErrors.mapNotFound(e, path);
         }
-        return sftpClient.write(path, SftpClient.OpenMode.Write);
     }
 
     /**
@@ -113,10 +165,8 @@ public class SftpSession implements Closeable {
         try {
             return getAttributes(path) != null;
         } catch (IOException e) {
-            if (e instanceof SftpException sftpException) {
-                if (sftpException.getStatus() == SftpConstants.SSH_FX_NO_SUCH_FILE) {
-                    return false;
-                }
+            if (SftpErrors.isNoSuchFile(e)) {
+                return false;
             }
             throw e;
         }
@@ -130,10 +180,7 @@ public class SftpSession implements Closeable {
      * @throws IOException 如果执行失败则抛出异常.
      */
     public boolean isDirectory(String path) throws IOException {
-        if (!exists(path)) {
-            throw new FileNotFoundException(path);
-        }
-        return getAttributes(path).isDirectory();
+        return statExisting(path).isDirectory();
     }
 
     /**
@@ -144,10 +191,7 @@ public class SftpSession implements Closeable {
      * @throws IOException 如果执行失败则抛出异常.
      */
     public boolean isFile(String path) throws IOException {
-        if (!exists(path)) {
-            throw new FileNotFoundException(path);
-        }
-        return getAttributes(path).isRegularFile();
+        return statExisting(path).isRegularFile();
     }
 
     /**
@@ -159,17 +203,11 @@ public class SftpSession implements Closeable {
      * @throws IOException 当操作执行失败时抛出.
      */
     public long getFileSize(String path) throws IOException {
-        if (!exists(path)) {
-            throw new FileNotFoundException(path);
-        }
-        SftpClient.Attributes attributes = getAttributes(path);
+        // stat 会跟随符号链接, 返回的是链接目标的属性.
+        SftpClient.Attributes attributes = statExisting(path);
         if (!attributes.isRegularFile()) {
-            if (attributes.isSymbolicLink()) {
-                return getFileSize(sftpClient.readLink(path));
-            }
             throw new NoSuchFileException("Not a file: " + path);
         }
-
         return attributes.getSize();
     }
 
@@ -183,6 +221,44 @@ public class SftpSession implements Closeable {
         return sftpClient.stat(path);
     }
 
+    /**
+     * 获取路径属性, 路径不存在时抛出 {@link FileNotFoundException}.
+     */
+    private SftpClient.Attributes statExisting(String path) throws IOException {
+        try {
+            return sftpClient.stat(path);
+        } catch (IOException e) {
+            throw SftpErrors.mapNotFound(e, path);
+        }
+    }
+
+    /**
+     * 检查路径本身是否存在, 不跟随符号链接.
+     */
+    private boolean lexists(String path) throws IOException {
+        try {
+            sftpClient.lstat(path);
+            return true;
+        } catch (IOException e) {
+            if (SftpErrors.isNoSuchFile(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 判断创建操作的失败是否因为路径已存在.
+     * <p> Sftp v3 没有 SSH_FX_FILE_ALREADY_EXISTS 状态码(例如 OpenSSH 会返回 SSH_FX_FAILURE),
+     * 所以对于通用的失败状态码, 需要再确认路径是否存在. 该检查只在失败时执行.
+     */
+    private boolean isAlreadyExists(IOException e, String path) throws IOException {
+        if (SftpErrors.hasStatus(e, SftpConstants.SSH_FX_FILE_ALREADY_EXISTS)) {
+            return true;
+        }
+        return SftpErrors.hasStatus(e, SftpConstants.SSH_FX_FAILURE) && exists(path);
+    }
+
     /**
      * 创建文件夹.
      * @param path 待创建的目录.
@@ -190,24 +266,39 @@ public class SftpSession implements Closeable {
      * @throws IOException 如果操作执行失败则抛出异常.
      */
     public boolean mkdir(String path) throws IOException {
-        if (exists(path)) {
-            return false;
+        try {
+            sftpClient.mkdir(path);
+            return true;
+        } catch (IOException e) {
+            if (isAlreadyExists(e, path)) {
+                return false;
+            }
+            throw e;
         }
-        sftpClient.mkdir(path);
-        return true;
     }
 
     /**
      * 创建新文件.
+     * <p> Sftp v5 及以上版本中, 客户端会将 Create + Exclusive 转换为 "打开或创建",
+     * 文件已存在时打开不会失败, 所以需要先确认路径不存在. v3(例如 OpenSSH)只需一次请求.
      * @param path 待创建的文件路径.
      * @return 当文件已存在时返回 {@code false}, 不存在且创建成功则返回 {@code true}.
      * @throws IOException 如果操作失败啧抛出异常.
      */
     public boolean createNewFile(String path) throws IOException {
-        if (exists(path)) {
+        if (sftpClient.getVersion() >= SftpConstants.SFTP_V5 && lexists(path)) {
             return false;
         }
-        SftpClient.CloseableHandle handle = sftpClient.open(path, SftpClient.OpenMode.Create);
+        SftpClient.CloseableHandle handle;
+        try {
+            handle = sftpClient.open(path, SftpClient.OpenMode.Write,
+                    SftpClient.OpenMode.Create, SftpClient.OpenMode.Exclusive);
+        } catch (IOException e) {
+            if (isAlreadyExists(e, path)) {
+                return false;
+            }
+            throw e;
+        }
         sftpClient.close(handle);
         return true;
     }
@@ -221,16 +312,27 @@ public class SftpSession implements Closeable {
      * @throws DirectoryNotEmptyException 当路径为目录且目录不为空时抛出该异常.
      */
     public void delete(String path) throws IOException {
-        if (!exists(path)) {
-            throw new FileNotFoundException(path);
+        SftpClient.Attributes attributes;
+        try {
+            // 使用 lstat, 符号链接将作为文件删除, 而不是删除链接指向的目录.
+            attributes = sftpClient.lstat(path);
+        } catch (IOException e) {
+            throw SftpErrors.mapNotFound(e, path);
         }
-        if (isDirectory(path)) {
-            if (!listFiles(path).isEmpty()) {
-                throw new DirectoryNotEmptyException(path);
-            }
-            sftpClient.rmdir(path);
-        } else {
+        if (!attributes.isDirectory()) {
             sftpClient.remove(path);
+            return;
+        }
+        try {
+            sftpClient.rmdir(path);
+        } catch (IOException e) {
+            if (SftpErrors.hasStatus(e, SftpConstants.SSH_FX_DIR_NOT_EMPTY) ||
+                    (SftpErrors.hasStatus(e, SftpConstants.SSH_FX_FAILURE) && !listFiles(path).isEmpty())) {
+                DirectoryNotEmptyException exception = new DirectoryNotEmptyException(path);
+                exception.initCause(e);
+                throw exception;
+            }
+            throw e;
         }
     }
 
@@ -243,20 +345,99 @@ public class SftpSession implements Closeable {
      * @throws IOException 如果操作执行失败, 则抛出异常.
      */
     public boolean forceDeleteDir(String path) throws IOException {
-        if (isDirectory(path)) {
-            for (String filePath : listFiles(path)) {
-                String fullFilePath = path + "/" + filePath;
-                if (isDirectory(fullFilePath)) {
-                    forceDeleteDir(fullFilePath);
-                } else {
-                    sftpClient.remove(fullFilePath);
+        if (!isDirectory(path)) {
+            return false;
+        }
+        // 遍历的同时并行删除文件, 目录则在文件删除完成后按深度由深到浅逐层并行删除.
+        TreeMap<Integer, List<String>> directoriesByDepth = new TreeMap<>(Comparator.reverseOrder());
+        try (SftpClientPool clientPool = new SftpClientPool(sftpClient.getClientSession(), DEFAULT_PARALLELISM);
+             Stream<SftpFileEntry> entries = walk(path)) {
+            List<Future<?>> removals = new ArrayList<>();
+            try {
+                entries.forEach(entry -> {
+                    if (entry.isDirectory()) {
+                        directoriesByDepth.computeIfAbsent(entry.depth(), depth -> new ArrayList<>()).add(entry.path());
+                    } else {
+                        removals.add(clientPool.submit(client -> {
+                            client.remove(entry.path());
+                            return null;
+                        }));
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                removals.forEach(future -> future.cancel(false));
+                throw e.getCause();
+            }
+            SftpClientPool.awaitAll(removals);
+            for (List<String> directories : directoriesByDepth.values()) {
+                List<Future<?>> rmdirs = new ArrayList<>(directories.size());
+                for (String directory : directories) {
+                    rmdirs.add(clientPool.submit(client -> {
+                        client.rmdir(directory);
+                        return null;
+                    }));
                 }
+                SftpClientPool.awaitAll(rmdirs);
             }
-            sftpClient.rmdir(path);
-            return true;
-        } else {
-            return false;
         }
+        sftpClient.rmdir(path);
+        return true;
+    }
+
+    /**
+     * 将本地文件上传到远端.
+     * <p> 数据直接从本地文件映射区域发送, 不经过中间缓冲, 详见 {@link SftpFileCopier}.
+     * @param localPath 本地文件路径.
+     * @param remotePath 远端保存路径, 如果文件已存在将被覆盖.
+     * @return 返回传输的字节数.
+     * @throws IOException 当传输失败时抛出.
+     */
+    public long uploadFile(Path localPath, String remotePath) throws IOException {
+        return SftpFileCopier.builder().create().upload(this, localPath, remotePath);
+    }
+
+    /**
+     * 将远端文件下载到本地.
+     * <p> 数据直接写入本地文件通道, 不经过中间缓冲, 详见 {@link SftpFileCopier}.
+     * @param remotePath 远端文件路径.
+     * @param localPath 本地保存路径, 如果文件已存在将被覆盖.
+     * @return 返回传输的字节数.
+     * @throws IOException 当传输失败时抛出.
+     */
+    public long downloadFile(String remotePath, Path localPath) throws IOException {
+        return SftpFileCopier.builder().create().download(this, remotePath, localPath);
+    }
+
+    /**
+     * 使用分块并行传输下载文件.
+     * <p> 适用于大文件, 传输中断后再次调用可继续传输, 详见 {@link SftpTransfer}.
+     * @param remotePath 远端文件路径.
+     * @param localPath 本地保存路径.
+     * @return 返回传输结果.
+     * @throws IOException 当传输失败时抛出.
+     */
+    public SftpTransfer.TransferResult download(String remotePath, Path localPath) throws IOException {
+        return SftpTransfer.builder().create().download(this, remotePath, localPath);
+    }
+
+    /**
+     * 使用分块并行传输上传文件.
+     * <p> 适用于大文件, 传输中断后再次调用可继续传输, 详见 {@link SftpTransfer}.
+     * @param localPath 本地文件路径.
+     * @param remotePath 远端保存路径.
+     * @return 返回传输结果.
+     * @throws IOException 当传输失败时抛出.
+     */
+    public SftpTransfer.TransferResult upload(Path localPath, String remotePath) throws IOException {
+        return SftpTransfer.builder().create().upload(this, localPath, remotePath);
+    }
+
+    /**
+     * 获取原始 Sftp 客户端.
+     * @return 返回 Sftp 客户端.
+     */
+    SftpClient getSftpClient() {
+        return sftpClient;
     }
 
     @Override
@@ -0,0 +1,441 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClientFactory;
+import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.common.SftpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sftp 分块并行传输.
+ * <p> Sftp 协议为请求/响应模式, 单个流同一时间只有一个请求在途, 在高延迟链路上吞吐量受往返时间限制.
+ * 本类将文件划分为多个分块, 由多个线程各自通过独立的 Sftp 通道和文件句柄并发读写不同偏移的数据,
+ * 使多个请求同时在途, 从而让吞吐量接近链路带宽. 每个分块内部同样通过 {@link SftpPipeline} 保持多个请求在途,
+ * 且数据在本地文件与请求包之间直接传输.
+ * <p> 每个并发线程占用一个通道, 并发数应低于服务端的通道数限制(OpenSSH 的 {@code MaxSessions}, 默认为 10).
+ * <p> 传输进度记录在本地的进度文件中, 传输中断后再次执行同一传输, 将跳过已完成的分块.
+ * <ul>
+ *     <li> 下载: 数据先写入 {@code <本地文件>.part}, 完成后替换为目标文件, 进度文件为 {@code <本地文件>.part.progress};
+ *     <li> 上传: 数据直接写入远端文件, 进度文件保存在哨兵的进度目录中(默认为 {@code ./config/transfer-progress}),
+ *     以本地文件与远端路径区分, 同一文件上传到不同远端路径时进度互不影响, 也不会在源文件所在目录中写入任何文件.
+ *     进度目录无法写入时, 将以不可恢复的方式上传. 继续上传前将检查远端文件,
+ *     如果远端文件不存在或长度与已完成的进度不符(例如已被删除或改写), 将重新上传.
+ * </ul>
+ * <p> 进度只在传输中途和传输失败时保存, 传输成功后进度文件将被删除.
+ * @author LamGC
+ */
+public final class SftpTransfer {
+
+    private final static Logger log = LoggerFactory.getLogger(SftpTransfer.class);
+    private final static ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("Thread-SftpTransfer-%d")
+            .setDaemon(true)
+            .build();
+
+    /**
+     * 保存进度的最小间隔, 单位: 毫秒.
+     */
+    private final static long PROGRESS_SAVE_INTERVAL = 1000;
+
+    /**
+     * 默认的上传进度目录.
+     */
+    public final static Path DEFAULT_PROGRESS_DIRECTORY = Path.of("config", "transfer-progress");
+
+    private final int chunkSize;
+    private final int requestSize;
+    private final int parallelism;
+    private final Path progressDirectory;
+
+    private SftpTransfer(int chunkSize, int requestSize, int parallelism, Path progressDirectory) {
+        if (chunkSize <= 0 || requestSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Chunk size, request size and parallelism must be positive.");
+        }
+        this.chunkSize = chunkSize;
+        this.requestSize = Math.min(requestSize, chunkSize);
+        this.parallelism = parallelism;
+        this.progressDirectory = Objects.requireNonNull(progressDirectory);
+    }
+
+    /**
+     * 下载远端文件.
+     * @param session Sftp 会话.
+     * @param remotePath 远端文件路径.
+     * @param localPath 本地保存路径, 如果文件已存在将被覆盖.
+     * @return 返回传输结果.
+     * @throws IOException 当传输失败时抛出, 已完成的进度将被保存.
+     */
+    public TransferResult download(SftpSession session, String remotePath, Path localPath) throws IOException {
+        SftpClient sftpClient = session.getSftpClient();
+        SftpClient.Attributes attributes = sftpClient.stat(remotePath);
+        if (!attributes.isRegularFile()) {
+            throw new IOException("Not a regular file: " + remotePath);
+        }
+        long modifiedTime = attributes.getModifyTime() == null ? 0 : attributes.getModifyTime().toMillis();
+        Path partFile = localPath.resolveSibling(localPath.getFileName() + ".part");
+        Path progressFile = localPath.resolveSibling(localPath.getFileName() + ".part.progress");
+        TransferProgress progress = TransferProgress.loadOrCreate(progressFile,
+                new TransferProgress(remotePath, attributes.getSize(), modifiedTime, chunkSize));
+        if (!Files.exists(partFile)) {
+            progress = new TransferProgress(remotePath, attributes.getSize(), modifiedTime, chunkSize);
+        }
+
+        long startTime = System.currentTimeMillis();
+        long resumedBytes = progress.getCompletedBytes();
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (resumedBytes == 0) {
+                channel.truncate(0);
+            }
+            runChunks(session, progress, progressFile, channel, client -> {
+                SftpClient.CloseableHandle handle = client.open(remotePath, SftpClient.OpenMode.Read);
+                SftpPipeline pipeline = new SftpPipeline(client, handle, requestSize, SftpPipeline.DEFAULT_MAX_IN_FLIGHT);
+                return (offset, length) -> pipeline.download(channel, offset, length);
+            });
+            channel.force(true);
+        }
+        Files.move(partFile, localPath, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(progressFile);
+        return new TransferResult(progress.getSize(), progress.getSize() - resumedBytes, resumedBytes,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 上传本地文件.
+     * @param session Sftp 会话.
+     * @param localPath 本地文件路径.
+     * @param remotePath 远端保存路径, 如果文件已存在将被覆盖.
+     * @return 返回传输结果.
+     * @throws IOException 当传输失败时抛出, 已完成的进度将被保存(进度目录不可写时除外).
+     */
+    public TransferResult upload(SftpSession session, Path localPath, String remotePath) throws IOException {
+        SftpClient sftpClient = session.getSftpClient();
+        BasicFileAttributes attributes = Files.readAttributes(localPath, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            throw new IOException("Not a regular file: " + localPath);
+        }
+        Path progressFile = prepareProgressDirectory() ? uploadProgressFile(localPath, remotePath) : null;
+        TransferProgress expected = new TransferProgress(remotePath,
+                attributes.size(), attributes.lastModifiedTime().toMillis(), chunkSize);
+        TransferProgress progress = progressFile == null ? expected : TransferProgress.loadOrCreate(progressFile, expected);
+        if (progress.getCompletedBytes() != 0 && !isResumable(sftpClient, remotePath, progress)) {
+            progress = new TransferProgress(remotePath, attributes.size(),
+                    attributes.lastModifiedTime().toMillis(), chunkSize);
+        }
+
+        long startTime = System.currentTimeMillis();
+        long resumedBytes = progress.getCompletedBytes();
+        if (resumedBytes == 0) {
+            // 先创建(或清空)远端文件, 之后各通道只写入不截断, 以免互相覆盖.
+            sftpClient.open(remotePath, SftpClient.OpenMode.Write, SftpClient.OpenMode.Create,
+                    SftpClient.OpenMode.Truncate).close();
+        }
+        try (FileChannel channel = FileChannel.open(localPath, StandardOpenOption.READ)) {
+            runChunks(session, progress, progressFile, null, client -> {
+                SftpClient.CloseableHandle handle = client.open(remotePath,
+                        SftpClient.OpenMode.Write, SftpClient.OpenMode.Create);
+                SftpPipeline pipeline = new SftpPipeline(client, handle, requestSize, SftpPipeline.DEFAULT_MAX_IN_FLIGHT);
+                return (offset, length) -> pipeline.upload(channel, offset, length);
+            });
+        }
+        if (progressFile != null) {
+            Files.deleteIfExists(progressFile);
+        }
+        return new TransferResult(progress.getSize(), progress.getSize() - resumedBytes, resumedBytes,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 获取上传的进度文件.
+     * <p> 进度文件以本地文件的绝对路径与远端路径共同区分, 同一文件上传到不同远端路径时不会共用进度.
+     * @param localPath 本地文件路径.
+     * @param remotePath 远端保存路径.
+     * @return 返回进度目录中的进度文件路径.
+     */
+    Path uploadProgressFile(Path localPath, String remotePath) {
+        String hash = SshUtils.sha256Hex(localPath.toAbsolutePath().normalize() + "\n" + remotePath);
+        return progressDirectory.resolve("upload-" + hash.substring(0, 32) + ".progress");
+    }
+
+    /**
+     * 准备上传进度目录.
+     * @return 如果进度目录可以写入, 返回 {@code true}, 否则本次上传不保存进度.
+     */
+    private boolean prepareProgressDirectory() {
+        try {
+            Files.createDirectories(progressDirectory);
+        } catch (IOException e) {
+            log.warn("无法创建传输进度目录, 本次上传中断后将无法继续传输.({})", progressDirectory, e);
+            return false;
+        }
+        if (!Files.isWritable(progressDirectory)) {
+            log.warn("传输进度目录不可写入, 本次上传中断后将无法继续传输.({})", progressDirectory);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 检查远端文件能否继续上传.
+     * <p> 远端文件的长度至少应覆盖最后一个已完成的分块, 且不超过源文件长度, 否则说明远端文件已被删除或改写.
+     */
+    private static boolean isResumable(SftpClient sftpClient, String remotePath, TransferProgress progress)
+            throws IOException {
+        SftpClient.Attributes remoteAttributes;
+        try {
+            remoteAttributes = sftpClient.stat(remotePath);
+        } catch (SftpException e) {
+            if (e.getStatus() != SftpConstants.SSH_FX_NO_SUCH_FILE) {
+                throw e;
+            }
+            log.info("远端文件不存在, 将重新上传.({})", remotePath);
+            return false;
+        }
+        long remoteSize = remoteAttributes.getSize();
+        if (!remoteAttributes.isRegularFile() || remoteSize < progress.getCompletedEnd() || remoteSize > progress.getSize()) {
+            log.info("远端文件长度({})与已完成的进度({}/{})不符, 将重新上传.({})", remoteSize,
+                    progress.getCompletedEnd(), progress.getSize(), remotePath);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 并发传输所有未完成的分块.
+     * <p> 每个工作线程打开独立的 Sftp 通道, 因为同一个 Sftp 客户端不支持多个线程同时发送请求.
+     * @param session Sftp 会话, 用于在同一 SSH 连接上打开更多 Sftp 通道.
+     * @param progress 传输进度.
+     * @param progressFile 进度文件, 为 {@code null} 时不保存进度.
+     * @param localOutput 本地输出通道, 保存进度前将强制刷新到磁盘, 上传时为 {@code null}.
+     * @param transferFactory 分块传输操作工厂, 每个工作线程使用自己的 Sftp 客户端创建一个传输操作.
+     * @throws IOException 当任意分块传输失败时抛出.
+     */
+    private void runChunks(SftpSession session, TransferProgress progress, Path progressFile, FileChannel localOutput,
+                           ChunkTransferFactory transferFactory) throws IOException {
+        List<Integer> pendingChunks = new ArrayList<>();
+        for (int chunk = 0; chunk < progress.getChunkCount(); chunk++) {
+            if (!progress.isCompleted(chunk)) {
+                pendingChunks.add(chunk);
+            }
+        }
+        if (pendingChunks.isEmpty()) {
+            return;
+        }
+        int workers = Math.min(parallelism, pendingChunks.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workers, THREAD_FACTORY);
+        AtomicInteger nextIndex = new AtomicInteger();
+        ProgressSaver saver = new ProgressSaver(progress, progressFile, localOutput);
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(() -> {
+                int index;
+                try (SftpClient client = SftpClientFactory.instance()
+                        .createSftpClient(session.getSftpClient().getClientSession())) {
+                    ChunkTransfer transfer = transferFactory.create(client);
+                    while ((index = nextIndex.getAndIncrement()) < pendingChunks.size()) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException();
+                        }
+                        int chunk = pendingChunks.get(index);
+                        long offset = (long) chunk * progress.getChunkSize();
+                        long length = Math.min(progress.getChunkSize(), progress.getSize() - offset);
+                        transfer.transfer(offset, length);
+                        progress.markCompleted(chunk);
+                        saver.saveIfNeeded();
+                    }
+                } catch (Exception e) {
+                    // 一个分块失败后, 停止分配新的分块.
+                    nextIndex.set(pendingChunks.size());
+                    throw e;
+                }
+                return null;
+            }));
+        }
+        executor.shutdown();
+        IOException failure = null;
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException ioException ?
+                                ioException : new IOException(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    // 不中断工作线程, 因为中断会导致共享的本地文件通道被关闭;
+                    // 停止分配新的分块后, 等待正在传输的分块完成.
+                    interrupted = true;
+                    nextIndex.set(pendingChunks.size());
+                    if (failure == null) {
+                        failure = new InterruptedIOException("Transfer interrupted.");
+                    }
+                    continue;
+                }
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            // 传输成功时进度文件随即删除, 只有失败时才需要保存最终进度.
+            saver.save();
+            log.warn("传输中断, 已完成 {}/{} 字节, 再次执行可继续传输.", progress.getCompletedBytes(), progress.getSize());
+            throw failure;
+        }
+    }
+
+    /**
+     * 按间隔保存进度.
+     * <p> 进度文件写入失败不会中断传输, 之后将不再保存进度.
+     */
+    private static final class ProgressSaver {
+        private final TransferProgress progress;
+        private Path progressFile;
+        private final FileChannel localOutput;
+        private long lastSaveTime = System.currentTimeMillis();
+
+        private ProgressSaver(TransferProgress progress, Path progressFile, FileChannel localOutput) {
+            this.progress = progress;
+            this.progressFile = progressFile;
+            this.localOutput = localOutput;
+        }
+
+        synchronized void saveIfNeeded() throws IOException {
+            if (System.currentTimeMillis() - lastSaveTime >= PROGRESS_SAVE_INTERVAL) {
+                save();
+            }
+        }
+
+        synchronized void save() throws IOException {
+            if (progressFile == null) {
+                return;
+            }
+            // 数据必须先落盘, 进度才能记录为已完成.
+            if (localOutput != null && localOutput.isOpen()) {
+                localOutput.force(false);
+            }
+            try {
+                progress.save(progressFile);
+            } catch (IOException e) {
+                log.warn("传输进度保存失败, 传输中断后将无法继续传输.({})", progressFile, e);
+                progressFile = null;
+            }
+            lastSaveTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 分块传输操作.
+     */
+    @FunctionalInterface
+    private interface ChunkTransfer {
+        void transfer(long offset, long length) throws IOException;
+    }
+
+    /**
+     * 分块传输操作工厂.
+     * <p> 在工作线程的 Sftp 客户端上打开文件句柄, 句柄随客户端关闭而释放.
+     */
+    @FunctionalInterface
+    private interface ChunkTransferFactory {
+        ChunkTransfer create(SftpClient client) throws IOException;
+    }
+
+    /**
+     * 传输结果.
+     * @param totalBytes 文件总大小.
+     * @param transferredBytes 本次传输的字节数.
+     * @param resumedBytes 从上次中断处恢复而跳过的字节数.
+     * @param duration 本次传输耗时, 单位: 毫秒.
+     */
+    public record TransferResult(long totalBytes, long transferredBytes, long resumedBytes, long duration) {
+    }
+
+    /**
+     * 获取一个构建器.
+     * @return 返回新的构建器.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@link SftpTransfer} 构建器.
+     */
+    public static class Builder {
+
+        private int chunkSize = 4 * 1024 * 1024;
+        private int requestSize = 64 * 1024;
+        private int parallelism = 4;
+        private Path progressDirectory = DEFAULT_PROGRESS_DIRECTORY;
+
+        private Builder() {
+        }
+
+        public SftpTransfer create() {
+            return new SftpTransfer(chunkSize, requestSize, parallelism, progressDirectory);
+        }
+
+        /**
+         * 设置上传进度目录.
+         * @param progressDirectory 保存上传进度文件的目录, 默认为 {@link #DEFAULT_PROGRESS_DIRECTORY}.
+         * @return 返回构建器本身.
+         */
+        public Builder progressDirectory(Path progressDirectory) {
+            this.progressDirectory = Objects.requireNonNull(progressDirectory);
+            return this;
+        }
+
+        /**
+         * 设置分块大小.
+         * <p> 分块是并发调度与进度记录的单位.
+         * @param chunkSize 分块大小, 默认为 4 MiB(单位: 字节).
+         * @return 返回构建器本身.
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * 设置单个 Sftp 读写请求的大小.
+         * <p> 大部分服务端会限制单个请求的数据量(OpenSSH 为 256 KiB), 过大的请求可能被截断.
+         * @param requestSize 请求大小, 默认为 64 KiB(单位: 字节).
+         * @return 返回构建器本身.
+         */
+        public Builder requestSize(int requestSize) {
+            this.requestSize = requestSize;
+            return this;
+        }
+
+        /**
+         * 设置并发数.
+         * <p> 每个并发占用一个 Sftp 通道.
+         * @param parallelism 同时在途的请求数, 默认为 4.
+         * @return 返回构建器本身.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.sftp.client.SftpClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * 远端目录树遍历器.
+ * <p> 多个目录的列表请求通过 {@link SftpClientPool} 并发执行, 子目录在其父目录列出后立即开始预取,
+ * 已列出的结果放入有界队列中, 由调用方按需取出, 队列满时预取将暂停.
+ * <p> 条目的返回顺序不固定, 但目录条目总是先于其子条目返回.
+ * @author LamGC
+ */
+final class SftpTreeWalker implements Iterator<SftpFileEntry>, Closeable {
+
+    /**
+     * 队列中最多缓存的目录列表数.
+     */
+    private final static int MAX_PREFETCHED_DIRECTORIES = 64;
+
+    private final SftpClientPool clientPool;
+    private final int maxDepth;
+    private final Predicate<SftpFileEntry> filter;
+    private final BlockingQueue<Object> results = new LinkedBlockingQueue<>(MAX_PREFETCHED_DIRECTORIES);
+    private final AtomicInteger pendingDirectories = new AtomicInteger();
+
+    private Iterator<SftpFileEntry> currentBatch = null;
+    private boolean finished = false;
+
+    /**
+     * 创建遍历器, 并开始列出起始目录.
+     * @param session 会话.
+     * @param path 起始目录.
+     * @param maxDepth 最大深度, 起始目录中的条目深度为 1.
+     * @param filter 条目过滤器, 只决定条目是否返回, 不影响是否进入目录.
+     * @param parallelism 并发列出目录的数量.
+     */
+    SftpTreeWalker(ClientSession session, String path, int maxDepth,
+                   Predicate<SftpFileEntry> filter, int parallelism) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Depth cannot be less than 0.");
+        }
+        this.clientPool = new SftpClientPool(session, parallelism);
+        this.maxDepth = maxDepth;
+        this.filter = filter;
+        if (maxDepth == 0) {
+            finished = true;
+        } else {
+            listDirectory(path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path, 1);
+        }
+    }
+
+    private void listDirectory(String directory, int depth) {
+        pendingDirectories.incrementAndGet();
+        clientPool.submit(client -> {
+            try {
+                List<SftpFileEntry> batch = new ArrayList<>();
+                List<SftpFileEntry> subdirectories = new ArrayList<>();
+                for (SftpClient.DirEntry dirEntry : client.readDir(directory)) {
+                    String name = dirEntry.getFilename();
+                    if (".".equals(name) || "..".equals(name)) {
+                        continue;
+                    }
+                    SftpFileEntry entry = new SftpFileEntry(
+                            "/".equals(directory) ? "/" + name : directory + "/" + name,
+                            name, depth, dirEntry.getAttributes());
+                    if (filter.test(entry)) {
+                        batch.add(entry);
+                    }
+                    if (entry.isDirectory() && depth < maxDepth) {
+                        subdirectories.add(entry);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    publish(batch);
+                }
+                // 子目录需在当前目录结束计数前提交, 以保证计数归零时所有目录都已列出.
+                for (SftpFileEntry subdirectory : subdirectories) {
+                    listDirectory(subdirectory.path(), depth + 1);
+                }
+            } catch (IOException e) {
+                publish(e);
+            } catch (RuntimeException e) {
+                // readDir 返回的迭代器在遍历时才发送请求, 请求失败时原始异常会被包装为非受检异常.
+                publish(e.getCause() instanceof IOException cause ? cause : new IOException(e));
+            } finally {
+                if (pendingDirectories.decrementAndGet() == 0) {
+                    publish(Boolean.TRUE);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 将结果放入队列, 队列已满时等待调用方取出.
+     * <p> 遍历关闭时工作线程会被中断, 此时结果将被丢弃.
+     */
+    private void publish(Object result) {
+        try {
+            results.put(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (currentBatch == null || !currentBatch.hasNext()) {
+            if (finished) {
+                return false;
+            }
+            Object result;
+            try {
+                result = results.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new UncheckedIOException(new InterruptedIOException("Walk interrupted."));
+            }
+            if (result instanceof IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            } else if (result instanceof List<?> batch) {
+                @SuppressWarnings("unchecked")
+                Iterator<SftpFileEntry> iterator = ((List<SftpFileEntry>) batch).iterator();
+                currentBatch = iterator;
+            } else {
+                close();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public SftpFileEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentBatch.next();
+    }
+
+    /**
+     * 停止遍历.
+     * <p> 尚未完成的列表请求将被中止, 遍历使用的 Sftp 通道将被关闭.
+     */
+    @Override
+    public void close() {
+        finished = true;
+        currentBatch = null;
+        clientPool.close();
+        results.clear();
+    }
+
+}
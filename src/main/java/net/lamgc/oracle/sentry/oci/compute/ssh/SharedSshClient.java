@@ -0,0 +1,129 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.Constants;
+import net.lamgc.oracle.sentry.common.LazyLoader;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.keyverifier.ServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.AttributeRepository;
+import org.apache.sshd.common.keyprovider.KeyIdentityProvider;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.core.CoreModuleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 进程共享的 SSH 客户端.
+ * <p> {@link SshClient} 会持有 NIO 工作线程组, 线程池等资源, 为每个连接都创建客户端的开销很大,
+ * 所以所有实例的 SSH 连接都共用同一个客户端, 并共享 I/O 线程.
+ * <p> 由于客户端是共享的, 实例相关的认证身份和服务器公钥验证需要针对每个会话单独设置:
+ * 认证身份在连接建立后设置到会话上, 服务器公钥验证器则通过连接上下文属性 {@link #SERVER_KEY_VERIFIER} 传递.
+ * @author LamGC
+ */
+final class SharedSshClient {
+
+    private final static Logger log = LoggerFactory.getLogger(SharedSshClient.class);
+
+    /**
+     * 会话所使用的服务器公钥验证器.
+     * <p> 需在连接时通过连接上下文传入, 未设置验证器的会话将被拒绝.
+     */
+    final static AttributeRepository.AttributeKey<ServerKeyVerifier> SERVER_KEY_VERIFIER =
+            new AttributeRepository.AttributeKey<>();
+
+    /**
+     * 会话所使用的传输配置.
+     * <p> 需在连接时通过连接上下文传入, 未设置时使用客户端默认的算法.
+     */
+    final static AttributeRepository.AttributeKey<SshTransportProfile> TRANSPORT_PROFILE =
+            new AttributeRepository.AttributeKey<>();
+
+    /**
+     * 会话心跳间隔, 用于维持会话池中空闲会话的连接.
+     */
+    private final static Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(30);
+
+    private final static LazyLoader<SshClient> CLIENT = new LazyLoader<>(SharedSshClient::createClient);
+
+    private SharedSshClient() {
+    }
+
+    /**
+     * 获取共享的 SSH 客户端.
+     * <p> 客户端在首次获取时创建并启动, 程序退出时自动停止.
+     * @return 返回已启动的 SSH 客户端.
+     */
+    static SshClient get() {
+        return CLIENT.getInstance();
+    }
+
+    /**
+     * 创建连接上下文.
+     * @param verifier 该连接所使用的服务器公钥验证器.
+     * @return 返回包含验证器的连接上下文.
+     */
+    static AttributeRepository createConnectionContext(ServerKeyVerifier verifier) {
+        return AttributeRepository.ofKeyValuePair(SERVER_KEY_VERIFIER, verifier);
+    }
+
+    /**
+     * 创建连接上下文.
+     * @param verifier 该连接所使用的服务器公钥验证器.
+     * @param transportProfile 该连接所使用的传输配置.
+     * @return 返回包含验证器与传输配置的连接上下文.
+     */
+    static AttributeRepository createConnectionContext(ServerKeyVerifier verifier, SshTransportProfile transportProfile) {
+        return AttributeRepository.ofAttributesMap(Map.of(
+                SERVER_KEY_VERIFIER, verifier,
+                TRANSPORT_PROFILE, transportProfile));
+    }
+
+    private static SshClient createClient() {
+        SshClient client = SshClient.setUpDefaultClient();
+        if (Constants.instance != null) {
+            client.setForwardingFilter(Constants.instance.getForwardingFilter());
+        }
+        // 认证身份由每个会话单独设置, 客户端本身不提供任何身份.
+        client.setKeyIdentityProvider(KeyIdentityProvider.EMPTY_KEYS_PROVIDER);
+        client.setServerKeyVerifier(SharedSshClient::verifyServerKey);
+        CoreModuleProperties.HEARTBEAT_INTERVAL.set(client, HEARTBEAT_INTERVAL);
+        CoreModuleProperties.HEARTBEAT_REQUEST.set(client, "keepalive@openssh.com");
+        client.addSessionListener(new SessionListener() {
+            @Override
+            public void sessionCreated(Session session) {
+                // 会话创建后才会发送密钥交换请求, 在此之前替换会话的算法列表.
+                applyTransportProfile((ClientSession) session);
+            }
+        });
+        client.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(client::stop, "Thread-SharedSshClient-Stop"));
+        log.debug("共享 SSH 客户端已启动.");
+        return client;
+    }
+
+    private static void applyTransportProfile(ClientSession clientSession) {
+        AttributeRepository context = clientSession.getConnectionContext();
+        SshTransportProfile profile = context == null ? null : context.getAttribute(TRANSPORT_PROFILE);
+        if (profile != null && profile != SshTransportProfile.DEFAULT) {
+            log.debug("会话使用传输配置: {}", profile);
+            profile.apply(clientSession);
+        }
+    }
+
+    private static boolean verifyServerKey(ClientSession clientSession, SocketAddress remoteAddress, PublicKey serverKey) {
+        AttributeRepository context = clientSession.getConnectionContext();
+        ServerKeyVerifier verifier = context == null ? null : context.getAttribute(SERVER_KEY_VERIFIER);
+        if (verifier == null) {
+            log.warn("会话未设置服务器公钥验证器, 拒绝连接.(Address: {})", remoteAddress);
+            return false;
+        }
+        return verifier.verifyServerKey(clientSession, remoteAddress, serverKey);
+    }
+
+}
@@ -18,6 +18,8 @@ public abstract class SshAuthInfo {
     private PublicKey serverKey;
     private int port;
     private SshAuthIdentityProvider provider;
+    private SshTransportProfile transportProfile = SshTransportProfile.DEFAULT;
+    private String jumpHost;
 
     /**
      * 获取认证类型.
@@ -78,6 +80,40 @@ public abstract class SshAuthInfo {
         return port;
     }
 
+    /**
+     * 获取 SSH 传输配置.
+     * @return 返回连接时使用的传输配置, 未设置时为 {@link SshTransportProfile#DEFAULT}.
+     */
+    public SshTransportProfile getTransportProfile() {
+        return transportProfile;
+    }
+
+    /**
+     * 设置 SSH 传输配置.
+     * @param transportProfile 传输配置, 为 {@code null} 时使用默认配置.
+     */
+    public void setTransportProfile(SshTransportProfile transportProfile) {
+        this.transportProfile = transportProfile == null ? SshTransportProfile.DEFAULT : transportProfile;
+    }
+
+    /**
+     * 获取跳板机实例 Id.
+     * @return 如果设置了跳板机, 返回跳板机实例 Id, 否则返回 {@code null}, 表示直接通过公共 IP 连接.
+     */
+    public String getJumpHost() {
+        return jumpHost;
+    }
+
+    /**
+     * 设置跳板机实例 Id.
+     * <p> 设置后, 将通过跳板机连接实例的私有 IP, 适用于没有公共 IP 的实例.
+     * 使用同一跳板机的所有实例共享一个到跳板机的会话.
+     * @param jumpHost 跳板机实例 Id, 为 {@code null} 时直接连接.
+     */
+    public void setJumpHost(String jumpHost) {
+        this.jumpHost = jumpHost;
+    }
+
     /**
      * 设置 SSH 认证配置提供器.
      * <p> 设置后, 可在首次连接认证通过后, 保存服务器公钥到文件中.
@@ -13,8 +13,10 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.security.GeneralSecurityException;
 import java.security.PublicKey;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * SSH 认证配置编解码类.
@@ -85,6 +87,8 @@ public final class SshAuthInfoSerializer implements JsonSerializer<SshAuthInfo>,
         } else {
             info.setServerKey(null);
         }
+        info.setTransportProfile(deserializeTransportProfile(infoObject.get("transport")));
+        info.setJumpHost(Strings.emptyToNull(getFieldToString(infoObject, "jumpHost")));
         return info;
     }
 
@@ -112,9 +116,87 @@ public final class SshAuthInfoSerializer implements JsonSerializer<SshAuthInfo>,
         } else {
             json.add("serverKey", JsonNull.INSTANCE);
         }
+        if (src.getTransportProfile() != SshTransportProfile.DEFAULT) {
+            json.add("transport", serializeTransportProfile(src.getTransportProfile()));
+        }
+        if (src.getJumpHost() != null) {
+            json.addProperty("jumpHost", src.getJumpHost());
+        }
         return json;
     }
 
+    /**
+     * 解析传输配置.
+     * <p> 支持两种格式: 预设名称字符串, 例如 {@code "aes-gcm"};
+     * 或对象, 可通过 {@code preset} 指定基础预设, 并通过 {@code ciphers}, {@code macs}, {@code kex},
+     * {@code compression} 覆盖对应项.
+     * @param element 配置字段, 可以为 {@code null}.
+     * @return 返回传输配置, 字段不存在时返回默认配置.
+     */
+    private SshTransportProfile deserializeTransportProfile(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return SshTransportProfile.DEFAULT;
+        }
+        try {
+            if (element.isJsonPrimitive()) {
+                return SshTransportProfile.preset(element.getAsString());
+            } else if (!element.isJsonObject()) {
+                throw new JsonParseException("Invalid transport profile: " + element);
+            }
+            JsonObject profileObject = element.getAsJsonObject();
+            SshTransportProfile.Builder builder = SshTransportProfile.builder();
+            String preset = getFieldToString(profileObject, "preset");
+            if (preset != null) {
+                builder.from(SshTransportProfile.preset(preset));
+            }
+            if (profileObject.has("ciphers")) {
+                builder.ciphers(getStringList(profileObject, "ciphers"));
+            }
+            if (profileObject.has("macs")) {
+                builder.macs(getStringList(profileObject, "macs"));
+            }
+            if (profileObject.has("kex")) {
+                builder.kexAlgorithms(getStringList(profileObject, "kex"));
+            }
+            if (profileObject.has("compression")) {
+                builder.compression(getFieldToString(profileObject, "compression"));
+            }
+            return builder.create();
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(e.getMessage(), e);
+        }
+    }
+
+    private JsonElement serializeTransportProfile(SshTransportProfile profile) {
+        if (profile.isPreset()) {
+            return new JsonPrimitive(profile.getName());
+        }
+        JsonObject json = new JsonObject();
+        json.add("ciphers", toJsonArray(profile.getCiphers()));
+        json.add("macs", toJsonArray(profile.getMacs()));
+        json.add("kex", toJsonArray(profile.getKexAlgorithms()));
+        json.addProperty("compression", profile.getCompression());
+        return json;
+    }
+
+    private List<String> getStringList(JsonObject object, String field) {
+        JsonElement element = object.get(field);
+        if (!element.isJsonArray()) {
+            throw new JsonParseException("Field '" + field + "' must be an array.");
+        }
+        List<String> values = new ArrayList<>();
+        for (JsonElement value : element.getAsJsonArray()) {
+            values.add(value.getAsString());
+        }
+        return values;
+    }
+
+    private JsonArray toJsonArray(List<String> values) {
+        JsonArray array = new JsonArray();
+        values.forEach(array::add);
+        return array;
+    }
+
     private boolean checkPortNumber(int port) {
         return port >= 0 && port <= 65535;
     }
@@ -17,6 +17,7 @@ import java.io.IOException;
 public class SshSession implements Closeable {
 
     private final ClientSession clientSession;
+    private ChannelScheduler channelScheduler;
 
     /**
      * 创建新的 SSH 会话.
@@ -50,6 +51,7 @@ public class SshSession implements Closeable {
     /**
      * 创建本地 TCP 转发隧道.
      * <p> 该隧道为方向为 "本地-&gt;远端" (本地发起连接转发至远端端口).
+     * <p> 隧道需由调用方自行关闭, 如需与其他脚本共享隧道或统计流量, 请使用 {@link InstanceSsh#forwardLocalPort(int, int)}.
      * @param localPort 本地监听端口.
      * @param remotePort 远端目标端口.
      * @return 返回 TCP 转发通道对象, 可获取通道信息和关闭通道.
@@ -64,6 +66,7 @@ public class SshSession implements Closeable {
     /**
      * 创建远端 TCP 转发隧道.
      * <p> 该隧道为方向为 "本地&lt;-远端" (远端服务器发起连接转发至本地端口).
+     * <p> 隧道需由调用方自行关闭, 如需与其他脚本共享隧道或统计流量, 请使用 {@link InstanceSsh#forwardRemotePort(int, int)}.
      * @param remotePort 远端监听端口号, 该端口为远端服务连接转发的端口号.
      * @param localPort 本地连接端口号, 该端口为本地服务端的端口号.
      * @return 返回 Tcp 转发通道对象, 用于管理转发通道.
@@ -76,6 +79,46 @@ public class SshSession implements Closeable {
         return new TcpForwardingChannel(tracker);
     }
 
+    /**
+     * 获取通道调度器.
+     * <p> 通过调度器可以在本会话上并发执行多个命令或 Sftp 任务, 并自动遵守服务端的通道数限制.
+     * <p> 会话关闭时, 调度器中排队的任务将以异常结束.
+     * @return 返回本会话的通道调度器.
+     */
+    public synchronized ChannelScheduler scheduler() {
+        if (channelScheduler == null) {
+            channelScheduler = new ChannelScheduler(this, ChannelScheduler.DEFAULT_MAX_CHANNELS);
+        }
+        return channelScheduler;
+    }
+
+    /**
+     * 关闭通道调度器(如果已创建).
+     */
+    synchronized void closeScheduler() {
+        if (channelScheduler != null) {
+            channelScheduler.close();
+            channelScheduler = null;
+        }
+    }
+
+    /**
+     * 会话是否仍处于连接状态.
+     * <p> 长时间持有会话时, 可通过该方法检查连接是否已断开.
+     * @return 如果会话未关闭, 返回 {@code true}.
+     */
+    public boolean isOpen() {
+        return clientSession.isOpen() && !clientSession.isClosing();
+    }
+
+    /**
+     * 获取原始 SSH 会话.
+     * @return 返回原始 SSH 会话.
+     */
+    ClientSession getClientSession() {
+        return clientSession;
+    }
+
     /**
      * 关闭 SSH 连接会话, 该连接会话所属的其他会话将会一同被关闭.
      * @throws IOException 关闭失败时抛出异常,
@@ -83,6 +126,7 @@ public class SshSession implements Closeable {
      */
     @Override
     public void close() throws IOException {
+        closeScheduler();
         clientSession.close();
     }
 }
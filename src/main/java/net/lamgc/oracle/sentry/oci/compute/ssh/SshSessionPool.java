@@ -0,0 +1,279 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lamgc.oracle.sentry.common.LazyLoader;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SSH 会话池.
+ * <p> 按计算实例缓存已认证的 SSH 会话, 使得重复执行命令时不需要再进行 TCP 连接, 密钥交换和认证,
+ * 只需在已有会话上打开新的通道.
+ * <ul>
+ *     <li> 会话通过共享客户端的心跳保持连接(见 {@link SharedSshClient});
+ *     <li> 租用前会检查会话状态, 空闲较久的会话还会发送一次全局请求确认连接可用;
+ *     <li> 空闲超时的会话会被后台线程定期清理.
+ * </ul>
+ * <p> 获取会话时会记录到当前线程的 {@link SshUsageRecorder}, 定时任务可据此得知执行时用到了哪些实例,
+ * 并在下次执行前通过 {@link #prewarm(InstanceSsh)} 提前建立会话, 使任务开始时无需等待连接.
+ * @author LamGC
+ */
+public final class SshSessionPool implements AutoCloseable {
+
+    private final static Logger log = LoggerFactory.getLogger(SshSessionPool.class);
+
+    /**
+     * 健康检查使用的全局请求, OpenSSH 会对未知请求回复失败, 任何回复都能证明连接可用.
+     */
+    private final static String KEEP_ALIVE_REQUEST = "keepalive@openssh.com";
+    private final static long PING_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+    private final static LazyLoader<SshSessionPool> DEFAULT_POOL = new LazyLoader<>(() -> {
+        SshSessionPool pool = new SshSessionPool(TimeUnit.MINUTES.toMillis(5), 4, TimeUnit.SECONDS.toMillis(30));
+        Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "Thread-SshSessionPool-Close"));
+        return pool;
+    });
+
+    private final Map<ComputeInstance, Deque<IdleSession>> idleSessions = new ConcurrentHashMap<>();
+    private final long idleTimeout;
+    private final int maxIdlePerInstance;
+    private final long healthCheckThreshold;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final ScheduledExecutorService evictionExec = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("Thread-SshSessionEviction-%d")
+                    .setDaemon(true)
+                    .build());
+
+    /**
+     * 创建 SSH 会话池.
+     * @param idleTimeout 空闲超时时间, 空闲超过该时间的会话将被关闭, 单位: 毫秒.
+     * @param maxIdlePerInstance 每个实例最多保留的空闲会话数量.
+     * @param healthCheckThreshold 空闲超过该时间的会话在租用前需要发送请求确认连接可用, 单位: 毫秒.
+     */
+    public SshSessionPool(long idleTimeout, int maxIdlePerInstance, long healthCheckThreshold) {
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException("Idle timeout cannot be less than or equal to 0.");
+        } else if (maxIdlePerInstance < 0) {
+            throw new IllegalArgumentException("Max idle sessions cannot be negative: " + maxIdlePerInstance);
+        }
+        this.idleTimeout = idleTimeout;
+        this.maxIdlePerInstance = maxIdlePerInstance;
+        this.healthCheckThreshold = healthCheckThreshold;
+        long evictionInterval = Math.max(1000, idleTimeout / 4);
+        evictionExec.scheduleWithFixedDelay(this::evictIdleSessions,
+                evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取默认的会话池.
+     * @return 返回进程共享的默认会话池.
+     */
+    public static SshSessionPool getDefault() {
+        return DEFAULT_POOL.getInstance();
+    }
+
+    /**
+     * 租用 SSH 会话.
+     * <p> 优先复用最近归还的空闲会话, 如果没有可用的空闲会话, 则通过 {@link InstanceSsh} 创建新会话.
+     * @param ssh 实例 SSH 客户端.
+     * @return 返回租用的会话, 关闭后将归还到会话池.
+     * @throws IOException 当需要创建新会话且创建失败时抛出.
+     * @throws IllegalStateException 当会话池已关闭时抛出.
+     */
+    public PooledSshSession lease(InstanceSsh ssh) throws IOException {
+        Objects.requireNonNull(ssh);
+        checkOpen();
+        ComputeInstance instance = ssh.getInstance();
+        recordUsage(instance);
+        ClientSession session = takeIdle(instance);
+        return new PooledSshSession(this, instance, session != null ? session : ssh.connect());
+    }
+
+    /**
+     * 预热实例的 SSH 会话.
+     * <p> 确保会话池中有该实例可用的空闲会话: 如果已有空闲会话, 将确认其可用并重置空闲时间,
+     * 否则建立新的会话放入会话池. 预热不会被记录为实例的使用.
+     * @param ssh 实例 SSH 客户端.
+     * @throws IOException 当需要创建新会话且创建失败时抛出.
+     * @throws IllegalStateException 当会话池已关闭时抛出.
+     */
+    public void prewarm(InstanceSsh ssh) throws IOException {
+        Objects.requireNonNull(ssh);
+        checkOpen();
+        ComputeInstance instance = ssh.getInstance();
+        ClientSession session = takeIdle(instance);
+        if (session == null) {
+            session = ssh.connect();
+            log.debug("已为实例 {} 预热 SSH 会话.", instance.getInstanceId());
+        }
+        release(instance, session);
+    }
+
+    /**
+     * 取出实例的一个可用空闲会话.
+     * <p> 取出的会话不再由会话池管理, 不可用的空闲会话将被丢弃.
+     * @param instance 计算实例.
+     * @return 如果有可用的空闲会话, 返回该会话, 否则返回 {@code null}.
+     */
+    ClientSession takeIdle(ComputeInstance instance) {
+        Deque<IdleSession> sessions = idleSessions.get(instance);
+        if (sessions == null) {
+            return null;
+        }
+        IdleSession idleSession;
+        while ((idleSession = sessions.pollFirst()) != null) {
+            if (isHealthy(idleSession)) {
+                log.trace("复用实例 {} 的空闲 SSH 会话.", instance.getInstanceId());
+                return idleSession.session();
+            }
+            log.debug("实例 {} 的空闲 SSH 会话已不可用, 已丢弃.", instance.getInstanceId());
+            closeQuietly(idleSession.session());
+        }
+        return null;
+    }
+
+    /**
+     * 记录实例使用了 SSH 会话.
+     * @param instance 计算实例.
+     * @see SshUsageRecorder
+     */
+    void recordUsage(ComputeInstance instance) {
+        SshUsageRecorder.record(instance);
+    }
+
+    /**
+     * 归还会话.
+     * @param instance 会话所属实例.
+     * @param session 待归还的会话.
+     */
+    void release(ComputeInstance instance, ClientSession session) {
+        if (closed.get() || maxIdlePerInstance == 0 || !isAlive(session)) {
+            closeQuietly(session);
+            return;
+        }
+        Deque<IdleSession> sessions = idleSessions.computeIfAbsent(instance, key -> new ConcurrentLinkedDeque<>());
+        sessions.offerFirst(new IdleSession(session, System.currentTimeMillis()));
+        while (sessions.size() > maxIdlePerInstance) {
+            IdleSession oldest = sessions.pollLast();
+            if (oldest == null) {
+                break;
+            }
+            closeQuietly(oldest.session());
+        }
+    }
+
+    /**
+     * 获取指定实例当前的空闲会话数量.
+     * @param instance 计算实例.
+     * @return 返回空闲会话数量.
+     */
+    public int getIdleSessionCount(ComputeInstance instance) {
+        Deque<IdleSession> sessions = idleSessions.get(instance);
+        return sessions == null ? 0 : sessions.size();
+    }
+
+    /**
+     * 关闭指定实例的所有空闲会话.
+     * <p> 例如实例重启后, 可调用该方法丢弃已失效的会话.
+     * @param instance 计算实例.
+     */
+    public void evict(ComputeInstance instance) {
+        Deque<IdleSession> sessions = idleSessions.remove(instance);
+        if (sessions == null) {
+            return;
+        }
+        IdleSession idleSession;
+        while ((idleSession = sessions.pollFirst()) != null) {
+            closeQuietly(idleSession.session());
+        }
+    }
+
+    private void checkOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("The session pool has been closed.");
+        }
+    }
+
+    private boolean isHealthy(IdleSession idleSession) {
+        ClientSession session = idleSession.session();
+        if (!isAlive(session)) {
+            return false;
+        }
+        if (System.currentTimeMillis() - idleSession.idleSince() < healthCheckThreshold) {
+            return true;
+        }
+        try {
+            Buffer buffer = session.createBuffer(SshConstants.SSH_MSG_GLOBAL_REQUEST);
+            buffer.putString(KEEP_ALIVE_REQUEST);
+            buffer.putBoolean(true);
+            session.request(KEEP_ALIVE_REQUEST, buffer, PING_TIMEOUT);
+            return isAlive(session);
+        } catch (IOException e) {
+            log.debug("SSH 会话健康检查失败.", e);
+            return false;
+        }
+    }
+
+    private static boolean isAlive(ClientSession session) {
+        return session.isOpen() && !session.isClosing() && session.isAuthenticated();
+    }
+
+    private void evictIdleSessions() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<ComputeInstance, Deque<IdleSession>> entry : idleSessions.entrySet()) {
+            Iterator<IdleSession> iterator = entry.getValue().iterator();
+            while (iterator.hasNext()) {
+                IdleSession idleSession = iterator.next();
+                if (now - idleSession.idleSince() >= idleTimeout || !isAlive(idleSession.session())) {
+                    iterator.remove();
+                    closeQuietly(idleSession.session());
+                    log.debug("已清理实例 {} 的空闲 SSH 会话.", entry.getKey().getInstanceId());
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(ClientSession session) {
+        try {
+            session.close();
+        } catch (IOException e) {
+            log.debug("关闭 SSH 会话时发生异常.", e);
+        }
+    }
+
+    /**
+     * 关闭会话池.
+     * <p> 所有空闲会话将被关闭, 此后归还的会话也会被直接关闭.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        evictionExec.shutdown();
+        for (ComputeInstance instance : idleSessions.keySet()) {
+            evict(instance);
+        }
+    }
+
+    /**
+     * 空闲会话.
+     * @param session 原始 SSH 会话.
+     * @param idleSince 开始空闲的时间戳.
+     */
+    private record IdleSession(ClientSession session, long idleSince) {}
+
+}
@@ -0,0 +1,322 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.ClientBuilder;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.OptionalFeature;
+import org.apache.sshd.common.cipher.BuiltinCiphers;
+import org.apache.sshd.common.cipher.Cipher;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.compression.Compression;
+import org.apache.sshd.common.kex.BuiltinDHFactories;
+import org.apache.sshd.common.kex.KeyExchangeFactory;
+import org.apache.sshd.common.mac.BuiltinMacs;
+import org.apache.sshd.common.mac.Mac;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * SSH 传输配置.
+ * <p> 指定会话协商时优先使用的加密算法, MAC 算法, 密钥交换算法与压缩算法, 未指定的项使用 sshd 的默认值.
+ * 算法按列表顺序作为优先级提交给服务端, 服务端不支持时协商将失败, 所以列表中应包含服务端支持的算法.
+ * <p> 可使用预设配置:
+ * <ul>
+ *     <li> {@code default}: 全部使用 sshd 默认值;
+ *     <li> {@code aes-gcm}: 优先使用 AES-GCM, 在支持 AES 指令的 CPU 上(包括 Ampere A1)加密与认证一次完成, 开销最低;
+ *     <li> {@code aes-ctr}: 使用 AES-CTR 加 Encrypt-then-MAC 的 HMAC-SHA2, 用于不支持 GCM 的服务端;
+ *     <li> {@code compressed}: 在 {@code aes-gcm} 的基础上启用 zlib@openssh.com 压缩, 适用于以文本为主且带宽受限的链路.
+ * </ul>
+ * <p> 当前使用的 sshd 版本不支持 chacha20-poly1305@openssh.com 与 curve25519 密钥交换, 配置这些算法会被拒绝.
+ * @author LamGC
+ */
+public final class SshTransportProfile {
+
+    private final static String CUSTOM_NAME = "custom";
+
+    /**
+     * 默认配置, 全部使用 sshd 默认值.
+     */
+    public final static SshTransportProfile DEFAULT = new SshTransportProfile("default",
+            List.of(), List.of(), List.of(), null);
+
+    private final static Map<String, SshTransportProfile> PRESETS;
+
+    static {
+        List<String> gcmCiphers = List.of(BuiltinCiphers.aes128gcm.getName(), BuiltinCiphers.aes256gcm.getName(),
+                BuiltinCiphers.aes128ctr.getName(), BuiltinCiphers.aes256ctr.getName());
+        List<String> etmMacs = List.of(BuiltinMacs.hmacsha256etm.getName(), BuiltinMacs.hmacsha512etm.getName(),
+                BuiltinMacs.hmacsha256.getName(), BuiltinMacs.hmacsha512.getName());
+        Map<String, SshTransportProfile> presets = new LinkedHashMap<>();
+        presets.put(DEFAULT.getName(), DEFAULT);
+        presets.put("aes-gcm", new SshTransportProfile("aes-gcm", gcmCiphers, etmMacs, List.of(), null));
+        presets.put("aes-ctr", new SshTransportProfile("aes-ctr",
+                List.of(BuiltinCiphers.aes128ctr.getName(), BuiltinCiphers.aes256ctr.getName()), etmMacs, List.of(), null));
+        presets.put("compressed", new SshTransportProfile("compressed", gcmCiphers, etmMacs, List.of(),
+                BuiltinCompressions.delayedZlib.getName()));
+        PRESETS = Collections.unmodifiableMap(presets);
+    }
+
+    private final String name;
+    private final List<String> ciphers;
+    private final List<String> macs;
+    private final List<String> kexAlgorithms;
+    private final String compression;
+
+    private SshTransportProfile(String name, List<String> ciphers, List<String> macs,
+                                List<String> kexAlgorithms, String compression) {
+        this.name = name;
+        this.ciphers = List.copyOf(ciphers);
+        this.macs = List.copyOf(macs);
+        this.kexAlgorithms = List.copyOf(kexAlgorithms);
+        this.compression = compression;
+        // 提前解析, 使配置错误在加载时暴露, 而不是在连接时.
+        resolveCiphers();
+        resolveMacs();
+        resolveKeyExchanges();
+        resolveCompressions();
+    }
+
+    /**
+     * 获取预设配置.
+     * @param name 预设名称, 不区分大小写.
+     * @return 返回预设配置.
+     * @throws IllegalArgumentException 当预设不存在时抛出.
+     */
+    public static SshTransportProfile preset(String name) {
+        SshTransportProfile profile = PRESETS.get(name.toLowerCase());
+        if (profile == null) {
+            throw new IllegalArgumentException("Unknown transport profile: " + name + " (Available: " + PRESETS.keySet() + ")");
+        }
+        return profile;
+    }
+
+    /**
+     * 获取所有预设配置.
+     * @return 返回预设名称与配置的映射, 按声明顺序排列.
+     */
+    public static Map<String, SshTransportProfile> presets() {
+        return PRESETS;
+    }
+
+    /**
+     * 获取配置名称.
+     * @return 如果是预设配置, 返回预设名称, 否则返回 {@code custom}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 是否为预设配置.
+     * @return 如果是预设配置, 返回 {@code true}.
+     */
+    public boolean isPreset() {
+        return PRESETS.get(name) == this;
+    }
+
+    /**
+     * 获取加密算法列表.
+     * @return 返回按优先级排列的算法名称, 为空表示使用默认值.
+     */
+    public List<String> getCiphers() {
+        return ciphers;
+    }
+
+    /**
+     * 获取 MAC 算法列表.
+     * @return 返回按优先级排列的算法名称, 为空表示使用默认值.
+     */
+    public List<String> getMacs() {
+        return macs;
+    }
+
+    /**
+     * 获取密钥交换算法列表.
+     * @return 返回按优先级排列的算法名称, 为空表示使用默认值.
+     */
+    public List<String> getKexAlgorithms() {
+        return kexAlgorithms;
+    }
+
+    /**
+     * 获取压缩算法.
+     * @return 返回压缩算法名称, 为 {@code null} 表示不压缩.
+     */
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * 将配置应用到会话.
+     * <p> 需在会话发送密钥交换请求前调用.
+     * @param session 待应用的会话.
+     */
+    void apply(ClientSession session) {
+        if (!ciphers.isEmpty()) {
+            session.setCipherFactories(resolveCiphers());
+        }
+        if (!macs.isEmpty()) {
+            session.setMacFactories(resolveMacs());
+        }
+        if (!kexAlgorithms.isEmpty()) {
+            session.setKeyExchangeFactories(resolveKeyExchanges());
+        }
+        if (compression != null) {
+            session.setCompressionFactories(resolveCompressions());
+        }
+    }
+
+    private List<NamedFactory<Cipher>> resolveCiphers() {
+        return new ArrayList<>(resolve(ciphers, "cipher", BuiltinCiphers::fromFactoryName));
+    }
+
+    private List<NamedFactory<Mac>> resolveMacs() {
+        return new ArrayList<>(resolve(macs, "MAC", BuiltinMacs::fromFactoryName));
+    }
+
+    private List<KeyExchangeFactory> resolveKeyExchanges() {
+        List<KeyExchangeFactory> factories = new ArrayList<>();
+        for (BuiltinDHFactories factory : resolve(kexAlgorithms, "key exchange", BuiltinDHFactories::fromFactoryName)) {
+            factories.add(ClientBuilder.DH2KEX.apply(factory));
+        }
+        return factories;
+    }
+
+    private List<NamedFactory<Compression>> resolveCompressions() {
+        if (compression == null) {
+            return List.of();
+        }
+        // 保留不压缩作为后备, 以便服务端不支持压缩时仍能协商成功.
+        List<String> names = BuiltinCompressions.none.getName().equals(compression) ?
+                List.of(compression) : List.of(compression, BuiltinCompressions.none.getName());
+        return new ArrayList<>(resolve(names, "compression", BuiltinCompressions::fromFactoryName));
+    }
+
+    private static <T extends OptionalFeature> List<T> resolve(List<String> names, String type,
+                                                               Function<String, T> resolver) {
+        List<T> factories = new ArrayList<>(names.size());
+        for (String algorithm : names) {
+            T factory = resolver.apply(algorithm);
+            if (factory == null || !factory.isSupported()) {
+                throw new IllegalArgumentException("Unsupported " + type + " algorithm: " + algorithm);
+            }
+            factories.add(factory);
+        }
+        return factories;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SshTransportProfile that = (SshTransportProfile) o;
+        return ciphers.equals(that.ciphers) && macs.equals(that.macs) &&
+                kexAlgorithms.equals(that.kexAlgorithms) && Objects.equals(compression, that.compression);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ciphers, macs, kexAlgorithms, compression);
+    }
+
+    @Override
+    public String toString() {
+        return "SshTransportProfile{" +
+                "name='" + name + '\'' +
+                ", ciphers=" + ciphers +
+                ", macs=" + macs +
+                ", kexAlgorithms=" + kexAlgorithms +
+                ", compression='" + compression + '\'' +
+                '}';
+    }
+
+    /**
+     * 获取一个构建器.
+     * @return 返回新的构建器.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@link SshTransportProfile} 构建器.
+     */
+    public static class Builder {
+
+        private List<String> ciphers = List.of();
+        private List<String> macs = List.of();
+        private List<String> kexAlgorithms = List.of();
+        private String compression = null;
+
+        private Builder() {
+        }
+
+        /**
+         * 以预设配置为基础构建.
+         * @param profile 基础配置.
+         * @return 返回构建器本身.
+         */
+        public Builder from(SshTransportProfile profile) {
+            this.ciphers = profile.ciphers;
+            this.macs = profile.macs;
+            this.kexAlgorithms = profile.kexAlgorithms;
+            this.compression = profile.compression;
+            return this;
+        }
+
+        /**
+         * 创建传输配置.
+         * @return 返回传输配置.
+         * @throws IllegalArgumentException 当存在不支持的算法时抛出.
+         */
+        public SshTransportProfile create() {
+            return new SshTransportProfile(CUSTOM_NAME, ciphers, macs, kexAlgorithms, compression);
+        }
+
+        /**
+         * 设置加密算法.
+         * @param ciphers 按优先级排列的算法名称, 例如 {@code aes128-gcm@openssh.com}.
+         * @return 返回构建器本身.
+         */
+        public Builder ciphers(List<String> ciphers) {
+            this.ciphers = ciphers;
+            return this;
+        }
+
+        /**
+         * 设置 MAC 算法.
+         * @param macs 按优先级排列的算法名称, 例如 {@code hmac-sha2-256-etm@openssh.com}.
+         * @return 返回构建器本身.
+         */
+        public Builder macs(List<String> macs) {
+            this.macs = macs;
+            return this;
+        }
+
+        /**
+         * 设置密钥交换算法.
+         * @param kexAlgorithms 按优先级排列的算法名称, 例如 {@code ecdh-sha2-nistp256}.
+         * @return 返回构建器本身.
+         */
+        public Builder kexAlgorithms(List<String> kexAlgorithms) {
+            this.kexAlgorithms = kexAlgorithms;
+            return this;
+        }
+
+        /**
+         * 设置压缩算法.
+         * @param compression 压缩算法名称, 例如 {@code zlib@openssh.com}, 为 {@code null} 时不压缩.
+         * @return 返回构建器本身.
+         */
+        public Builder compression(String compression) {
+            this.compression = compression;
+            return this;
+        }
+    }
+
+}
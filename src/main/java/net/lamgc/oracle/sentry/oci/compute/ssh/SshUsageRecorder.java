@@ -0,0 +1,108 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SSH 使用记录器.
+ * <p> 记录器与创建它的线程绑定, 记录该线程在记录期间使用过 SSH 会话的实例,
+ * 通过 {@link InstanceSsh#createSession()} 或 {@link InstanceSsh#leaseSession()} 获取会话均视为使用.
+ * 定时任务可据此得知每次执行用到了哪些实例, 不会混入同时执行的其他脚本所使用的实例.
+ * <p> 记录器可以嵌套, 内层记录到的实例同样会记录到外层.
+ * <pre>{@code
+ * try (SshUsageRecorder recorder = SshUsageRecorder.start()) {
+ *     task.run();
+ *     Set<ComputeInstance> used = recorder.getInstances();
+ * }
+ * }</pre>
+ * @author LamGC
+ */
+public final class SshUsageRecorder implements AutoCloseable {
+
+    private final static ThreadLocal<SshUsageRecorder> CURRENT = new ThreadLocal<>();
+
+    private final Set<ComputeInstance> instances = ConcurrentHashMap.newKeySet();
+    private final SshUsageRecorder parent;
+    private final Thread owner;
+    private volatile boolean closed = false;
+
+    private SshUsageRecorder(SshUsageRecorder parent) {
+        this.parent = parent;
+        this.owner = Thread.currentThread();
+    }
+
+    /**
+     * 在当前线程开始记录.
+     * @return 返回绑定到当前线程的记录器, 关闭后停止记录.
+     */
+    public static SshUsageRecorder start() {
+        SshUsageRecorder recorder = new SshUsageRecorder(CURRENT.get());
+        CURRENT.set(recorder);
+        return recorder;
+    }
+
+    /**
+     * 获取当前线程的记录器.
+     * @return 如果当前线程正在记录, 返回记录器, 否则返回 {@code null}.
+     */
+    static SshUsageRecorder current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 将实例的使用记录到当前线程的记录器.
+     * <p> 当前线程没有记录器时不做任何事.
+     * @param instance 计算实例.
+     */
+    static void record(ComputeInstance instance) {
+        SshUsageRecorder recorder = CURRENT.get();
+        if (recorder != null) {
+            recorder.add(instance);
+        }
+    }
+
+    /**
+     * 记录实例的使用.
+     * <p> 可在其他线程中调用, 用于记录由其他线程代为使用的实例(例如 {@link FleetExecutor}).
+     * @param instance 计算实例.
+     */
+    void add(ComputeInstance instance) {
+        for (SshUsageRecorder recorder = this; recorder != null; recorder = recorder.parent) {
+            if (!recorder.closed) {
+                recorder.instances.add(instance);
+            }
+        }
+    }
+
+    /**
+     * 获取已记录的实例.
+     * @return 返回已记录实例的副本.
+     */
+    public Set<ComputeInstance> getInstances() {
+        return Set.copyOf(instances);
+    }
+
+    /**
+     * 停止记录, 并恢复当前线程的上一个记录器.
+     * @throws IllegalStateException 当不在创建记录器的线程中关闭时抛出.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        } else if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("Recorder must be closed by the thread that started it.");
+        }
+        closed = true;
+        if (CURRENT.get() == this) {
+            if (parent != null) {
+                CURRENT.set(parent);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+}
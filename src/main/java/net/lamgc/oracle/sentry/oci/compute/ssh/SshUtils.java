@@ -0,0 +1,66 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * SSH 相关的工具方法.
+ * <p> 包括构造远端命令时的参数转义, 以及与远端 {@code sha256sum} 输出格式一致的哈希计算.
+ * @author LamGC
+ */
+final class SshUtils {
+
+    private SshUtils() {
+    }
+
+    /**
+     * 将值转义为单个 Shell 参数.
+     * @param value 参数值.
+     * @return 返回以单引号包围的参数.
+     */
+    static String shellQuote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * 计算文本的 SHA-256 哈希.
+     * @param text 文本, 以 UTF-8 编码计算.
+     * @return 返回哈希值.
+     */
+    static byte[] sha256(String text) {
+        return Hashing.sha256().hashString(text, StandardCharsets.UTF_8).asBytes();
+    }
+
+    /**
+     * 计算文本的 SHA-256 哈希.
+     * @param text 文本, 以 UTF-8 编码计算.
+     * @return 返回小写十六进制形式的哈希.
+     */
+    static String sha256Hex(String text) {
+        return Hashing.sha256().hashString(text, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * 计算数据的 SHA-256 哈希.
+     * @param data 数据.
+     * @return 返回小写十六进制形式的哈希.
+     */
+    static String sha256Hex(byte[] data) {
+        return Hashing.sha256().hashBytes(data).toString();
+    }
+
+    /**
+     * 计算文件内容的 SHA-256 哈希.
+     * @param file 文件路径.
+     * @return 返回小写十六进制形式的哈希.
+     * @throws IOException 当读取文件失败时抛出.
+     */
+    static String sha256Hex(Path file) throws IOException {
+        return MoreFiles.asByteSource(file).hash(Hashing.sha256()).toString();
+    }
+
+}
@@ -0,0 +1,476 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.common.io.HeadTailCapture;
+import net.lamgc.oracle.sentry.common.io.OutputCapture;
+import net.lamgc.oracle.sentry.common.io.TarEntry;
+import net.lamgc.oracle.sentry.common.io.TarInputStream;
+import net.lamgc.oracle.sentry.common.io.TarOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 基于 Tar 流的批量传输.
+ * <p> 通过 Sftp 传输大量小文件时, 每个文件都需要打开, 写入, 关闭与设置属性等多次往返, 吞吐量受往返时间限制.
+ * 本类在一个执行通道上运行远端的 {@code tar} 命令, 将整个目录树作为一个连续的 Tar 流传输, 不再有逐个文件的往返:
+ * <ul>
+ *     <li> 上传: 在本地遍历目录树, 边读取文件边生成 Tar 流写入远端 {@code tar -x} 的标准输入, 不生成临时归档;
+ *     <li> 下载: 远端 {@code tar -c} 将目录树输出到标准输出, 本地边读取边解出文件.
+ * </ul>
+ * <p> 可选使用 gzip 压缩 Tar 流, 适合带宽受限且内容易于压缩(文本, 日志等)的情况.
+ * <p> 远端需要可用的 {@code tar} 命令(GNU tar 与 busybox tar 均可). 传输不比较文件差异, 增量同步请使用 {@link SftpDirectorySync}.
+ * @author LamGC
+ */
+public final class TarTransfer {
+
+    private final static Logger log = LoggerFactory.getLogger(TarTransfer.class);
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static int STDERR_CAPTURE_SIZE = 4096;
+    /**
+     * 传输出错后等待远端命令退出的时间, 以便取得远端的错误信息, 单位: 毫秒.
+     */
+    private final static long FAILURE_WAIT_TIME = 3000;
+
+    private final boolean compress;
+    private final long timeout;
+
+    private TarTransfer(boolean compress, long timeout) {
+        this.compress = compress;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 将本地目录上传到远端.
+     * <p> 目录中的普通文件, 目录与符号链接将被上传, 其他类型的文件将被忽略.
+     * 远端目录不存在时将自动创建, 已存在的同名文件将被覆盖.
+     * @param session SSH 会话.
+     * @param localDirectory 本地源目录.
+     * @param remoteDirectory 远端目标目录.
+     * @return 返回传输结果.
+     * @throws IOException 当读取本地文件失败, 或远端 {@code tar} 命令执行失败时抛出.
+     */
+    public Result upload(SshSession session, Path localDirectory, String remoteDirectory) throws IOException {
+        if (!Files.isDirectory(localDirectory)) {
+            throw new NotDirectoryException(localDirectory.toString());
+        }
+        long startTime = System.currentTimeMillis();
+        String quotedDirectory = SshUtils.shellQuote(remoteDirectory);
+        // -o: 不还原归档中的属主, 文件属于远端登录用户.
+        String command = "mkdir -p -- " + quotedDirectory + " && tar -x" + (compress ? "z" : "") + "of - -C " + quotedDirectory;
+        TreeWriter writer = new TreeWriter(localDirectory);
+        try (CommandExecSession exec = session.createExecSession(command)) {
+            HeadTailCapture stderr = prepare(exec);
+            exec.setOut(OutputStream.nullOutputStream());
+            exec.exec(true);
+            try (TarOutputStream tar = new TarOutputStream(compress
+                    ? new GZIPOutputStream(exec.getStdin(), BUFFER_SIZE)
+                    : new BufferedOutputStream(exec.getStdin(), BUFFER_SIZE))) {
+                Files.walkFileTree(localDirectory, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        writer.writeDirectory(tar, dir, attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        writer.writeFile(tar, file, attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                // 关闭时写入归档结束标记, 并关闭标准输入, 远端 tar 读取到输入结束后退出.
+            } catch (IOException e) {
+                throw remoteFailure(exec, stderr, e);
+            }
+            exec.waitFor();
+            checkExitStatus(exec, stderr);
+        }
+        Result result = new Result(writer.files, writer.directories, writer.bytes,
+                System.currentTimeMillis() - startTime);
+        log.debug("Tar 上传完成: {} -> {}.({})", localDirectory, remoteDirectory, result);
+        return result;
+    }
+
+    /**
+     * 将远端目录下载到本地.
+     * <p> 目录中的普通文件与目录将被下载, 硬链接将解出为所链接文件的副本.
+     * 出于安全考虑, 符号链接与其他类型的文件将被忽略, 也不会经由本地目录中已有的符号链接写入文件.
+     * 本地目录不存在时将自动创建, 已存在的同名文件将被覆盖.
+     * @param session SSH 会话.
+     * @param remoteDirectory 远端源目录.
+     * @param localDirectory 本地目标目录.
+     * @return 返回传输结果.
+     * @throws IOException 当写入本地文件失败, 归档中包含不安全的路径, 或远端 {@code tar} 命令执行失败时抛出.
+     */
+    public Result download(SshSession session, String remoteDirectory, Path localDirectory) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Path localRoot = localDirectory.toAbsolutePath().normalize();
+        Files.createDirectories(localRoot);
+        String command = "tar -c" + (compress ? "z" : "") + "f - -C " + SshUtils.shellQuote(remoteDirectory) + " .";
+        TreeReader reader = new TreeReader(localRoot);
+        try (CommandExecSession exec = session.createExecSession(command)) {
+            HeadTailCapture stderr = prepare(exec);
+            exec.exec(true);
+            InputStream stdout = exec.getStdout();
+            try {
+                InputStream input = new BufferedInputStream(stdout, BUFFER_SIZE);
+                try (TarInputStream tar = new TarInputStream(compress ? new GZIPInputStream(input, BUFFER_SIZE) : input)) {
+                    reader.read(tar);
+                    drainQuietly(stdout);
+                }
+            } catch (IOException e) {
+                throw remoteFailure(exec, stderr, e);
+            }
+            exec.waitFor();
+            checkExitStatus(exec, stderr);
+        }
+        reader.finish();
+        Result result = new Result(reader.files, reader.directories, reader.bytes, System.currentTimeMillis() - startTime);
+        log.debug("Tar 下载完成: {} -> {}.({})", remoteDirectory, localDirectory, result);
+        return result;
+    }
+
+    /**
+     * 读取归档结束标记之后的填充, 使远端 tar 能够写完输出并退出.
+     * <p> 此时归档已完整读取, 远端先关闭通道导致的读取失败可以忽略, 传输是否成功以退出代码为准.
+     */
+    private static void drainQuietly(InputStream stdout) {
+        try {
+            stdout.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            log.debug("读取归档结束后的剩余输出时发生异常.", e);
+        }
+    }
+
+    private HeadTailCapture prepare(CommandExecSession exec) {
+        if (timeout >= 0) {
+            exec.setTimeout(timeout);
+        }
+        return exec.captureErr(OutputCapture.headTail(STDERR_CAPTURE_SIZE, STDERR_CAPTURE_SIZE));
+    }
+
+    /**
+     * 传输出错时, 如果远端命令已失败, 优先报告远端的错误(例如远端目录无权限导致的管道断开).
+     */
+    private static IOException remoteFailure(CommandExecSession exec, HeadTailCapture stderr, IOException cause) {
+        exec.waitFor(FAILURE_WAIT_TIME);
+        Integer exitCode = exec.exitCode();
+        if (exitCode != null && exitCode != 0 || exec.isTerminated()) {
+            return new IOException(failureMessage(exec, stderr), cause);
+        }
+        return cause;
+    }
+
+    private static void checkExitStatus(CommandExecSession exec, HeadTailCapture stderr) throws IOException {
+        Integer exitCode = exec.exitCode();
+        if (exitCode == null || exitCode != 0) {
+            throw new IOException(failureMessage(exec, stderr));
+        }
+    }
+
+    private static String failureMessage(CommandExecSession exec, HeadTailCapture stderr) {
+        String reason;
+        if (exec.isTimedOut()) {
+            reason = "timed out";
+        } else if (exec.isCancelled()) {
+            reason = "cancelled";
+        } else {
+            reason = "exit code: " + exec.exitCode();
+        }
+        return "Remote tar command failed (" + reason + "): "
+                + new String(stderr.toByteArray(), StandardCharsets.UTF_8).trim();
+    }
+
+    private static void setPermissions(Path path, int mode) throws IOException {
+        if (mode == 0) {
+            return;
+        }
+        try {
+            Files.setPosixFilePermissions(path, toPermissions(mode));
+        } catch (UnsupportedOperationException e) {
+            // 不支持 POSIX 权限的文件系统(如 Windows), 忽略权限.
+        }
+    }
+
+    private final static PosixFilePermission[] PERMISSION_BITS = {
+            PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+            PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+            PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ
+    };
+
+    private static Set<PosixFilePermission> toPermissions(int mode) {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (int i = 0; i < PERMISSION_BITS.length; i++) {
+            if ((mode & (1 << i)) != 0) {
+                permissions.add(PERMISSION_BITS[i]);
+            }
+        }
+        return permissions;
+    }
+
+    private static int toMode(Path path, boolean directory) {
+        try {
+            int mode = 0;
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+            for (int i = 0; i < PERMISSION_BITS.length; i++) {
+                if (permissions.contains(PERMISSION_BITS[i])) {
+                    mode |= 1 << i;
+                }
+            }
+            return mode;
+        } catch (UnsupportedOperationException | IOException e) {
+            return directory ? 0755 : 0644;
+        }
+    }
+
+    /**
+     * 将本地目录树写入 Tar 流.
+     */
+    private static final class TreeWriter {
+
+        private final Path root;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int files;
+        private int directories;
+        private long bytes;
+
+        private TreeWriter(Path root) {
+            this.root = root;
+        }
+
+        private void writeDirectory(TarOutputStream tar, Path dir, BasicFileAttributes attrs) throws IOException {
+            if (dir.equals(root)) {
+                return;
+            }
+            tar.putEntry(TarEntry.directory(relativize(dir), toMode(dir, true),
+                    attrs.lastModifiedTime().to(TimeUnit.SECONDS)));
+            directories++;
+        }
+
+        private void writeFile(TarOutputStream tar, Path file, BasicFileAttributes attrs) throws IOException {
+            long modifiedTime = attrs.lastModifiedTime().to(TimeUnit.SECONDS);
+            if (attrs.isSymbolicLink()) {
+                String target = Files.readSymbolicLink(file).toString().replace(File.separatorChar, '/');
+                tar.putEntry(new TarEntry(relativize(file), TarEntry.Type.SYMBOLIC_LINK, 0, 0777, modifiedTime, target));
+                return;
+            } else if (!attrs.isRegularFile()) {
+                log.debug("忽略非普通文件: {}", file);
+                return;
+            }
+            long size = attrs.size();
+            tar.putEntry(TarEntry.file(relativize(file), size, toMode(file, false), modifiedTime));
+            long remaining = size;
+            try (InputStream input = Files.newInputStream(file)) {
+                int read;
+                while (remaining > 0 && (read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    tar.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+            if (remaining > 0) {
+                // 文件在读取过程中被截断, 条目大小已写入, 只能以 0 填充.
+                log.warn("文件 {} 在传输过程中发生变化, 内容可能不完整.", file);
+                while (remaining > 0) {
+                    int length = (int) Math.min(buffer.length, remaining);
+                    tar.write(new byte[length]);
+                    remaining -= length;
+                }
+            }
+            files++;
+            bytes += size;
+        }
+
+        private String relativize(Path path) {
+            return root.relativize(path).toString().replace(File.separatorChar, '/');
+        }
+    }
+
+    /**
+     * 将 Tar 流解出到本地目录.
+     */
+    static final class TreeReader {
+
+        private final Path root;
+        /**
+         * 目录的修改时间会因写入其中的文件而改变, 只读目录也无法写入文件, 所以目录属性在最后设置.
+         */
+        private final List<DirectoryAttributes> directoryAttributes = new ArrayList<>();
+        private int files;
+        private int directories;
+        private long bytes;
+
+        /**
+         * @param root 本地目标目录, 需为绝对路径且已规范化.
+         */
+        TreeReader(Path root) {
+            this.root = root;
+        }
+
+        /**
+         * 读取并解出归档中的全部条目.
+         * @throws IOException 当写入本地文件失败, 或归档中包含不安全的路径时抛出.
+         */
+        void read(TarInputStream tar) throws IOException {
+            TarEntry entry;
+            while ((entry = tar.getNextEntry()) != null) {
+                Path target = resolveEntry(entry.name());
+                switch (entry.type()) {
+                    case DIRECTORY -> {
+                        if (!target.equals(root) && Files.isSymbolicLink(target)) {
+                            throw new IOException("Directory entry in archive is a symbolic link locally: " + entry.name());
+                        }
+                        Files.createDirectories(target);
+                        directoryAttributes.add(new DirectoryAttributes(target, entry.mode(), entry.modifiedTime()));
+                        if (!target.equals(root)) {
+                            directories++;
+                        }
+                    }
+                    case FILE -> {
+                        Files.createDirectories(target.getParent());
+                        Files.copy(tar, target, StandardCopyOption.REPLACE_EXISTING);
+                        setFileAttributes(target, entry);
+                        files++;
+                        bytes += entry.size();
+                    }
+                    case HARD_LINK -> {
+                        // 硬链接指向归档中已解出的文件, 以副本形式解出, 避免与目录外的文件共享内容.
+                        Path source = resolveEntry(entry.linkName());
+                        if (!Files.isRegularFile(source, LinkOption.NOFOLLOW_LINKS)) {
+                            log.warn("硬链接 {} 的目标 {} 不是已解出的普通文件, 已忽略.", entry.name(), entry.linkName());
+                            continue;
+                        }
+                        if (!source.equals(target)) {
+                            Files.createDirectories(target.getParent());
+                            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        setFileAttributes(target, entry);
+                        files++;
+                        bytes += Files.size(target);
+                    }
+                    default -> log.debug("忽略归档中的条目: {}({})", entry.name(), entry.type());
+                }
+            }
+        }
+
+        /**
+         * 设置目录属性.
+         * <p> 从深到浅设置, 避免设置子目录属性时改变父目录的修改时间.
+         */
+        void finish() throws IOException {
+            for (int i = directoryAttributes.size() - 1; i >= 0; i--) {
+                DirectoryAttributes attributes = directoryAttributes.get(i);
+                setPermissions(attributes.path(), attributes.mode());
+                Files.setLastModifiedTime(attributes.path(), FileTime.from(attributes.modifiedTime(), TimeUnit.SECONDS));
+            }
+        }
+
+        private static void setFileAttributes(Path target, TarEntry entry) throws IOException {
+            setPermissions(target, entry.mode());
+            Files.setLastModifiedTime(target, FileTime.from(entry.modifiedTime(), TimeUnit.SECONDS));
+        }
+
+        /**
+         * 解析条目在本地的路径.
+         * @throws IOException 当条目路径为绝对路径, 位于目标目录之外, 或经过目标目录中的符号链接时抛出.
+         */
+        private Path resolveEntry(String name) throws IOException {
+            String relativePath = name;
+            while (relativePath.startsWith("./")) {
+                relativePath = relativePath.substring(2);
+            }
+            if (relativePath.equals(".") || relativePath.isEmpty()) {
+                return root;
+            } else if (relativePath.startsWith("/")) {
+                throw new IOException("Unsafe entry path in archive: " + name);
+            }
+            Path target = root.resolve(relativePath).normalize();
+            if (!target.startsWith(root) || target.equals(root)) {
+                throw new IOException("Unsafe entry path in archive: " + name);
+            }
+            // 目标目录中已有的符号链接可能指向目录之外, 不能经由其写入.
+            for (Path parent = target.getParent(); !parent.equals(root); parent = parent.getParent()) {
+                if (Files.isSymbolicLink(parent)) {
+                    throw new IOException("Entry path in archive passes through a symbolic link: " + name);
+                }
+            }
+            return target;
+        }
+    }
+
+    private record DirectoryAttributes(Path path, int mode, long modifiedTime) {
+    }
+
+    /**
+     * 传输结果.
+     * @param files 传输的文件数量.
+     * @param directories 传输的目录数量, 不包括根目录.
+     * @param bytes 传输的文件内容字节数(压缩前).
+     * @param duration 传输耗时, 单位: 毫秒.
+     */
+    public record Result(int files, int directories, long bytes, long duration) {
+    }
+
+    /**
+     * 获取一个构建器.
+     * @return 返回新的构建器.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@link TarTransfer} 构建器.
+     */
+    public static class Builder {
+
+        private boolean compress = false;
+        private long timeout = -1;
+
+        private Builder() {
+        }
+
+        public TarTransfer create() {
+            return new TarTransfer(compress, timeout);
+        }
+
+        /**
+         * 是否使用 gzip 压缩 Tar 流.
+         * <p> 压缩与解压分别在本地与远端进行, 会增加 CPU 占用, 适合带宽受限且内容易于压缩的情况.
+         * @param compress 是否压缩, 默认不压缩.
+         * @return 返回构建器本身.
+         */
+        public Builder compress(boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        /**
+         * 设置传输的截止时间.
+         * @param timeout 截止时间, 0 为不限制(单位: 毫秒), 默认使用执行会话的默认截止时间.
+         * @return 返回构建器本身.
+         * @see CommandExecSession#setTimeout(long)
+         */
+        public Builder timeout(long timeout) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("Timeout cannot be less than 0.");
+            }
+            this.timeout = timeout;
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lamgc.oracle.sentry.common.LazyLoader;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * TCP 转发管理器.
+ * <p> 按 (实例, 方向, 远端端口) 共享 TCP 隧道: 多个脚本转发同一实例的同一远端端口时, 只会建立一条隧道,
+ * 各脚本通过 {@link TcpTunnelLease} 持有隧道. 所有租约释放后, 隧道空闲超时才会被关闭,
+ * 所以短时间内重复转发也不需要重新建立隧道.
+ * <p> 隧道使用从 {@link SshSessionPool} 租用的会话, 关闭隧道时会话将归还到会话池.
+ * @author LamGC
+ */
+public final class TcpForwardingManager implements AutoCloseable {
+
+    private final static Logger log = LoggerFactory.getLogger(TcpForwardingManager.class);
+
+    private final static LazyLoader<TcpForwardingManager> DEFAULT_MANAGER = new LazyLoader<>(() -> {
+        TcpForwardingManager manager = new TcpForwardingManager(TimeUnit.MINUTES.toMillis(1));
+        Runtime.getRuntime().addShutdownHook(new Thread(manager::close, "Thread-TcpForwardingManager-Close"));
+        return manager;
+    });
+
+    private final Map<TunnelKey, TcpTunnel> tunnels = new ConcurrentHashMap<>();
+    private final Map<TunnelKey, Object> creationLocks = new ConcurrentHashMap<>();
+    private final long idleTimeout;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final ScheduledExecutorService evictionExec = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("Thread-TcpTunnelEviction-%d")
+                    .setDaemon(true)
+                    .build());
+
+    /**
+     * 创建 TCP 转发管理器.
+     * @param idleTimeout 隧道空闲超时时间, 没有租约和活动连接的隧道超过该时间将被关闭, 单位: 毫秒.
+     */
+    public TcpForwardingManager(long idleTimeout) {
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException("Idle timeout cannot be less than or equal to 0.");
+        }
+        this.idleTimeout = idleTimeout;
+        long evictionInterval = Math.max(1000, idleTimeout / 4);
+        evictionExec.scheduleWithFixedDelay(this::evictIdleTunnels,
+                evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取默认的转发管理器.
+     * @return 返回进程共享的默认转发管理器.
+     */
+    public static TcpForwardingManager getDefault() {
+        return DEFAULT_MANAGER.getInstance();
+    }
+
+    /**
+     * 转发本地端口到实例的远端端口.
+     * <p> 如果该实例的远端端口已有隧道, 将直接共享该隧道.
+     * @param ssh 实例 SSH 客户端.
+     * @param localPort 本地监听端口, 为 0 时由系统分配, 共享隧道时表示接受已有隧道的端口.
+     * @param remotePort 远端目标端口.
+     * @return 返回隧道租约, 使用完毕后需关闭.
+     * @throws IOException 当隧道建立失败时抛出.
+     * @throws IllegalStateException 当已有隧道的本地端口与指定端口不同时抛出.
+     */
+    public TcpTunnelLease forwardLocal(InstanceSsh ssh, int localPort, int remotePort) throws IOException {
+        checkPort(localPort);
+        if (remotePort <= 0 || remotePort > 65535) {
+            throw new IllegalArgumentException("Invalid remote port: " + remotePort);
+        }
+        TunnelKey key = new TunnelKey(ssh.getInstance(), TcpTunnel.Direction.LOCAL, remotePort);
+        return acquire(ssh, key, localPort, session ->
+                TcpTunnel.openLocal(ssh.getInstance(), session.getClientSession(), localPort, remotePort, session));
+    }
+
+    /**
+     * 转发实例的远端端口到本地端口.
+     * <p> 如果该实例的远端端口已有隧道, 将直接共享该隧道. 远端端口为 0 时由服务端分配, 此时不会共享隧道.
+     * @param ssh 实例 SSH 客户端.
+     * @param remotePort 远端监听端口.
+     * @param localPort 本地目标端口.
+     * @return 返回隧道租约, 使用完毕后需关闭.
+     * @throws IOException 当隧道建立失败时抛出.
+     * @throws IllegalStateException 当已有隧道的本地目标端口与指定端口不同时抛出.
+     */
+    public TcpTunnelLease forwardRemote(InstanceSsh ssh, int remotePort, int localPort) throws IOException {
+        checkPort(remotePort);
+        if (localPort <= 0 || localPort > 65535) {
+            throw new IllegalArgumentException("Invalid local port: " + localPort);
+        }
+        TunnelKey key = new TunnelKey(ssh.getInstance(), TcpTunnel.Direction.REMOTE, remotePort);
+        return acquire(ssh, key, localPort, session ->
+                TcpTunnel.openRemote(ssh.getInstance(), session.getClientSession(), remotePort, localPort, session));
+    }
+
+    /**
+     * 获取所有隧道.
+     * @return 返回当前所有隧道, 包括空闲的隧道.
+     */
+    public List<TcpTunnel> getTunnels() {
+        return new ArrayList<>(tunnels.values());
+    }
+
+    private TcpTunnelLease acquire(InstanceSsh ssh, TunnelKey key, int localPort, TunnelOpener opener)
+            throws IOException {
+        Objects.requireNonNull(ssh);
+        if (closed.get()) {
+            throw new IllegalStateException("The forwarding manager has been closed.");
+        }
+        synchronized (creationLocks.computeIfAbsent(key, k -> new Object())) {
+            TcpTunnel tunnel = tunnels.get(key);
+            if (tunnel != null) {
+                if (tunnel.retain()) {
+                    if (localPort != 0 && localPort != tunnel.getLocalPort()) {
+                        tunnel.release();
+                        throw new IllegalStateException("Tunnel " + tunnel + " already exists with a different local port.");
+                    }
+                    log.debug("共享已有隧道: {}", tunnel);
+                    return new TcpTunnelLease(tunnel);
+                }
+                tunnels.remove(key, tunnel);
+                tunnel.close();
+            }
+
+            PooledSshSession session = ssh.leaseSession();
+            try {
+                tunnel = opener.open(session);
+            } catch (IOException | RuntimeException e) {
+                session.close();
+                throw e;
+            }
+            tunnel.retain();
+            // 远端端口由服务端分配时, 以实际端口登记, 以便观察.
+            TunnelKey actualKey = key.remotePort() == 0
+                    ? new TunnelKey(key.instance(), key.direction(), tunnel.getRemotePort()) : key;
+            tunnels.put(actualKey, tunnel);
+            log.info("隧道已建立: {}", tunnel);
+            return new TcpTunnelLease(tunnel);
+        }
+    }
+
+    private static void checkPort(int port) {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+    }
+
+    private void evictIdleTunnels() {
+        for (Map.Entry<TunnelKey, TcpTunnel> entry : tunnels.entrySet()) {
+            if (entry.getValue().closeIfIdle(idleTimeout)) {
+                tunnels.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 关闭转发管理器.
+     * <p> 所有隧道将被关闭, 无论是否仍有租约.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        evictionExec.shutdown();
+        for (TunnelKey key : tunnels.keySet()) {
+            TcpTunnel tunnel = tunnels.remove(key);
+            if (tunnel != null) {
+                tunnel.close();
+            }
+        }
+    }
+
+    /**
+     * 隧道标识.
+     * @param instance 隧道所属实例.
+     * @param direction 隧道方向.
+     * @param remotePort 远端端口.
+     */
+    private record TunnelKey(ComputeInstance instance, TcpTunnel.Direction direction, int remotePort) {}
+
+    @FunctionalInterface
+    private interface TunnelOpener {
+        TcpTunnel open(PooledSshSession session) throws IOException;
+    }
+
+}
@@ -0,0 +1,505 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.apache.sshd.client.channel.ChannelDirectTcpip;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.session.forward.ExplicitPortForwardingTracker;
+import org.apache.sshd.common.util.net.SshdSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 受管理的 TCP 隧道.
+ * <p> 隧道由 {@link TcpForwardingManager} 创建和共享, 使用方通过 {@link TcpTunnelLease} 持有隧道.
+ * <p> 隧道的每个连接都经过本地中转, 以便统计流量, 连接数与建立连接的延迟:
+ * <ul>
+ *     <li> 本地转发: 在本地端口监听, 每个连接通过 direct-tcpip 通道连接到远端端口;
+ *     <li> 远端转发: 远端端口的连接先转发到本地的中转端口, 再由中转端口连接到本地目标端口.
+ * </ul>
+ * @author LamGC
+ */
+public final class TcpTunnel {
+
+    private final static Logger log = LoggerFactory.getLogger(TcpTunnel.class);
+
+    private final static long CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(15);
+    private final static int BUFFER_SIZE = 16 * 1024;
+
+    private final static ExecutorService RELAY_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("Thread-TcpTunnel-%d")
+            .setDaemon(true)
+            .build());
+
+    private final ComputeInstance instance;
+    private final Direction direction;
+    private final ClientSession session;
+    private final ServerSocket serverSocket;
+    private final EndpointConnector connector;
+    private final Closeable onClose;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    private final String remoteHost;
+    private volatile int remotePort;
+    private final int localPort;
+    private ExplicitPortForwardingTracker tracker;
+
+    private int referenceCount = 0;
+    private long idleSince = System.currentTimeMillis();
+    private volatile boolean closed = false;
+
+    private final LongAdder totalConnections = new LongAdder();
+    private final LongAdder failedConnections = new LongAdder();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder totalConnectNanos = new LongAdder();
+    private final AtomicLong maxConnectNanos = new AtomicLong();
+
+    private TcpTunnel(ComputeInstance instance, Direction direction, ClientSession session,
+                      ServerSocket serverSocket, String remoteHost, int remotePort, int localPort,
+                      EndpointConnector connector, Closeable onClose) {
+        this.instance = instance;
+        this.remoteHost = remoteHost;
+        this.direction = direction;
+        this.session = session;
+        this.serverSocket = serverSocket;
+        this.remotePort = remotePort;
+        this.localPort = localPort;
+        this.connector = connector;
+        this.onClose = onClose;
+    }
+
+    /**
+     * 打开本地转发隧道.
+     * @param instance 隧道所属实例, 仅用于展示.
+     * @param session 隧道使用的会话.
+     * @param localPort 本地监听端口, 为 0 时由系统分配.
+     * @param remotePort 远端目标端口.
+     * @param onClose 隧道关闭后需要关闭的资源(例如租用的会话).
+     * @return 返回已开始监听的隧道.
+     * @throws IOException 当本地端口监听失败时抛出.
+     */
+    static TcpTunnel openLocal(ComputeInstance instance, ClientSession session,
+                               int localPort, int remotePort, Closeable onClose) throws IOException {
+        return openLocal(instance, session, localPort, "localhost", remotePort, onClose);
+    }
+
+    /**
+     * 打开本地转发隧道, 转发到远端可访问的指定主机.
+     * <p> 例如通过跳板机转发到同一子网内其他实例的私有 IP.
+     * @param instance 隧道所属实例, 仅用于展示.
+     * @param session 隧道使用的会话.
+     * @param localPort 本地监听端口, 为 0 时由系统分配.
+     * @param remoteHost 目标主机, 由服务端解析和连接.
+     * @param remotePort 目标端口.
+     * @param onClose 隧道关闭后需要关闭的资源(例如租用的会话).
+     * @return 返回已开始监听的隧道.
+     * @throws IOException 当本地端口监听失败时抛出.
+     */
+    static TcpTunnel openLocal(ComputeInstance instance, ClientSession session, int localPort,
+                               String remoteHost, int remotePort, Closeable onClose) throws IOException {
+        ServerSocket serverSocket = bindLoopback(localPort);
+        SshdSocketAddress target = new SshdSocketAddress(remoteHost, remotePort);
+        TcpTunnel tunnel = new TcpTunnel(instance, Direction.LOCAL, session, serverSocket,
+                remoteHost, remotePort, serverSocket.getLocalPort(), socket -> {
+            ChannelDirectTcpip channel = session.createDirectTcpipChannel(
+                    new SshdSocketAddress(socket.getInetAddress().getHostAddress(), socket.getPort()), target);
+            try {
+                channel.open().verify(CONNECT_TIMEOUT);
+            } catch (IOException e) {
+                channel.close(true);
+                throw e;
+            }
+            return new ChannelEndpoint(channel);
+        }, onClose);
+        tunnel.startAccepting();
+        return tunnel;
+    }
+
+    /**
+     * 打开远端转发隧道.
+     * @param instance 隧道所属实例, 仅用于展示.
+     * @param session 隧道使用的会话.
+     * @param remotePort 远端监听端口, 为 0 时由服务端分配.
+     * @param localPort 本地目标端口.
+     * @param onClose 隧道关闭后需要关闭的资源(例如租用的会话).
+     * @return 返回已建立转发的隧道.
+     * @throws IOException 当中转端口监听失败或服务端拒绝转发时抛出.
+     */
+    static TcpTunnel openRemote(ComputeInstance instance, ClientSession session,
+                                int remotePort, int localPort, Closeable onClose) throws IOException {
+        ServerSocket relaySocket = bindLoopback(0);
+        InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), localPort);
+        TcpTunnel tunnel = new TcpTunnel(instance, Direction.REMOTE, session, relaySocket,
+                "remote", remotePort, localPort, socket -> {
+            Socket targetSocket = new Socket();
+            try {
+                targetSocket.connect(target, (int) CONNECT_TIMEOUT);
+            } catch (IOException e) {
+                targetSocket.close();
+                throw e;
+            }
+            return new SocketEndpoint(targetSocket);
+        }, onClose);
+        try {
+            tunnel.tracker = session.createRemotePortForwardingTracker(new SshdSocketAddress(remotePort),
+                    new SshdSocketAddress(relaySocket.getInetAddress().getHostAddress(), relaySocket.getLocalPort()));
+            tunnel.remotePort = tunnel.tracker.getBoundAddress().getPort();
+        } catch (IOException | RuntimeException e) {
+            relaySocket.close();
+            throw e;
+        }
+        tunnel.startAccepting();
+        return tunnel;
+    }
+
+    private static ServerSocket bindLoopback(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        try {
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        return serverSocket;
+    }
+
+    private void startAccepting() {
+        RELAY_EXECUTOR.execute(() -> {
+            while (!closed) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    if (!closed) {
+                        log.warn("隧道 {} 监听异常, 已停止接受连接.", this, e);
+                    }
+                    return;
+                }
+                RELAY_EXECUTOR.execute(() -> handleConnection(socket));
+            }
+        });
+    }
+
+    private void handleConnection(Socket socket) {
+        SocketEndpoint downstream = new SocketEndpoint(socket);
+        long startTime = System.nanoTime();
+        Endpoint upstream;
+        try {
+            upstream = connector.connect(socket);
+        } catch (IOException | RuntimeException e) {
+            failedConnections.increment();
+            log.debug("隧道 {} 建立连接失败.", this, e);
+            closeQuietly(downstream);
+            return;
+        }
+        long connectNanos = System.nanoTime() - startTime;
+        totalConnectNanos.add(connectNanos);
+        maxConnectNanos.accumulateAndGet(connectNanos, Math::max);
+        totalConnections.increment();
+        activeConnections.incrementAndGet();
+
+        Connection connection = new Connection(downstream, upstream);
+        connections.add(connection);
+        if (closed) {
+            connection.close();
+        }
+        RELAY_EXECUTOR.execute(() -> connection.relay(downstream, upstream, bytesSent));
+        connection.relay(upstream, downstream, bytesReceived);
+    }
+
+    /**
+     * 增加引用计数.
+     * @return 如果隧道仍然可用, 返回 {@code true}, 否则返回 {@code false}, 调用方需重新创建隧道.
+     */
+    synchronized boolean retain() {
+        if (!isOpen()) {
+            return false;
+        }
+        referenceCount++;
+        return true;
+    }
+
+    /**
+     * 减少引用计数.
+     * <p> 引用计数归零后隧道进入空闲状态, 由 {@link TcpForwardingManager} 在空闲超时后关闭.
+     */
+    synchronized void release() {
+        if (referenceCount > 0 && --referenceCount == 0) {
+            idleSince = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 如果隧道已空闲超过指定时间, 则关闭隧道.
+     * <p> 仍有活动连接的隧道不视为空闲.
+     * @param idleTimeout 空闲超时时间, 单位: 毫秒.
+     * @return 如果隧道已关闭(包括此前已关闭), 返回 {@code true}.
+     */
+    synchronized boolean closeIfIdle(long idleTimeout) {
+        if (!isOpen()) {
+            close();
+            return true;
+        }
+        if (referenceCount > 0 || activeConnections.get() > 0
+                || System.currentTimeMillis() - idleSince < idleTimeout) {
+            return false;
+        }
+        close();
+        return true;
+    }
+
+    /**
+     * 关闭隧道.
+     * <p> 停止监听, 断开所有连接, 然后关闭隧道持有的资源.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeQuietly(serverSocket);
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        if (tracker != null) {
+            closeQuietly(tracker);
+        }
+        if (onClose != null) {
+            closeQuietly(onClose);
+        }
+        TcpTunnelMetrics metrics = getMetrics();
+        log.info("隧道 {} 已关闭.(连接数: {}, 失败: {}, 发送: {} 字节, 接收: {} 字节)", this,
+                metrics.totalConnections(), metrics.failedConnections(), metrics.bytesSent(), metrics.bytesReceived());
+    }
+
+    /**
+     * 获取隧道所属实例.
+     * @return 返回计算实例.
+     */
+    public ComputeInstance getInstance() {
+        return instance;
+    }
+
+    /**
+     * 获取隧道方向.
+     * @return 返回隧道方向.
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * 获取远端端口.
+     * <p> 本地转发时为远端目标端口, 远端转发时为远端监听端口.
+     * @return 返回远端端口.
+     */
+    public int getRemotePort() {
+        return remotePort;
+    }
+
+    /**
+     * 获取本地端口.
+     * <p> 本地转发时为本地监听端口, 远端转发时为本地目标端口.
+     * @return 返回本地端口.
+     */
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    /**
+     * 获取当前引用计数.
+     * @return 返回持有该隧道的租约数量.
+     */
+    public synchronized int getReferenceCount() {
+        return referenceCount;
+    }
+
+    /**
+     * 隧道是否可用.
+     * @return 如果隧道未关闭且所用会话仍然连接, 返回 {@code true}.
+     */
+    public boolean isOpen() {
+        return !closed && session.isOpen() && !session.isClosing();
+    }
+
+    /**
+     * 获取隧道的统计信息.
+     * @return 返回当前统计信息的快照.
+     */
+    public TcpTunnelMetrics getMetrics() {
+        long connections = totalConnections.sum();
+        double averageMillis = connections == 0 ? 0 : totalConnectNanos.sum() / (double) connections / 1_000_000;
+        return new TcpTunnelMetrics(connections, activeConnections.get(), failedConnections.sum(),
+                bytesSent.sum(), bytesReceived.sum(), averageMillis, maxConnectNanos.get() / 1_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        String instanceId = instance == null ? "-" : instance.getInstanceId();
+        return direction == Direction.LOCAL
+                ? "[" + instanceId + "] localhost:" + localPort + " -> " + remoteHost + ":" + remotePort
+                : "[" + instanceId + "] " + remoteHost + ":" + remotePort + " -> localhost:" + localPort;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.debug("关闭隧道资源时发生异常.", e);
+        }
+    }
+
+    /**
+     * 隧道方向.
+     */
+    public enum Direction {
+        /**
+         * 本地转发, 本地发起连接转发至远端端口.
+         */
+        LOCAL,
+        /**
+         * 远端转发, 远端服务器发起连接转发至本地端口.
+         */
+        REMOTE
+    }
+
+    /**
+     * 隧道内的一个连接.
+     * <p> 两个方向各由一个线程转发, 一个方向结束时只关闭对端的输出(半关闭), 两个方向都结束后才断开连接.
+     */
+    private class Connection {
+
+        private final Endpoint downstream;
+        private final Endpoint upstream;
+        private final AtomicInteger remainingDirections = new AtomicInteger(2);
+
+        private Connection(Endpoint downstream, Endpoint upstream) {
+            this.downstream = downstream;
+            this.upstream = upstream;
+        }
+
+        private void relay(Endpoint from, Endpoint to, LongAdder counter) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                InputStream input = from.getInputStream();
+                OutputStream output = to.getOutputStream();
+                int length;
+                while ((length = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, length);
+                    output.flush();
+                    counter.add(length);
+                }
+                to.shutdownOutput();
+            } catch (IOException e) {
+                log.trace("隧道 {} 的连接已中断.", TcpTunnel.this, e);
+                close();
+            } finally {
+                if (remainingDirections.decrementAndGet() == 0) {
+                    close();
+                    if (connections.remove(this)) {
+                        activeConnections.decrementAndGet();
+                    }
+                }
+            }
+        }
+
+        private void close() {
+            closeQuietly(downstream);
+            closeQuietly(upstream);
+        }
+    }
+
+    /**
+     * 建立连接另一端的方法.
+     */
+    @FunctionalInterface
+    private interface EndpointConnector {
+        /**
+         * 为接受的连接建立另一端.
+         * @param socket 已接受的连接.
+         * @return 返回另一端.
+         * @throws IOException 当建立失败时抛出.
+         */
+        Endpoint connect(Socket socket) throws IOException;
+    }
+
+    /**
+     * 连接的一端.
+     */
+    private interface Endpoint extends Closeable {
+        InputStream getInputStream() throws IOException;
+
+        OutputStream getOutputStream() throws IOException;
+
+        /**
+         * 通知对方不会再发送数据.
+         */
+        void shutdownOutput() throws IOException;
+    }
+
+    private record SocketEndpoint(Socket socket) implements Endpoint {
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
+        @Override
+        public void shutdownOutput() throws IOException {
+            if (!socket.isClosed() && !socket.isOutputShutdown()) {
+                socket.shutdownOutput();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private record ChannelEndpoint(ChannelDirectTcpip channel) implements Endpoint {
+        @Override
+        public InputStream getInputStream() {
+            return channel.getInvertedOut();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return channel.getInvertedIn();
+        }
+
+        @Override
+        public void shutdownOutput() throws IOException {
+            // 关闭通道的输出流将向服务端发送 EOF, 通道本身保持打开.
+            channel.getInvertedIn().close();
+        }
+
+        @Override
+        public void close() {
+            channel.close(false);
+        }
+    }
+}
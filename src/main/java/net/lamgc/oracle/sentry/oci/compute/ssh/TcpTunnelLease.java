@@ -0,0 +1,56 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * TCP 隧道租约.
+ * <p> 同一隧道可被多个租约共享, 关闭租约只会减少隧道的引用计数,
+ * 所有租约关闭且隧道空闲一段时间后, 隧道才会由 {@link TcpForwardingManager} 关闭.
+ * @author LamGC
+ */
+public final class TcpTunnelLease implements AutoCloseable {
+
+    private final TcpTunnel tunnel;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    TcpTunnelLease(TcpTunnel tunnel) {
+        this.tunnel = tunnel;
+    }
+
+    /**
+     * 获取租用的隧道.
+     * @return 返回隧道对象, 可用于获取统计信息.
+     */
+    public TcpTunnel getTunnel() {
+        return tunnel;
+    }
+
+    /**
+     * 获取本地端口.
+     * <p> 本地转发时为本地监听端口, 连接该端口即可访问远端服务.
+     * @return 返回本地端口.
+     */
+    public int getLocalPort() {
+        return tunnel.getLocalPort();
+    }
+
+    /**
+     * 获取远端端口.
+     * <p> 远端转发时为远端监听端口.
+     * @return 返回远端端口.
+     */
+    public int getRemotePort() {
+        return tunnel.getRemotePort();
+    }
+
+    /**
+     * 释放租约.
+     * <p> 重复调用不会产生影响.
+     */
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            tunnel.release();
+        }
+    }
+}
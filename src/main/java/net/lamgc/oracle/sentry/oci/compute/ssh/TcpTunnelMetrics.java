@@ -0,0 +1,18 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+/**
+ * TCP 隧道统计信息.
+ * <p> 发送与接收以发起连接的一方为准: 发送是发起方到目标服务的流量, 接收是目标服务返回的流量.
+ * @param totalConnections 已成功建立的连接总数.
+ * @param activeConnections 当前活动的连接数.
+ * @param failedConnections 建立失败的连接数(例如目标端口无服务监听).
+ * @param bytesSent 累计发送的字节数.
+ * @param bytesReceived 累计接收的字节数.
+ * @param averageConnectMillis 建立连接的平均耗时, 单位: 毫秒.
+ * @param maxConnectMillis 建立连接的最大耗时, 单位: 毫秒.
+ * @author LamGC
+ */
+public record TcpTunnelMetrics(long totalConnections, int activeConnections, long failedConnections,
+                               long bytesSent, long bytesReceived,
+                               double averageConnectMillis, double maxConnectMillis) {
+}
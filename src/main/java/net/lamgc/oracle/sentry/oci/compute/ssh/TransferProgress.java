@@ -0,0 +1,140 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * 分块传输进度.
+ * <p> 记录已完成的分块, 以及用于判断源文件是否发生变化的大小与修改时间,
+ * 传输中断后可根据进度文件跳过已完成的分块.
+ * @author LamGC
+ */
+final class TransferProgress {
+
+    private final static Logger log = LoggerFactory.getLogger(TransferProgress.class);
+    private final static Gson GSON = new Gson();
+
+    private String source;
+    private long size;
+    private long modifiedTime;
+    private int chunkSize;
+    private long[] completedChunks = new long[0];
+
+    private transient BitSet completed = new BitSet();
+
+    /**
+     * 供 Gson 使用.
+     */
+    @SuppressWarnings("unused")
+    private TransferProgress() {
+    }
+
+    TransferProgress(String source, long size, long modifiedTime, int chunkSize) {
+        this.source = source;
+        this.size = size;
+        this.modifiedTime = modifiedTime;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 加载传输进度.
+     * <p> 如果进度文件不存在, 已损坏, 或记录的源文件信息与当前不一致, 则返回新的进度.
+     * @param progressFile 进度文件.
+     * @param expected 当前传输的源文件信息.
+     * @return 返回可用于本次传输的进度.
+     */
+    static TransferProgress loadOrCreate(Path progressFile, TransferProgress expected) {
+        if (!Files.exists(progressFile)) {
+            return expected;
+        }
+        try {
+            TransferProgress progress = GSON.fromJson(Files.readString(progressFile, StandardCharsets.UTF_8),
+                    TransferProgress.class);
+            if (progress != null && expected.isSameSource(progress)) {
+                progress.completed = BitSet.valueOf(progress.completedChunks == null ? new long[0] : progress.completedChunks);
+                return progress;
+            }
+            log.debug("源文件已发生变化, 将重新传输.({})", expected.source);
+        } catch (IOException | JsonParseException e) {
+            log.warn("传输进度文件读取失败, 将重新传输.({})", progressFile, e);
+        }
+        return expected;
+    }
+
+    private boolean isSameSource(TransferProgress other) {
+        return source.equals(other.source) && size == other.size &&
+                modifiedTime == other.modifiedTime && chunkSize == other.chunkSize;
+    }
+
+    /**
+     * 保存进度.
+     * @param progressFile 进度文件.
+     * @throws IOException 当写入失败时抛出.
+     */
+    synchronized void save(Path progressFile) throws IOException {
+        completedChunks = completed.toLongArray();
+        Path tempFile = progressFile.resolveSibling(progressFile.getFileName() + ".tmp");
+        try {
+            Files.writeString(tempFile, GSON.toJson(this), StandardCharsets.UTF_8);
+            Files.move(tempFile, progressFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException deleteException) {
+                e.addSuppressed(deleteException);
+            }
+            throw e;
+        }
+    }
+
+    int getChunkCount() {
+        return (int) ((size + chunkSize - 1) / chunkSize);
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    synchronized boolean isCompleted(int chunk) {
+        return completed.get(chunk);
+    }
+
+    synchronized void markCompleted(int chunk) {
+        completed.set(chunk);
+    }
+
+    /**
+     * 获取最后一个已完成分块的结束偏移.
+     * @return 返回最后一个已完成分块的结束偏移, 没有已完成的分块时返回 0.
+     */
+    synchronized long getCompletedEnd() {
+        int lastChunk = completed.length() - 1;
+        return lastChunk < 0 ? 0 : Math.min(size, (long) (lastChunk + 1) * chunkSize);
+    }
+
+    /**
+     * 获取已完成分块的总字节数.
+     * @return 返回已完成的字节数.
+     */
+    synchronized long getCompletedBytes() {
+        long bytes = 0;
+        for (int chunk = completed.nextSetBit(0); chunk >= 0; chunk = completed.nextSetBit(chunk + 1)) {
+            bytes += Math.min(chunkSize, size - (long) chunk * chunkSize);
+        }
+        return bytes;
+    }
+
+}
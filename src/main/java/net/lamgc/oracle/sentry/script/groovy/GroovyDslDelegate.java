@@ -36,6 +36,7 @@ public class GroovyDslDelegate implements Script {
             return;
         }
         GroovyTrigger trigger = GroovyTriggerProvider.INSTANCE.getTriggerByName(triggerName);
+        trigger.setScriptInfo(scriptInfo);
         DefaultGroovyMethods.with(trigger, closure);
     }
 
@@ -1,6 +1,7 @@
 package net.lamgc.oracle.sentry.script.groovy.trigger;
 
 import groovy.lang.Closure;
+import net.lamgc.oracle.sentry.script.ScriptInfo;
 
 /**
  * Groovy 脚本的触发器接口.
@@ -10,6 +11,15 @@ import groovy.lang.Closure;
  */
 public interface GroovyTrigger {
 
+    /**
+     * 设置触发器所属脚本的信息.
+     * <p> 该方法会在脚本配置触发器之前调用, 需要区分不同脚本状态的触发器可重写该方法.
+     * @param scriptInfo 触发器所属脚本的信息.
+     */
+    default void setScriptInfo(ScriptInfo scriptInfo) {
+        // 默认不需要脚本信息.
+    }
+
     /**
      * 启动触发器.
      * <p> 注意, 触发器执行 run 方法不可以阻塞方法返回.
@@ -5,8 +5,11 @@ import com.oracle.bmc.core.ComputeClient;
 import com.oracle.bmc.core.model.Instance;
 import com.oracle.bmc.core.requests.GetInstanceRequest;
 import groovy.lang.Closure;
+import net.lamgc.oracle.sentry.Constants;
+import net.lamgc.oracle.sentry.common.PersistentStateStore;
 import net.lamgc.oracle.sentry.oci.compute.ComputeInstanceManager;
 import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import net.lamgc.oracle.sentry.script.ScriptInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,10 +19,13 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  * 实例状态监视触发器.
  * <p> 通过轮询实例状态, 当状态为指定的状态时将触发回调执行操作.
+ * <p> 监视器最后观察到的实例状态会保存到触发器状态存储中, 程序重启后将从保存的状态继续比对,
+ * 所以重启不会导致所有实例被当作首次查询而重复触发回调, 而停机期间实际发生的状态变化仍然会被检测到.
  * <p> 吐槽: 换个地方轮询(xs).
  * @author LamGC
  */
@@ -37,6 +43,24 @@ public class InstanceStateWatchTrigger implements GroovyTrigger {
     private final AtomicReference<Thread> pollingThreadReference = new AtomicReference<>();
     private final Set<Instance.LifecycleState> targetStates = new HashSet<>();
     private long interval = 5000;
+    private String watcherName;
+    private ScriptInfo scriptInfo;
+
+    @Override
+    public void setScriptInfo(ScriptInfo scriptInfo) {
+        this.scriptInfo = scriptInfo;
+    }
+
+    /**
+     * 设置监视器名称.
+     * <p> 监视器名称用于在状态存储中区分同一脚本中的不同监视器,
+     * 如果没有设置, 将根据需要检查的状态生成名称.
+     * <p> 修改名称后, 监视器将无法恢复之前保存的状态.
+     * @param name 监视器名称.
+     */
+    public void name(String name) {
+        this.watcherName = name;
+    }
 
     /**
      * 设置 {@link ComputeInstanceManager}.
@@ -150,7 +174,12 @@ public class InstanceStateWatchTrigger implements GroovyTrigger {
             return;
         }
 
-        Thread newPollingThread = THREAD_FACTORY.newThread(new PollingTask(instances, targetStates, callback, interval));
+        PersistentStateStore stateStore = Constants.instance != null ? Constants.instance.getTriggerStateStore() : null;
+        if (stateStore == null) {
+            log.warn("触发器状态存储不可用, 监视器的状态将不会被保存.");
+        }
+        Thread newPollingThread = THREAD_FACTORY.newThread(new PollingTask(instances, targetStates, callback, interval,
+                stateStore, getStateNamespace()));
         newPollingThread.start();
         pollingThreadReference.set(newPollingThread);
     }
@@ -166,6 +195,23 @@ public class InstanceStateWatchTrigger implements GroovyTrigger {
         pollingThreadReference.set(null);
     }
 
+    /**
+     * 获取监视器在状态存储中的命名空间.
+     * <p> 命名空间由触发器名称, 所属脚本和监视器名称组成, 确保不同脚本的监视器状态相互独立.
+     * @return 返回状态存储命名空间.
+     */
+    private String getStateNamespace() {
+        String name = watcherName;
+        if (name == null || name.isBlank()) {
+            name = targetStates.stream()
+                    .map(Instance.LifecycleState::name)
+                    .sorted()
+                    .collect(Collectors.joining(","));
+        }
+        String scriptName = scriptInfo != null ? scriptInfo.getGroup() + ":" + scriptInfo.getName() : "unknown";
+        return "InstanceStateWatcher/" + scriptName + "/" + name;
+    }
+
     /**
      * 首字母大写.
      * @param str 要处理的单词.
@@ -189,9 +235,11 @@ public class InstanceStateWatchTrigger implements GroovyTrigger {
         private final Closure<?> callback;
         private final long interval;
         private final Map<ComputeInstance, Instance.LifecycleState> lastStateMap = new ConcurrentHashMap<>();
+        private final PersistentStateStore stateStore;
+        private final String stateNamespace;
 
         private PollingTask(Set<ComputeInstance> instances, Set<Instance.LifecycleState> targetStates,
-                            Closure<?> callback, long interval) {
+                            Closure<?> callback, long interval, PersistentStateStore stateStore, String stateNamespace) {
             this.instances = instances;
             this.targetStates = targetStates;
             this.callback = callback;
@@ -199,6 +247,35 @@ public class InstanceStateWatchTrigger implements GroovyTrigger {
                 throw new IllegalArgumentException("Interval cannot be less than or equal to 0.");
             }
             this.interval = interval;
+            this.stateStore = stateStore;
+            this.stateNamespace = stateNamespace;
+            restoreLastStates();
+        }
+
+        /**
+         * 从状态存储中恢复上次观察到的实例状态.
+         * <p> 不再监视的实例(例如已删除的实例)的状态将从存储中清除.
+         */
+        private void restoreLastStates() {
+            if (stateStore == null) {
+                return;
+            }
+            stateStore.retain(stateNamespace, instances.stream()
+                    .map(ComputeInstance::getInstanceId)
+                    .collect(Collectors.toSet()));
+            for (ComputeInstance instance : instances) {
+                String stateName = stateStore.get(stateNamespace, instance.getInstanceId());
+                if (stateName == null) {
+                    continue;
+                }
+                try {
+                    lastStateMap.put(instance, Instance.LifecycleState.valueOf(stateName));
+                } catch (IllegalArgumentException e) {
+                    log.warn("状态存储中的实例状态无效, 已忽略.(InstanceId: {}, State: {})",
+                            instance.getInstanceId(), stateName);
+                }
+            }
+            log.debug("监视器 {} 已恢复 {} 个实例的最后已知状态.", stateNamespace, lastStateMap.size());
         }
 
         @SuppressWarnings("BusyWait")
@@ -231,6 +308,7 @@ public class InstanceStateWatchTrigger implements GroovyTrigger {
                         }
                         continue;
                     }
+                    instance.endpoint().updateState(instanceInfo.getLifecycleState());
                     Instance.LifecycleState lastState = lastStateMap.get(instance);
                     if (targetStates.contains(instanceInfo.getLifecycleState()) &&
                             instanceInfo.getLifecycleState() != lastState) {
@@ -243,6 +321,9 @@ public class InstanceStateWatchTrigger implements GroovyTrigger {
                         }
                     }
                     lastStateMap.put(instance, instanceInfo.getLifecycleState());
+                    if (stateStore != null) {
+                        stateStore.put(stateNamespace, instance.getInstanceId(), instanceInfo.getLifecycleState().name());
+                    }
                 }
                 log.trace("实例状态检查已结束.");
             }
@@ -274,7 +355,7 @@ public class InstanceStateWatchTrigger implements GroovyTrigger {
     /**
      * 实例状态变更事件.
      * @param instance 相关实例.
-     * @param oldState 旧状态, 当监视器第一次查询即触发时, 该值为 {@code null}.
+     * @param oldState 旧状态, 当监视器第一次查询即触发(且没有已保存的状态)时, 该值为 {@code null}.
      * @param newState 新状态.
      */
     public static record InstanceStateChangeEvent(
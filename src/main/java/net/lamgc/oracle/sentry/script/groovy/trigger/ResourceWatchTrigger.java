@@ -0,0 +1,172 @@
+package net.lamgc.oracle.sentry.script.groovy.trigger;
+
+import groovy.lang.Closure;
+import net.lamgc.oracle.sentry.common.watch.ResourceDiffPoller;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstanceManager;
+import net.lamgc.oracle.sentry.oci.compute.InstanceResourceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 资源变更监视触发器.
+ * <p> 通过轮询实例相关资源(实例属性, VNIC, 引导卷), 当指定字段发生变化时触发回调.
+ * <p> 回调参数为 {@link net.lamgc.oracle.sentry.common.watch.ResourceChangeEvent},
+ * 其中 key 为 {@link ComputeInstance}, resource 为 OCI SDK 中对应的资源对象.
+ * @author LamGC
+ */
+@SuppressWarnings("unused")
+@TriggerName("ResourceWatcher")
+public class ResourceWatchTrigger implements GroovyTrigger {
+
+    private final static Logger log = LoggerFactory.getLogger(ResourceWatchTrigger.class);
+
+    private final Set<ComputeInstance> instances = new HashSet<>();
+    private final AtomicReference<ComputeInstanceManager> instanceManager = new AtomicReference<>();
+    private final AtomicReference<ResourceDiffPoller<ComputeInstance, Object>> pollerReference = new AtomicReference<>();
+    private final Set<String> fields = new LinkedHashSet<>();
+    private InstanceResourceType resourceType = InstanceResourceType.INSTANCE;
+    private long interval = 60000;
+    private boolean notifyInitial = false;
+
+    /**
+     * 设置 {@link ComputeInstanceManager}.
+     * <p> 设置计算实例管理器以实现部分功能.
+     * @param instanceManager 实例管理器.
+     */
+    public void setInstanceManager(ComputeInstanceManager instanceManager) {
+        this.instanceManager.set(instanceManager);
+    }
+
+    /**
+     * 添加所有实例.
+     * <p> 调用前需设置实例管理器.
+     */
+    public void allInstances() {
+        addInstance(instanceManager.get().getComputeInstances());
+    }
+
+    /**
+     * 添加需要监控的实例.
+     * <p> 调用前需设置实例管理器.
+     * @param instanceId 要添加的实例 Id.(注意不是实例名称.)
+     */
+    public void addInstance(String instanceId) {
+        this.instances.add(instanceManager.get().getComputeInstanceById(instanceId));
+    }
+
+    /**
+     * 添加需要监控的实例.
+     * @param instance 实例对象.
+     */
+    public void addInstance(ComputeInstance instance) {
+        this.instances.add(instance);
+    }
+
+    /**
+     * 添加需要监控的实例.
+     * @param instances 实例集合.
+     */
+    public void addInstance(Set<ComputeInstance> instances) {
+        this.instances.addAll(instances);
+    }
+
+    /**
+     * 设置需要监视的资源类型.
+     * <p> 支持 instance(实例属性), vnic(主要 VNIC), bootVolume(引导卷), 默认为 instance.
+     * <p> 修改资源类型会清空已设置的字段.
+     * @param type 资源类型名称.
+     */
+    public void resource(String type) {
+        InstanceResourceType newType = InstanceResourceType.of(type);
+        if (newType != resourceType) {
+            fields.clear();
+        }
+        this.resourceType = newType;
+    }
+
+    /**
+     * 添加需要监视的字段.
+     * <p> 可用字段由资源类型决定, 详见 {@link InstanceResourceType}.
+     * @param field 字段名.
+     */
+    public void field(String field) {
+        resourceType.getField(field);
+        fields.add(field);
+    }
+
+    /**
+     * 添加需要监视的字段.
+     * @param fields 字段名数组.
+     */
+    public void field(String[] fields) {
+        for (String field : fields) {
+            field(field);
+        }
+    }
+
+    /**
+     * 监视资源类型的所有字段.
+     */
+    public void allFields() {
+        fields.addAll(resourceType.getFields().keySet());
+    }
+
+    /**
+     * 设置监控间隔.
+     * <p> 该间隔是每轮查询之间的间隔.
+     * @param interval 间隔时长, 单位: 毫秒.
+     */
+    public void interval(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * 是否在首次观察到资源时触发回调.
+     * <p> 默认不触发, 首次观察只作为比对基准.
+     * @param notifyInitial 如果为 {@code true}, 首次观察到资源时也会触发回调.
+     */
+    public void notifyInitial(boolean notifyInitial) {
+        this.notifyInitial = notifyInitial;
+    }
+
+    @Override
+    public synchronized void run(Closure<?> callback) {
+        if (pollerReference.get() != null) {
+            throw new IllegalStateException("Attempting to start multiple check threads repeatedly, which is not allowed.");
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("The watched field has not been set.");
+        }
+        if (instances.isEmpty()) {
+            log.warn("尚未设置任何需监视的实例, 已跳过对触发器的启动.", new IllegalStateException("未设置任何需要监视的实例."));
+            return;
+        }
+
+        ResourceDiffPoller.Builder<ComputeInstance, Object> builder = ResourceDiffPoller
+                .builder(resourceType.getFetcher())
+                .interval(interval)
+                .notifyInitial(notifyInitial)
+                .listener(callback::call);
+        for (String field : fields) {
+            builder.field(field, resourceType.getField(field));
+        }
+        ResourceDiffPoller<ComputeInstance, Object> poller = builder.create();
+        poller.addResources(instances);
+        poller.start();
+        pollerReference.set(poller);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        ResourceDiffPoller<ComputeInstance, Object> poller = pollerReference.getAndSet(null);
+        if (poller != null) {
+            poller.shutdown();
+        }
+    }
+}
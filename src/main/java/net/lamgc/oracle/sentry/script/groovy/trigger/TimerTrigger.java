@@ -3,16 +3,31 @@ package net.lamgc.oracle.sentry.script.groovy.trigger;
 import com.google.common.base.Throwables;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import groovy.lang.Closure;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import net.lamgc.oracle.sentry.oci.compute.ssh.SshSessionPool;
+import net.lamgc.oracle.sentry.oci.compute.ssh.SshUsageRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
 
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * 时间触发器.
  * <p> 通过设置 Cron 时间表达式, 可以达到定时触发的效果.
+ * <p> 如果任务需要通过 SSH 连接实例, 触发器会在每次触发前提前建立会话(见 {@link SshSessionPool#prewarm}),
+ * 任务开始时即可直接使用已认证的会话. 预热的实例可以通过 {@link #prewarm(ComputeInstance)} 声明,
+ * 也可以由触发器根据上一次执行时使用过的实例自动得知(见 {@link SshUsageRecorder}).
  * @author LamGC
  */
 @SuppressWarnings("unused")
@@ -29,8 +44,37 @@ public class TimerTrigger implements GroovyTrigger {
         SCHEDULER.initialize();
     }
 
+    /**
+     * 默认的预热提前时间.
+     * <p> 小于实例状态缓存与会话健康检查的阈值(均为 30 秒), 使得触发时无需再查询实例状态或确认会话可用.
+     */
+    private final static long DEFAULT_PREWARM_LEAD = TimeUnit.SECONDS.toMillis(20);
+
+    private final static ExecutorService PREWARM_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("Groovy-TimerPrewarm-%d")
+            .setDaemon(true)
+            .build());
+
+    private final Consumer<Set<ComputeInstance>> prewarmAction;
     private CronTrigger trigger;
     private ScheduledFuture<?> future;
+    private ScheduledFuture<?> prewarmFuture;
+    private final Set<ComputeInstance> prewarmInstances = ConcurrentHashMap.newKeySet();
+    private volatile Set<ComputeInstance> learnedInstances = Set.of();
+    private long prewarmLead = DEFAULT_PREWARM_LEAD;
+    private boolean learnPrewarm = true;
+    private volatile boolean stopped = false;
+
+    public TimerTrigger() {
+        this(TimerTrigger::prewarmSessions);
+    }
+
+    /**
+     * @param prewarmAction 预热动作, 在每次触发前以需要预热的实例调用.
+     */
+    TimerTrigger(Consumer<Set<ComputeInstance>> prewarmAction) {
+        this.prewarmAction = prewarmAction;
+    }
 
     /**
      * 设定定时时间.
@@ -43,6 +87,45 @@ public class TimerTrigger implements GroovyTrigger {
         }
     }
 
+    /**
+     * 声明任务将通过 SSH 连接的实例.
+     * <p> 触发器将在每次触发前为该实例预热 SSH 会话.
+     * @param instance 计算实例.
+     */
+    public void prewarm(ComputeInstance instance) {
+        prewarmInstances.add(instance);
+    }
+
+    /**
+     * 声明任务将通过 SSH 连接的实例.
+     * @param instances 计算实例集合.
+     */
+    public void prewarm(Set<ComputeInstance> instances) {
+        prewarmInstances.addAll(instances);
+    }
+
+    /**
+     * 设置预热的提前时间.
+     * <p> 默认在触发前 20 秒预热.
+     * @param lead 提前时间, 单位: 毫秒.
+     */
+    public void prewarmLead(long lead) {
+        if (lead < 0) {
+            throw new IllegalArgumentException("Prewarm lead cannot be negative: " + lead);
+        }
+        this.prewarmLead = lead;
+    }
+
+    /**
+     * 是否根据执行记录自动预热实例.
+     * <p> 默认开启, 每次执行后将记录本次执行中使用过 SSH 会话的实例, 并在下次触发前预热.
+     * 只记录执行任务的线程获取的会话, 其他脚本同时使用的实例不会被记录.
+     * @param learnPrewarm 如果为 {@code false}, 只预热通过 {@link #prewarm(ComputeInstance)} 声明的实例.
+     */
+    public void learnPrewarm(boolean learnPrewarm) {
+        this.learnPrewarm = learnPrewarm;
+    }
+
     @Override
     public synchronized void run(Closure<?> runnable) {
         if (future != null) {
@@ -69,20 +152,65 @@ public class TimerTrigger implements GroovyTrigger {
         }
 
         this.future = SCHEDULER.schedule(new TimerTaskRunnable(runnable), trigger);
+        if (learnPrewarm || !prewarmInstances.isEmpty()) {
+            schedulePrewarm(new Date());
+        }
     }
 
     @Override
-    public void shutdown() {
+    public synchronized void shutdown() {
+        stopped = true;
         if (this.future != null) {
             future.cancel(false);
         }
+        if (this.prewarmFuture != null) {
+            prewarmFuture.cancel(false);
+        }
+    }
+
+    /**
+     * 安排在指定时间之后的下一次触发前进行预热.
+     * <p> 每次预热完成后会安排下一次触发的预热, 如果距离触发已不足提前时间, 则立即预热.
+     * @param after 起始时间.
+     */
+    private synchronized void schedulePrewarm(Date after) {
+        if (stopped) {
+            return;
+        }
+        Date nextFireTime = trigger.nextExecutionTime(new SimpleTriggerContext(after, after, after));
+        if (nextFireTime == null) {
+            return;
+        }
+        Date prewarmTime = new Date(Math.max(nextFireTime.getTime() - prewarmLead, System.currentTimeMillis()));
+        this.prewarmFuture = SCHEDULER.schedule(() -> {
+            Set<ComputeInstance> instances = new HashSet<>(prewarmInstances);
+            if (learnPrewarm) {
+                instances.addAll(learnedInstances);
+            }
+            prewarmAction.accept(instances);
+            schedulePrewarm(nextFireTime);
+        }, prewarmTime);
+    }
+
+    private static void prewarmSessions(Set<ComputeInstance> instances) {
+        for (ComputeInstance instance : instances) {
+            // 建立连接可能耗时较长, 不占用调度线程.
+            PREWARM_EXECUTOR.execute(() -> {
+                try {
+                    SshSessionPool.getDefault().prewarm(instance.ssh());
+                } catch (Exception e) {
+                    triggerLog().warn("预热实例 {} 的 SSH 会话失败: {}", instance.getInstanceId(), e.getMessage());
+                    triggerLog().debug("预热失败的异常信息.", e);
+                }
+            });
+        }
     }
     
     private static Logger triggerLog() {
         return LoggerFactory.getLogger(TimerTrigger.class);
     }
 
-    private static class TimerTaskRunnable implements Runnable {
+    private class TimerTaskRunnable implements Runnable {
 
         private final Closure<?> closure;
 
@@ -92,7 +220,16 @@ public class TimerTrigger implements GroovyTrigger {
 
         @Override
         public void run() {
-            closure.call();
+            try (SshUsageRecorder recorder = SshUsageRecorder.start()) {
+                try {
+                    closure.call();
+                } finally {
+                    if (learnPrewarm) {
+                        // 以最近一次执行为准, 不再使用的实例不会继续被预热.
+                        learnedInstances = recorder.getInstances();
+                    }
+                }
+            }
         }
     }
 
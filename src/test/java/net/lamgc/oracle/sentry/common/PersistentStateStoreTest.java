@@ -0,0 +1,107 @@
+package net.lamgc.oracle.sentry.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentStateStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void saveAndLoadTest() throws IOException {
+        File storeFile = tempDir.resolve("state.json").toFile();
+        try (PersistentStateStore store = new PersistentStateStore(storeFile, 60000)) {
+            store.put("watcher", "instance-1", "Running");
+            store.put("watcher", "instance-2", "Stopped");
+            store.flush();
+        }
+
+        PersistentStateStore loadedStore = new PersistentStateStore(storeFile, 60000);
+        loadedStore.load();
+        assertEquals("Running", loadedStore.get("watcher", "instance-1"));
+        assertEquals("Stopped", loadedStore.get("watcher", "instance-2"));
+        assertNull(loadedStore.get("watcher", "instance-3"));
+        assertNull(loadedStore.get("other", "instance-1"));
+        loadedStore.close();
+    }
+
+    @Test
+    public void flushOnlyWhenChangedTest() throws IOException {
+        File storeFile = tempDir.resolve("state.json").toFile();
+        PersistentStateStore store = new PersistentStateStore(storeFile, 60000);
+        store.flush();
+        assertFalse(storeFile.exists());
+
+        store.put("watcher", "instance-1", "Running");
+        store.flush();
+        assertTrue(storeFile.exists());
+
+        assertTrue(storeFile.delete());
+        store.put("watcher", "instance-1", "Running");
+        store.flush();
+        assertFalse(storeFile.exists(), "The unchanged value should not trigger a write.");
+
+        store.remove("watcher", "instance-1");
+        store.close();
+        assertTrue(storeFile.exists());
+    }
+
+    @Test
+    public void createParentDirectoryTest() throws IOException {
+        File storeFile = tempDir.resolve("data/state/state.json").toFile();
+        try (PersistentStateStore store = new PersistentStateStore(storeFile, 60000)) {
+            store.put("watcher", "instance-1", "Running");
+            store.flush();
+        }
+        assertTrue(storeFile.exists());
+    }
+
+    @Test
+    public void retainTest() throws IOException {
+        File storeFile = tempDir.resolve("state.json").toFile();
+        try (PersistentStateStore store = new PersistentStateStore(storeFile, 60000)) {
+            store.put("watcher", "instance-1", "Running");
+            store.put("watcher", "instance-2", "Stopped");
+            store.put("other", "instance-2", "Stopped");
+            store.flush();
+
+            store.retain("watcher", Set.of("instance-1", "instance-3"));
+            assertEquals(Map.of("instance-1", "Running"), store.getAll("watcher"));
+            // 其他命名空间不受影响.
+            assertEquals("Stopped", store.get("other", "instance-2"));
+        }
+
+        PersistentStateStore loadedStore = new PersistentStateStore(storeFile, 60000);
+        loadedStore.load();
+        assertNull(loadedStore.get("watcher", "instance-2"));
+        assertEquals("Running", loadedStore.get("watcher", "instance-1"));
+
+        assertTrue(storeFile.delete());
+        loadedStore.retain("watcher", Set.of("instance-1"));
+        loadedStore.retain("missing", Set.of());
+        loadedStore.flush();
+        assertFalse(storeFile.exists(), "Retaining every key should not trigger a write.");
+        loadedStore.close();
+    }
+
+    @Test
+    public void corruptedFileTest() throws IOException {
+        File storeFile = tempDir.resolve("state.json").toFile();
+        Files.writeString(storeFile.toPath(), "{ not json", StandardCharsets.UTF_8);
+        PersistentStateStore store = new PersistentStateStore(storeFile, 60000);
+        assertThrows(IOException.class, store::load);
+        store.close();
+    }
+
+}
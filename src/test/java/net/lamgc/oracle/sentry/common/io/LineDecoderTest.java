@@ -0,0 +1,83 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineDecoderTest {
+
+    @Test
+    public void splitLinesTest() {
+        List<String> lines = new ArrayList<>();
+        LineDecoder decoder = new LineDecoder(StandardCharsets.UTF_8);
+        byte[] data = "first\nsecond\r\n\nlast".getBytes(StandardCharsets.UTF_8);
+        decoder.decode(data, 0, data.length, lines::add);
+        assertEquals(List.of("first", "second", ""), lines);
+        decoder.finish(lines::add);
+        assertEquals(List.of("first", "second", "", "last"), lines);
+    }
+
+    @Test
+    public void multiByteCharacterAcrossChunksTest() {
+        List<String> lines = new ArrayList<>();
+        LineDecoder decoder = new LineDecoder(StandardCharsets.UTF_8);
+        byte[] data = "实例状态\r\n正常\n".getBytes(StandardCharsets.UTF_8);
+        // 逐字节输入, 确保多字节字符与 \r\n 被拆分时也能正确解码.
+        for (int i = 0; i < data.length; i++) {
+            decoder.decode(data, i, 1, lines::add);
+        }
+        decoder.finish(lines::add);
+        assertEquals(List.of("实例状态", "正常"), lines);
+    }
+
+    @Test
+    public void largeInputTest() {
+        List<String> lines = new ArrayList<>();
+        LineDecoder decoder = new LineDecoder(StandardCharsets.UTF_8);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append("line-").append(i).append('\n');
+        }
+        byte[] data = builder.toString().getBytes(StandardCharsets.UTF_8);
+        decoder.decode(data, 0, data.length, lines::add);
+        decoder.finish(lines::add);
+        assertEquals(10000, lines.size());
+        assertEquals("line-0", lines.get(0));
+        assertEquals("line-9999", lines.get(9999));
+    }
+
+    @Test
+    public void splitLongLineTest() {
+        List<String> lines = new ArrayList<>();
+        LineDecoder decoder = new LineDecoder(StandardCharsets.UTF_8, 4);
+        byte[] data = "abcdefghij\nxy\n".getBytes(StandardCharsets.UTF_8);
+        decoder.decode(data, 0, data.length, lines::add);
+        decoder.finish(lines::add);
+        assertEquals(List.of("abcd", "efgh", "ij", "xy"), lines);
+    }
+
+    @Test
+    public void reuseAfterFinishTest() {
+        List<String> lines = new ArrayList<>();
+        LineDecoder decoder = new LineDecoder(StandardCharsets.UTF_8);
+        byte[] first = "a\r".getBytes(StandardCharsets.UTF_8);
+        decoder.decode(first, 0, first.length, lines::add);
+        decoder.finish(lines::add);
+        byte[] second = "\nb".getBytes(StandardCharsets.UTF_8);
+        decoder.decode(second, 0, second.length, lines::add);
+        decoder.finish(lines::add);
+        assertEquals(List.of("a\r", "", "b"), lines);
+    }
+
+    @Test
+    public void badArgumentsTest() {
+        assertThrows(IllegalArgumentException.class, () -> new LineDecoder(StandardCharsets.UTF_8, 0));
+        LineDecoder decoder = new LineDecoder(StandardCharsets.UTF_8);
+        assertThrows(IndexOutOfBoundsException.class, () -> decoder.decode(new byte[4], 2, 4, line -> {}));
+    }
+
+}
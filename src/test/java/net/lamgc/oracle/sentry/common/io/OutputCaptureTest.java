@@ -0,0 +1,120 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputCaptureTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void tailTest() throws IOException {
+        OutputCapture capture = OutputCapture.tail(8);
+        capture.write(bytes("0123"));
+        assertArrayEquals(bytes("0123"), capture.toByteArray());
+        assertEquals(0, capture.getDroppedBytes());
+
+        capture.write(bytes("456789"));
+        assertArrayEquals(bytes("23456789"), capture.toByteArray());
+        assertEquals(2, capture.getDroppedBytes());
+
+        capture.write(bytes("abc"));
+        assertArrayEquals(bytes("56789abc"), capture.toByteArray());
+
+        capture.write(bytes("ABCDEFGHIJKL"));
+        assertArrayEquals(bytes("EFGHIJKL"), capture.toByteArray());
+        assertEquals(25, capture.getTotalBytes());
+        assertEquals(17, capture.getDroppedBytes());
+
+        capture.write('!');
+        assertArrayEquals(bytes("FGHIJKL!"), capture.toByteArray());
+    }
+
+    @Test
+    public void tailByteByByteTest() throws IOException {
+        OutputCapture capture = OutputCapture.tail(3000);
+        for (int i = 0; i < 10000; i++) {
+            capture.write(i);
+        }
+        byte[] content = capture.toByteArray();
+        assertEquals(3000, content.length);
+        assertEquals((byte) 7000, content[0]);
+        assertEquals((byte) 9999, content[2999]);
+        assertEquals(7000, capture.getDroppedBytes());
+    }
+
+    @Test
+    public void headTailTest() throws IOException {
+        HeadTailCapture capture = OutputCapture.headTail(4, 4);
+        capture.write(bytes("012"));
+        assertArrayEquals(bytes("012"), capture.toByteArray());
+
+        capture.write(bytes("3456"));
+        assertArrayEquals(bytes("0123"), capture.getHead());
+        assertArrayEquals(bytes("456"), capture.getTail());
+        assertEquals(0, capture.getDroppedBytes());
+
+        capture.write(bytes("789abcdef"));
+        assertArrayEquals(bytes("0123"), capture.getHead());
+        assertArrayEquals(bytes("cdef"), capture.getTail());
+        assertArrayEquals(bytes("0123cdef"), capture.toByteArray());
+        assertEquals(16, capture.getTotalBytes());
+        assertEquals(8, capture.getDroppedBytes());
+    }
+
+    @Test
+    public void spillTest() throws IOException {
+        SpillingCapture capture = OutputCapture.spillToFile(8, tempDir);
+        capture.write(bytes("0123"));
+        assertNull(capture.getSpillFile());
+        assertEquals(0, capture.getSpilledBytes());
+
+        capture.write(bytes("456789"));
+        Path spillFile = capture.getSpillFile();
+        assertNotNull(spillFile);
+        assertEquals(tempDir, spillFile.getParent());
+        capture.write(bytes("abc"));
+        assertEquals(13, capture.getSpilledBytes());
+        assertEquals(0, capture.getDroppedBytes());
+        assertArrayEquals(bytes("0123456789abc"), capture.toByteArray());
+        try (InputStream input = capture.openInputStream()) {
+            assertArrayEquals(bytes("0123456789abc"), input.readAllBytes());
+        }
+
+        capture.close();
+        assertFalse(Files.exists(spillFile));
+        assertThrows(IOException.class, () -> capture.write(1));
+    }
+
+    @Test
+    public void spillNotTriggeredTest() throws IOException {
+        SpillingCapture capture = OutputCapture.spillToFile(8, tempDir);
+        capture.write(bytes("01234567"));
+        assertNull(capture.getSpillFile());
+        assertEquals("01234567", capture.toString(StandardCharsets.US_ASCII));
+        capture.close();
+    }
+
+    @Test
+    public void zeroCapacityTest() throws IOException {
+        OutputCapture capture = OutputCapture.headTail(0, 0);
+        capture.write(bytes("data"));
+        assertEquals(0, capture.toByteArray().length);
+        assertEquals(4, capture.getDroppedBytes());
+        assertThrows(IllegalArgumentException.class, () -> OutputCapture.tail(-1));
+    }
+
+}
@@ -0,0 +1,89 @@
+package net.lamgc.oracle.sentry.common.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see TarOutputStream
+ * @see TarInputStream
+ */
+class TarStreamTest {
+
+    @Test
+    public void roundTripTest() throws IOException {
+        // 分别覆盖: 直接写入名称字段, 拆分为前缀与名称, 以及只能写入 pax 扩展头的路径.
+        String shortName = "dir/hello.txt";
+        String splitName = "dir/" + "a".repeat(120) + "/file.txt";
+        String longName = "dir/" + "b".repeat(300) + ".txt";
+        byte[] content = "Hello, Tar!".getBytes(StandardCharsets.UTF_8);
+        byte[] blockContent = new byte[TarOutputStream.BLOCK_SIZE * 3];
+        for (int i = 0; i < blockContent.length; i++) {
+            blockContent[i] = (byte) i;
+        }
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (TarOutputStream tar = new TarOutputStream(archive)) {
+            tar.putEntry(TarEntry.directory("dir", 0755, 1600000000));
+            tar.putEntry(TarEntry.file(shortName, content.length, 0644, 1600000001));
+            tar.write(content);
+            tar.putEntry(TarEntry.file(splitName, blockContent.length, 0600, 1600000002));
+            tar.write(blockContent);
+            tar.putEntry(TarEntry.file(longName, 0, 0644, 1600000003));
+            tar.putEntry(new TarEntry("dir/link", TarEntry.Type.SYMBOLIC_LINK, 0, 0777, 1600000004, "hello.txt"));
+        }
+        assertEquals(0, archive.size() % TarOutputStream.BLOCK_SIZE);
+
+        try (TarInputStream tar = new TarInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            assertEquals(TarEntry.directory("dir", 0755, 1600000000), tar.getNextEntry());
+
+            assertEquals(TarEntry.file(shortName, content.length, 0644, 1600000001), tar.getNextEntry());
+            assertArrayEquals(content, tar.readAllBytes());
+
+            // 不读取内容, 获取下一个条目时应跳过.
+            assertEquals(TarEntry.file(splitName, blockContent.length, 0600, 1600000002), tar.getNextEntry());
+
+            assertEquals(TarEntry.file(longName, 0, 0644, 1600000003), tar.getNextEntry());
+            assertEquals(-1, tar.read());
+
+            assertEquals(new TarEntry("dir/link", TarEntry.Type.SYMBOLIC_LINK, 0, 0777, 1600000004, "hello.txt"),
+                    tar.getNextEntry());
+            assertNull(tar.getNextEntry());
+        }
+    }
+
+    @Test
+    public void entrySizeEnforcedTest() throws IOException {
+        TarOutputStream tar = new TarOutputStream(new ByteArrayOutputStream());
+        tar.putEntry(TarEntry.file("file", 4, 0644, 0));
+        assertThrows(IOException.class, () -> tar.write(new byte[5]));
+        tar.write(new byte[3]);
+        assertThrows(IOException.class, () -> tar.putEntry(TarEntry.file("next", 0, 0644, 0)));
+    }
+
+    @Test
+    public void corruptedHeaderTest() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (TarOutputStream tar = new TarOutputStream(archive)) {
+            tar.putEntry(TarEntry.file("file", 0, 0644, 0));
+        }
+        byte[] data = archive.toByteArray();
+        data[0] = 'x';
+        TarInputStream tar = new TarInputStream(new ByteArrayInputStream(data));
+        assertThrows(IOException.class, tar::getNextEntry);
+    }
+
+    @Test
+    public void paxRecordTest() {
+        // 长度字段包括自身, 位数变化时需要进位.
+        assertEquals("11 path=ab\n", TarOutputStream.paxRecord("path", "ab"));
+        assertEquals("99 path=" + "a".repeat(90) + "\n", TarOutputStream.paxRecord("path", "a".repeat(90)));
+        assertEquals("101 path=" + "a".repeat(91) + "\n", TarOutputStream.paxRecord("path", "a".repeat(91)));
+    }
+
+}
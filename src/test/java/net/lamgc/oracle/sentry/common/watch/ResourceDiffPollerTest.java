@@ -0,0 +1,159 @@
+package net.lamgc.oracle.sentry.common.watch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceDiffPollerTest {
+
+    private record TestResource(String ip, String state, Map<String, String> tags) {}
+
+    @Test
+    public void changeDetectionTest() throws InterruptedException {
+        Map<String, TestResource> resources = new ConcurrentHashMap<>();
+        resources.put("a", new TestResource("1.1.1.1", "Running", Map.of("k", "v")));
+        List<ResourceChangeEvent<String, TestResource>> events = new ArrayList<>();
+        ResourceDiffPoller<String, TestResource> poller = ResourceDiffPoller.<String, TestResource>builder(resources::get)
+                .field("ip", TestResource::ip)
+                .field("tags", TestResource::tags)
+                .listener(events::add)
+                .create();
+        poller.addResource("a");
+
+        poller.pollOnce();
+        assertTrue(events.isEmpty(), "The first observation should only be used as the baseline.");
+
+        resources.put("a", new TestResource("1.1.1.1", "Stopped", Map.of("k", "v")));
+        poller.pollOnce();
+        assertTrue(events.isEmpty(), "Unwatched field changes should be ignored.");
+
+        resources.put("a", new TestResource("2.2.2.2", "Stopped", Map.of("k", "v")));
+        poller.pollOnce();
+        assertEquals(1, events.size());
+        assertEquals(Set.of("ip"), events.get(0).changedFields());
+        assertEquals("2.2.2.2", events.get(0).resource().ip());
+        assertFalse(events.get(0).initial());
+
+        poller.pollOnce();
+        assertEquals(1, events.size());
+
+        resources.put("a", new TestResource("2.2.2.2", "Stopped", Map.of("k", "v2")));
+        poller.pollOnce();
+        assertEquals(2, events.size());
+        assertTrue(events.get(1).isChanged("tags"));
+    }
+
+    @Test
+    public void notifyInitialTest() throws InterruptedException {
+        List<ResourceChangeEvent<String, TestResource>> events = new ArrayList<>();
+        ResourceDiffPoller<String, TestResource> poller = ResourceDiffPoller.<String, TestResource>builder(
+                key -> new TestResource(null, "Running", Map.of()))
+                .field("ip", TestResource::ip)
+                .field("state", TestResource::state)
+                .notifyInitial(true)
+                .listener(events::add)
+                .create();
+        poller.addResource("a");
+        poller.pollOnce();
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).initial());
+        assertEquals(Set.of("ip", "state"), events.get(0).changedFields());
+    }
+
+    @Test
+    public void fetchFailureTest() throws InterruptedException {
+        List<ResourceChangeEvent<String, TestResource>> events = new ArrayList<>();
+        ResourceDiffPoller<String, TestResource> poller = ResourceDiffPoller.<String, TestResource>builder(key -> {
+                    throw new IllegalStateException("Fetch failed.");
+                })
+                .field("ip", TestResource::ip)
+                .listener(events::add)
+                .create();
+        poller.addResource("a");
+        poller.pollOnce();
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void initialExtractFailureTest() throws InterruptedException {
+        Map<String, TestResource> resources = new ConcurrentHashMap<>();
+        resources.put("a", new TestResource(null, "Running", Map.of()));
+        List<ResourceChangeEvent<String, TestResource>> events = new ArrayList<>();
+        ResourceDiffPoller<String, TestResource> poller = ResourceDiffPoller.<String, TestResource>builder(resources::get)
+                .field("ip", resource -> resource.ip().toString())
+                .field("state", TestResource::state)
+                .listener(events::add)
+                .create();
+        poller.addResource("a");
+        // 首次观察时 ip 字段提取失败, 指纹未知.
+        poller.pollOnce();
+
+        // 之后首次提取成功只作为基准, 不视为变化.
+        resources.put("a", new TestResource("1.1.1.1", "Running", Map.of()));
+        poller.pollOnce();
+        assertTrue(events.isEmpty(), "Events: " + events);
+
+        resources.put("a", new TestResource("2.2.2.2", "Running", Map.of()));
+        poller.pollOnce();
+        assertEquals(1, events.size());
+        assertEquals(Set.of("ip"), events.get(0).changedFields());
+    }
+
+    @Test
+    public void removeDuringPollTest() throws InterruptedException {
+        List<ResourceChangeEvent<String, TestResource>> events = new ArrayList<>();
+        AtomicReference<ResourceDiffPoller<String, TestResource>> removeOnFetch = new AtomicReference<>();
+        ResourceDiffPoller<String, TestResource> poller = ResourceDiffPoller.<String, TestResource>builder(key -> {
+                    ResourceDiffPoller<String, TestResource> target = removeOnFetch.get();
+                    if (target != null) {
+                        // 获取资源期间资源被移除.
+                        target.removeResource(key);
+                    }
+                    return new TestResource("1.1.1.1", "Running", Map.of());
+                })
+                .field("ip", TestResource::ip)
+                .notifyInitial(true)
+                .listener(events::add)
+                .create();
+        removeOnFetch.set(poller);
+        poller.addResource("a");
+        poller.pollOnce();
+        assertTrue(events.isEmpty());
+
+        // 被移除的资源没有留下指纹, 重新添加后视为首次观察.
+        removeOnFetch.set(null);
+        poller.addResource("a");
+        poller.pollOnce();
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).initial());
+    }
+
+    @Test
+    public void fingerprintTest() {
+        assertEquals(Fingerprints.of("abc"), Fingerprints.of(new StringBuilder("abc")));
+        assertNotEquals(Fingerprints.of("abc"), Fingerprints.of("abd"));
+        assertNotEquals(Fingerprints.of(null), Fingerprints.of(""));
+        assertEquals(Fingerprints.of(Map.of("a", "1", "b", "2")), Fingerprints.of(Map.of("b", "2", "a", "1")));
+        assertNotEquals(Fingerprints.of(List.of("a", "b")), Fingerprints.of(List.of("b", "a")));
+    }
+
+    @Test
+    public void badArgumentsTest() {
+        assertThrows(IllegalArgumentException.class, () -> ResourceDiffPoller.<String, TestResource>builder(key -> null)
+                .listener(event -> {})
+                .create());
+        assertThrows(IllegalArgumentException.class, () -> ResourceDiffPoller.<String, TestResource>builder(key -> null)
+                .field("ip", TestResource::ip)
+                .interval(0)
+                .listener(event -> {})
+                .create());
+    }
+
+}
@@ -0,0 +1,157 @@
+package net.lamgc.oracle.sentry.oci.compute;
+
+import com.oracle.bmc.core.ComputeClient;
+import com.oracle.bmc.core.VirtualNetworkClient;
+import com.oracle.bmc.core.model.Instance;
+import com.oracle.bmc.core.model.Vnic;
+import com.oracle.bmc.core.model.VnicAttachment;
+import com.oracle.bmc.core.responses.GetInstanceResponse;
+import com.oracle.bmc.core.responses.GetVnicResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @see InstanceEndpointResolver
+ */
+class InstanceEndpointResolverTest {
+
+    private final static long LONG_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    private ComputeInstance instance;
+    private ComputeClient computeClient;
+    private InstanceNetwork network;
+    private final AtomicReference<Instance.LifecycleState> remoteState = new AtomicReference<>();
+    private final AtomicReference<Vnic> remoteVnic = new AtomicReference<>();
+    private Vnic firstVnic;
+    private Vnic secondVnic;
+
+    @BeforeEach
+    public void createInstance() {
+        instance = mock(ComputeInstance.class);
+        computeClient = mock(ComputeClient.class);
+        network = mock(InstanceNetwork.class);
+        VirtualNetworkClient vcnClient = mock(VirtualNetworkClient.class);
+        when(instance.getInstanceId()).thenReturn("instance-1");
+        when(instance.getComputeClient()).thenReturn(computeClient);
+        when(instance.network()).thenReturn(network);
+        when(network.getVcnClient()).thenReturn(vcnClient);
+
+        Instance instanceInfo = mock(Instance.class);
+        when(instanceInfo.getLifecycleState()).thenAnswer(invocation -> remoteState.get());
+        GetInstanceResponse instanceResponse = mock(GetInstanceResponse.class);
+        when(instanceResponse.getInstance()).thenReturn(instanceInfo);
+        when(computeClient.getInstance(any())).thenReturn(instanceResponse);
+        remoteState.set(Instance.LifecycleState.Running);
+
+        VnicAttachment attachment = mock(VnicAttachment.class);
+        when(attachment.getVnicId()).thenReturn("vnic-1");
+        when(network.listVnicAttachments()).thenReturn(List.of(attachment));
+        firstVnic = newVnic("192.0.2.1", "10.0.0.1");
+        secondVnic = newVnic("192.0.2.2", "10.0.0.2");
+        GetVnicResponse vnicResponse = mock(GetVnicResponse.class);
+        when(vnicResponse.getVnic()).thenAnswer(invocation -> remoteVnic.get());
+        when(vcnClient.getVnic(any())).thenReturn(vnicResponse);
+        remoteVnic.set(firstVnic);
+    }
+
+    private static Vnic newVnic(String publicIp, String privateIp) {
+        Vnic vnic = mock(Vnic.class);
+        when(vnic.getIsPrimary()).thenReturn(true);
+        when(vnic.getPublicIp()).thenReturn(publicIp);
+        when(vnic.getPrivateIp()).thenReturn(privateIp);
+        return vnic;
+    }
+
+    @Test
+    public void cacheWithinTtlTest() throws InterruptedException {
+        InstanceEndpointResolver resolver = new InstanceEndpointResolver(instance, LONG_TTL, LONG_TTL);
+        InstanceEndpoint endpoint = resolver.getEndpoint();
+        assertEquals(new InstanceEndpoint(Instance.LifecycleState.Running, "192.0.2.1", "10.0.0.1"), endpoint);
+        assertEquals(endpoint, resolver.getEndpoint());
+        assertEquals("192.0.2.1", resolver.getAddress());
+        assertEquals("10.0.0.1", resolver.getPrivateAddress());
+        verify(computeClient, times(1)).getInstance(any());
+        verify(network, times(1)).listVnicAttachments();
+
+        // 有效期过后重新调用 API.
+        InstanceEndpointResolver shortResolver = new InstanceEndpointResolver(instance, 50, 50);
+        shortResolver.getEndpoint();
+        Thread.sleep(100);
+        shortResolver.getEndpoint();
+        verify(computeClient, times(3)).getInstance(any());
+        verify(network, times(3)).listVnicAttachments();
+    }
+
+    @Test
+    public void stateChangeDropsAddressTest() {
+        InstanceEndpointResolver resolver = new InstanceEndpointResolver(instance, LONG_TTL, LONG_TTL);
+        assertEquals("192.0.2.1", resolver.getEndpoint().address());
+
+        // 状态未变化时保留缓存的地址.
+        resolver.updateState(Instance.LifecycleState.Running);
+        assertEquals("192.0.2.1", resolver.getEndpoint().address());
+        verify(network, times(1)).listVnicAttachments();
+
+        resolver.updateState(Instance.LifecycleState.Stopped);
+        assertEquals(new InstanceEndpoint(Instance.LifecycleState.Stopped, null, null), resolver.getEndpoint());
+
+        // 实例重新启动后公共 IP 发生变化.
+        remoteVnic.set(secondVnic);
+        resolver.updateState(Instance.LifecycleState.Running);
+        assertEquals(new InstanceEndpoint(Instance.LifecycleState.Running, "192.0.2.2", "10.0.0.2"),
+                resolver.getEndpoint());
+        verify(network, times(2)).listVnicAttachments();
+        // 推送的状态不需要调用 API.
+        verify(computeClient, times(1)).getInstance(any());
+    }
+
+    @Test
+    public void invalidateTest() {
+        InstanceEndpointResolver resolver = new InstanceEndpointResolver(instance, LONG_TTL, LONG_TTL);
+        assertEquals("192.0.2.1", resolver.getEndpoint().address());
+
+        remoteVnic.set(secondVnic);
+        resolver.invalidate();
+        assertEquals("192.0.2.2", resolver.getEndpoint().address());
+        verify(computeClient, times(2)).getInstance(any());
+        verify(network, times(2)).listVnicAttachments();
+    }
+
+    @Test
+    public void concurrentStateChangeTest() throws Exception {
+        InstanceEndpointResolver resolver = new InstanceEndpointResolver(instance, LONG_TTL, LONG_TTL);
+        resolver.updateState(Instance.LifecycleState.Running);
+        CountDownLatch resolving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<VnicAttachment> attachments = instance.network().listVnicAttachments();
+        when(network.listVnicAttachments()).thenAnswer(invocation -> {
+            resolving.countDown();
+            release.await();
+            return attachments;
+        });
+
+        CompletableFuture<InstanceEndpoint> endpoint = CompletableFuture.supplyAsync(resolver::getEndpoint);
+        assertTrue(resolving.await(10, TimeUnit.SECONDS));
+        // 解析地址期间实例被停止, 解析结果属于旧状态, 不会写入缓存.
+        resolver.updateState(Instance.LifecycleState.Stopped);
+        release.countDown();
+        assertEquals(new InstanceEndpoint(Instance.LifecycleState.Stopped, null, null),
+                endpoint.get(10, TimeUnit.SECONDS));
+
+        // 缓存中没有旧地址, 再次获取时重新解析.
+        when(network.listVnicAttachments()).thenReturn(attachments);
+        remoteVnic.set(secondVnic);
+        assertEquals("192.0.2.2", resolver.getAddress());
+    }
+
+}
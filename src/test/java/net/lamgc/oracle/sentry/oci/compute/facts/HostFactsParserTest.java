@@ -0,0 +1,104 @@
+package net.lamgc.oracle.sentry.oci.compute.facts;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see HostFactsParser
+ */
+class HostFactsParserTest {
+
+    private final static String OUTPUT = """
+            @@hostname
+            instance-20210901
+            @@os
+            NAME="Oracle Linux Server"
+            VERSION="8.4"
+            ID="ol"
+            VERSION_ID="8.4"
+            PRETTY_NAME="Oracle Linux Server 8.4"
+            @@kernel
+            Linux
+            5.4.17-2102.204.4.4.el8uek.aarch64
+            aarch64
+            @@cpu
+            4
+            @@memory
+            MemTotal:       24342528 kB
+            MemAvailable:   21018624 kB
+            SwapTotal:       8388604 kB
+            SwapFree:        8388604 kB
+            @@disks
+            Filesystem     1024-blocks    Used Available Capacity Mounted on
+            /dev/sda3         40137576 9514736  30622840      24% /
+            /dev/sda1           204580    7448    197132       4% /boot/efi
+            @@uptime
+            350735.47 1234567.89
+            @@load
+            0.20 0.18 0.12 1/280 11206
+            """;
+
+    @Test
+    public void parseTest() {
+        HostFacts facts = HostFactsParser.parse(OUTPUT, 1000);
+        assertEquals("instance-20210901", facts.hostname());
+        assertEquals(new HostFacts.Os("ol", "Oracle Linux Server", "8.4", "Oracle Linux Server 8.4"), facts.os());
+        assertEquals(new HostFacts.Kernel("Linux", "5.4.17-2102.204.4.4.el8uek.aarch64", "aarch64"), facts.kernel());
+        assertEquals(new HostFacts.Cpu(4, null), facts.cpu());
+        assertEquals(new HostFacts.Memory(24342528L * 1024, 21018624L * 1024, 8388604L * 1024, 8388604L * 1024),
+                facts.memory());
+
+        assertEquals(2, facts.disks().size());
+        assertEquals(new HostFacts.Disk("/dev/sda3", "/", 40137576L * 1024, 9514736L * 1024, 30622840L * 1024),
+                facts.getDisk("/"));
+        assertEquals("/dev/sda1", facts.getDisk("/boot/efi").filesystem());
+        assertNull(facts.getDisk("/data"));
+
+        assertEquals(Duration.ofMillis(350735470), facts.uptime());
+        assertEquals(new HostFacts.Load(0.20, 0.18, 0.12), facts.load());
+        assertEquals(1000, facts.collectTime());
+    }
+
+    @Test
+    public void parseCpuModelTest() {
+        HostFacts facts = HostFactsParser.parse("""
+                @@cpu
+                2
+                model name\t: AMD EPYC 7551 32-Core Processor
+                """, 0);
+        assertEquals(new HostFacts.Cpu(2, "AMD EPYC 7551 32-Core Processor"), facts.cpu());
+    }
+
+    @Test
+    public void parseMountPointWithSpaceTest() {
+        HostFacts facts = HostFactsParser.parse("""
+                @@disks
+                Filesystem 1024-blocks Used Available Capacity Mounted on
+                /dev/sdb1 1000 400 600 40% /mnt/my data
+                """, 0);
+        assertEquals("/mnt/my data", facts.disks().get(0).mountPoint());
+    }
+
+    @Test
+    public void parseMissingSectionsTest() {
+        HostFacts facts = HostFactsParser.parse("""
+                @@hostname
+                host
+                @@memory
+                @@load
+                not a number
+                """, 0);
+        assertEquals("host", facts.hostname());
+        assertNull(facts.os().id());
+        assertNull(facts.kernel().release());
+        assertEquals(0, facts.cpu().count());
+        assertEquals(0, facts.memory().total());
+        assertTrue(facts.disks().isEmpty());
+        assertEquals(Duration.ZERO, facts.uptime());
+        assertEquals(new HostFacts.Load(0, 0, 0), facts.load());
+    }
+
+}
@@ -0,0 +1,69 @@
+package net.lamgc.oracle.sentry.oci.compute.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see MetricsTimeSeries
+ */
+class MetricsTimeSeriesTest {
+
+    @Test
+    public void downsampleTest() {
+        MetricsTimeSeries series = new MetricsTimeSeries(4, 2, 10);
+        for (int i = 0; i < 8; i++) {
+            series.record(i * 1000L, i / 10.0, 0.5, 1024, i, 0, 0, 0);
+        }
+        assertEquals(7000, series.getLatest().timestamp());
+
+        List<MetricsSample> samples = series.getSamples(0);
+        // 原始采样只保留 4000 ~ 7000, 更早的部分由降采样(0, 2000)补充.
+        assertEquals(6, samples.size());
+        assertEquals(0, samples.get(0).timestamp());
+        assertEquals(0.05, samples.get(0).cpuUsage(), 1e-6);
+        assertEquals(2000, samples.get(1).timestamp());
+        assertEquals(2.5, samples.get(1).diskReadRate(), 1e-6);
+        assertEquals(4000, samples.get(2).timestamp());
+        assertEquals(0.4, samples.get(2).cpuUsage(), 1e-6);
+
+        assertEquals(2, series.getSamples(6000).size());
+        assertTrue(series.getSamples(8000).isEmpty());
+    }
+
+    @Test
+    public void timeWeightedAverageTest() {
+        MetricsTimeSeries series = new MetricsTimeSeries(4, 2, 10);
+        for (int i = 0; i < 8; i++) {
+            series.record(i * 1000L, i / 10.0, 0.5, 1024, i, 0, 0, 0);
+        }
+        // 降采样(0, 2000)各覆盖 2 个间隔, 所以平均值与全部原始采样的平均值相同.
+        MetricsSample average = series.getAverage(0);
+        assertEquals(0.35, average.cpuUsage(), 1e-6);
+        assertEquals(3.5, average.diskReadRate(), 1e-6);
+        assertEquals(0, average.timestamp());
+        assertEquals(0.55, series.getAverage(4000).cpuUsage(), 1e-6);
+    }
+
+    @Test
+    public void overlappedDownsampleAverageTest() {
+        // 原始采样保留 5000 ~ 7000, 降采样 4000 覆盖的 5000 已在原始采样中, 不能重复计算.
+        MetricsTimeSeries series = new MetricsTimeSeries(3, 2, 10);
+        for (int i = 0; i < 8; i++) {
+            series.record(i * 1000L, i < 4 ? 0 : 1, 0.5, 1024, 0, 0, 0, 0);
+        }
+        assertEquals(6, series.getSamples(0).size());
+        assertEquals(0.5, series.getAverage(0).cpuUsage(), 1e-6);
+    }
+
+    @Test
+    public void emptyTest() {
+        MetricsTimeSeries series = new MetricsTimeSeries(4, 2, 4);
+        assertNull(series.getLatest());
+        assertTrue(series.getSamples(0).isEmpty());
+        assertNull(series.getAverage(java.time.Duration.ofMinutes(1)));
+    }
+
+}
@@ -0,0 +1,83 @@
+package net.lamgc.oracle.sentry.oci.compute.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see ProcSnapshotParser
+ */
+class ProcSnapshotParserTest {
+
+    private final static String FIRST_SNAPSHOT = """
+            @s
+            1000.00 3000.00
+            cpu  1000 0 500 8000 500 0 0 0 0 0
+            @m
+            MemTotal:        1000000 kB
+            MemAvailable:     750000 kB
+            @d
+               8       0 sda 100 0 2000 10 50 0 4000 20 0 30 30 0 0 0 0
+             259       0 nvme0n1 100 0 1000 10 50 0 1000 20 0 30 30 0 0 0 0
+            @n
+                lo:  999999     100    0    0    0     0          0         0   999999     100    0    0    0     0       0          0
+              eth0:  100000     100    0    0    0     0          0         0    50000     100    0    0    0     0       0          0
+            @e
+            """;
+
+    private final static String SECOND_SNAPSHOT = """
+            @s
+            1010.00 3040.00
+            cpu  1300 0 600 8500 600 0 0 0 0 0
+            @m
+            MemTotal:        1000000 kB
+            MemAvailable:     500000 kB
+            @d
+               8       0 sda 200 0 4000 10 60 0 6000 20 0 30 30 0 0 0 0
+             259       0 nvme0n1 100 0 1000 10 50 0 1000 20 0 30 30 0 0 0 0
+            @n
+                lo: 1999999     100    0    0    0     0          0         0  1999999     100    0    0    0     0       0          0
+              eth0:1100000     100    0    0    0     0          0         0   150000     100    0    0    0     0       0          0
+            @e
+            """;
+
+    @Test
+    public void parseTest() {
+        MetricsTimeSeries series = new MetricsTimeSeries(10, 2, 10);
+        ProcSnapshotParser parser = new ProcSnapshotParser(series);
+        byte[] first = FIRST_SNAPSHOT.getBytes(StandardCharsets.UTF_8);
+        parser.write(first, 0, first.length);
+        assertNull(series.getLatest());
+
+        // 数据可能在任意位置被分块.
+        byte[] second = SECOND_SNAPSHOT.getBytes(StandardCharsets.UTF_8);
+        parser.write(second, 0, 7);
+        parser.write(second, 7, second.length - 7);
+
+        MetricsSample sample = series.getLatest();
+        assertNotNull(sample);
+        // 总时间增加 1000, 空闲(idle + iowait)增加 600.
+        assertEquals(0.4, sample.cpuUsage(), 1e-6);
+        assertEquals(0.5, sample.memoryUsage(), 1e-6);
+        assertEquals(500000L * 1024, sample.memoryAvailable(), 1024);
+        // 10 秒内读取 2000 扇区, 写入 2000 扇区.
+        assertEquals(2000 * 512 / 10.0, sample.diskReadRate(), 1e-3);
+        assertEquals(2000 * 512 / 10.0, sample.diskWriteRate(), 1e-3);
+        // 回环接口不计入.
+        assertEquals(100000.0, sample.networkReceiveRate(), 1e-3);
+        assertEquals(10000.0, sample.networkTransmitRate(), 1e-3);
+    }
+
+    @Test
+    public void ignoreUnrelatedOutputTest() {
+        MetricsTimeSeries series = new MetricsTimeSeries(10, 2, 10);
+        ProcSnapshotParser parser = new ProcSnapshotParser(series);
+        String output = "Welcome to Oracle Linux\n" + "x".repeat(4096) + "\n" + FIRST_SNAPSHOT + SECOND_SNAPSHOT;
+        byte[] data = output.getBytes(StandardCharsets.UTF_8);
+        parser.write(data, 0, data.length);
+        assertEquals(0.4, series.getLatest().cpuUsage(), 1e-6);
+    }
+
+}
@@ -0,0 +1,47 @@
+package net.lamgc.oracle.sentry.oci.compute.metrics;
+
+import net.lamgc.oracle.sentry.oci.compute.ssh.CommandExecSession;
+import net.lamgc.oracle.sentry.oci.compute.ssh.LocalSshServer;
+import net.lamgc.oracle.sentry.oci.compute.ssh.SshSession;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see RemoteMetricsCollector
+ */
+class RemoteMetricsCollectorTest {
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void persistentChannelTest() throws IOException, InterruptedException {
+        MetricsTimeSeries series = new MetricsTimeSeries(10, 2, 10);
+        try (LocalSshServer server = LocalSshServer.start();
+             SshSession session = server.connect()) {
+            CommandExecSession channel = RemoteMetricsCollector.openChannel(session, series, 1);
+            try {
+                // 第一个快照只作为基准, 之后每个快照产生一个采样.
+                long deadline = System.currentTimeMillis() + 10000;
+                while (series.getSamples(0).size() < 2 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(100);
+                }
+                assertNull(channel.exitCode());
+            } finally {
+                channel.close();
+            }
+        }
+        List<MetricsSample> samples = series.getSamples(0);
+        assertTrue(samples.size() >= 2, "Samples: " + samples);
+        MetricsSample latest = series.getLatest();
+        assertTrue(latest.cpuUsage() >= 0 && latest.cpuUsage() <= 1);
+        assertTrue(latest.memoryUsage() > 0 && latest.memoryUsage() < 1);
+        assertTrue(latest.memoryAvailable() > 0);
+        assertTrue(samples.get(1).timestamp() > samples.get(0).timestamp());
+    }
+
+}
@@ -0,0 +1,186 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.common.channel.exception.SshChannelOpenException;
+import org.apache.sshd.server.SshServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see ChannelScheduler
+ */
+@EnabledOnOs(OS.LINUX)
+class ChannelSchedulerTest {
+
+    private static SshServer server;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = SftpTransferTest.createSftpServer();
+        server.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        server.stop();
+    }
+
+    @Test
+    public void concurrencyLimitTest() throws Exception {
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT)) {
+            ChannelScheduler scheduler = new ChannelScheduler(new SshSession(clientSession), 2);
+            AtomicInteger active = new AtomicInteger();
+            AtomicInteger maxActive = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                int index = i;
+                futures.add(scheduler.submit(session -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    started.countDown();
+                    release.await();
+                    active.decrementAndGet();
+                    return index;
+                }));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertEquals(3, scheduler.getQueuedTasks());
+            release.countDown();
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i, futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(2, maxActive.get());
+            assertEquals(0, scheduler.getQueuedTasks());
+        }
+    }
+
+    @Test
+    public void channelRejectionTest() throws Exception {
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT)) {
+            ChannelScheduler scheduler = new ChannelScheduler(new SshSession(clientSession), 3);
+            CountDownLatch started = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+            List<CompletableFuture<String>> blockers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                blockers.add(scheduler.submit(session -> {
+                    started.countDown();
+                    release.await();
+                    return "done";
+                }));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // 服务端只允许同时打开 2 个通道, 第三个任务第一次打开通道时被拒绝.
+            AtomicInteger attempts = new AtomicInteger();
+            CompletableFuture<String> rejected = scheduler.submit(session -> {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new SshChannelOpenException(0, SshConstants.SSH_OPEN_ADMINISTRATIVELY_PROHIBITED, "open failed");
+                }
+                return "retried";
+            });
+            long deadline = System.currentTimeMillis() + 10000;
+            while (scheduler.getQueuedTasks() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // 被拒绝的任务重新排队, 并发上限下调至服务端允许的数量.
+            assertEquals(1, scheduler.getQueuedTasks());
+            assertEquals(2, scheduler.getMaxChannels());
+            assertFalse(rejected.isDone());
+
+            release.countDown();
+            assertEquals("retried", rejected.get(10, TimeUnit.SECONDS));
+            assertEquals(2, attempts.get());
+            for (CompletableFuture<String> blocker : blockers) {
+                assertEquals("done", blocker.get(10, TimeUnit.SECONDS));
+            }
+
+            // 仅有一个任务在执行时仍被拒绝, 说明与并发数无关, 任务直接失败.
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> scheduler.submit(session -> {
+                throw new SshChannelOpenException(0, SshConstants.SSH_OPEN_RESOURCE_SHORTAGE, "open failed");
+            }).get(10, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof SshChannelOpenException);
+            assertEquals(2, scheduler.getMaxChannels());
+        }
+    }
+
+    @Test
+    public void concurrentExecTest() throws Exception {
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SshSession session = new SshSession(clientSession)) {
+            List<CompletableFuture<ExecResult>> futures = new ArrayList<>();
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < 4; i++) {
+                futures.add(session.scheduler().exec("sleep 0.5; echo " + i));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                ExecResult result = futures.get(i).get(30, TimeUnit.SECONDS);
+                assertEquals(0, result.exitCode());
+                assertEquals(i + "\n", result.getStdoutText());
+            }
+            // 所有命令在同一连接上同时执行.
+            assertTrue(System.currentTimeMillis() - startTime < 2000);
+        }
+    }
+
+    @Test
+    public void sftpTaskTest() throws Exception {
+        Path file = tempDir.resolve("file.txt");
+        Files.writeString(file, "content");
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SshSession session = new SshSession(clientSession)) {
+            assertEquals(7L, session.scheduler().sftp(sftp -> sftp.getFileSize(file.toString()))
+                    .get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void closeTest() throws Exception {
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT)) {
+            ChannelScheduler scheduler = new ChannelScheduler(new SshSession(clientSession), 1);
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<String> running = scheduler.submit(session -> {
+                started.countDown();
+                release.await();
+                return "done";
+            });
+            CompletableFuture<String> queued = scheduler.submit(session -> "queued");
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            scheduler.close();
+            ExecutionException exception = assertThrows(ExecutionException.class,
+                    () -> queued.get(10, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof IllegalStateException);
+            assertThrows(IllegalStateException.class, () -> scheduler.submit(session -> "late"));
+
+            // 正在执行的任务不受影响.
+            assertThrows(TimeoutException.class, () -> running.get(100, TimeUnit.MILLISECONDS));
+            release.countDown();
+            assertEquals("done", running.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+}
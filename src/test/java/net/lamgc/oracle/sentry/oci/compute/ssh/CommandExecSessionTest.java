@@ -0,0 +1,189 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.future.DefaultOpenFuture;
+import org.apache.sshd.client.future.OpenFuture;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.channel.Channel;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.Signal;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.channel.ChannelSessionFactory;
+import org.apache.sshd.server.command.Command;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see CommandExecSession
+ */
+class CommandExecSessionTest {
+
+    private static SshServer server;
+    private final static List<Signal> receivedSignals = new CopyOnWriteArrayList<>();
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = SshTransportProfileTest.createServer();
+        // "hang" 收到 TERM 后退出, "stubborn" 忽略 TERM, 只响应 KILL.
+        server.setCommandFactory((channel, command) -> new HangingCommand("stubborn".equals(command)));
+        server.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        server.stop();
+    }
+
+    @Test
+    public void timeoutTest() throws IOException {
+        receivedSignals.clear();
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             CommandExecSession exec = new SshSession(clientSession).createExecSession("hang")) {
+            exec.setTimeout(200);
+            long startTime = System.currentTimeMillis();
+            exec.exec();
+            assertTrue(System.currentTimeMillis() - startTime < 5000);
+            assertTrue(exec.isTimedOut());
+            assertFalse(exec.isCancelled());
+            assertEquals(128 + Signal.TERM.getNumeric(), exec.exitCode());
+            assertEquals(List.of(Signal.TERM), receivedSignals);
+        }
+    }
+
+    @Test
+    public void killAfterGracePeriodTest() throws IOException, InterruptedException {
+        receivedSignals.clear();
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             CommandExecSession exec = new SshSession(clientSession).createExecSession("stubborn")) {
+            exec.setTimeout(100);
+            exec.setKillGracePeriod(200);
+            exec.exec();
+            assertTrue(exec.isTimedOut());
+            // KILL 发送后通道随即关闭, 服务端可能稍晚才处理完信号.
+            long deadline = System.currentTimeMillis() + 5000;
+            while (receivedSignals.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of(Signal.TERM, Signal.KILL), receivedSignals);
+        }
+    }
+
+    @Test
+    public void cancelTest() throws IOException, InterruptedException {
+        receivedSignals.clear();
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             CommandExecSession exec = new SshSession(clientSession).createExecSession("hang")) {
+            exec.setTimeout(0);
+            exec.exec(true);
+            assertFalse(exec.waitFor(100));
+
+            Thread canceller = new Thread(exec::cancel);
+            canceller.start();
+            canceller.join();
+            assertTrue(exec.waitFor(5000));
+            assertTrue(exec.isCancelled());
+            assertFalse(exec.isTimedOut());
+        }
+    }
+
+    @Test
+    public void interruptTest() throws IOException {
+        receivedSignals.clear();
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             CommandExecSession exec = new SshSession(clientSession).createExecSession("hang")) {
+            exec.setTimeout(0);
+            exec.exec(true);
+            Thread.currentThread().interrupt();
+            assertFalse(exec.waitFor(0));
+            assertTrue(Thread.interrupted());
+            assertTrue(exec.isCancelled());
+            assertEquals(128 + Signal.TERM.getNumeric(), exec.exitCode());
+        }
+    }
+
+    @Test
+    public void unconfirmedOpenTimeoutTest() throws IOException {
+        // 服务端收到打开通道请求后一直不回复, 模拟已失效的连接.
+        SshServer silentServer = SshTransportProfileTest.createServer();
+        silentServer.setChannelFactories(List.of(new ChannelSessionFactory() {
+            @Override
+            public Channel createChannel(Session session) {
+                return new ChannelSession() {
+                    @Override
+                    protected OpenFuture doInit(Buffer buffer) {
+                        return new DefaultOpenFuture(this, futureLock);
+                    }
+                };
+            }
+        }));
+        silentServer.start();
+        try (ClientSession clientSession = SshTransportProfileTest.connect(silentServer, SshTransportProfile.DEFAULT);
+             CommandExecSession exec = new SshSession(clientSession).createExecSession("hang")) {
+            exec.setTimeout(300);
+            long startTime = System.currentTimeMillis();
+            assertThrows(SocketTimeoutException.class, exec::exec);
+            assertTrue(System.currentTimeMillis() - startTime < 5000);
+            assertTrue(exec.isTimedOut());
+        } finally {
+            silentServer.stop();
+        }
+    }
+
+    /**
+     * 一直运行直到收到信号的命令.
+     */
+    private static class HangingCommand implements Command {
+
+        private final boolean ignoreTerm;
+        private ExitCallback exitCallback;
+
+        private HangingCommand(boolean ignoreTerm) {
+            this.ignoreTerm = ignoreTerm;
+        }
+
+        @Override
+        public void start(ChannelSession channel, Environment env) {
+            env.addSignalListener((ch, signal) -> {
+                receivedSignals.add(signal);
+                if (signal == Signal.KILL || signal == Signal.TERM && !ignoreTerm) {
+                    exitCallback.onExit(128 + signal.getNumeric());
+                }
+            });
+        }
+
+        @Override
+        public void destroy(ChannelSession channel) {
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback callback) {
+            this.exitCallback = callback;
+        }
+
+        @Override
+        public void setInputStream(InputStream in) {
+        }
+
+        @Override
+        public void setOutputStream(OutputStream out) {
+        }
+
+        @Override
+        public void setErrorStream(OutputStream err) {
+        }
+    }
+
+}
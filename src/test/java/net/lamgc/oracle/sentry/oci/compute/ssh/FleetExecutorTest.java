@@ -0,0 +1,127 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.apache.sshd.server.SshServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @see FleetExecutor
+ */
+@EnabledOnOs(OS.LINUX)
+class FleetExecutorTest {
+
+    private static SshServer server;
+    private static SshSessionPool pool;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = SftpTransferTest.createSftpServer();
+        server.start();
+        pool = new SshSessionPool(TimeUnit.MINUTES.toMillis(5), 4, TimeUnit.SECONDS.toMillis(30));
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        pool.close();
+        server.stop();
+    }
+
+    /**
+     * 创建连接到本地测试服务端的实例.
+     */
+    private static ComputeInstance newInstance(String instanceId) throws IOException {
+        ComputeInstance instance = mock(ComputeInstance.class);
+        InstanceSsh ssh = mock(InstanceSsh.class);
+        when(instance.getInstanceId()).thenReturn(instanceId);
+        when(instance.ssh()).thenReturn(ssh);
+        when(ssh.getInstance()).thenReturn(instance);
+        when(ssh.connect()).thenAnswer(invocation -> SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT));
+        when(ssh.leaseSession()).thenAnswer(invocation -> pool.lease(ssh));
+        return instance;
+    }
+
+    @Test
+    public void executeTest() throws IOException {
+        List<ComputeInstance> instances = List.of(newInstance("a"), newInstance("b"), newInstance("c"));
+        List<HostExecResult> results = FleetExecutor.builder().create()
+                .execute(instances, "echo hello; echo oops >&2; exit 3")
+                .collect(Collectors.toList());
+
+        assertEquals(Set.copyOf(instances), results.stream().map(HostExecResult::instance).collect(Collectors.toSet()));
+        for (HostExecResult result : results) {
+            assertEquals(3, result.exitCode());
+            assertEquals("hello\n", result.getStdoutText());
+            assertEquals("oops\n", result.getStderrText());
+            assertFalse(result.isSuccess());
+            assertFalse(result.timedOut());
+            assertNull(result.error());
+        }
+        assertEquals(0, FleetExecutor.builder().create().execute(List.of(), "true").count());
+    }
+
+    @Test
+    public void concurrencyTest() throws IOException {
+        List<ComputeInstance> instances = List.of(newInstance("a"), newInstance("b"),
+                newInstance("c"), newInstance("d"));
+        long startTime = System.currentTimeMillis();
+        assertTrue(FleetExecutor.builder().concurrency(2).create()
+                .execute(instances, "sleep 0.5")
+                .allMatch(HostExecResult::isSuccess));
+        // 4 台实例, 每次最多同时执行 2 台, 至少需要两轮.
+        assertTrue(System.currentTimeMillis() - startTime >= 1000);
+    }
+
+    @Test
+    public void timeoutTest() throws IOException {
+        ComputeInstance instance = newInstance("slow");
+        long startTime = System.currentTimeMillis();
+        HostExecResult result = FleetExecutor.builder().timeout(300).create()
+                .execute(List.of(instance), "sleep 30")
+                .findFirst().orElseThrow();
+        assertTrue(System.currentTimeMillis() - startTime < 10000);
+        assertTrue(result.timedOut());
+        assertNull(result.exitCode());
+        assertNull(result.error());
+        // 超时中止的会话状态未知, 不会归还到会话池.
+        assertEquals(0, pool.getIdleSessionCount(instance));
+    }
+
+    @Test
+    public void connectFailureTest() throws IOException {
+        ComputeInstance instance = mock(ComputeInstance.class);
+        InstanceSsh ssh = mock(InstanceSsh.class);
+        when(instance.ssh()).thenReturn(ssh);
+        when(ssh.leaseSession()).thenThrow(new IOException("Connection refused"));
+
+        HostExecResult result = FleetExecutor.builder().create()
+                .execute(List.of(instance, newInstance("ok")), "true")
+                .filter(r -> r.instance() == instance)
+                .findFirst().orElseThrow();
+        assertNull(result.exitCode());
+        assertFalse(result.timedOut());
+        assertTrue(result.error() instanceof IOException);
+    }
+
+    @Test
+    public void outputLimitTest() throws IOException {
+        HostExecResult result = FleetExecutor.builder().outputLimit(4, 4).create()
+                .execute(List.of(newInstance("a")), "printf 0123456789abcdefghij")
+                .findFirst().orElseThrow();
+        assertEquals("0123ghij", result.getStdoutText());
+        assertEquals(12, result.droppedBytes());
+    }
+
+}
@@ -0,0 +1,191 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see HostKeyApprovalQueue
+ * @see HostKeyAdminEndpoint
+ */
+class HostKeyApprovalQueueTest {
+
+    private static PublicKey firstKey;
+    private static PublicKey secondKey;
+
+    @BeforeAll
+    static void generateKeys() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        firstKey = generator.generateKeyPair().getPublic();
+        secondKey = generator.generateKeyPair().getPublic();
+    }
+
+    @Test
+    public void approveTest() throws InterruptedException {
+        HostKeyApprovalQueue queue = new HostKeyApprovalQueue(null);
+        AtomicReference<PublicKey> approvedKey = new AtomicReference<>();
+        HostKeyApprovalQueue.PendingHostKey pendingKey =
+                queue.submit("instance-1", () -> "name", "127.0.0.1:22", firstKey, approvedKey::set);
+
+        assertSame(pendingKey, queue.submit("instance-1", () -> "name", "127.0.0.1:22", firstKey, approvedKey::set));
+        assertEquals(36, pendingKey.getId().length());
+        assertFalse(pendingKey.await(10, TimeUnit.MILLISECONDS));
+        assertNull(approvedKey.get());
+
+        assertTrue(queue.approve(pendingKey.getId()));
+        assertTrue(pendingKey.await(0, TimeUnit.MILLISECONDS));
+        assertEquals(firstKey, approvedKey.get());
+        assertTrue(queue.getPendingKeys().isEmpty());
+        assertFalse(queue.approve(pendingKey.getId()));
+    }
+
+    @Test
+    public void approvedKeySetBeforeWakeUpTest() throws InterruptedException {
+        HostKeyApprovalQueue queue = new HostKeyApprovalQueue(null);
+        AtomicReference<PublicKey> approvedKey = new AtomicReference<>();
+        HostKeyApprovalQueue.PendingHostKey pendingKey = queue.submit("instance-1", () -> "name", "127.0.0.1:22",
+                firstKey, key -> {
+                    // 模拟较慢的公钥保存.
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    approvedKey.set(key);
+                });
+
+        // 等待方被唤醒后立即重新连接, 此时信任公钥必须已经设置.
+        AtomicReference<PublicKey> keyAfterWakeUp = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                if (pendingKey.await(10, TimeUnit.SECONDS)) {
+                    keyAfterWakeUp.set(approvedKey.get());
+                }
+            } catch (InterruptedException ignored) {
+            }
+        });
+        waiter.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (waiter.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(queue.approve(pendingKey.getId()));
+        waiter.join(10000);
+        assertEquals(firstKey, keyAfterWakeUp.get());
+    }
+
+    @Test
+    public void rejectTest() throws InterruptedException {
+        HostKeyApprovalQueue queue = new HostKeyApprovalQueue(null);
+        HostKeyApprovalQueue.PendingHostKey pendingKey =
+                queue.submit("instance-1", () -> "name", "127.0.0.1:22", firstKey, key -> fail());
+        assertTrue(queue.reject(pendingKey.getId()));
+        assertFalse(pendingKey.await(0, TimeUnit.MILLISECONDS));
+
+        HostKeyApprovalQueue.PendingHostKey rejectedKey =
+                queue.submit("instance-1", () -> "name", "127.0.0.1:22", firstKey, key -> fail());
+        assertTrue(rejectedKey.isDecided());
+        assertFalse(rejectedKey.await(0, TimeUnit.MILLISECONDS));
+        assertTrue(queue.getPendingKeys().isEmpty());
+
+        HostKeyApprovalQueue.PendingHostKey otherKey =
+                queue.submit("instance-1", () -> "name", "127.0.0.1:22", secondKey, key -> {});
+        assertFalse(otherKey.isDecided());
+    }
+
+    @Test
+    public void consoleCommandTest() {
+        HostKeyApprovalQueue queue = new HostKeyApprovalQueue(null);
+        HostKeyApprovalQueue.PendingHostKey first =
+                queue.submit("instance-1", () -> "name", "127.0.0.1:22", firstKey, key -> {});
+        HostKeyApprovalQueue.PendingHostKey second =
+                queue.submit("instance-2", () -> "name", "127.0.0.2:22", secondKey, key -> {});
+
+        queue.handleCommand("yes");
+        assertFalse(first.isDecided());
+        assertFalse(second.isDecided());
+
+        queue.handleCommand("reject " + second.getId());
+        assertTrue(second.isDecided());
+        queue.handleCommand("Yes");
+        assertTrue(first.isDecided());
+        assertTrue(queue.getPendingKeys().isEmpty());
+    }
+
+    @Test
+    public void adminEndpointTest() throws IOException, InterruptedException {
+        HostKeyApprovalQueue queue = new HostKeyApprovalQueue(null);
+        HostKeyApprovalQueue.PendingHostKey pendingKey =
+                queue.submit("instance-1", () -> "name", "127.0.0.1:22", firstKey, key -> {});
+        try (HostKeyAdminEndpoint endpoint = new HostKeyAdminEndpoint(queue, 0)) {
+            String base = "http://127.0.0.1:" + endpoint.getPort() + "/host-keys";
+            String token = endpoint.getToken();
+            HttpURLConnection list = request("GET", base, token);
+            assertEquals(200, list.getResponseCode());
+            String body = new String(list.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(body.contains(pendingKey.getFingerprint()));
+
+            assertEquals(404, request("POST", base + "/unknown/approve", token).getResponseCode());
+            assertEquals(404, request("GET", base + "X", token).getResponseCode());
+            assertEquals(404, request("POST", base + "X/" + pendingKey.getId() + "/approve", token).getResponseCode());
+            assertFalse(pendingKey.isDecided());
+            assertEquals(200, request("POST", base + "/" + pendingKey.getId() + "/approve", token).getResponseCode());
+        }
+        assertTrue(pendingKey.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void adminEndpointAuthorizationTest() throws IOException, InterruptedException {
+        HostKeyApprovalQueue queue = new HostKeyApprovalQueue(null);
+        HostKeyApprovalQueue.PendingHostKey pendingKey =
+                queue.submit("instance-1", () -> "name", "127.0.0.1:22", firstKey, key -> {});
+        try (HostKeyAdminEndpoint endpoint = new HostKeyAdminEndpoint(queue, 0)) {
+            String approveUrl = "http://127.0.0.1:" + endpoint.getPort() + "/host-keys/" + pendingKey.getId() + "/approve";
+            assertEquals(401, request("POST", approveUrl, null).getResponseCode());
+            assertEquals(401, request("POST", approveUrl, endpoint.getToken() + "x").getResponseCode());
+
+            // 来自浏览器页面的请求即使携带令牌也会被拒绝.
+            // HttpURLConnection 不允许设置 Origin 请求头.
+            HttpResponse<Void> crossOrigin = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create(approveUrl))
+                    .header("Authorization", "Bearer " + endpoint.getToken())
+                    .header("Origin", "http://example.com")
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build(), HttpResponse.BodyHandlers.discarding());
+            assertEquals(403, crossOrigin.statusCode());
+            HttpURLConnection referred = request("POST", approveUrl, endpoint.getToken());
+            referred.setRequestProperty("Referer", "http://example.com/index.html");
+            assertEquals(403, referred.getResponseCode());
+
+            try (HostKeyAdminEndpoint otherEndpoint = new HostKeyAdminEndpoint(queue, 0)) {
+                assertNotEquals(endpoint.getToken(), otherEndpoint.getToken());
+            }
+        }
+        assertFalse(pendingKey.isDecided());
+    }
+
+    private static HttpURLConnection request(String method, String url, String token) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (token != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + token);
+        }
+        return connection;
+    }
+
+}
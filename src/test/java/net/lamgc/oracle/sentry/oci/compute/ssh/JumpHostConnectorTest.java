@@ -0,0 +1,218 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.forward.AcceptAllForwardingFilter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @see JumpHostConnector
+ */
+class JumpHostConnectorTest {
+
+    private final static byte[] MESSAGE = "Hello, Jump Host!".getBytes(StandardCharsets.UTF_8);
+
+    private static SshServer server;
+    private static final AtomicInteger handshakes = new AtomicInteger();
+    private static ServerSocket firstTarget;
+    private static ServerSocket secondTarget;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = SshTransportProfileTest.createServer();
+        server.setForwardingFilter(AcceptAllForwardingFilter.INSTANCE);
+        server.addSessionListener(new SessionListener() {
+            @Override
+            public void sessionCreated(Session session) {
+                handshakes.incrementAndGet();
+            }
+        });
+        server.start();
+        firstTarget = startEchoServer();
+        secondTarget = startEchoServer();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        firstTarget.close();
+        secondTarget.close();
+        server.stop();
+    }
+
+    /**
+     * 启动回显服务, 作为跳板机后的目标地址.
+     * <p> 测试服务端不会将 EOF 转发到目标端口, 所以固定读取消息长度后回显并断开.
+     */
+    private static ServerSocket startEchoServer() throws IOException {
+        ServerSocket echoServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread echoThread = new Thread(() -> {
+            while (!echoServer.isClosed()) {
+                try (Socket socket = echoServer.accept()) {
+                    socket.getOutputStream().write(socket.getInputStream().readNBytes(MESSAGE.length));
+                } catch (IOException ignored) {
+                }
+            }
+        }, "Thread-EchoServer");
+        echoThread.setDaemon(true);
+        echoThread.start();
+        return echoServer;
+    }
+
+    private static byte[] echo(JumpHostConnector.Route route) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), route.getLocalPort())) {
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write(MESSAGE);
+            socket.getOutputStream().flush();
+            return socket.getInputStream().readAllBytes();
+        }
+    }
+
+    /**
+     * 创建经由会话池连接本地测试服务端的跳板机.
+     * @param leased 记录跳板机租用的上游会话.
+     */
+    private static ComputeInstance newJumpHost(SshSessionPool pool, List<PooledSshSession> leased) throws IOException {
+        ComputeInstance jumpHost = mock(ComputeInstance.class);
+        InstanceSsh ssh = mock(InstanceSsh.class);
+        when(jumpHost.getInstanceId()).thenReturn("jump-host");
+        when(jumpHost.ssh()).thenReturn(ssh);
+        when(ssh.getInstance()).thenReturn(jumpHost);
+        when(ssh.connect()).thenAnswer(invocation -> SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT));
+        when(ssh.leaseSession()).thenAnswer(invocation -> {
+            PooledSshSession session = pool.lease(ssh);
+            leased.add(session);
+            return session;
+        });
+        return jumpHost;
+    }
+
+    private static SshSessionPool newPool() {
+        return new SshSessionPool(TimeUnit.MINUTES.toMillis(5), 2, TimeUnit.SECONDS.toMillis(30));
+    }
+
+    @Test
+    public void sharedUpstreamTest() throws IOException {
+        List<PooledSshSession> leased = new CopyOnWriteArrayList<>();
+        try (SshSessionPool pool = newPool()) {
+            ComputeInstance jumpHost = newJumpHost(pool, leased);
+            JumpHostConnector connector = new JumpHostConnector();
+            int startHandshakes = handshakes.get();
+            try (JumpHostConnector.Route first = connector.open(jumpHost, "127.0.0.1", firstTarget.getLocalPort());
+                 JumpHostConnector.Route second = connector.open(jumpHost, "127.0.0.1", secondTarget.getLocalPort())) {
+                assertNotEquals(first.getLocalPort(), second.getLocalPort());
+                assertArrayEquals(MESSAGE, echo(first));
+                assertArrayEquals(MESSAGE, echo(second));
+                // 两个目标共用同一个上游会话, 只与跳板机握手一次.
+                assertEquals(1, handshakes.get() - startHandshakes);
+                assertEquals(1, leased.size());
+            }
+        }
+    }
+
+    @Test
+    public void sameTargetTunnelReuseTest() throws IOException {
+        List<PooledSshSession> leased = new CopyOnWriteArrayList<>();
+        try (SshSessionPool pool = newPool()) {
+            ComputeInstance jumpHost = newJumpHost(pool, leased);
+            JumpHostConnector connector = new JumpHostConnector();
+            JumpHostConnector.Route first = connector.open(jumpHost, "127.0.0.1", firstTarget.getLocalPort());
+            try (JumpHostConnector.Route second = connector.open(jumpHost, "127.0.0.1", firstTarget.getLocalPort())) {
+                assertEquals(first.getLocalPort(), second.getLocalPort());
+
+                // 隧道在最后一个路由关闭后才关闭.
+                first.close();
+                first.close();
+                assertArrayEquals(MESSAGE, echo(second));
+            }
+        }
+    }
+
+    @Test
+    public void releaseUpstreamTest() throws IOException {
+        List<PooledSshSession> leased = new CopyOnWriteArrayList<>();
+        try (SshSessionPool pool = newPool()) {
+            ComputeInstance jumpHost = newJumpHost(pool, leased);
+            JumpHostConnector connector = new JumpHostConnector();
+            int startHandshakes = handshakes.get();
+            JumpHostConnector.Route first = connector.open(jumpHost, "127.0.0.1", firstTarget.getLocalPort());
+            JumpHostConnector.Route second = connector.open(jumpHost, "127.0.0.1", secondTarget.getLocalPort());
+            first.close();
+            assertEquals(0, pool.getIdleSessionCount(jumpHost));
+            second.close();
+            // 最后一个路由关闭后, 上游会话归还到会话池.
+            assertEquals(1, pool.getIdleSessionCount(jumpHost));
+            assertTrue(leased.get(0).getClientSession().isOpen());
+
+            try (JumpHostConnector.Route route = connector.open(jumpHost, "127.0.0.1", firstTarget.getLocalPort())) {
+                assertArrayEquals(MESSAGE, echo(route));
+                assertSame(leased.get(0).getClientSession(), leased.get(1).getClientSession());
+                assertEquals(1, handshakes.get() - startHandshakes);
+            }
+        }
+    }
+
+    @Test
+    public void reconnectAfterUpstreamClosedTest() throws IOException, InterruptedException {
+        List<PooledSshSession> leased = new CopyOnWriteArrayList<>();
+        try (SshSessionPool pool = newPool()) {
+            ComputeInstance jumpHost = newJumpHost(pool, leased);
+            JumpHostConnector connector = new JumpHostConnector();
+            int startHandshakes = handshakes.get();
+            JumpHostConnector.Route staleRoute = connector.open(jumpHost, "127.0.0.1", firstTarget.getLocalPort());
+
+            // 跳板机断开上游会话.
+            server.getActiveSessions().forEach(session -> session.close(true));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (leased.get(0).getClientSession().isOpen() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(leased.get(0).getClientSession().isOpen());
+
+            try (JumpHostConnector.Route route = connector.open(jumpHost, "127.0.0.1", firstTarget.getLocalPort())) {
+                assertArrayEquals(MESSAGE, echo(route));
+                assertEquals(2, handshakes.get() - startHandshakes);
+                assertNotSame(leased.get(0).getClientSession(), leased.get(1).getClientSession());
+
+                // 关闭断开前的路由不影响新的上游会话.
+                staleRoute.close();
+                assertArrayEquals(MESSAGE, echo(route));
+            }
+            assertEquals(1, pool.getIdleSessionCount(jumpHost));
+        }
+    }
+
+    @Test
+    public void checkChainTest() {
+        // A -> B -> C, C 直接连接.
+        assertDoesNotThrow(() -> JumpHostConnector.checkChain("A", Map.of("A", "B", "B", "C")::get));
+        assertDoesNotThrow(() -> JumpHostConnector.checkChain("A", id -> null));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> JumpHostConnector.checkChain("A", Map.of("A", "B", "B", "A")::get));
+        assertEquals("Jump host cycle detected: A -> B -> A", e.getMessage());
+
+        // 环不经过起点时同样需要检出.
+        e = assertThrows(IllegalStateException.class,
+                () -> JumpHostConnector.checkChain("A", Map.of("A", "B", "B", "C", "C", "B")::get));
+        assertEquals("Jump host cycle detected: A -> B -> C -> B", e.getMessage());
+    }
+
+}
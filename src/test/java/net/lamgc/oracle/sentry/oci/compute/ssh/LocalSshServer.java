@@ -0,0 +1,37 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.server.SshServer;
+
+import java.io.IOException;
+
+/**
+ * 本地测试用 SSH 服务端, 供其他包的测试使用.
+ * <p> 命令由 {@code /bin/sh -c} 执行, 并支持 Sftp(见 {@link SftpTransferTest#createSftpServer()}).
+ */
+public final class LocalSshServer implements AutoCloseable {
+
+    private final SshServer server;
+
+    private LocalSshServer(SshServer server) {
+        this.server = server;
+    }
+
+    public static LocalSshServer start() throws IOException {
+        SshServer server = SftpTransferTest.createSftpServer();
+        server.start();
+        return new LocalSshServer(server);
+    }
+
+    /**
+     * 连接服务端.
+     * @return 返回已认证的 SSH 会话, 关闭时断开连接.
+     */
+    public SshSession connect() throws IOException {
+        return new SshSession(SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT));
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop();
+    }
+}
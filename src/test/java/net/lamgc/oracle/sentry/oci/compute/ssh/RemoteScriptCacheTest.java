@@ -0,0 +1,124 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see RemoteScriptCache
+ */
+class RemoteScriptCacheTest {
+
+    private final static RemoteScript SCRIPT = RemoteScript.of("echo \"$1\"\nuname -a\n");
+
+    @Test
+    public void installOnceThenRunByHashTest() throws IOException {
+        RemoteScriptCache cache = new RemoteScriptCache();
+        FakeRemote remote = new FakeRemote();
+
+        // 先按哈希执行, 未命中后才发送脚本内容.
+        assertEquals(0, cache.execute("instance", SCRIPT, List.of("a"), remote).exitCode());
+        assertEquals(2, remote.commands.size());
+        assertNull(remote.inputs.get(0));
+        assertArrayEquals(SCRIPT.getContentBytes(), remote.inputs.get(1));
+        assertTrue(cache.isInstalled("instance", SCRIPT));
+
+        // 已保存的脚本只发送短命令, 不再发送脚本内容.
+        assertEquals(0, cache.execute("instance", SCRIPT, List.of("b"), remote).exitCode());
+        assertEquals(3, remote.commands.size());
+        assertNull(remote.inputs.get(2));
+        assertFalse(remote.commands.get(2).contains("uname"));
+        assertTrue(remote.commands.get(2).contains(SCRIPT.getHash()));
+        assertTrue(remote.commands.get(2).endsWith("'b' < /dev/null"));
+
+        // 其他实例需要单独安装.
+        assertFalse(cache.isInstalled("other", SCRIPT));
+    }
+
+    @Test
+    public void runByHashWhenUnknownLocallyTest() throws IOException {
+        FakeRemote remote = new FakeRemote();
+        // 远端已保存脚本, 但本地没有记录(例如本程序重启后).
+        remote.files.add(SCRIPT.getHash());
+        RemoteScriptCache cache = new RemoteScriptCache();
+
+        assertEquals(0, cache.execute("instance", SCRIPT, List.of(), remote).exitCode());
+        assertEquals(1, remote.commands.size());
+        assertNull(remote.inputs.get(0));
+        assertTrue(cache.isInstalled("instance", SCRIPT));
+    }
+
+    @Test
+    public void reinstallAfterRemoteDeletionTest() throws IOException {
+        RemoteScriptCache cache = new RemoteScriptCache();
+        FakeRemote remote = new FakeRemote();
+        cache.execute("instance", SCRIPT, List.of(), remote);
+        remote.files.clear();
+
+        ExecResult result = cache.execute("instance", SCRIPT, List.of(), remote);
+        assertEquals(0, result.exitCode());
+        assertEquals(4, remote.commands.size());
+        assertNull(remote.inputs.get(2));
+        assertNotNull(remote.inputs.get(3));
+        assertTrue(remote.files.contains(SCRIPT.getHash()));
+        assertTrue(cache.isInstalled("instance", SCRIPT));
+    }
+
+    @Test
+    public void installFailureNotRecordedTest() throws IOException {
+        RemoteScriptCache cache = new RemoteScriptCache();
+        FakeRemote remote = new FakeRemote();
+        remote.readOnly = true;
+        ExecResult result = cache.execute("instance", SCRIPT, List.of(), remote);
+        assertEquals(RemoteScript.MARKER_EXIT_CODE, result.exitCode());
+        assertFalse(cache.isInstalled("instance", SCRIPT));
+    }
+
+    @Test
+    public void scriptIdentityTest() {
+        assertEquals(SCRIPT, RemoteScript.of("echo \"$1\"\nuname -a\n"));
+        assertNotEquals(SCRIPT.getHash(), RemoteScript.of("uname -a\n").getHash());
+        assertEquals(64, SCRIPT.getHash().length());
+        assertTrue(RemoteScript.of("#!/usr/bin/env python3\nprint(1)\n").installCommand(List.of()).contains("exec \"$f\""));
+        assertThrows(IllegalArgumentException.class, () -> RemoteScript.of(" \n"));
+    }
+
+    /**
+     * 模拟远端的脚本目录.
+     */
+    private static class FakeRemote implements RemoteScriptCache.ScriptExecutor {
+
+        private final Set<String> files = new HashSet<>();
+        private final List<String> commands = new ArrayList<>();
+        private final List<byte[]> inputs = new ArrayList<>();
+        private boolean readOnly = false;
+
+        @Override
+        public ExecResult exec(String command, byte[] input) {
+            commands.add(command);
+            inputs.add(input);
+            boolean install = input != null;
+            if (install && !files.contains(SCRIPT.getHash())) {
+                if (readOnly) {
+                    return result(RemoteScript.MARKER_EXIT_CODE, "mkdir: Permission denied\n" + RemoteScript.INSTALL_FAILURE_MARKER);
+                }
+                files.add(SCRIPT.getHash());
+            } else if (!install && !files.contains(SCRIPT.getHash())) {
+                return result(RemoteScript.MARKER_EXIT_CODE, RemoteScript.CACHE_MISS_MARKER);
+            }
+            return result(0, "");
+        }
+
+        private static ExecResult result(int exitCode, String stderr) {
+            return new ExecResult(exitCode, new byte[0], stderr.getBytes(StandardCharsets.UTF_8), 0, 0, false, false);
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.SshServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see SftpDirectorySync
+ */
+class SftpDirectorySyncTest {
+
+    private static SshServer server;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = SftpTransferTest.createSftpServer();
+        server.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        server.stop();
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void incrementalUploadTest() throws IOException {
+        Path local = tempDir.resolve("local");
+        Path remote = tempDir.resolve("remote");
+        write(local.resolve("a.txt"), "a");
+        write(local.resolve("dir/b.txt"), "b");
+        SftpDirectorySync sync = SftpDirectorySync.builder().create();
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            assertEquals(2, sync.upload(sftp, local, remote.toString()).transferredFiles());
+            assertEquals("b", Files.readString(remote.resolve("dir/b.txt")));
+
+            SftpDirectorySync.SyncResult result = sync.upload(sftp, local, remote.toString());
+            assertEquals(0, result.transferredFiles());
+            assertEquals(2, result.skippedFiles());
+        }
+    }
+
+    @Test
+    public void uploadTypeChangedTest() throws IOException {
+        Path local = tempDir.resolve("local");
+        Path remote = tempDir.resolve("remote");
+        // 本地 "a" 为目录, "b" 为文件; 远端正好相反.
+        write(local.resolve("a/inner.txt"), "inner");
+        write(local.resolve("b"), "file");
+        write(remote.resolve("a"), "old file");
+        write(remote.resolve("b/nested/old.txt"), "old");
+
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpDirectorySync.SyncResult result = SftpDirectorySync.builder().create()
+                    .upload(sftp, local, remote.toString());
+            assertEquals(2, result.transferredFiles());
+            assertEquals(2, result.deletedPaths());
+        }
+        assertEquals("inner", Files.readString(remote.resolve("a/inner.txt")));
+        assertEquals("file", Files.readString(remote.resolve("b")));
+    }
+
+    @Test
+    public void downloadTypeChangedTest() throws IOException {
+        Path remote = tempDir.resolve("remote");
+        Path local = tempDir.resolve("local");
+        write(remote.resolve("a/inner.txt"), "inner");
+        write(remote.resolve("b"), "file");
+        write(local.resolve("a"), "old file");
+        write(local.resolve("b/nested/old.txt"), "old");
+
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpDirectorySync.SyncResult result = SftpDirectorySync.builder().create()
+                    .download(sftp, remote.toString(), local);
+            assertEquals(2, result.transferredFiles());
+            assertEquals(2, result.deletedPaths());
+        }
+        assertEquals("inner", Files.readString(local.resolve("a/inner.txt")));
+        assertEquals("file", Files.readString(local.resolve("b")));
+    }
+
+    @Test
+    public void checksumCompareTest() throws IOException {
+        Path local = tempDir.resolve("local");
+        Path remote = tempDir.resolve("remote");
+        int fileCount = 200;
+        for (int i = 0; i < fileCount; i++) {
+            // 包含空格与引号的文件名需原样传给远端命令.
+            String name = "dir " + (i % 7) + "/file '" + i + "'.txt";
+            write(local.resolve(name), "content " + i);
+            write(remote.resolve(name), i == 0 ? "CONTENT 0" : "content " + i);
+            Files.setLastModifiedTime(remote.resolve(name), FileTime.fromMillis(1_000_000_000L));
+        }
+
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpDirectorySync.SyncResult result = SftpDirectorySync.builder().compareChecksum(true).create()
+                    .upload(sftp, local, remote.toString());
+            // 大小与内容都相同的文件只更新修改时间, 只有内容不同的文件需要传输.
+            assertEquals(1, result.transferredFiles());
+            assertEquals(fileCount - 1, result.skippedFiles());
+        }
+        assertEquals("content 0", Files.readString(remote.resolve("dir 0/file '0'.txt")));
+        assertEquals(Files.getLastModifiedTime(local.resolve("dir 1/file '1'.txt")).toMillis() / 1000,
+                Files.getLastModifiedTime(remote.resolve("dir 1/file '1'.txt")).toMillis() / 1000);
+    }
+
+}
@@ -0,0 +1,150 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.impl.DefaultSftpClient;
+import org.apache.sshd.sftp.common.SftpException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see SftpPipeline
+ */
+class SftpPipelineTest {
+
+    private static SshServer server;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = SftpTransferTest.createSftpServer();
+        server.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        server.stop();
+    }
+
+    @Test
+    public void requestSizeTest() throws IOException {
+        Path remote = tempDir.resolve("remote.bin");
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpClient client = sftp.getSftpClient();
+            try (SftpClient.CloseableHandle handle = client.open(remote.toString(),
+                    SftpClient.OpenMode.Write, SftpClient.OpenMode.Create)) {
+                SftpPipeline pipeline = new SftpPipeline(client, handle, 0, 4);
+                // 包头(长度, 类型, 请求 Id) + 句柄 + 偏移量 + 数据长度 + 数据, 恰好为一个数据包.
+                assertEquals(pipeline.packetDataSize(true),
+                        (4 + 1 + 4) + (4 + handle.getIdentifier().length) + 8 + 4 + pipeline.uploadDataSize());
+                // 包头 + 数据长度 + EOF 标志 + 数据.
+                assertEquals(pipeline.packetDataSize(false), (4 + 1 + 4) + 4 + 1 + pipeline.downloadDataSize());
+
+                SftpPipeline fixed = new SftpPipeline(client, handle, 1000, 4);
+                assertEquals(1000, fixed.uploadDataSize());
+                assertEquals(1000, fixed.downloadDataSize());
+            }
+        }
+    }
+
+    @Test
+    public void pipelinedTransferTest() throws IOException {
+        byte[] data = new byte[300_000];
+        new Random(42).nextBytes(data);
+        Path source = tempDir.resolve("source.bin");
+        Files.write(source, data);
+        Path remote = tempDir.resolve("remote.bin");
+        Path downloaded = tempDir.resolve("downloaded.bin");
+        int offset = 777;
+        int length = 250_000;
+
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpClient client = sftp.getSftpClient();
+            // 映射窗口与请求大小不对齐, 请求数远多于在途上限.
+            try (SftpClient.CloseableHandle handle = client.open(remote.toString(),
+                    SftpClient.OpenMode.Write, SftpClient.OpenMode.Create);
+                 FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                new SftpPipeline(client, handle, 4096, 3, 10_000).upload(channel, offset, length);
+            }
+            byte[] expected = new byte[offset + length];
+            System.arraycopy(data, offset, expected, offset, length);
+            assertArrayEquals(expected, Files.readAllBytes(remote));
+
+            try (SftpClient.CloseableHandle handle = client.open(remote.toString(), SftpClient.OpenMode.Read);
+                 FileChannel channel = FileChannel.open(downloaded, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                SftpPipeline pipeline = new SftpPipeline(client, handle, 5000, 5);
+                pipeline.download(channel, offset, length);
+                assertThrows(EOFException.class, () -> pipeline.download(channel, offset + length, 10));
+            }
+            assertArrayEquals(expected, Files.readAllBytes(downloaded));
+            assertArrayEquals(Arrays.copyOfRange(data, offset, offset + length),
+                    Arrays.copyOfRange(Files.readAllBytes(downloaded), offset, offset + length));
+        }
+    }
+
+    @Test
+    public void failedTransferDiscardsResponsesTest() throws Exception {
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        Path source = tempDir.resolve("source.bin");
+        Files.write(source, data);
+        Path remote = tempDir.resolve("remote.bin");
+        Files.write(remote, Arrays.copyOf(data, 10_000));
+
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpClient client = sftp.getSftpClient();
+            // 以只读方式打开的句柄无法写入, 第一个写请求失败时仍有请求在途.
+            try (SftpClient.CloseableHandle handle = client.open(remote.toString(), SftpClient.OpenMode.Read);
+                 FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                SftpPipeline pipeline = new SftpPipeline(client, handle, 1000, 8);
+                assertThrows(SftpException.class, () -> pipeline.upload(channel, 0, data.length));
+                assertEquals(0, pendingResponses(client));
+
+                // 读取超出远端文件长度时, 后续的读请求仍在途.
+                Path downloaded = tempDir.resolve("downloaded.bin");
+                try (FileChannel target = FileChannel.open(downloaded, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    assertThrows(EOFException.class, () -> pipeline.download(target, 5_000, 50_000));
+                    assertEquals(0, pendingResponses(client));
+
+                    // 同一客户端在失败后仍可继续使用.
+                    pipeline.download(target, 0, 10_000);
+                }
+                assertArrayEquals(Arrays.copyOf(data, 10_000), Files.readAllBytes(downloaded));
+            }
+        }
+    }
+
+    /**
+     * 获取客户端中已到达但尚未被接收的响应数量.
+     */
+    private static int pendingResponses(SftpClient client) throws ReflectiveOperationException {
+        Field field = DefaultSftpClient.class.getDeclaredField("messages");
+        field.setAccessible(true);
+        Map<?, ?> messages = (Map<?, ?>) field.get(client);
+        synchronized (messages) {
+            return messages.size();
+        }
+    }
+
+}
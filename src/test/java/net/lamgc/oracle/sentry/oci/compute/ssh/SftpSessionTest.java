@@ -0,0 +1,284 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.server.DirectoryHandle;
+import org.apache.sshd.sftp.server.SftpEventListener;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see SftpSession
+ * @see SftpTreeWalker
+ */
+class SftpSessionTest {
+
+    private final static String BROKEN_DIRECTORY = "broken";
+
+    private static SshServer server;
+    /**
+     * 服务端按完成顺序记录的删除操作.
+     */
+    private final static List<Removal> removals = new CopyOnWriteArrayList<>();
+    /**
+     * 服务端按顺序记录的 Sftp 请求类型.
+     */
+    private final static List<Integer> requests = new CopyOnWriteArrayList<>();
+    private static volatile long removeDelay = 0;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = SftpTransferTest.createSftpServer();
+        SftpSubsystemFactory factory = (SftpSubsystemFactory) server.getSubsystemFactories().get(0);
+        factory.addSftpEventListener(new SftpEventListener() {
+            @Override
+            public void received(ServerSession session, int type, int id) {
+                requests.add(type);
+            }
+
+            @Override
+            public void readingEntries(ServerSession session, String remoteHandle, DirectoryHandle localHandle)
+                    throws IOException {
+                if (localHandle.getFile().getFileName().toString().equals(BROKEN_DIRECTORY)) {
+                    throw new IOException("Listing failed: " + localHandle.getFile());
+                }
+            }
+
+            @Override
+            public void removing(ServerSession session, Path path, boolean isDirectory) {
+                if (removeDelay > 0) {
+                    try {
+                        Thread.sleep(removeDelay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            @Override
+            public void removed(ServerSession session, Path path, boolean isDirectory, Throwable thrown) {
+                if (thrown == null) {
+                    removals.add(new Removal(path, isDirectory));
+                }
+            }
+        });
+        server.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        server.stop();
+    }
+
+    @AfterEach
+    public void reset() {
+        removals.clear();
+        requests.clear();
+        removeDelay = 0;
+    }
+
+    /**
+     * 创建目录树, 每层目录中各有若干文件与两个子目录.
+     */
+    private static void createTree(Path directory, int depth) throws IOException {
+        Files.createDirectories(directory);
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(directory.resolve("file" + i + ".txt"), "content");
+        }
+        if (depth > 1) {
+            createTree(directory.resolve("a"), depth - 1);
+            createTree(directory.resolve("b"), depth - 1);
+        }
+    }
+
+    @Test
+    public void walkTest() throws IOException {
+        Path root = tempDir.resolve("root");
+        createTree(root, 4);
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            List<SftpFileEntry> entries;
+            try (Stream<SftpFileEntry> stream = sftp.walk(root.toString())) {
+                entries = stream.collect(Collectors.toList());
+            }
+            // 每层 3 个文件, 除最深层外各有 2 个子目录: 共 15 个目录(含根目录), 45 个文件.
+            assertEquals(14 + 45, entries.size());
+            Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < entries.size(); i++) {
+                SftpFileEntry entry = entries.get(i);
+                positions.put(entry.path(), i);
+                assertEquals(Path.of(entry.path()).getNameCount() - root.getNameCount(), entry.depth());
+                String parent = Path.of(entry.path()).getParent().toString();
+                if (!parent.equals(root.toString())) {
+                    // 目录总是先于其子条目返回.
+                    assertTrue(positions.containsKey(parent), "Parent not returned before " + entry.path());
+                }
+            }
+
+            try (Stream<SftpFileEntry> stream = sftp.walk(root.toString(), 2, SftpFileEntry::isDirectory)) {
+                List<SftpFileEntry> directories = stream.collect(Collectors.toList());
+                assertEquals(6, directories.size());
+                assertTrue(directories.stream().allMatch(entry -> entry.depth() <= 2));
+            }
+        }
+    }
+
+    @Test
+    public void forceDeleteDirOrderTest() throws IOException {
+        Path root = tempDir.resolve("root");
+        createTree(root, 4);
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            assertFalse(sftp.forceDeleteDir(root.resolve("file0.txt").toString()));
+            assertTrue(sftp.forceDeleteDir(root.toString()));
+        }
+        assertFalse(Files.exists(root));
+        assertEquals(45 + 15, removals.size());
+        // 文件全部删除后才开始删除目录, 目录由深到浅删除, 根目录最后删除.
+        assertTrue(removals.subList(0, 45).stream().noneMatch(Removal::directory), "Removals: " + removals);
+        int previousDepth = Integer.MAX_VALUE;
+        for (Removal removal : removals.subList(45, removals.size())) {
+            assertTrue(removal.directory());
+            int depth = removal.path().getNameCount();
+            assertTrue(depth <= previousDepth, "Directories removed out of order: " + removals);
+            previousDepth = depth;
+        }
+        assertEquals(root, removals.get(removals.size() - 1).path());
+    }
+
+    @Test
+    public void forceDeleteDirWalkFailureTest() throws IOException, InterruptedException {
+        Path root = tempDir.resolve("root");
+        Files.createDirectories(root);
+        int fileCount = 60;
+        for (int i = 0; i < fileCount; i++) {
+            Files.writeString(root.resolve("file" + i + ".txt"), "content");
+        }
+        Files.writeString(Files.createDirectories(root.resolve(BROKEN_DIRECTORY)).resolve("inner.txt"), "inner");
+        removeDelay = 20;
+
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            // 遍历中的异常以受检的 IOException 抛出.
+            assertThrows(IOException.class, () -> sftp.forceDeleteDir(root.toString()));
+        }
+        // 遍历失败后尚未执行的删除被取消, 不会删除任何目录.
+        Thread.sleep(500);
+        int removed = removals.size();
+        assertTrue(removed < fileCount, "Removed files: " + removed);
+        Thread.sleep(500);
+        assertEquals(removed, removals.size());
+        assertTrue(removals.stream().noneMatch(Removal::directory));
+        assertTrue(Files.exists(root.resolve(BROKEN_DIRECTORY).resolve("inner.txt")));
+    }
+
+    @Test
+    public void metadataRequestsTest() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("file.txt"), "content");
+        Path directory = Files.createDirectories(tempDir.resolve("dir"));
+        Files.writeString(directory.resolve("inner.txt"), "inner");
+        Path fileLink = Files.createSymbolicLink(tempDir.resolve("file-link"), file);
+        Path missing = tempDir.resolve("missing");
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            // 每个查询只需一次请求, 不再预先检查路径是否存在.
+            requests.clear();
+            assertTrue(sftp.isDirectory(directory.toString()));
+            assertEquals(List.of(SftpConstants.SSH_FXP_STAT), requests);
+
+            requests.clear();
+            assertTrue(sftp.isFile(file.toString()));
+            assertEquals(7, sftp.getFileSize(fileLink.toString()));
+            assertEquals(List.of(SftpConstants.SSH_FXP_STAT, SftpConstants.SSH_FXP_STAT), requests);
+            assertThrows(NoSuchFileException.class, () -> sftp.getFileSize(directory.toString()));
+
+            requests.clear();
+            assertFalse(sftp.exists(missing.toString()));
+            assertEquals(List.of(SftpConstants.SSH_FXP_STAT), requests);
+            assertThrows(FileNotFoundException.class, () -> sftp.isDirectory(missing.toString()));
+            assertThrows(FileNotFoundException.class, () -> sftp.getFileSize(missing.toString()));
+            assertThrows(FileNotFoundException.class, () -> sftp.read(missing.toString()));
+            assertThrows(FileNotFoundException.class, () -> sftp.write(missing.toString()));
+        }
+    }
+
+    @Test
+    public void createRequestsTest() throws IOException {
+        Path directory = tempDir.resolve("dir");
+        Path file = tempDir.resolve("file.txt");
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            requests.clear();
+            assertTrue(sftp.mkdir(directory.toString()));
+            assertEquals(List.of(SftpConstants.SSH_FXP_MKDIR), requests);
+            assertFalse(sftp.mkdir(directory.toString()));
+
+            // 测试服务端使用 Sftp v6, 需要先确认文件不存在.
+            assertEquals(SftpConstants.SFTP_V6, sftp.getSftpClient().getVersion());
+            requests.clear();
+            assertTrue(sftp.createNewFile(file.toString()));
+            assertEquals(List.of(SftpConstants.SSH_FXP_LSTAT, SftpConstants.SSH_FXP_OPEN, SftpConstants.SSH_FXP_CLOSE),
+                    requests);
+            Files.writeString(file, "content");
+            assertFalse(sftp.createNewFile(file.toString()));
+        }
+        assertEquals("content", Files.readString(file));
+        assertTrue(Files.isDirectory(directory));
+        assertTrue(Files.isRegularFile(file));
+    }
+
+    @Test
+    public void deleteTest() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("file.txt"), "content");
+        Path directory = Files.createDirectories(tempDir.resolve("dir"));
+        Path inner = Files.writeString(directory.resolve("inner.txt"), "inner");
+        Path directoryLink = Files.createSymbolicLink(tempDir.resolve("dir-link"), directory);
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            requests.clear();
+            sftp.delete(file.toString());
+            assertEquals(List.of(SftpConstants.SSH_FXP_LSTAT, SftpConstants.SSH_FXP_REMOVE), requests);
+
+            assertThrows(DirectoryNotEmptyException.class, () -> sftp.delete(directory.toString()));
+            // 符号链接作为文件删除, 不影响链接指向的目录.
+            sftp.delete(directoryLink.toString());
+            assertTrue(Files.exists(inner));
+
+            sftp.delete(inner.toString());
+            sftp.delete(directory.toString());
+            assertThrows(FileNotFoundException.class, () -> sftp.delete(directory.toString()));
+        }
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(directoryLink, LinkOption.NOFOLLOW_LINKS));
+        assertFalse(Files.exists(directory));
+    }
+
+    private record Removal(Path path, boolean directory) {
+    }
+
+}
@@ -0,0 +1,209 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.shell.ProcessShellFactory;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see SftpTransfer
+ */
+class SftpTransferTest {
+
+    private final static int CHUNK_SIZE = 64 * 1024;
+
+    private static SshServer server;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = createSftpServer();
+        server.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        server.stop();
+    }
+
+    /**
+     * 创建本地测试用的 Sftp 服务端.
+     * <p> 服务端直接访问本地文件系统, 远端路径即本地的绝对路径, 命令由 {@code /bin/sh -c} 执行.
+     */
+    static SshServer createSftpServer() {
+        SshServer server = SshTransportProfileTest.createServer();
+        server.setSubsystemFactories(List.of(new SftpSubsystemFactory()));
+        server.setCommandFactory((channel, command) ->
+                new ProcessShellFactory("sh", List.of("/bin/sh", "-c", command)).createShell(channel));
+        return server;
+    }
+
+    private SftpTransfer newTransfer() {
+        return SftpTransfer.builder().chunkSize(CHUNK_SIZE).requestSize(8 * 1024).parallelism(3)
+                .progressDirectory(tempDir.resolve("progress")).create();
+    }
+
+    private Path writeSourceFile(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        Path file = tempDir.resolve("source.bin");
+        Files.write(file, data);
+        return file;
+    }
+
+    /**
+     * 模拟已完成前若干个分块后中断的上传.
+     */
+    private void writeProgress(Path localFile, String remotePath, int completedChunks) throws IOException {
+        TransferProgress progress = new TransferProgress(remotePath, Files.size(localFile),
+                Files.getLastModifiedTime(localFile).toMillis(), CHUNK_SIZE);
+        for (int chunk = 0; chunk < completedChunks; chunk++) {
+            progress.markCompleted(chunk);
+        }
+        Path progressFile = newTransfer().uploadProgressFile(localFile, remotePath);
+        Files.createDirectories(progressFile.getParent());
+        progress.save(progressFile);
+    }
+
+    @Test
+    public void uploadAndDownloadTest() throws IOException {
+        Path source = writeSourceFile(5 * CHUNK_SIZE + 123);
+        Path remote = tempDir.resolve("remote.bin");
+        Path downloaded = tempDir.resolve("downloaded.bin");
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpTransfer.TransferResult upload = newTransfer().upload(sftp, source, remote.toString());
+            assertEquals(Files.size(source), upload.transferredBytes());
+            assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(remote));
+
+            SftpTransfer.TransferResult download = newTransfer().download(sftp, remote.toString(), downloaded);
+            assertEquals(Files.size(source), download.transferredBytes());
+            assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(downloaded));
+        }
+        assertFalse(Files.exists(newTransfer().uploadProgressFile(source, remote.toString())));
+    }
+
+    @Test
+    public void uploadKeepsSourceDirectoryCleanTest() throws IOException {
+        Path source = writeSourceFile(3 * CHUNK_SIZE + 1);
+        Path remote = tempDir.resolve("remote.bin");
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            newTransfer().upload(sftp, source, remote.toString());
+        }
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(remote));
+        // 上传成功后不保存进度, 源文件所在目录中也不会出现进度文件.
+        try (Stream<Path> files = Files.list(tempDir.resolve("progress"))) {
+            assertEquals(0, files.count());
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(Set.of("source.bin", "remote.bin", "progress"),
+                    files.map(file -> file.getFileName().toString()).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    public void uploadWithoutWritableProgressDirectoryTest() throws IOException {
+        Path source = writeSourceFile(3 * CHUNK_SIZE + 1);
+        Path remote = tempDir.resolve("remote.bin");
+        // 进度目录的父路径是一个文件, 无法创建目录.
+        Path blocker = Files.writeString(tempDir.resolve("blocker"), "file");
+        SftpTransfer transfer = SftpTransfer.builder().chunkSize(CHUNK_SIZE).requestSize(8 * 1024).parallelism(3)
+                .progressDirectory(blocker.resolve("progress")).create();
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpTransfer.TransferResult result = transfer.upload(sftp, source, remote.toString());
+            assertEquals(Files.size(source), result.transferredBytes());
+        }
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(remote));
+    }
+
+    @Test
+    public void resumeUploadTest() throws IOException {
+        Path source = writeSourceFile(4 * CHUNK_SIZE + 10);
+        Path remote = tempDir.resolve("remote.bin");
+        byte[] data = Files.readAllBytes(source);
+        // 前两个分块已写入远端, 之后的数据为无效内容.
+        byte[] partial = new byte[3 * CHUNK_SIZE];
+        System.arraycopy(data, 0, partial, 0, 2 * CHUNK_SIZE);
+        Files.write(remote, partial);
+        writeProgress(source, remote.toString(), 2);
+
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpTransfer.TransferResult result = newTransfer().upload(sftp, source, remote.toString());
+            assertEquals(2L * CHUNK_SIZE, result.resumedBytes());
+            assertEquals(data.length - 2L * CHUNK_SIZE, result.transferredBytes());
+        }
+        assertArrayEquals(data, Files.readAllBytes(remote));
+    }
+
+    @Test
+    public void resumeAfterRemoteDeletedTest() throws IOException {
+        Path source = writeSourceFile(3 * CHUNK_SIZE);
+        Path remote = tempDir.resolve("remote.bin");
+        writeProgress(source, remote.toString(), 2);
+
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpTransfer.TransferResult result = newTransfer().upload(sftp, source, remote.toString());
+            assertEquals(0, result.resumedBytes());
+            assertEquals(Files.size(source), result.transferredBytes());
+        }
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(remote));
+    }
+
+    @Test
+    public void resumeAfterRemoteTruncatedTest() throws IOException {
+        Path source = writeSourceFile(3 * CHUNK_SIZE);
+        Path remote = tempDir.resolve("remote.bin");
+        // 进度记录前两个分块已完成, 但远端文件已被改写得更短.
+        Files.write(remote, Arrays.copyOf(Files.readAllBytes(source), CHUNK_SIZE));
+        writeProgress(source, remote.toString(), 2);
+
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpTransfer.TransferResult result = newTransfer().upload(sftp, source, remote.toString());
+            assertEquals(0, result.resumedBytes());
+        }
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(remote));
+    }
+
+    @Test
+    public void progressFilePerRemotePathTest() throws IOException {
+        Path source = writeSourceFile(3 * CHUNK_SIZE);
+        String firstRemote = tempDir.resolve("first.bin").toString();
+        String secondRemote = tempDir.resolve("second.bin").toString();
+        assertNotEquals(newTransfer().uploadProgressFile(source, firstRemote),
+                newTransfer().uploadProgressFile(source, secondRemote));
+
+        // 上传到其他远端路径不会使用本路径的进度.
+        writeProgress(source, firstRemote, 3);
+        try (ClientSession clientSession = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             SftpSession sftp = new SshSession(clientSession).createSftpSession()) {
+            SftpTransfer.TransferResult result = newTransfer().upload(sftp, source, secondRemote);
+            assertEquals(0, result.resumedBytes());
+        }
+        assertTrue(Files.exists(newTransfer().uploadProgressFile(source, firstRemote)));
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(Path.of(secondRemote)));
+    }
+
+}
@@ -0,0 +1,92 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.keyverifier.ServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.AttributeRepository;
+import org.apache.sshd.server.SshServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see SharedSshClient
+ */
+class SharedSshClientTest {
+
+    private static SshServer server;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = SshTransportProfileTest.createServer();
+        server.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        server.stop();
+    }
+
+    private static ClientSession connect(AttributeRepository context) throws IOException {
+        return SharedSshClient.get().connect("test", "127.0.0.1", server.getPort(), context, null)
+                .verify(10, TimeUnit.SECONDS).getClientSession();
+    }
+
+    @Test
+    public void sharedClientTest() throws IOException {
+        assertSame(SharedSshClient.get(), SharedSshClient.get());
+        assertTrue(SharedSshClient.get().isStarted());
+
+        try (ClientSession first = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             ClientSession second = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT)) {
+            assertSame(SharedSshClient.get(), first.getFactoryManager());
+            assertSame(first.getFactoryManager(), second.getFactoryManager());
+            // 关闭一个会话不影响同一客户端上的其他会话.
+            first.close();
+            assertTrue(second.isOpen());
+            assertTrue(SharedSshClient.get().isStarted());
+        }
+    }
+
+    @Test
+    public void verifierFromContextTest() throws IOException {
+        AtomicReference<PublicKey> verifiedKey = new AtomicReference<>();
+        ServerKeyVerifier verifier = (clientSession, address, serverKey) -> {
+            verifiedKey.set(serverKey);
+            return true;
+        };
+        try (ClientSession session = connect(SharedSshClient.createConnectionContext(verifier))) {
+            session.addPasswordIdentity("password");
+            session.auth().verify(10, TimeUnit.SECONDS);
+            assertEquals(session.getServerKey(), verifiedKey.get());
+        }
+
+        try (ClientSession session = connect(SharedSshClient.createConnectionContext((s, a, k) -> false))) {
+            session.addPasswordIdentity("password");
+            assertThrows(IOException.class, () -> session.auth().verify(10, TimeUnit.SECONDS));
+        }
+
+        // 未通过连接上下文传入验证器的会话将被拒绝.
+        try (ClientSession session = connect(null)) {
+            session.addPasswordIdentity("password");
+            assertThrows(IOException.class, () -> session.auth().verify(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void identityPerSessionTest() throws IOException {
+        try (ClientSession authorized = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT);
+             ClientSession anonymous = connect(SharedSshClient.createConnectionContext((s, a, k) -> true))) {
+            assertTrue(authorized.isAuthenticated());
+            // 客户端本身不提供任何身份, 其他会话设置的身份不会被共用.
+            assertThrows(IOException.class, () -> anonymous.auth().verify(10, TimeUnit.SECONDS));
+        }
+    }
+
+}
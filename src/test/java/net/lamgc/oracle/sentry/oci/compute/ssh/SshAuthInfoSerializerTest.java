@@ -18,6 +18,7 @@ import java.security.KeyPair;
 import java.security.PublicKey;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
@@ -142,6 +143,43 @@ class SshAuthInfoSerializerTest {
                 gson.fromJson(getTestsInfo("BadRequiredFieldType"), SshAuthInfo.class));
     }
 
+    @Test
+    public void deserializeTransportPresetTest() {
+        SshAuthInfo info = gson.fromJson(getTestsInfo("TransportProfile-Preset"), SshAuthInfo.class);
+        assertSame(SshTransportProfile.preset("aes-gcm"), info.getTransportProfile());
+    }
+
+    @Test
+    public void deserializeTransportCustomTest() {
+        SshAuthInfo info = gson.fromJson(getTestsInfo("TransportProfile-Custom"), SshAuthInfo.class);
+        SshTransportProfile profile = info.getTransportProfile();
+        assertFalse(profile.isPreset());
+        assertEquals(List.of("aes256-gcm@openssh.com"), profile.getCiphers());
+        assertEquals(SshTransportProfile.preset("aes-gcm").getMacs(), profile.getMacs());
+        assertEquals("zlib@openssh.com", profile.getCompression());
+    }
+
+    @Test
+    public void deserializeNoTransportTest() {
+        SshAuthInfo info = gson.fromJson(getTestsInfo("StandardPassword"), SshAuthInfo.class);
+        assertSame(SshTransportProfile.DEFAULT, info.getTransportProfile());
+    }
+
+    @Test
+    public void deserializeJumpHostTest() {
+        SshAuthInfo info = gson.fromJson(getTestsInfo("JumpHost"), SshAuthInfo.class);
+        assertEquals("ocid1.instance.oc1.ap-tokyo-1.bastion", info.getJumpHost());
+        assertNull(gson.fromJson(getTestsInfo("StandardPassword"), SshAuthInfo.class).getJumpHost());
+    }
+
+    @Test
+    public void deserializeUnsupportedTransportTest() {
+        assertThrows(JsonParseException.class, () ->
+                gson.fromJson(getTestsInfo("TransportProfile-Unsupported"), SshAuthInfo.class));
+        assertThrows(JsonParseException.class, () ->
+                gson.fromJson(getTestsInfo("TransportProfile-UnknownPreset"), SshAuthInfo.class));
+    }
+
     private void initialSshAuthInfo(SshAuthInfo info) {
         try {
             KeyPair pair = KeyUtils.generateKeyPair("ssh-rsa", 3072);
@@ -223,6 +261,38 @@ class SshAuthInfoSerializerTest {
         assertEquals(info.getPassword(), getOrFailField(json, "password"));
     }
 
+    @Test
+    public void serializeTransportProfileTest() {
+        PasswordAuthInfo info = new PasswordAuthInfo();
+        initialSshAuthInfo(info);
+
+        JsonObject json = gson.fromJson(gson.toJson(info), JsonObject.class);
+        assertFalse(json.has("transport"));
+
+        info.setTransportProfile(SshTransportProfile.preset("compressed"));
+        json = gson.fromJson(gson.toJson(info), JsonObject.class);
+        assertEquals("compressed", getOrFailField(json, "transport"));
+
+        SshTransportProfile custom = SshTransportProfile.builder()
+                .ciphers(List.of("aes128-ctr"))
+                .kexAlgorithms(List.of("ecdh-sha2-nistp256"))
+                .create();
+        info.setTransportProfile(custom);
+        SshAuthInfo result = gson.fromJson(gson.toJson(info), SshAuthInfo.class);
+        assertEquals(custom, result.getTransportProfile());
+    }
+
+    @Test
+    public void serializeJumpHostTest() {
+        PasswordAuthInfo info = new PasswordAuthInfo();
+        initialSshAuthInfo(info);
+        assertFalse(gson.fromJson(gson.toJson(info), JsonObject.class).has("jumpHost"));
+
+        info.setJumpHost("ocid1.instance.oc1.ap-tokyo-1.bastion");
+        JsonObject json = gson.fromJson(gson.toJson(info), JsonObject.class);
+        assertEquals("ocid1.instance.oc1.ap-tokyo-1.bastion", getOrFailField(json, "jumpHost"));
+    }
+
     @Test
     public void serializeUnsupportedTest() {
         assertThrows(JsonParseException.class, () ->
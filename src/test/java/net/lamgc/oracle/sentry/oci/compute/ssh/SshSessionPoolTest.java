@@ -0,0 +1,135 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.SshServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @see SshSessionPool
+ */
+class SshSessionPoolTest {
+
+    private static SshServer server;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = SshTransportProfileTest.createServer();
+        server.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        server.stop();
+    }
+
+    /**
+     * 创建每次连接都建立新会话的实例 SSH 客户端.
+     */
+    private static InstanceSsh newInstanceSsh() throws IOException {
+        ComputeInstance instance = mock(ComputeInstance.class);
+        InstanceSsh ssh = mock(InstanceSsh.class);
+        when(ssh.getInstance()).thenReturn(instance);
+        when(ssh.connect()).thenAnswer(invocation -> SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT));
+        return ssh;
+    }
+
+    @Test
+    public void leaseReuseTest() throws IOException {
+        InstanceSsh ssh = newInstanceSsh();
+        // 健康检查阈值为 0, 每次复用前都会发送请求确认连接可用.
+        try (SshSessionPool pool = new SshSessionPool(TimeUnit.MINUTES.toMillis(5), 2, 0)) {
+            PooledSshSession first = pool.lease(ssh);
+            ClientSession clientSession = first.getClientSession();
+            first.close();
+            first.close();
+            assertTrue(clientSession.isOpen());
+            assertEquals(1, pool.getIdleSessionCount(ssh.getInstance()));
+
+            try (PooledSshSession second = pool.lease(ssh)) {
+                assertSame(clientSession, second.getClientSession());
+                assertEquals(0, pool.getIdleSessionCount(ssh.getInstance()));
+            }
+            verify(ssh, times(1)).connect();
+        }
+    }
+
+    @Test
+    public void maxIdlePerInstanceTest() throws IOException {
+        InstanceSsh ssh = newInstanceSsh();
+        try (SshSessionPool pool = new SshSessionPool(TimeUnit.MINUTES.toMillis(5), 1, TimeUnit.SECONDS.toMillis(30))) {
+            PooledSshSession first = pool.lease(ssh);
+            PooledSshSession second = pool.lease(ssh);
+            first.close();
+            second.close();
+            // 超出上限时关闭最早归还的会话.
+            assertEquals(1, pool.getIdleSessionCount(ssh.getInstance()));
+            assertFalse(first.getClientSession().isOpen());
+            assertTrue(second.getClientSession().isOpen());
+        }
+    }
+
+    @Test
+    public void discardUnavailableSessionTest() throws IOException {
+        InstanceSsh ssh = newInstanceSsh();
+        try (SshSessionPool pool = new SshSessionPool(TimeUnit.MINUTES.toMillis(5), 2, TimeUnit.SECONDS.toMillis(30))) {
+            PooledSshSession first = pool.lease(ssh);
+            first.close();
+            first.getClientSession().close();
+
+            try (PooledSshSession second = pool.lease(ssh)) {
+                assertNotSame(first.getClientSession(), second.getClientSession());
+            }
+            verify(ssh, times(2)).connect();
+
+            // 标记为不可用的会话不会归还到会话池.
+            PooledSshSession third = pool.lease(ssh);
+            third.invalidate();
+            third.close();
+            assertFalse(third.getClientSession().isOpen());
+            assertEquals(0, pool.getIdleSessionCount(ssh.getInstance()));
+        }
+    }
+
+    @Test
+    public void evictIdleSessionTest() throws IOException, InterruptedException {
+        InstanceSsh ssh = newInstanceSsh();
+        try (SshSessionPool pool = new SshSessionPool(1000, 2, TimeUnit.SECONDS.toMillis(30))) {
+            PooledSshSession session = pool.lease(ssh);
+            session.close();
+            assertEquals(1, pool.getIdleSessionCount(ssh.getInstance()));
+
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (pool.getIdleSessionCount(ssh.getInstance()) != 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals(0, pool.getIdleSessionCount(ssh.getInstance()));
+            assertFalse(session.getClientSession().isOpen());
+        }
+    }
+
+    @Test
+    public void closePoolTest() throws IOException {
+        InstanceSsh ssh = newInstanceSsh();
+        SshSessionPool pool = new SshSessionPool(TimeUnit.MINUTES.toMillis(5), 2, TimeUnit.SECONDS.toMillis(30));
+        PooledSshSession idle = pool.lease(ssh);
+        PooledSshSession leased = pool.lease(ssh);
+        idle.close();
+        pool.close();
+        assertFalse(idle.getClientSession().isOpen());
+
+        // 会话池关闭后归还的会话将被直接关闭.
+        leased.close();
+        assertFalse(leased.getClientSession().isOpen());
+        assertThrows(IllegalStateException.class, () -> pool.lease(ssh));
+    }
+
+}
@@ -0,0 +1,155 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 传输配置性能基准.
+ * <p> 针对本地 sshd 服务端, 测量每个预设配置的握手耗时与批量传输吞吐量(文本数据与随机数据).
+ * <p> 基准耗时较长, 默认不执行, 需通过系统属性 {@code -Dsentry.benchmark=true} 启用.
+ * 结果以日志输出, 应在目标架构(例如 ARM 实例)上运行, 以选择最合适的配置.
+ * @see SshTransportProfile
+ */
+@EnabledIfSystemProperty(named = "sentry.benchmark", matches = "true")
+class SshTransportProfileBenchmark {
+
+    private final static Logger log = LoggerFactory.getLogger(SshTransportProfileBenchmark.class);
+
+    private final static int HANDSHAKE_ROUNDS = 10;
+    private final static int TRANSFER_MEGABYTES = 128;
+    private final static byte[] TEXT_BLOCK;
+    private final static byte[] RANDOM_BLOCK = new byte[1024 * 1024];
+
+    static {
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(0);
+        while (builder.length() < 1024 * 1024) {
+            builder.append("2021-09-01 12:00:00.000 INFO  [main] net.lamgc.oracle.sentry.Example - Request ")
+                    .append(random.nextInt(100000)).append(" completed in ").append(random.nextInt(1000)).append(" ms\n");
+        }
+        TEXT_BLOCK = builder.substring(0, 1024 * 1024).getBytes(StandardCharsets.UTF_8);
+        new Random(0).nextBytes(RANDOM_BLOCK);
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        SshServer server = SshTransportProfileTest.createServer();
+        server.setCommandFactory((channel, command) -> new BulkOutputCommand(
+                "text".equals(command) ? TEXT_BLOCK : RANDOM_BLOCK));
+        server.start();
+        try {
+            log.info("{}", String.format("%-12s %14s %14s %14s", "profile", "handshake(ms)", "text(MiB/s)", "random(MiB/s)"));
+            for (Map.Entry<String, SshTransportProfile> entry : SshTransportProfile.presets().entrySet()) {
+                SshTransportProfile profile = entry.getValue();
+                // 预热, 排除类加载与 JIT 的影响.
+                SshTransportProfileTest.connect(server, profile).close();
+                long handshakeTime = 0;
+                for (int i = 0; i < HANDSHAKE_ROUNDS; i++) {
+                    long start = System.nanoTime();
+                    ClientSession session = SshTransportProfileTest.connect(server, profile);
+                    handshakeTime += System.nanoTime() - start;
+                    session.close();
+                }
+                double textThroughput;
+                double randomThroughput;
+                try (ClientSession session = SshTransportProfileTest.connect(server, profile)) {
+                    measureThroughput(session, "text");
+                    textThroughput = measureThroughput(session, "text");
+                    randomThroughput = measureThroughput(session, "random");
+                }
+                log.info("{}", String.format("%-12s %14.2f %14.2f %14.2f", entry.getKey(),
+                        handshakeTime / 1e6 / HANDSHAKE_ROUNDS, textThroughput, randomThroughput));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * 测量从服务端接收数据的吞吐量.
+     * @return 返回吞吐量, 单位: MiB/s.
+     */
+    private double measureThroughput(ClientSession session, String command) throws IOException {
+        long start = System.nanoTime();
+        try (ChannelExec channel = session.createExecChannel(command)) {
+            channel.setOut(OutputStream.nullOutputStream());
+            channel.setErr(OutputStream.nullOutputStream());
+            channel.open().verify(10, TimeUnit.SECONDS);
+            channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), TimeUnit.MINUTES.toMillis(5));
+        }
+        return TRANSFER_MEGABYTES / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * 重复输出指定数据块的命令.
+     */
+    private static class BulkOutputCommand implements Command {
+
+        private final byte[] block;
+        private OutputStream out;
+        private ExitCallback exitCallback;
+
+        private BulkOutputCommand(byte[] block) {
+            this.block = block;
+        }
+
+        @Override
+        public void start(ChannelSession channel, Environment env) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < TRANSFER_MEGABYTES; i++) {
+                        out.write(block);
+                    }
+                    out.flush();
+                    exitCallback.onExit(0);
+                } catch (IOException e) {
+                    exitCallback.onExit(1, e.getMessage());
+                }
+            }, "Thread-BulkOutput");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void destroy(ChannelSession channel) {
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback callback) {
+            this.exitCallback = callback;
+        }
+
+        @Override
+        public void setInputStream(InputStream in) {
+        }
+
+        @Override
+        public void setOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void setErrorStream(OutputStream err) {
+        }
+    }
+
+}
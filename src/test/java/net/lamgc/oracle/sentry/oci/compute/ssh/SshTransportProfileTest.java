@@ -0,0 +1,93 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.kex.KexProposalOption;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see SshTransportProfile
+ */
+class SshTransportProfileTest {
+
+    private static SshServer server;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = createServer();
+        server.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        server.stop();
+    }
+
+    /**
+     * 创建本地测试用 SSH 服务端.
+     * <p> 服务端启用所有压缩算法, 密码为 "password".
+     */
+    static SshServer createServer() {
+        SshServer server = SshServer.setUpDefaultServer();
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((username, password, session) -> "password".equals(password));
+        server.setCompressionFactories(List.of(BuiltinCompressions.none,
+                BuiltinCompressions.zlib, BuiltinCompressions.delayedZlib));
+        return server;
+    }
+
+    /**
+     * 使用指定传输配置连接服务端.
+     */
+    static ClientSession connect(SshServer server, SshTransportProfile profile) throws IOException {
+        ClientSession session = SharedSshClient.get().connect("test", "127.0.0.1", server.getPort(),
+                        SharedSshClient.createConnectionContext((clientSession, address, key) -> true, profile), null)
+                .verify(10, TimeUnit.SECONDS).getClientSession();
+        session.addPasswordIdentity("password");
+        session.auth().verify(10, TimeUnit.SECONDS);
+        return session;
+    }
+
+    @Test
+    public void applyPresetTest() throws IOException {
+        try (ClientSession session = connect(server, SshTransportProfile.preset("compressed"))) {
+            assertEquals("aes128-gcm@openssh.com", session.getNegotiatedKexParameter(KexProposalOption.C2SENC));
+            assertEquals("zlib@openssh.com", session.getNegotiatedKexParameter(KexProposalOption.C2SCOMP));
+        }
+    }
+
+    @Test
+    public void applyCustomTest() throws IOException {
+        SshTransportProfile profile = SshTransportProfile.builder()
+                .ciphers(List.of("aes256-ctr"))
+                .macs(List.of("hmac-sha2-512-etm@openssh.com"))
+                .kexAlgorithms(List.of("ecdh-sha2-nistp384"))
+                .create();
+        try (ClientSession session = connect(server, profile)) {
+            assertEquals("aes256-ctr", session.getNegotiatedKexParameter(KexProposalOption.C2SENC));
+            assertEquals("hmac-sha2-512-etm@openssh.com", session.getNegotiatedKexParameter(KexProposalOption.C2SMAC));
+            assertEquals("ecdh-sha2-nistp384", session.getNegotiatedKexParameter(KexProposalOption.ALGORITHMS));
+            assertEquals("none", session.getNegotiatedKexParameter(KexProposalOption.C2SCOMP));
+        }
+    }
+
+    @Test
+    public void unsupportedAlgorithmTest() {
+        assertThrows(IllegalArgumentException.class, () -> SshTransportProfile.builder()
+                .ciphers(List.of("chacha20-poly1305@openssh.com"))
+                .create());
+        assertThrows(IllegalArgumentException.class, () -> SshTransportProfile.preset("fastest"));
+    }
+
+}
@@ -0,0 +1,40 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see SshUtils
+ */
+class SshUtilsTest {
+
+    private final static String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void shellQuoteTest() {
+        assertEquals("'a b'", SshUtils.shellQuote("a b"));
+        assertEquals("'it'\\''s'", SshUtils.shellQuote("it's"));
+        assertEquals("''", SshUtils.shellQuote(""));
+    }
+
+    @Test
+    public void sha256Test() throws IOException {
+        Path file = tempDir.resolve("abc.txt");
+        Files.writeString(file, "abc", StandardCharsets.UTF_8);
+        assertEquals(ABC_SHA256, SshUtils.sha256Hex("abc"));
+        assertEquals(ABC_SHA256, SshUtils.sha256Hex("abc".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(ABC_SHA256, SshUtils.sha256Hex(file));
+        assertEquals(32, SshUtils.sha256("abc").length);
+    }
+
+}
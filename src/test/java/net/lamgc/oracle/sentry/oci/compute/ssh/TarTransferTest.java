@@ -0,0 +1,141 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import net.lamgc.oracle.sentry.common.io.TarEntry;
+import net.lamgc.oracle.sentry.common.io.TarInputStream;
+import net.lamgc.oracle.sentry.common.io.TarOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see TarTransfer
+ */
+class TarTransferTest {
+
+    private final static byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] archive(TarEntry... entries) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (TarOutputStream tar = new TarOutputStream(output)) {
+            for (TarEntry entry : entries) {
+                tar.putEntry(entry);
+                if (entry.type() == TarEntry.Type.FILE) {
+                    tar.write(CONTENT);
+                }
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private static TarEntry file(String name) {
+        return TarEntry.file(name, CONTENT.length, 0644, 1600000000);
+    }
+
+    private void extract(Path root, byte[] archive) throws IOException {
+        TarTransfer.TreeReader reader = new TarTransfer.TreeReader(root.toAbsolutePath().normalize());
+        try (TarInputStream tar = new TarInputStream(new ByteArrayInputStream(archive))) {
+            reader.read(tar);
+        }
+        reader.finish();
+    }
+
+    @Test
+    public void parentTraversalEntryTest() throws IOException {
+        Path root = Files.createDirectory(tempDir.resolve("root"));
+        assertThrows(IOException.class, () -> extract(root, archive(file("../escaped.txt"))));
+        assertThrows(IOException.class, () -> extract(root, archive(file("./dir/../../escaped.txt"))));
+        assertFalse(Files.exists(tempDir.resolve("escaped.txt")));
+    }
+
+    @Test
+    public void absoluteEntryTest() throws IOException {
+        Path root = Files.createDirectory(tempDir.resolve("root"));
+        Path outside = tempDir.resolve("absolute.txt");
+        assertThrows(IOException.class, () -> extract(root, archive(file(outside.toString()))));
+        assertFalse(Files.exists(outside));
+    }
+
+    @Test
+    public void symbolicLinkEscapeTest() throws IOException {
+        Path root = Files.createDirectory(tempDir.resolve("root"));
+        Path outside = Files.createDirectory(tempDir.resolve("outside"));
+
+        // 归档中的符号链接不会被解出, 之后经过该名称的文件写入到普通目录中.
+        extract(root, archive(new TarEntry("link", TarEntry.Type.SYMBOLIC_LINK, 0, 0777, 1600000000, outside.toString()),
+                file("link/file.txt")));
+        assertFalse(Files.isSymbolicLink(root.resolve("link")));
+        assertTrue(Files.exists(root.resolve("link/file.txt")));
+
+        // 本地已有指向目录外的符号链接时, 不能经由其写入.
+        Files.createSymbolicLink(root.resolve("existing"), outside);
+        assertThrows(IOException.class, () -> extract(root, archive(file("existing/file.txt"))));
+        assertThrows(IOException.class, () -> extract(root, archive(TarEntry.directory("existing", 0700, 1600000000))));
+        assertEquals(0, outside.toFile().list().length);
+    }
+
+    @Test
+    public void hardLinkTest() throws IOException {
+        Path root = Files.createDirectory(tempDir.resolve("root"));
+        Path outside = Files.writeString(tempDir.resolve("secret.txt"), "secret");
+        extract(root, archive(file("dir/file.txt"),
+                new TarEntry("dir/copy.txt", TarEntry.Type.HARD_LINK, 0, 0644, 1600000000, "./dir/file.txt")));
+        assertArrayEquals(CONTENT, Files.readAllBytes(root.resolve("dir/copy.txt")));
+        // 以副本形式解出, 修改其中一个不影响另一个.
+        Files.writeString(root.resolve("dir/copy.txt"), "changed");
+        assertArrayEquals(CONTENT, Files.readAllBytes(root.resolve("dir/file.txt")));
+
+        // 链接到目录之外的硬链接视为不安全的路径.
+        assertThrows(IOException.class, () -> extract(root, archive(
+                new TarEntry("leak.txt", TarEntry.Type.HARD_LINK, 0, 0644, 1600000000, outside.toString()))));
+        assertThrows(IOException.class, () -> extract(root, archive(
+                new TarEntry("leak.txt", TarEntry.Type.HARD_LINK, 0, 0644, 1600000000, "../secret.txt"))));
+        assertFalse(Files.exists(root.resolve("leak.txt")));
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void roundTripTest() throws IOException {
+        Path source = tempDir.resolve("source");
+        Files.createDirectories(source.resolve("a/b"));
+        Files.writeString(source.resolve("top.txt"), "top");
+        Files.writeString(source.resolve("a/b/deep file.txt"), "deep");
+        Files.createSymbolicLink(source.resolve("a/link"), Path.of("b/deep file.txt"));
+        String remote = tempDir.resolve("remote dir").toString();
+        Path downloaded = tempDir.resolve("downloaded");
+
+        for (boolean compress : new boolean[] {false, true}) {
+            TarTransfer transfer = TarTransfer.builder().compress(compress).create();
+            try (LocalSshServer server = LocalSshServer.start();
+                 SshSession session = server.connect()) {
+                TarTransfer.Result upload = transfer.upload(session, source, remote);
+                assertEquals(2, upload.files());
+                assertEquals(2, upload.directories());
+                assertEquals("deep", Files.readString(Path.of(remote, "a/b/deep file.txt")));
+                assertTrue(Files.isSymbolicLink(Path.of(remote, "a/link")));
+
+                TarTransfer.Result download = transfer.download(session, remote, downloaded);
+                assertEquals(2, download.files());
+                assertEquals(7, download.bytes());
+            }
+            assertEquals("top", Files.readString(downloaded.resolve("top.txt")));
+            assertEquals("deep", Files.readString(downloaded.resolve("a/b/deep file.txt")));
+            // 下载时忽略符号链接.
+            assertFalse(Files.exists(downloaded.resolve("a/link"), LinkOption.NOFOLLOW_LINKS));
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package net.lamgc.oracle.sentry.oci.compute.ssh;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.forward.AcceptAllForwardingFilter;
+import org.apache.sshd.server.forward.ForwardingFilter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see TcpTunnel
+ */
+class TcpTunnelTest {
+
+    private final static byte[] MESSAGE = "Hello, Tunnel!".getBytes(StandardCharsets.UTF_8);
+
+    private static SshServer server;
+    private static ServerSocket echoServer;
+    private static ForwardingFilter originalFilter;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = SshTransportProfileTest.createServer();
+        server.setForwardingFilter(AcceptAllForwardingFilter.INSTANCE);
+        server.start();
+        // 远端转发的连接需经过客户端的转发过滤器, 运行时由配置决定, 测试中直接放行.
+        originalFilter = SharedSshClient.get().getForwardingFilter();
+        SharedSshClient.get().setForwardingFilter(AcceptAllForwardingFilter.INSTANCE);
+
+        echoServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread echoThread = new Thread(() -> {
+            while (!echoServer.isClosed()) {
+                // 测试服务端不会将 EOF 转发到目标端口, 所以固定读取消息长度后回显并断开.
+                try (Socket socket = echoServer.accept()) {
+                    socket.getOutputStream().write(socket.getInputStream().readNBytes(MESSAGE.length));
+                } catch (IOException ignored) {
+                }
+            }
+        }, "Thread-EchoServer");
+        echoThread.setDaemon(true);
+        echoThread.start();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        SharedSshClient.get().setForwardingFilter(originalFilter);
+        echoServer.close();
+        server.stop();
+    }
+
+    /**
+     * 发送消息并读取回显内容, 直到服务端断开连接.
+     */
+    private static byte[] echo(int port) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(10000);
+            OutputStream output = socket.getOutputStream();
+            output.write(MESSAGE);
+            output.flush();
+            InputStream input = socket.getInputStream();
+            return input.readAllBytes();
+        }
+    }
+
+    @Test
+    public void localForwardingTest() throws Exception {
+        try (ClientSession session = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT)) {
+            TcpTunnel tunnel = TcpTunnel.openLocal(null, session, 0, echoServer.getLocalPort(), null);
+            try {
+                assertEquals(TcpTunnel.Direction.LOCAL, tunnel.getDirection());
+                assertArrayEquals(MESSAGE, echo(tunnel.getLocalPort()));
+                assertArrayEquals(MESSAGE, echo(tunnel.getLocalPort()));
+
+                TcpTunnelMetrics metrics = awaitIdle(tunnel);
+                assertEquals(2, metrics.totalConnections());
+                assertEquals(0, metrics.failedConnections());
+                assertEquals(MESSAGE.length * 2L, metrics.bytesSent());
+                assertEquals(MESSAGE.length * 2L, metrics.bytesReceived());
+                assertTrue(metrics.maxConnectMillis() >= metrics.averageConnectMillis());
+            } finally {
+                tunnel.close();
+            }
+            assertFalse(tunnel.isOpen());
+        }
+    }
+
+    @Test
+    public void remoteForwardingTest() throws Exception {
+        try (ClientSession session = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT)) {
+            TcpTunnel tunnel = TcpTunnel.openRemote(null, session, 0, echoServer.getLocalPort(), null);
+            try {
+                assertEquals(TcpTunnel.Direction.REMOTE, tunnel.getDirection());
+                assertNotEquals(0, tunnel.getRemotePort());
+                assertArrayEquals(MESSAGE, echo(tunnel.getRemotePort()));
+
+                TcpTunnelMetrics metrics = awaitIdle(tunnel);
+                assertEquals(1, metrics.totalConnections());
+                assertEquals(MESSAGE.length, metrics.bytesSent());
+                assertEquals(MESSAGE.length, metrics.bytesReceived());
+            } finally {
+                tunnel.close();
+            }
+        }
+    }
+
+    @Test
+    public void failedConnectionTest() throws Exception {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = socket.getLocalPort();
+        }
+        try (ClientSession session = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT)) {
+            TcpTunnel tunnel = TcpTunnel.openLocal(null, session, 0, closedPort, null);
+            try {
+                assertArrayEquals(new byte[0], echo(tunnel.getLocalPort()));
+                assertEquals(1, tunnel.getMetrics().failedConnections());
+                assertEquals(0, tunnel.getMetrics().totalConnections());
+            } finally {
+                tunnel.close();
+            }
+        }
+    }
+
+    @Test
+    public void referenceCountTest() throws Exception {
+        try (ClientSession session = SshTransportProfileTest.connect(server, SshTransportProfile.DEFAULT)) {
+            TcpTunnel tunnel = TcpTunnel.openLocal(null, session, 0, echoServer.getLocalPort(), null);
+            assertTrue(tunnel.retain());
+            assertTrue(tunnel.retain());
+            tunnel.release();
+            assertEquals(1, tunnel.getReferenceCount());
+            assertFalse(tunnel.closeIfIdle(0));
+
+            tunnel.release();
+            assertTrue(tunnel.closeIfIdle(0));
+            assertFalse(tunnel.isOpen());
+            assertFalse(tunnel.retain());
+        }
+    }
+
+    /**
+     * 等待所有连接结束后获取统计信息.
+     */
+    private static TcpTunnelMetrics awaitIdle(TcpTunnel tunnel) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (tunnel.getMetrics().activeConnections() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return tunnel.getMetrics();
+    }
+
+}
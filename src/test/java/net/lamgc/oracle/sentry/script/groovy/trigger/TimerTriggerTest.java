@@ -0,0 +1,86 @@
+package net.lamgc.oracle.sentry.script.groovy.trigger;
+
+import groovy.lang.Closure;
+import net.lamgc.oracle.sentry.oci.compute.ComputeInstance;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see TimerTrigger
+ */
+class TimerTriggerTest {
+
+    @Test
+    public void prewarmBeforeEachFireTest() throws InterruptedException {
+        List<Long> prewarmTimes = new CopyOnWriteArrayList<>();
+        List<Long> runTimes = new CopyOnWriteArrayList<>();
+        List<Set<ComputeInstance>> prewarmed = new CopyOnWriteArrayList<>();
+        TimerTrigger trigger = new TimerTrigger(instances -> {
+            prewarmTimes.add(System.currentTimeMillis());
+            prewarmed.add(instances);
+        });
+        trigger.time("* * * * * *");
+        trigger.prewarmLead(400);
+        trigger.run(new Closure<Void>(null) {
+            @Override
+            public Void call() {
+                runTimes.add(System.currentTimeMillis());
+                return null;
+            }
+        });
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (runTimes.size() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } finally {
+            trigger.shutdown();
+        }
+
+        assertTrue(runTimes.size() >= 3, "Runs: " + runTimes);
+        // 每次触发前都已预热, 且预热发生在触发前的提前时间内.
+        for (long runTime : runTimes) {
+            assertTrue(prewarmTimes.stream().anyMatch(time -> time <= runTime && runTime - time < 1000),
+                    "Run at " + runTime + ", prewarms: " + prewarmTimes);
+        }
+        // 任务没有使用 SSH, 没有需要预热的实例.
+        assertTrue(prewarmed.stream().allMatch(Set::isEmpty));
+
+        // 停止后不再预热.
+        int prewarmCount = prewarmTimes.size();
+        Thread.sleep(1500);
+        assertEquals(prewarmCount, prewarmTimes.size());
+    }
+
+    @Test
+    public void noPrewarmWhenDisabledTest() throws InterruptedException {
+        List<Long> prewarmTimes = new CopyOnWriteArrayList<>();
+        List<Long> runTimes = new CopyOnWriteArrayList<>();
+        TimerTrigger trigger = new TimerTrigger(instances -> prewarmTimes.add(System.currentTimeMillis()));
+        trigger.time("* * * * * *");
+        trigger.learnPrewarm(false);
+        trigger.run(new Closure<Void>(null) {
+            @Override
+            public Void call() {
+                runTimes.add(System.currentTimeMillis());
+                return null;
+            }
+        });
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (runTimes.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } finally {
+            trigger.shutdown();
+        }
+        assertTrue(runTimes.size() >= 2);
+        assertTrue(prewarmTimes.isEmpty());
+    }
+
+}